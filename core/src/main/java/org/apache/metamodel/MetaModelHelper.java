@@ -28,6 +28,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.PriorityQueue;
 
 import org.apache.metamodel.data.CachingDataSetHeader;
 import org.apache.metamodel.data.DataSet;
@@ -36,16 +37,21 @@ import org.apache.metamodel.data.DefaultRow;
 import org.apache.metamodel.data.EmptyDataSet;
 import org.apache.metamodel.data.FilteredDataSet;
 import org.apache.metamodel.data.FirstRowDataSet;
+import org.apache.metamodel.data.GroupedDataSet;
+import org.apache.metamodel.data.HashJoinDataSet;
 import org.apache.metamodel.data.IRowFilter;
 import org.apache.metamodel.data.InMemoryDataSet;
 import org.apache.metamodel.data.MaxRowsDataSet;
 import org.apache.metamodel.data.Row;
 import org.apache.metamodel.data.ScalarFunctionDataSet;
 import org.apache.metamodel.data.SimpleDataSetHeader;
+import org.apache.metamodel.data.SortStrategy;
+import org.apache.metamodel.data.SortedDistinctDataSet;
 import org.apache.metamodel.data.SubSelectionDataSet;
 import org.apache.metamodel.query.FilterItem;
 import org.apache.metamodel.query.FromItem;
 import org.apache.metamodel.query.GroupByItem;
+import org.apache.metamodel.query.OperatorType;
 import org.apache.metamodel.query.OrderByItem;
 import org.apache.metamodel.query.Query;
 import org.apache.metamodel.query.ScalarFunction;
@@ -185,6 +191,13 @@ public final class MetaModelHelper {
             return getFiltered(fromDataSets[0], whereItems);
         }
 
+        if (whereItems != null) {
+            final DataSet joinedDataSet = getHashJoined(fromDataSets, whereItems);
+            if (joinedDataSet != null) {
+                return joinedDataSet;
+            }
+        }
+
         List<SelectItem> selectItems = new ArrayList<SelectItem>();
         for (DataSet dataSet : fromDataSets) {
             for (int i = 0; i < dataSet.getSelectItems().length; i++) {
@@ -247,6 +260,116 @@ public final class MetaModelHelper {
         return getCarthesianProduct(fromDataSets, Arrays.asList(filterItems));
     }
 
+    /**
+     * Joins a number of datasets using hash joins wherever the filter items
+     * contain equi-join conditions between them. Datasets that are not related
+     * by any equi-join condition are joined using a carthesian product.
+     *
+     * @param fromDataSets
+     * @param whereItems
+     * @return the joined and filtered dataset, or null if no equi-join
+     *         conditions where found
+     */
+    private static DataSet getHashJoined(DataSet[] fromDataSets, Iterable<FilterItem> whereItems) {
+        final List<FilterItem> remainingItems = new ArrayList<FilterItem>();
+        for (FilterItem whereItem : whereItems) {
+            remainingItems.add(whereItem);
+        }
+
+        final List<List<FilterItem>> joinConditionsList = new ArrayList<List<FilterItem>>();
+        boolean equiJoinFound = false;
+        for (int i = 1; i < fromDataSets.length; i++) {
+            final List<FilterItem> joinConditions = new ArrayList<FilterItem>();
+            for (FilterItem whereItem : remainingItems) {
+                if (isEquiJoinCondition(whereItem, Arrays.copyOf(fromDataSets, i), fromDataSets[i])) {
+                    joinConditions.add(whereItem);
+                }
+            }
+            remainingItems.removeAll(joinConditions);
+            joinConditionsList.add(joinConditions);
+            equiJoinFound = equiJoinFound || !joinConditions.isEmpty();
+        }
+
+        if (!equiJoinFound) {
+            return null;
+        }
+
+        DataSet result = fromDataSets[0];
+        for (int i = 1; i < fromDataSets.length; i++) {
+            final DataSet dataSet = fromDataSets[i];
+            final List<FilterItem> joinConditions = joinConditionsList.get(i - 1);
+            if (joinConditions.isEmpty()) {
+                result = getCarthesianProduct(new DataSet[] { result, dataSet }, new FilterItem[0]);
+            } else {
+                final boolean buildLeft = isSmallerDataSet(result, dataSet);
+                result = new HashJoinDataSet(result, dataSet,
+                        joinConditions.toArray(new FilterItem[joinConditions.size()]), buildLeft);
+            }
+        }
+
+        return getFiltered(result, remainingItems);
+    }
+
+    /**
+     * Determines if a filter item is an EQUALS_TO condition between a select
+     * item of one of the left datasets and a select item of the right dataset.
+     */
+    private static boolean isEquiJoinCondition(FilterItem filterItem, DataSet[] leftDataSets, DataSet right) {
+        if (filterItem.isCompoundFilter() || filterItem.getExpression() != null) {
+            return false;
+        }
+        if (!OperatorType.EQUALS_TO.equals(filterItem.getOperator())) {
+            return false;
+        }
+        final Object operand = filterItem.getOperand();
+        if (!(operand instanceof SelectItem)) {
+            return false;
+        }
+        final SelectItem item1 = filterItem.getSelectItem();
+        final SelectItem item2 = (SelectItem) operand;
+        final boolean item1Left = containsSelectItem(leftDataSets, item1);
+        final boolean item1Right = right.indexOf(item1) != -1;
+        final boolean item2Left = containsSelectItem(leftDataSets, item2);
+        final boolean item2Right = right.indexOf(item2) != -1;
+        return (item1Left && !item1Right && item2Right && !item2Left)
+                || (item1Right && !item1Left && item2Left && !item2Right);
+    }
+
+    private static boolean containsSelectItem(DataSet[] dataSets, SelectItem item) {
+        for (DataSet dataSet : dataSets) {
+            if (dataSet.indexOf(item) != -1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determines if the left dataset is known to be smaller than the right
+     * dataset, in which case it is preferred as the build side of a hash join.
+     * Since only in-memory datasets have a known size, the right side is
+     * preferred in all other cases, which also retains the row order of a
+     * nested loop join.
+     */
+    private static boolean isSmallerDataSet(DataSet left, DataSet right) {
+        final int leftSize = getRowCountEstimate(left);
+        if (leftSize == -1) {
+            return false;
+        }
+        final int rightSize = getRowCountEstimate(right);
+        return rightSize == -1 || leftSize < rightSize;
+    }
+
+    private static int getRowCountEstimate(DataSet dataSet) {
+        if (dataSet instanceof InMemoryDataSet) {
+            return ((InMemoryDataSet) dataSet).size();
+        }
+        if (dataSet instanceof EmptyDataSet) {
+            return 0;
+        }
+        return -1;
+    }
+
     public static DataSet getFiltered(DataSet dataSet, Iterable<FilterItem> filterItems) {
         List<IRowFilter> filters = CollectionUtils.map(filterItems, new Func<FilterItem, IRowFilter>() {
             @Override
@@ -304,100 +427,32 @@ public final class MetaModelHelper {
     }
 
     public static DataSet getGrouped(List<SelectItem> selectItems, DataSet dataSet, GroupByItem[] groupByItems) {
+        return getGrouped(selectItems, dataSet, groupByItems, -1);
+    }
+
+    /**
+     * Groups a dataset and calculates the aggregates of each group. Aggregates
+     * are calculated incrementally, so only the groups themselves are held in
+     * memory.
+     * 
+     * @param selectItems
+     *            the select items of the result, ie. grouped items and
+     *            aggregates
+     * @param dataSet
+     *            the dataset to group
+     * @param groupByItems
+     *            the items to group by
+     * @param maxGroupsInMemory
+     *            the maximum number of groups to hold in memory, or -1 for no
+     *            maximum. When exceeded, rows of the remaining groups are
+     *            spilled to disk and grouped in subsequent passes.
+     * @return the grouped dataset
+     */
+    public static DataSet getGrouped(List<SelectItem> selectItems, DataSet dataSet, GroupByItem[] groupByItems,
+            int maxGroupsInMemory) {
         DataSet result = dataSet;
         if (groupByItems != null && groupByItems.length > 0) {
-            Map<Row, Map<SelectItem, List<Object>>> uniqueRows = new HashMap<Row, Map<SelectItem, List<Object>>>();
-
-            final SelectItem[] groupBySelects = new SelectItem[groupByItems.length];
-            for (int i = 0; i < groupBySelects.length; i++) {
-                groupBySelects[i] = groupByItems[i].getSelectItem();
-            }
-            final DataSetHeader groupByHeader = new CachingDataSetHeader(groupBySelects);
-
-            // Creates a list of SelectItems that have functions
-            List<SelectItem> functionItems = getFunctionSelectItems(selectItems);
-
-            // Loop through the dataset and identify groups
-            while (dataSet.next()) {
-                Row row = dataSet.getRow();
-
-                // Subselect a row prototype with only the unique values that
-                // define the group
-                Row uniqueRow = row.getSubSelection(groupByHeader);
-
-                // function input is the values used for calculating aggregate
-                // functions in the group
-                Map<SelectItem, List<Object>> functionInput;
-                if (!uniqueRows.containsKey(uniqueRow)) {
-                    // If this group already exist, use an existing function
-                    // input
-                    functionInput = new HashMap<SelectItem, List<Object>>();
-                    for (SelectItem item : functionItems) {
-                        functionInput.put(item, new ArrayList<Object>());
-                    }
-                    uniqueRows.put(uniqueRow, functionInput);
-                } else {
-                    // If this is a new group, create a new function input
-                    functionInput = uniqueRows.get(uniqueRow);
-                }
-
-                // Loop through aggregate functions to check for validity
-                for (SelectItem item : functionItems) {
-                    List<Object> objects = functionInput.get(item);
-                    Column column = item.getColumn();
-                    if (column != null) {
-                        Object value = row.getValue(new SelectItem(column));
-                        objects.add(value);
-                    } else if (SelectItem.isCountAllItem(item)) {
-                        // Just use the empty string, since COUNT(*) don't
-                        // evaluate values (but null values should be prevented)
-                        objects.add("");
-                    } else {
-                        throw new IllegalArgumentException("Expression function not supported: " + item);
-                    }
-                }
-            }
-
-            dataSet.close();
-            final List<Row> resultData = new ArrayList<Row>();
-            final DataSetHeader resultHeader = new CachingDataSetHeader(selectItems);
-
-            // Loop through the groups to generate aggregates
-            for (Entry<Row, Map<SelectItem, List<Object>>> entry : uniqueRows.entrySet()) {
-                Row row = entry.getKey();
-                Map<SelectItem, List<Object>> functionInput = entry.getValue();
-                Object[] resultRow = new Object[selectItems.size()];
-                // Loop through select items to generate a row
-                int i = 0;
-                for (SelectItem item : selectItems) {
-                    int uniqueRowIndex = row.indexOf(item);
-                    if (uniqueRowIndex != -1) {
-                        // If there's already a value for the select item in the
-                        // row, keep it (it's one of the grouped by columns)
-                        resultRow[i] = row.getValue(uniqueRowIndex);
-                    } else {
-                        // Use the function input to calculate the aggregate
-                        // value
-                        List<Object> objects = functionInput.get(item);
-                        if (objects != null) {
-                            Object functionResult = item.getAggregateFunction().evaluate(objects.toArray());
-                            resultRow[i] = functionResult;
-                        } else {
-                            if (item.getAggregateFunction() != null) {
-                                logger.error("No function input found for SelectItem: {}", item);
-                            }
-                        }
-                    }
-                    i++;
-                }
-                resultData.add(new DefaultRow(resultHeader, resultRow, null));
-            }
-
-            if (resultData.isEmpty()) {
-                result = new EmptyDataSet(selectItems);
-            } else {
-                result = new InMemoryDataSet(resultHeader, resultData);
-            }
+            result = new GroupedDataSet(selectItems, dataSet, groupByItems, maxGroupsInMemory);
         }
         result = getSelection(selectItems, result);
         return result;
@@ -545,52 +600,165 @@ public final class MetaModelHelper {
     }
 
     public static DataSet getOrdered(DataSet dataSet, List<OrderByItem> orderByItems) {
-        return getOrdered(dataSet, orderByItems.toArray(new OrderByItem[orderByItems.size()]));
+        return getOrdered(dataSet, orderByItems, -1);
     }
 
     public static DataSet getOrdered(DataSet dataSet, final OrderByItem... orderByItems) {
+        return getOrdered(dataSet, orderByItems, -1);
+    }
+
+    public static DataSet getOrdered(DataSet dataSet, List<OrderByItem> orderByItems, int maxRows) {
+        return getOrdered(dataSet, orderByItems.toArray(new OrderByItem[orderByItems.size()]), maxRows);
+    }
+
+    public static DataSet getOrdered(DataSet dataSet, final OrderByItem[] orderByItems, final int maxRows) {
+        return getOrdered(dataSet, orderByItems, maxRows, null);
+    }
+
+    public static DataSet getOrdered(DataSet dataSet, List<OrderByItem> orderByItems, int maxRows,
+            SortStrategy sortStrategy) {
+        return getOrdered(dataSet, orderByItems.toArray(new OrderByItem[orderByItems.size()]), maxRows, sortStrategy);
+    }
+
+    /**
+     * Orders a dataset. If only the first rows of the ordered dataset are
+     * needed, eg. because the query has a LIMIT, then only those rows are kept
+     * in memory while ordering, using a bounded heap. Otherwise the dataset is
+     * sorted using the sort strategy.
+     * 
+     * @param dataSet
+     *            the dataset to order
+     * @param orderByItems
+     *            the items to order by
+     * @param maxRows
+     *            the number of rows from the top of the ordered dataset which
+     *            are needed, or -1 if all rows are needed
+     * @param sortStrategy
+     *            the strategy to sort all rows with, or null to sort all rows
+     *            in memory
+     * @return the ordered dataset, containing at most maxRows rows if maxRows
+     *         is specified
+     */
+    public static DataSet getOrdered(DataSet dataSet, final OrderByItem[] orderByItems, final int maxRows,
+            final SortStrategy sortStrategy) {
         if (orderByItems != null && orderByItems.length != 0) {
-            final int[] sortIndexes = new int[orderByItems.length];
-            for (int i = 0; i < orderByItems.length; i++) {
-                OrderByItem item = orderByItems[i];
-                int indexOf = dataSet.indexOf(item.getSelectItem());
-                sortIndexes[i] = indexOf;
+            final Comparator<Row> comparator = getRowComparator(dataSet, orderByItems);
+
+            if (maxRows <= 0 && sortStrategy != null) {
+                return sortStrategy.sort(dataSet, comparator);
+            }
+
+            final List<Row> data;
+            if (maxRows > 0) {
+                data = readTopRows(dataSet, comparator, maxRows);
+            } else {
+                data = readDataSetFull(dataSet);
+                Collections.sort(data, comparator);
             }
 
-            final List<Row> data = readDataSetFull(dataSet);
             if (data.isEmpty()) {
                 return new EmptyDataSet(dataSet.getSelectItems());
             }
 
-            final Comparator<Object> valueComparator = ObjectComparator.getComparator();
-
-            // create a comparator for doing the actual sorting/ordering
-            final Comparator<Row> comparator = new Comparator<Row>() {
-                public int compare(Row o1, Row o2) {
-                    for (int i = 0; i < sortIndexes.length; i++) {
-                        int sortIndex = sortIndexes[i];
-                        Object sortObj1 = o1.getValue(sortIndex);
-                        Object sortObj2 = o2.getValue(sortIndex);
-                        int compare = valueComparator.compare(sortObj1, sortObj2);
-                        if (compare != 0) {
-                            OrderByItem orderByItem = orderByItems[i];
-                            boolean ascending = orderByItem.isAscending();
-                            if (ascending) {
-                                return compare;
-                            } else {
-                                return compare * -1;
-                            }
+            dataSet = new InMemoryDataSet(data);
+        }
+        return dataSet;
+    }
+
+    private static Comparator<Row> getRowComparator(DataSet dataSet, final OrderByItem[] orderByItems) {
+        final int[] sortIndexes = new int[orderByItems.length];
+        for (int i = 0; i < orderByItems.length; i++) {
+            OrderByItem item = orderByItems[i];
+            int indexOf = dataSet.indexOf(item.getSelectItem());
+            sortIndexes[i] = indexOf;
+        }
+
+        final Comparator<Object> valueComparator = ObjectComparator.getComparator();
+
+        // create a comparator for doing the actual sorting/ordering
+        return new Comparator<Row>() {
+            public int compare(Row o1, Row o2) {
+                for (int i = 0; i < sortIndexes.length; i++) {
+                    int sortIndex = sortIndexes[i];
+                    Object sortObj1 = o1.getValue(sortIndex);
+                    Object sortObj2 = o2.getValue(sortIndex);
+                    int compare = valueComparator.compare(sortObj1, sortObj2);
+                    if (compare != 0) {
+                        OrderByItem orderByItem = orderByItems[i];
+                        boolean ascending = orderByItem.isAscending();
+                        if (ascending) {
+                            return compare;
+                        } else {
+                            return compare * -1;
                         }
                     }
-                    return 0;
                 }
-            };
+                return 0;
+            }
+        };
+    }
+
+    /**
+     * Reads the top rows of a dataset, according to a comparator, while only
+     * retaining the top rows in memory. The result is the same as the first
+     * rows of a (stable) sort of the whole dataset.
+     * 
+     * @param dataSet
+     * @param comparator
+     * @param maxRows
+     * @return the top rows, in order
+     */
+    private static List<Row> readTopRows(DataSet dataSet, final Comparator<Row> comparator, final int maxRows) {
+        // rows that compare equally are ranked by their position in the
+        // dataset, to keep the ordering stable
+        final Comparator<RankedRow> rankedComparator = new Comparator<RankedRow>() {
+            @Override
+            public int compare(RankedRow o1, RankedRow o2) {
+                final int compare = comparator.compare(o1.row, o2.row);
+                if (compare != 0) {
+                    return compare;
+                }
+                return o1.rank < o2.rank ? -1 : (o1.rank == o2.rank ? 0 : 1);
+            }
+        };
+
+        // the head of the queue is the lowest ranking row that is retained
+        final PriorityQueue<RankedRow> queue = new PriorityQueue<RankedRow>(Math.min(maxRows, 1024) + 1,
+                Collections.reverseOrder(rankedComparator));
+        try {
+            long rank = 0;
+            while (dataSet.next()) {
+                final Row row = dataSet.getRow();
+                if (queue.size() < maxRows) {
+                    queue.add(new RankedRow(row, rank));
+                } else if (comparator.compare(row, queue.peek().row) < 0) {
+                    queue.poll();
+                    queue.add(new RankedRow(row, rank));
+                }
+                rank++;
+            }
+        } finally {
+            dataSet.close();
+        }
 
-            Collections.sort(data, comparator);
+        final List<RankedRow> rankedRows = new ArrayList<RankedRow>(queue);
+        Collections.sort(rankedRows, rankedComparator);
 
-            dataSet = new InMemoryDataSet(data);
+        final List<Row> result = new ArrayList<Row>(rankedRows.size());
+        for (RankedRow rankedRow : rankedRows) {
+            result.add(rankedRow.row);
+        }
+        return result;
+    }
+
+    private static final class RankedRow {
+        final Row row;
+        final long rank;
+
+        RankedRow(Row row, long rank) {
+            this.row = row;
+            this.rank = rank;
         }
-        return dataSet;
     }
 
     public static List<Row> readDataSetFull(DataSet dataSet) {
@@ -677,6 +845,9 @@ public final class MetaModelHelper {
     /**
      * Performs a left join (aka left outer join) operation on two datasets.
      * 
+     * The right dataset is read into memory and indexed by the values of the
+     * join conditions, while the left dataset is streamed.
+     * 
      * @param ds1
      *            the left dataset
      * @param ds2
@@ -692,56 +863,21 @@ public final class MetaModelHelper {
         if (ds2 == null) {
             throw new IllegalArgumentException("Right DataSet cannot be null");
         }
-        SelectItem[] si1 = ds1.getSelectItems();
-        SelectItem[] si2 = ds2.getSelectItems();
-        SelectItem[] selectItems = new SelectItem[si1.length + si2.length];
-        System.arraycopy(si1, 0, selectItems, 0, si1.length);
-        System.arraycopy(si2, 0, selectItems, si1.length, si2.length);
-
-        List<Row> resultRows = new ArrayList<Row>();
-        List<Row> ds2data = readDataSetFull(ds2);
-        if (ds2data.isEmpty()) {
+        if (getRowCountEstimate(ds2) == 0) {
             // no need to join, simply return a new view (with null values) on
             // the previous dataset.
-            return getSelection(selectItems, ds1);
-        }
-
-        final DataSetHeader header = new CachingDataSetHeader(selectItems);
-
-        while (ds1.next()) {
-
-            // Construct a single-row dataset for making a carthesian product
-            // against ds2
-            Row ds1row = ds1.getRow();
-            List<Row> ds1rows = new ArrayList<Row>();
-            ds1rows.add(ds1row);
-
-            DataSet carthesianProduct = getCarthesianProduct(
-                    new DataSet[] { new InMemoryDataSet(new CachingDataSetHeader(si1), ds1rows),
-                            new InMemoryDataSet(new CachingDataSetHeader(si2), ds2data) },
-                    onConditions);
-            List<Row> carthesianRows = readDataSetFull(carthesianProduct);
-            if (carthesianRows.size() > 0) {
-                resultRows.addAll(carthesianRows);
-            } else {
-                Object[] values = ds1row.getValues();
-                Object[] row = new Object[selectItems.length];
-                System.arraycopy(values, 0, row, 0, values.length);
-                resultRows.add(new DefaultRow(header, row));
-            }
-        }
-        ds1.close();
-
-        if (resultRows.isEmpty()) {
-            return new EmptyDataSet(selectItems);
+            ds2.close();
+            return getSelection(getJoinSelectItems(ds1, ds2), ds1);
         }
-
-        return new InMemoryDataSet(header, resultRows);
+        return new HashJoinDataSet(ds1, ds2, onConditions, false, true);
     }
 
     /**
      * Performs a right join (aka right outer join) operation on two datasets.
      * 
+     * The left dataset is read into memory and indexed by the values of the
+     * join conditions, while the right dataset is streamed.
+     * 
      * @param ds1
      *            the left dataset
      * @param ds2
@@ -751,18 +887,28 @@ public final class MetaModelHelper {
      * @return the right joined result dataset
      */
     public static DataSet getRightJoin(DataSet ds1, DataSet ds2, FilterItem[] onConditions) {
-        SelectItem[] ds1selects = ds1.getSelectItems();
-        SelectItem[] ds2selects = ds2.getSelectItems();
-        SelectItem[] leftOrderedSelects = new SelectItem[ds1selects.length + ds2selects.length];
-        System.arraycopy(ds1selects, 0, leftOrderedSelects, 0, ds1selects.length);
-        System.arraycopy(ds2selects, 0, leftOrderedSelects, ds1selects.length, ds2selects.length);
-
-        // We will reuse the left join algorithm (but switch the datasets
-        // around)
-        DataSet dataSet = getLeftJoin(ds2, ds1, onConditions);
+        if (ds1 == null) {
+            throw new IllegalArgumentException("Left DataSet cannot be null");
+        }
+        if (ds2 == null) {
+            throw new IllegalArgumentException("Right DataSet cannot be null");
+        }
+        if (getRowCountEstimate(ds1) == 0) {
+            // no need to join, simply return a new view (with null values) on
+            // the previous dataset.
+            ds1.close();
+            return getSelection(getJoinSelectItems(ds1, ds2), ds2);
+        }
+        return new HashJoinDataSet(ds1, ds2, onConditions, true, true);
+    }
 
-        dataSet = getSelection(leftOrderedSelects, dataSet);
-        return dataSet;
+    private static SelectItem[] getJoinSelectItems(DataSet ds1, DataSet ds2) {
+        final SelectItem[] si1 = ds1.getSelectItems();
+        final SelectItem[] si2 = ds2.getSelectItems();
+        final SelectItem[] selectItems = new SelectItem[si1.length + si2.length];
+        System.arraycopy(si1, 0, selectItems, 0, si1.length);
+        System.arraycopy(si2, 0, selectItems, si1.length, si2.length);
+        return selectItems;
     }
 
     public static SelectItem[] createSelectItems(Column... columns) {
@@ -773,6 +919,33 @@ public final class MetaModelHelper {
         return items;
     }
 
+    /**
+     * Removes duplicate rows from a dataset by sorting it. Unlike
+     * {@link #getDistinct(DataSet)}, which keeps all distinct rows in memory,
+     * the memory usage is governed by the sort strategy. The resulting dataset
+     * is ordered by all of its columns.
+     * 
+     * @param dataSet
+     *            the dataset to remove duplicates from
+     * @param sortStrategy
+     *            the strategy to sort the rows with, or null to use
+     *            {@link #getDistinct(DataSet)}
+     * @return a dataset with the distinct rows of the original dataset
+     */
+    public static DataSet getDistinct(DataSet dataSet, SortStrategy sortStrategy) {
+        if (sortStrategy == null) {
+            return getDistinct(dataSet);
+        }
+        final SelectItem[] selectItems = dataSet.getSelectItems();
+        final OrderByItem[] orderByItems = new OrderByItem[selectItems.length];
+        for (int i = 0; i < orderByItems.length; i++) {
+            orderByItems[i] = new OrderByItem(selectItems[i]);
+        }
+        final Comparator<Row> comparator = getRowComparator(dataSet, orderByItems);
+        final DataSet sortedDataSet = sortStrategy.sort(dataSet, comparator);
+        return new SortedDistinctDataSet(sortedDataSet, comparator);
+    }
+
     public static DataSet getDistinct(DataSet dataSet) {
         SelectItem[] selectItems = dataSet.getSelectItems();
         GroupByItem[] groupByItems = new GroupByItem[selectItems.length];
@@ -29,14 +29,18 @@ import org.apache.metamodel.convert.ConvertedDataSetInterceptor;
 import org.apache.metamodel.convert.Converters;
 import org.apache.metamodel.convert.HasReadTypeConverters;
 import org.apache.metamodel.convert.TypeConverter;
+import org.apache.metamodel.data.ColumnarTable;
+import org.apache.metamodel.data.ColumnarTableCache;
 import org.apache.metamodel.data.DataSet;
 import org.apache.metamodel.data.DataSetHeader;
 import org.apache.metamodel.data.DefaultRow;
 import org.apache.metamodel.data.EmptyDataSet;
+import org.apache.metamodel.data.ExternalSortStrategy;
 import org.apache.metamodel.data.FirstRowDataSet;
 import org.apache.metamodel.data.InMemoryDataSet;
 import org.apache.metamodel.data.Row;
 import org.apache.metamodel.data.SimpleDataSetHeader;
+import org.apache.metamodel.data.SortStrategy;
 import org.apache.metamodel.query.FilterItem;
 import org.apache.metamodel.query.FromItem;
 import org.apache.metamodel.query.GroupByItem;
@@ -58,6 +62,7 @@ import org.apache.metamodel.schema.Schema;
 import org.apache.metamodel.schema.Table;
 import org.apache.metamodel.schema.TableType;
 import org.apache.metamodel.util.CollectionUtils;
+import org.apache.metamodel.util.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -73,9 +78,27 @@ public abstract class QueryPostprocessDataContext extends AbstractDataContext im
 
     private static final Logger logger = LoggerFactory.getLogger(QueryPostprocessDataContext.class);
 
+
     public static final String INFORMATION_SCHEMA_NAME = "information_schema";
 
+    /**
+     * System property which defines the maximum number of groups to hold in
+     * memory while processing GROUP BY queries. When exceeded, rows of the
+     * remaining groups are spilled to disk. If not set, grouping is not
+     * bounded.
+     */
+    public static final String SYSTEM_PROPERTY_MAX_GROUPS_IN_MEMORY = "metamodel.query.grouping.max.groups.in.memory";
+
+    /**
+     * System property which can be used to set the maximum number of rows to
+     * hold in memory while sorting rows for ORDER BY and DISTINCT queries. If
+     * set, sorting larger datasets will spill sorted runs to disk and merge
+     * them.
+     */
+    public static final String SYSTEM_PROPERTY_MAX_SORTED_ROWS_IN_MEMORY = "metamodel.query.sorting.max.rows.in.memory";
+
     private final Map<Column, TypeConverter<?, ?>> _converters;
+    private volatile ColumnarTableCache _tableCache;
 
     public QueryPostprocessDataContext() {
         super();
@@ -180,9 +203,27 @@ public abstract class QueryPostprocessDataContext extends AbstractDataContext im
             }
         }
 
+        // check if (parts of) the query can be executed natively by the
+        // subclass
+        if (_converters.isEmpty()) {
+            final QueryPushdown pushdown = QueryPushdown.plan(this, query);
+            if (pushdown != null) {
+                logger.debug("Trying executePushdownQuery(...) with query: {}", pushdown.getPushdownQuery());
+                DataSet dataSet = executePushdownQuery(pushdown.getTable(), pushdown.getPushdownQuery());
+                if (dataSet == null) {
+                    logger.debug("DataContext did not return any pushdown query results. Proceeding with manual processing.");
+                } else {
+                    dataSet = MetaModelHelper.getFiltered(dataSet, pushdown.getResidualWhereItems());
+                    return postProcess(query, dataSet, pushdown.isGroupingPushedDown(),
+                            pushdown.getResidualHavingItems(), pushdown.isOrderingPushedDown(),
+                            pushdown.isPagingPushedDown());
+                }
+            }
+        }
+
         // Creates a list for all select items that are needed to execute query
         // (some may only be used as part of a filter, but not shown in result)
-        List<SelectItem> workSelectItems = CollectionUtils.concat(true, selectItems, whereSelectItems,
+        final List<SelectItem> workSelectItems = CollectionUtils.concat(true, selectItems, whereSelectItems,
                 groupBySelectItems, havingSelectItems, orderBySelectItems);
 
         // Materialize the tables in the from clause
@@ -193,33 +234,108 @@ public abstract class QueryPostprocessDataContext extends AbstractDataContext im
         }
 
         // Execute the query using the raw data
-        DataSet dataSet = MetaModelHelper.getCarthesianProduct(fromDataSets, whereItems);
+        final DataSet dataSet = MetaModelHelper.getCarthesianProduct(fromDataSets, whereItems);
+
+        return postProcess(query, dataSet, false, havingItems, false, false);
+    }
+
+    /**
+     * Applies the grouping, HAVING, ORDER BY, DISTINCT and paging clauses of a
+     * query to a dataset which has already been filtered by the WHERE clause,
+     * except the parts that have already been applied natively.
+     */
+    private DataSet postProcess(final Query query, DataSet dataSet, final boolean groupingDone,
+            final List<FilterItem> havingItems, final boolean orderingDone, final boolean pagingDone) {
+        final List<SelectItem> selectItems = query.getSelectClause().getItems();
+        final List<GroupByItem> groupByItems = query.getGroupByClause().getItems();
+        final List<OrderByItem> orderByItems = orderingDone ? Collections.<OrderByItem> emptyList() : query
+                .getOrderByClause().getItems();
+        final int firstRow = (query.getFirstRow() == null ? 1 : query.getFirstRow());
+        final int maxRows = (query.getMaxRows() == null ? -1 : query.getMaxRows());
 
         // we can now exclude the select items imposed by the WHERE clause (and
         // should, to make the aggregation process faster)
-        workSelectItems = CollectionUtils.concat(true, selectItems, groupBySelectItems, havingSelectItems,
-                orderBySelectItems);
+        final List<SelectItem> workSelectItems = CollectionUtils.concat(true, selectItems, query
+                .getGroupByClause().getEvaluatedSelectItems(), query.getHavingClause().getEvaluatedSelectItems(),
+                query.getOrderByClause().getEvaluatedSelectItems());
+
+        if (!groupingDone) {
+            if (groupByItems.size() > 0) {
+                dataSet = MetaModelHelper.getGrouped(workSelectItems, dataSet,
+                        groupByItems.toArray(new GroupByItem[groupByItems.size()]), getMaxGroupsInMemory());
+            } else {
+                dataSet = MetaModelHelper.getAggregated(workSelectItems, dataSet);
+            }
+        }
+        dataSet = MetaModelHelper.getFiltered(dataSet, havingItems);
 
-        if (groupByItems.size() > 0) {
-            dataSet = MetaModelHelper.getGrouped(workSelectItems, dataSet, groupByItems);
+        // when the query is paged, only the top rows need to be ordered
+        final int orderedRows;
+        if (pagingDone || maxRows == -1 || (long) firstRow - 1 + maxRows > Integer.MAX_VALUE) {
+            orderedRows = -1;
         } else {
-            dataSet = MetaModelHelper.getAggregated(workSelectItems, dataSet);
+            orderedRows = firstRow - 1 + maxRows;
         }
-        dataSet = MetaModelHelper.getFiltered(dataSet, havingItems);
 
+        final SortStrategy sortStrategy = getSortStrategy();
         if (query.getSelectClause().isDistinct()) {
             dataSet = MetaModelHelper.getSelection(selectItems, dataSet);
-            dataSet = MetaModelHelper.getDistinct(dataSet);
-            dataSet = MetaModelHelper.getOrdered(dataSet, orderByItems);
+            dataSet = MetaModelHelper.getDistinct(dataSet, sortStrategy);
+            dataSet = MetaModelHelper.getOrdered(dataSet, orderByItems, orderedRows, sortStrategy);
         } else {
-            dataSet = MetaModelHelper.getOrdered(dataSet, orderByItems);
+            dataSet = MetaModelHelper.getOrdered(dataSet, orderByItems, orderedRows, sortStrategy);
             dataSet = MetaModelHelper.getSelection(selectItems, dataSet);
         }
 
-        dataSet = MetaModelHelper.getPaged(dataSet, firstRow, maxRows);
+        if (!pagingDone) {
+            dataSet = MetaModelHelper.getPaged(dataSet, firstRow, maxRows);
+        }
         return dataSet;
     }
 
+    /**
+     * Gets the maximum number of groups to hold in memory while processing
+     * GROUP BY queries. By default this is determined by the
+     * {@link #SYSTEM_PROPERTY_MAX_GROUPS_IN_MEMORY} system property.
+     * Subclasses may override this method to provide a different value.
+     * 
+     * @return the maximum number of groups, or -1 if grouping should not be
+     *         bounded.
+     */
+    protected int getMaxGroupsInMemory() {
+        return (int) getSystemPropertyValue(SYSTEM_PROPERTY_MAX_GROUPS_IN_MEMORY, -1);
+    }
+
+    private static long getSystemPropertyValue(String property, long defaultValue) {
+        final String str = System.getProperty(property);
+        if (str == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(str.trim());
+        } catch (NumberFormatException e) {
+            logger.debug("Failed to parse system property '{}': '{}'", property, str);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Gets the strategy to use for sorting rows while processing ORDER BY and
+     * DISTINCT queries. By default an {@link ExternalSortStrategy} is used if
+     * the {@link #SYSTEM_PROPERTY_MAX_SORTED_ROWS_IN_MEMORY} system property is
+     * set. Subclasses may override this method to provide a different
+     * strategy.
+     * 
+     * @return the sort strategy, or null if rows should be sorted in memory.
+     */
+    protected SortStrategy getSortStrategy() {
+        final int maxRowsInMemory = (int) getSystemPropertyValue(SYSTEM_PROPERTY_MAX_SORTED_ROWS_IN_MEMORY, -1);
+        if (maxRowsInMemory > 0) {
+            return new ExternalSortStrategy(maxRowsInMemory);
+        }
+        return null;
+    }
+
     /**
      * Determines if all the select items are 'simple' meaning that they just
      * represent scans of values in columns.
@@ -279,6 +395,92 @@ public abstract class QueryPostprocessDataContext extends AbstractDataContext im
         return null;
     }
 
+    /**
+     * Executes the part of a query that this {@link DataContext} has declared
+     * to be able to execute natively, through the
+     * {@link #isFilterPushdownSupported(Table, FilterItem)},
+     * {@link #isGroupByPushdownSupported(Table, GroupByItem)},
+     * {@link #isAggregatePushdownSupported(Table, SelectItem)},
+     * {@link #isOrderByPushdownSupported(Table, OrderByItem)} and
+     * {@link #isPagingPushdownSupported(Table)} methods. The remaining parts
+     * of the original query are post-processed by MetaModel.
+     * 
+     * The pushdown query always has a single table in it's FROM clause, and
+     * only contains the clauses that can be executed natively. If the query is
+     * grouped, the select items consist of the grouped columns and the
+     * aggregate functions. Otherwise they are plain columns.
+     * 
+     * @param table
+     *            the table of the query
+     * @param query
+     *            the query to execute natively
+     * @return a dataset with the select items of the query (in the same
+     *         order), or null if the query could not be executed natively
+     *         after all.
+     */
+    protected DataSet executePushdownQuery(Table table, Query query) {
+        return null;
+    }
+
+    /**
+     * Determines if a WHERE or HAVING item can be evaluated natively as part of
+     * {@link #executePushdownQuery(Table, Query)}.
+     * 
+     * @param table
+     * @param filterItem
+     * @return
+     */
+    protected boolean isFilterPushdownSupported(Table table, FilterItem filterItem) {
+        return false;
+    }
+
+    /**
+     * Determines if a GROUP BY item can be evaluated natively as part of
+     * {@link #executePushdownQuery(Table, Query)}.
+     * 
+     * @param table
+     * @param groupByItem
+     * @return
+     */
+    protected boolean isGroupByPushdownSupported(Table table, GroupByItem groupByItem) {
+        return false;
+    }
+
+    /**
+     * Determines if a select item with an aggregate function can be evaluated
+     * natively as part of {@link #executePushdownQuery(Table, Query)}.
+     * 
+     * @param table
+     * @param aggregateItem
+     * @return
+     */
+    protected boolean isAggregatePushdownSupported(Table table, SelectItem aggregateItem) {
+        return false;
+    }
+
+    /**
+     * Determines if an ORDER BY item can be evaluated natively as part of
+     * {@link #executePushdownQuery(Table, Query)}.
+     * 
+     * @param table
+     * @param orderByItem
+     * @return
+     */
+    protected boolean isOrderByPushdownSupported(Table table, OrderByItem orderByItem) {
+        return false;
+    }
+
+    /**
+     * Determines if the first row and max rows of a query can be applied
+     * natively as part of {@link #executePushdownQuery(Table, Query)}.
+     * 
+     * @param table
+     * @return
+     */
+    protected boolean isPagingPushdownSupported(Table table) {
+        return false;
+    }
+
     protected DataSet materializeFromItem(final FromItem fromItem, final List<SelectItem> selectItems) {
         DataSet dataSet;
         JoinType joinType = fromItem.getJoin();
@@ -397,7 +599,13 @@ public abstract class QueryPostprocessDataContext extends AbstractDataContext im
             informationDataSet = MetaModelHelper.getPaged(informationDataSet, firstRow, maxRows);
             dataSet = informationDataSet;
         } else {
-            final DataSet tableDataSet = materializeMainSchemaTable(table, selectItems, whereItems, firstRow, maxRows);
+            DataSet tableDataSet = null;
+            if (_tableCache != null) {
+                tableDataSet = materializeCachedTable(_tableCache, table, selectItems, whereItems, firstRow, maxRows);
+            }
+            if (tableDataSet == null) {
+                tableDataSet = materializeMainSchemaTable(table, selectItems, whereItems, firstRow, maxRows);
+            }
 
             // conversion is done at materialization time, since it enables
             // the refined types to be used also in eg. where clauses.
@@ -407,11 +615,100 @@ public abstract class QueryPostprocessDataContext extends AbstractDataContext im
         return dataSet;
     }
 
-    private List<SelectItem> buildWorkingSelectItems(List<SelectItem> selectItems, List<FilterItem> whereItems) {
+    /**
+     * Materializes a table from the table cache, reading and caching the table
+     * if it is not already cached.
+     * 
+     * @return the materialized table, or null if the table cannot be cached.
+     */
+    private DataSet materializeCachedTable(final ColumnarTableCache tableCache, final Table table,
+            final List<SelectItem> selectItems, final List<FilterItem> whereItems, final int firstRow,
+            final int maxRows) {
+        final Resource resource = getTableResource(table);
+        if (resource == null) {
+            return null;
+        }
+        final long lastModified = resource.getLastModified();
+        final long size = resource.getSize();
+        if (lastModified == -1 && size == -1) {
+            // we have no way of knowing if the resource changes
+            return null;
+        }
+
+        // scalar functions are always evaluated client-side on cached tables
+        final List<SelectItem> workingSelectItems = buildWorkingSelectItems(selectItems, whereItems, false);
+        final Column[] columns = new Column[workingSelectItems.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = workingSelectItems.get(i).getColumn();
+            if (columns[i] == null) {
+                return null;
+            }
+        }
+
+        final Object key = getTableCacheKey(resource, table);
+        final List<Long> version = Arrays.asList(lastModified, size);
+        if (tableCache.isTooLarge(key, version)) {
+            return null;
+        }
+        ColumnarTable columnarTable = tableCache.get(key, version);
+        if (columnarTable == null) {
+            final Column[] tableColumns = table.getColumns();
+            final DataSet tableDataSet = materializeMainSchemaTable(table, tableColumns, -1);
+            columnarTable = ColumnarTable.build(tableColumns, tableDataSet, tableCache.getMaxEstimatedSize());
+            if (columnarTable == null) {
+                logger.debug("Table {} is too large to be cached", table);
+                tableCache.markTooLarge(key, version);
+                return null;
+            }
+            tableCache.put(key, version, columnarTable);
+        }
+
+        DataSet dataSet = columnarTable.toDataSet(columns);
+        dataSet = MetaModelHelper.getSelection(workingSelectItems, dataSet);
+        dataSet = MetaModelHelper.getFiltered(dataSet, whereItems);
+        dataSet = MetaModelHelper.getPaged(dataSet, firstRow, maxRows);
+        dataSet = MetaModelHelper.getSelection(selectItems, dataSet);
+        return dataSet;
+    }
+
+    /**
+     * Creates the key of a table in the table cache. The key only consists of
+     * the resource, the table and its column layout, so that DataContexts
+     * which read the same resource share the cached table, and so that a
+     * (possibly shared) cache does not keep DataContexts alive. The column
+     * layout is part of the key, since the cached table has a value for each
+     * column.
+     */
+    private Object getTableCacheKey(Resource resource, Table table) {
+        final Column[] columns = table.getColumns();
+        final List<String> columnLayout = new ArrayList<>(columns.length);
+        for (Column column : columns) {
+            columnLayout.add(column.getName() + ":" + column.getType());
+        }
+        return Arrays.<Object> asList(resource.getQualifiedPath(), table.getName(), columnLayout);
+    }
+
+    /**
+     * Builds the list of {@link SelectItem}s that need to be materialized to
+     * evaluate a query with the given select and where items. The list will
+     * contain the selected items as well as the items that are needed to
+     * evaluate the where items.
+     *
+     * @param selectItems
+     * @param whereItems
+     * @return
+     */
+    protected List<SelectItem> buildWorkingSelectItems(List<SelectItem> selectItems, List<FilterItem> whereItems) {
+        return buildWorkingSelectItems(selectItems, whereItems, true);
+    }
+
+    private List<SelectItem> buildWorkingSelectItems(List<SelectItem> selectItems, List<FilterItem> whereItems,
+            boolean materializeScalarFunctions) {
         final List<SelectItem> primarySelectItems = new ArrayList<>(selectItems.size());
         for (SelectItem selectItem : selectItems) {
             final ScalarFunction scalarFunction = selectItem.getScalarFunction();
-            if (scalarFunction == null || isScalarFunctionMaterialized(scalarFunction)) {
+            if (scalarFunction == null
+                    || (materializeScalarFunctions && isScalarFunctionMaterialized(scalarFunction))) {
                 primarySelectItems.add(selectItem);
             } else {
                 final SelectItem copySelectItem = selectItem.replaceFunction(null);
@@ -622,6 +919,60 @@ public abstract class QueryPostprocessDataContext extends AbstractDataContext im
         _converters.put(column, converter);
     }
 
+    /**
+     * Sets a cache of tables for this DataContext. When set, tables are read
+     * fully into the cache the first time they are queried, and subsequent
+     * queries are served from memory for as long as the resource of the table
+     * is unchanged. Only tables for which {@link #getTableResource(Table)}
+     * returns a resource are cached.
+     * 
+     * @param tableCache
+     *            the cache to use, or null to disable caching
+     */
+    public void setTableCache(ColumnarTableCache tableCache) {
+        _tableCache = tableCache;
+    }
+
+    /**
+     * Gets the cache of tables for this DataContext, if any.
+     * 
+     * @return the table cache, or null if tables are not cached
+     */
+    public ColumnarTableCache getTableCache() {
+        return _tableCache;
+    }
+
+    /**
+     * Removes the tables of this DataContext from the table cache, if any.
+     * Subclasses should invoke this method when they have modified their
+     * resources.
+     */
+    protected void invalidateTableCache() {
+        final ColumnarTableCache tableCache = _tableCache;
+        if (tableCache == null) {
+            return;
+        }
+        for (Table table : getMainSchemaInternal().getTables()) {
+            final Resource resource = getTableResource(table);
+            if (resource != null) {
+                tableCache.invalidate(getTableCacheKey(resource, table));
+            }
+        }
+    }
+
+    /**
+     * Gets the {@link Resource} which a table of the main schema is read from.
+     * Subclasses based on resources should override this method to make their
+     * tables cacheable, see {@link #setTableCache(ColumnarTableCache)}.
+     * 
+     * @param table
+     * @return the resource of the table, or null if the table is not read from
+     *         a resource.
+     */
+    protected Resource getTableResource(Table table) {
+        return null;
+    }
+
     /**
      * @return the main schema that subclasses of this class produce
      */
@@ -0,0 +1,302 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.FromItem;
+import org.apache.metamodel.query.GroupByItem;
+import org.apache.metamodel.query.OrderByItem;
+import org.apache.metamodel.query.Query;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.Table;
+import org.apache.metamodel.util.CollectionUtils;
+
+/**
+ * Splits a single-table query into a part that a
+ * {@link QueryPostprocessDataContext} can execute natively (the "pushdown
+ * query") and a residual part which is post-processed by MetaModel.
+ *
+ * The clauses of a query are considered in the order they are evaluated:
+ * WHERE, GROUP BY (including aggregate functions), HAVING, ORDER BY and
+ * finally paging. WHERE and HAVING items can be pushed down individually,
+ * since they are combined with AND. The other clauses can only be pushed down
+ * as a whole, and only if all preceding clauses are pushed down completely.
+ * DISTINCT is always evaluated by MetaModel.
+ */
+final class QueryPushdown {
+
+    private final Query _pushdownQuery;
+    private final Table _table;
+    private final List<FilterItem> _residualWhereItems;
+    private final List<FilterItem> _residualHavingItems;
+    private final boolean _groupingPushedDown;
+    private final boolean _orderingPushedDown;
+    private final boolean _pagingPushedDown;
+
+    /**
+     * Plans the pushdown of a query.
+     *
+     * @param dataContext
+     * @param query
+     * @return the plan, or null if no part of the query (apart from the
+     *         selection of columns) can be pushed down
+     */
+    public static QueryPushdown plan(QueryPostprocessDataContext dataContext, Query query) {
+        final List<FromItem> fromItems = query.getFromClause().getItems();
+        if (fromItems.size() != 1) {
+            return null;
+        }
+        final FromItem fromItem = fromItems.get(0);
+        final Table table = fromItem.getTable();
+        if (table == null || !dataContext.isMainSchemaTable(table)) {
+            return null;
+        }
+
+        final List<SelectItem> selectItems = query.getSelectClause().getItems();
+        final List<FilterItem> whereItems = query.getWhereClause().getItems();
+        final List<GroupByItem> groupByItems = query.getGroupByClause().getItems();
+        final List<FilterItem> havingItems = query.getHavingClause().getItems();
+        final List<OrderByItem> orderByItems = query.getOrderByClause().getItems();
+        final List<SelectItem> whereSelectItems = query.getWhereClause().getEvaluatedSelectItems();
+        final List<SelectItem> groupBySelectItems = query.getGroupByClause().getEvaluatedSelectItems();
+        final List<SelectItem> havingSelectItems = query.getHavingClause().getEvaluatedSelectItems();
+        final List<SelectItem> orderBySelectItems = query.getOrderByClause().getEvaluatedSelectItems();
+
+        final List<SelectItem> allSelectItems = CollectionUtils.concat(true, selectItems, whereSelectItems,
+                groupBySelectItems, havingSelectItems, orderBySelectItems);
+        for (SelectItem selectItem : allSelectItems) {
+            if (!isPushdownCandidate(selectItem, table)) {
+                return null;
+            }
+        }
+
+        final List<FilterItem> pushedWhereItems = new ArrayList<FilterItem>();
+        final List<FilterItem> residualWhereItems = new ArrayList<FilterItem>();
+        for (FilterItem whereItem : whereItems) {
+            if (dataContext.isFilterPushdownSupported(table, whereItem)) {
+                pushedWhereItems.add(whereItem);
+            } else {
+                residualWhereItems.add(whereItem);
+            }
+        }
+
+        // whether or not all clauses so far have been pushed down completely
+        boolean complete = residualWhereItems.isEmpty();
+
+        final List<SelectItem> resultSelectItems = CollectionUtils.concat(true, selectItems, havingSelectItems,
+                orderBySelectItems);
+        final List<SelectItem> aggregateItems = new ArrayList<SelectItem>();
+        for (SelectItem selectItem : resultSelectItems) {
+            if (selectItem.getAggregateFunction() != null) {
+                aggregateItems.add(selectItem);
+            }
+        }
+
+        boolean groupingPushedDown = false;
+        final List<FilterItem> pushedHavingItems = new ArrayList<FilterItem>();
+        final List<FilterItem> residualHavingItems = new ArrayList<FilterItem>(havingItems);
+        if (!groupByItems.isEmpty() || !aggregateItems.isEmpty() || !havingItems.isEmpty()) {
+            if (complete
+                    && isGroupingPushdownSupported(dataContext, table, groupByItems, groupBySelectItems,
+                            aggregateItems, resultSelectItems)) {
+                groupingPushedDown = true;
+                residualHavingItems.clear();
+                for (FilterItem havingItem : havingItems) {
+                    if (dataContext.isFilterPushdownSupported(table, havingItem)) {
+                        pushedHavingItems.add(havingItem);
+                    } else {
+                        residualHavingItems.add(havingItem);
+                    }
+                }
+                complete = residualHavingItems.isEmpty();
+            } else {
+                complete = false;
+            }
+        }
+
+        if (query.getSelectClause().isDistinct()) {
+            complete = false;
+        }
+
+        boolean orderingPushedDown = false;
+        if (!orderByItems.isEmpty()) {
+            if (complete) {
+                orderingPushedDown = true;
+                for (OrderByItem orderByItem : orderByItems) {
+                    if (!dataContext.isOrderByPushdownSupported(table, orderByItem)) {
+                        orderingPushedDown = false;
+                        break;
+                    }
+                }
+            }
+            complete = orderingPushedDown;
+        }
+
+        final Integer firstRow = query.getFirstRow();
+        final Integer maxRows = query.getMaxRows();
+        final boolean paged = (firstRow != null && firstRow > 1) || maxRows != null;
+        final boolean pagingPushedDown = paged && complete && dataContext.isPagingPushdownSupported(table);
+
+        if (pushedWhereItems.isEmpty() && !groupingPushedDown && !orderingPushedDown && !pagingPushedDown) {
+            return null;
+        }
+
+        final Query pushdownQuery = new Query();
+        pushdownQuery.from(fromItem);
+        if (groupingPushedDown) {
+            pushdownQuery.select(CollectionUtils.concat(true, resultSelectItems, groupBySelectItems).toArray(
+                    new SelectItem[0]));
+            pushdownQuery.groupBy(groupByItems.toArray(new GroupByItem[groupByItems.size()]));
+            pushdownQuery.having(pushedHavingItems.toArray(new FilterItem[pushedHavingItems.size()]));
+        } else {
+            final List<SelectItem> columnSelectItems = new ArrayList<SelectItem>();
+            for (SelectItem selectItem : CollectionUtils.concat(true, selectItems,
+                    MetaModelHelper.getEvaluatedSelectItems(residualWhereItems), groupBySelectItems,
+                    havingSelectItems, orderBySelectItems)) {
+                if (selectItem.getColumn() != null) {
+                    final SelectItem columnSelectItem = (selectItem.getAggregateFunction() == null ? selectItem
+                            : selectItem.replaceFunction(null));
+                    if (!columnSelectItems.contains(columnSelectItem)) {
+                        columnSelectItems.add(columnSelectItem);
+                    }
+                }
+            }
+            if (columnSelectItems.isEmpty()) {
+                // eg. COUNT(*) queries
+                final Column[] columns = table.getColumns();
+                if (columns.length == 0) {
+                    return null;
+                }
+                columnSelectItems.add(new SelectItem(columns[0]));
+            }
+            pushdownQuery.select(columnSelectItems.toArray(new SelectItem[columnSelectItems.size()]));
+        }
+        pushdownQuery.where(pushedWhereItems);
+        if (orderingPushedDown) {
+            pushdownQuery.orderBy(orderByItems.toArray(new OrderByItem[orderByItems.size()]));
+        }
+        if (pagingPushedDown) {
+            pushdownQuery.setFirstRow(firstRow);
+            pushdownQuery.setMaxRows(maxRows);
+        }
+
+        return new QueryPushdown(pushdownQuery, table, residualWhereItems, residualHavingItems, groupingPushedDown,
+                orderingPushedDown, pagingPushedDown);
+    }
+
+    /**
+     * Determines if a select item only refers to a column of the table
+     * (optionally with an aggregate function), or is a COUNT(*) item. Scalar
+     * functions, expressions and sub-queries are not pushed down.
+     */
+    private static boolean isPushdownCandidate(SelectItem selectItem, Table table) {
+        if (selectItem.getScalarFunction() != null || selectItem.getSubQuerySelectItem() != null) {
+            return false;
+        }
+        final Column column = selectItem.getColumn();
+        if (column == null) {
+            return SelectItem.isCountAllItem(selectItem);
+        }
+        return table.equals(column.getTable()) && selectItem.getExpression() == null;
+    }
+
+    private static boolean isGroupingPushdownSupported(QueryPostprocessDataContext dataContext, Table table,
+            List<GroupByItem> groupByItems, List<SelectItem> groupBySelectItems, List<SelectItem> aggregateItems,
+            List<SelectItem> resultSelectItems) {
+        for (GroupByItem groupByItem : groupByItems) {
+            if (!dataContext.isGroupByPushdownSupported(table, groupByItem)) {
+                return false;
+            }
+        }
+        for (SelectItem aggregateItem : aggregateItems) {
+            if (!dataContext.isAggregatePushdownSupported(table, aggregateItem)) {
+                return false;
+            }
+        }
+        // all non-aggregated items of the result need to be grouped on
+        for (SelectItem selectItem : resultSelectItems) {
+            if (selectItem.getAggregateFunction() == null && !groupBySelectItems.contains(selectItem)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private QueryPushdown(Query pushdownQuery, Table table, List<FilterItem> residualWhereItems,
+            List<FilterItem> residualHavingItems, boolean groupingPushedDown, boolean orderingPushedDown,
+            boolean pagingPushedDown) {
+        _pushdownQuery = pushdownQuery;
+        _table = table;
+        _residualWhereItems = Collections.unmodifiableList(residualWhereItems);
+        _residualHavingItems = Collections.unmodifiableList(residualHavingItems);
+        _groupingPushedDown = groupingPushedDown;
+        _orderingPushedDown = orderingPushedDown;
+        _pagingPushedDown = pagingPushedDown;
+    }
+
+    /**
+     * Gets the query to execute natively. It will only contain the table of
+     * the original query and the clauses that could be pushed down.
+     *
+     * @return
+     */
+    public Query getPushdownQuery() {
+        return _pushdownQuery;
+    }
+
+    public Table getTable() {
+        return _table;
+    }
+
+    /**
+     * Gets the WHERE items that need to be applied to the result of the
+     * pushdown query.
+     *
+     * @return
+     */
+    public List<FilterItem> getResidualWhereItems() {
+        return _residualWhereItems;
+    }
+
+    /**
+     * Gets the HAVING items that need to be applied after grouping.
+     *
+     * @return
+     */
+    public List<FilterItem> getResidualHavingItems() {
+        return _residualHavingItems;
+    }
+
+    public boolean isGroupingPushedDown() {
+        return _groupingPushedDown;
+    }
+
+    public boolean isOrderingPushedDown() {
+        return _orderingPushedDown;
+    }
+
+    public boolean isPagingPushedDown() {
+        return _pagingPushedDown;
+    }
+}
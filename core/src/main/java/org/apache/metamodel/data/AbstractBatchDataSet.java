@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.data;
+
+import java.util.List;
+
+import org.apache.metamodel.query.SelectItem;
+
+/**
+ * Abstract {@link BatchDataSet} for operators that wrap another
+ * {@link DataSet}.
+ * 
+ * If the wrapped {@link DataSet} produces batches natively, the operator
+ * processes batches also when it is read row-wise: it reads a batch at a time
+ * using {@link #readBatch(int)} and only creates {@link Row} objects for the
+ * rows that it hands out. Otherwise the operator works row-wise, using
+ * {@link #nextRowWise()} and {@link #getRowWise()}.
+ */
+abstract class AbstractBatchDataSet extends AbstractDataSet implements BatchDataSet {
+
+    private final boolean _batchNative;
+    private RowBatch _batch;
+    private int _position;
+    private Row _row;
+
+    public AbstractBatchDataSet(DataSet dataSet) {
+        super(dataSet);
+        _batchNative = isBatchNative(dataSet);
+    }
+
+    public AbstractBatchDataSet(List<SelectItem> selectItems, DataSet dataSet) {
+        super(selectItems);
+        _batchNative = isBatchNative(dataSet);
+    }
+
+    private static boolean isBatchNative(DataSet dataSet) {
+        return dataSet instanceof BatchDataSet && ((BatchDataSet) dataSet).isBatchNative();
+    }
+
+    /**
+     * Reads the next batch of this operator from the wrapped {@link DataSet}.
+     * 
+     * @param maxRows
+     * @return a batch with at least one selected row, or null if there are no
+     *         more rows
+     */
+    protected abstract RowBatch readBatch(int maxRows);
+
+    /**
+     * Moves to the next row, when the operator works row-wise.
+     * 
+     * @return
+     */
+    protected abstract boolean nextRowWise();
+
+    /**
+     * Gets the current row, when the operator works row-wise.
+     * 
+     * @return
+     */
+    protected abstract Row getRowWise();
+
+    @Override
+    public final boolean isBatchNative() {
+        return _batchNative;
+    }
+
+    @Override
+    public boolean next() {
+        if (!_batchNative) {
+            return nextRowWise();
+        }
+        _row = null;
+        _position++;
+        while (_batch == null || _position >= _batch.getRowCount()) {
+            _batch = readBatch(DEFAULT_BATCH_SIZE);
+            _position = 0;
+            if (_batch == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Row getRow() {
+        if (!_batchNative) {
+            return getRowWise();
+        }
+        if (_batch == null) {
+            return null;
+        }
+        if (_row == null) {
+            _row = _batch.getRow(_batch.getRowIndex(_position));
+        }
+        return _row;
+    }
+
+    @Override
+    public final RowBatch nextBatch(int maxRows) {
+        _row = null;
+        if (_batch != null) {
+            // continue after the current row of the row-wise reading
+            final int remaining = _batch.getRowCount() - _position - 1;
+            if (remaining > 0) {
+                final RowBatch batch = _batch.subBatch(_position + 1, maxRows);
+                _position += batch.getRowCount();
+                return batch;
+            }
+            _batch = null;
+        }
+        return readBatch(maxRows);
+    }
+}
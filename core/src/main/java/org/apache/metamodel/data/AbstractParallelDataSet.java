@@ -0,0 +1,346 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.data;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.metamodel.MetaModelException;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.util.SharedExecutorService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Abstract {@link DataSet} implementation which reads a number of partitions
+ * concurrently. Each partition is read by a worker thread of the
+ * {@link SharedExecutorService}, and the rows are handed over to the consumer
+ * in batches through bounded queues, so that only a limited number of rows is
+ * prefetched.
+ *
+ * The rows are either delivered in the order of the partitions, or in the
+ * order in which the workers produce them.
+ *
+ * The workers wait for the consumer for as long as it takes, and stop reading
+ * when the DataSet is closed. The workers only hold a weak reference to the
+ * DataSet, so a DataSet which is dropped without being closed is garbage
+ * collected, after which the workers stop as well, close their partitions and
+ * end.
+ */
+public abstract class AbstractParallelDataSet extends AbstractDataSet {
+
+    private static final Logger logger = LoggerFactory.getLogger(AbstractParallelDataSet.class);
+
+    private static final int QUEUE_CAPACITY = 4;
+    private static final long POLL_MILLIS = 100;
+
+    private final int _threads;
+    private final boolean _ordered;
+    private final int _batchSize;
+
+    private State _state;
+    private int _currentPartition;
+    private int _finishedPartitions;
+    private Iterator<Row> _rows;
+    private Row _row;
+
+    public AbstractParallelDataSet(List<SelectItem> selectItems, int threads, boolean ordered, int batchSize) {
+        super(selectItems);
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be a positive number");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be a positive number");
+        }
+        _threads = threads;
+        _ordered = ordered;
+        _batchSize = batchSize;
+    }
+
+    /**
+     * Gets the number of partitions to read.
+     *
+     * @return the number of partitions
+     */
+    protected abstract int getPartitionCount();
+
+    /**
+     * Opens a partition for reading. Invoked by the worker threads. The
+     * returned DataSet should not refer to this DataSet, since that would
+     * keep an abandoned DataSet from being garbage collected.
+     *
+     * @param partition
+     *            the index of the partition
+     * @return a DataSet with the rows of the partition
+     * @throws Exception
+     */
+    protected abstract DataSet openPartition(int partition) throws Exception;
+
+    @Override
+    public boolean next() {
+        if (_state == null) {
+            start();
+        }
+
+        while (_rows == null || !_rows.hasNext()) {
+            final Batch batch = takeBatch();
+            if (batch == null) {
+                _row = null;
+                return false;
+            }
+            _rows = batch.rows.iterator();
+        }
+        _row = _rows.next();
+        return true;
+    }
+
+    private void start() {
+        final int partitionCount = getPartitionCount();
+        final int workers = Math.min(_threads, Math.max(1, partitionCount));
+        _state = new State(partitionCount, _ordered, _batchSize, workers);
+
+        logger.debug("Reading {} partitions using {} threads", partitionCount, workers);
+        final WeakReference<AbstractParallelDataSet> dataSetReference = new WeakReference<AbstractParallelDataSet>(
+                this);
+        for (int i = 0; i < workers; i++) {
+            SharedExecutorService.get().submit(new Worker(dataSetReference, _state));
+        }
+    }
+
+    /**
+     * Takes the next batch of rows.
+     *
+     * @return the next batch, or null if all partitions have been read
+     */
+    private Batch takeBatch() {
+        final State state = _state;
+        while (true) {
+            if (state.closed) {
+                return null;
+            }
+            if (_ordered ? _currentPartition >= state.partitionCount : _finishedPartitions >= state.partitionCount) {
+                return null;
+            }
+
+            final Batch batch;
+            try {
+                batch = state.getQueue(_currentPartition).poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                close();
+                Thread.currentThread().interrupt();
+                throw new MetaModelException("Interrupted while reading partitions in parallel", e);
+            }
+
+            if (batch == null) {
+                continue;
+            }
+            if (batch.error != null) {
+                close();
+                if (batch.error instanceof RuntimeException) {
+                    throw (RuntimeException) batch.error;
+                }
+                if (batch.error instanceof Error) {
+                    throw (Error) batch.error;
+                }
+                throw new MetaModelException("Failed to read partition in parallel", (Exception) batch.error);
+            }
+            if (batch.rows == null) {
+                // end of a partition
+                _finishedPartitions++;
+                if (_ordered) {
+                    _currentPartition++;
+                }
+                continue;
+            }
+            return batch;
+        }
+    }
+
+    @Override
+    public Row getRow() {
+        return _row;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        _row = null;
+        _rows = null;
+        if (_state != null) {
+            _state.close();
+        }
+    }
+
+    /**
+     * The state shared between the DataSet and its workers. It does not refer
+     * to the DataSet itself.
+     */
+    private static final class State {
+        final int partitionCount;
+        final boolean ordered;
+        final int batchSize;
+        final AtomicInteger nextPartition;
+        final List<BlockingQueue<Batch>> queues;
+        volatile boolean closed;
+
+        State(int partitionCount, boolean ordered, int batchSize, int workers) {
+            this.partitionCount = partitionCount;
+            this.ordered = ordered;
+            this.batchSize = batchSize;
+            this.nextPartition = new AtomicInteger(0);
+            final int queueCount = (ordered ? partitionCount : 1);
+            this.queues = new ArrayList<BlockingQueue<Batch>>(queueCount);
+            for (int i = 0; i < queueCount; i++) {
+                queues.add(new ArrayBlockingQueue<Batch>(QUEUE_CAPACITY * (ordered ? 1 : workers)));
+            }
+        }
+
+        BlockingQueue<Batch> getQueue(int partition) {
+            return queues.get(ordered ? partition : 0);
+        }
+
+        void close() {
+            closed = true;
+            // release any workers waiting for room in the queues
+            for (BlockingQueue<Batch> queue : queues) {
+                queue.clear();
+            }
+        }
+    }
+
+    /**
+     * Worker which reads partitions until there are no more partitions to
+     * read. Partitions are claimed in order, so the first unfinished partition
+     * is always being read.
+     */
+    private static final class Worker implements Runnable {
+
+        private final WeakReference<AbstractParallelDataSet> _dataSetReference;
+        private final State _state;
+
+        Worker(WeakReference<AbstractParallelDataSet> dataSetReference, State state) {
+            _dataSetReference = dataSetReference;
+            _state = state;
+        }
+
+        @Override
+        public void run() {
+            int i;
+            while ((i = _state.nextPartition.getAndIncrement()) < _state.partitionCount && !isStopped()) {
+                try {
+                    if (!readPartition(i)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private boolean isStopped() {
+            if (_state.closed) {
+                return true;
+            }
+            if (_dataSetReference.get() == null) {
+                logger.debug("DataSet was garbage collected without being closed, stopping to read partitions");
+                _state.close();
+                return true;
+            }
+            return false;
+        }
+
+        private DataSet openPartition(int partition) throws Exception {
+            final AbstractParallelDataSet dataSet = _dataSetReference.get();
+            if (dataSet == null) {
+                return null;
+            }
+            return dataSet.openPartition(partition);
+        }
+
+        /**
+         * Adds a batch to the queue of a partition, waiting for room in the
+         * queue until the DataSet is closed or garbage collected.
+         *
+         * @return whether or not the batch was added
+         */
+        private boolean put(int partition, Batch batch) throws InterruptedException {
+            final BlockingQueue<Batch> queue = _state.getQueue(partition);
+            while (!isStopped()) {
+                if (queue.offer(batch, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean readPartition(int partition) throws InterruptedException {
+            DataSet dataSet = null;
+            try {
+                dataSet = openPartition(partition);
+                if (dataSet == null) {
+                    return false;
+                }
+
+                List<Row> rows = new ArrayList<Row>(_state.batchSize);
+                while (!isStopped() && dataSet.next()) {
+                    final Row row = dataSet.getRow();
+                    // evaluate lazily evaluated rows in this thread
+                    row.getValues();
+                    rows.add(row);
+                    if (rows.size() == _state.batchSize) {
+                        if (!put(partition, new Batch(rows, null))) {
+                            return false;
+                        }
+                        rows = new ArrayList<Row>(_state.batchSize);
+                    }
+                }
+                if (!rows.isEmpty() && !put(partition, new Batch(rows, null))) {
+                    return false;
+                }
+                return put(partition, new Batch(null, null));
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Throwable e) {
+                logger.debug("Reading partition #{} failed", partition, e);
+                put(partition, new Batch(null, e));
+                return false;
+            } finally {
+                if (dataSet != null) {
+                    dataSet.close();
+                }
+            }
+        }
+    }
+
+    private static final class Batch {
+        final List<Row> rows;
+        final Throwable error;
+
+        Batch(List<Row> rows, Throwable error) {
+            this.rows = rows;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.data;
+
+/**
+ * Optional sub-interface for {@link DataSet}s that can deliver their rows in
+ * column-oriented batches, in stead of one {@link Row} at a time. Reading
+ * batches avoids allocating a {@link Row} object per row, and lets operators
+ * such as filters and projections work in tight loops over arrays of values.
+ * 
+ * A {@link BatchDataSet} still supports the row-wise {@link #next()} and
+ * {@link #getRow()} methods. The two ways of reading may be combined, in which
+ * case {@link #nextBatch(int)} continues after the current row.
+ * 
+ * Use {@link RowBatch#read(DataSet, int)} to read batches from any
+ * {@link DataSet}, regardless of whether it implements this interface.
+ */
+public interface BatchDataSet extends DataSet {
+
+    /**
+     * The number of rows that operators read at a time, when they read
+     * batches on behalf of row-wise consumers.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    /**
+     * Reads the next batch of rows.
+     * 
+     * @param maxRows
+     *            the maximum number of (selected) rows of the batch
+     * @return a batch with at least one selected row, or null if there are no
+     *         more rows
+     */
+    public RowBatch nextBatch(int maxRows);
+
+    /**
+     * Determines if this {@link DataSet} produces batches natively, or if the
+     * batches are built from rows read one at a time. Operators only switch to
+     * batch-wise processing when their source produces batches natively.
+     * 
+     * @return
+     */
+    public boolean isBatchNative();
+}
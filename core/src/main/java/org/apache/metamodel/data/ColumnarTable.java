@@ -0,0 +1,632 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.Column;
+
+/**
+ * An immutable, in-memory copy of the contents of a table, stored column by
+ * column. Integer, long, double and boolean values are stored in primitive
+ * arrays with a bitmap of null values, and strings are dictionary encoded, so
+ * repeated values are only stored once. Columns with values of other (or
+ * mixed) types are stored as plain objects.
+ *
+ * Use {@link #build(Column[], DataSet, long)} to create a columnar table and
+ * {@link #toDataSet(Column[])} to read it.
+ *
+ * @see ColumnarTableCache
+ */
+public final class ColumnarTable {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Column[] _columns;
+    private final ColumnVector[] _vectors;
+    private final Style[][] _styles;
+    private final int _rowCount;
+    private final long _estimatedSize;
+
+    private ColumnarTable(Column[] columns, ColumnVector[] vectors, Style[][] styles, int rowCount) {
+        _columns = columns;
+        _vectors = vectors;
+        _styles = styles;
+        _rowCount = rowCount;
+
+        long estimatedSize = 0;
+        for (ColumnVector vector : vectors) {
+            estimatedSize += vector.getEstimatedSize();
+        }
+        if (styles != null) {
+            estimatedSize += 8L * styles.length;
+        }
+        _estimatedSize = estimatedSize;
+    }
+
+    /**
+     * Builds a columnar table from a dataset. The dataset will be consumed and
+     * closed.
+     *
+     * @param columns
+     *            the columns of the dataset
+     * @param dataSet
+     *            the dataset to build the table from
+     * @param maxEstimatedSize
+     *            the maximum estimated size (in bytes) of the table, or -1 if
+     *            there is no maximum
+     * @return the columnar table, or null if the table exceeded the maximum
+     *         size
+     */
+    public static ColumnarTable build(Column[] columns, DataSet dataSet, long maxEstimatedSize) {
+        final ColumnVector[] vectors = new ColumnVector[columns.length];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = new UntypedVector();
+        }
+        Style[][] styles = null;
+        int rowCount = 0;
+
+        try {
+            while (dataSet.next()) {
+                final Row row = dataSet.getRow();
+                for (int i = 0; i < vectors.length; i++) {
+                    final Object value = row.getValue(i);
+                    if (!vectors[i].add(value)) {
+                        vectors[i] = vectors[i].toTypedVector(value);
+                        vectors[i].add(value);
+                    }
+                }
+
+                final Style[] rowStyles = row.getStyles();
+                if (rowStyles != null) {
+                    if (styles == null) {
+                        styles = new Style[Math.max(INITIAL_CAPACITY, rowCount + 1)][];
+                    } else if (styles.length <= rowCount) {
+                        styles = Arrays.copyOf(styles, styles.length * 2);
+                    }
+                    styles[rowCount] = rowStyles;
+                }
+                rowCount++;
+
+                // check the size once in a while, it's not for free
+                if (maxEstimatedSize != -1 && rowCount % INITIAL_CAPACITY == 0) {
+                    if (getEstimatedSize(vectors) > maxEstimatedSize) {
+                        return null;
+                    }
+                }
+            }
+        } finally {
+            dataSet.close();
+        }
+
+        for (ColumnVector vector : vectors) {
+            vector.trim();
+        }
+        if (styles != null) {
+            styles = Arrays.copyOf(styles, rowCount);
+        }
+
+        final ColumnarTable table = new ColumnarTable(columns, vectors, styles, rowCount);
+        if (maxEstimatedSize != -1 && table.getEstimatedSize() > maxEstimatedSize) {
+            return null;
+        }
+        return table;
+    }
+
+    private static long getEstimatedSize(ColumnVector[] vectors) {
+        long estimatedSize = 0;
+        for (ColumnVector vector : vectors) {
+            estimatedSize += vector.getEstimatedSize();
+        }
+        return estimatedSize;
+    }
+
+    public Column[] getColumns() {
+        return Arrays.copyOf(_columns, _columns.length);
+    }
+
+    public int getRowCount() {
+        return _rowCount;
+    }
+
+    /**
+     * Gets the estimated memory usage (in bytes) of this table.
+     *
+     * @return
+     */
+    public long getEstimatedSize() {
+        return _estimatedSize;
+    }
+
+    /**
+     * Creates a dataset with the contents of some of the columns of this
+     * table.
+     *
+     * @param columns
+     *            the columns to include in the dataset
+     * @return a dataset with a select item for each column
+     * @throws IllegalArgumentException
+     *             if one of the columns is not part of this table
+     */
+    public DataSet toDataSet(Column[] columns) throws IllegalArgumentException {
+        final List<Column> tableColumns = Arrays.asList(_columns);
+        final int[] indexes = new int[columns.length];
+        final SelectItem[] selectItems = new SelectItem[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            indexes[i] = tableColumns.indexOf(columns[i]);
+            if (indexes[i] == -1) {
+                throw new IllegalArgumentException("Column is not part of columnar table: " + columns[i]);
+            }
+            selectItems[i] = new SelectItem(columns[i]);
+        }
+        return new ColumnarDataSet(new CachingDataSetHeader(selectItems), indexes);
+    }
+
+    private final class ColumnarDataSet extends AbstractDataSet implements BatchDataSet {
+
+        private final int[] _indexes;
+        private int _rowNumber;
+        private Row _row;
+
+        public ColumnarDataSet(DataSetHeader header, int[] indexes) {
+            super(header);
+            _indexes = indexes;
+            _rowNumber = -1;
+        }
+
+        @Override
+        public boolean next() {
+            _rowNumber++;
+            if (_rowNumber >= _rowCount) {
+                _row = null;
+                return false;
+            }
+
+            final Object[] values = new Object[_indexes.length];
+            for (int i = 0; i < _indexes.length; i++) {
+                values[i] = _vectors[_indexes[i]].get(_rowNumber);
+            }
+
+            Style[] styles = null;
+            if (_styles != null && _styles[_rowNumber] != null) {
+                final Style[] rowStyles = _styles[_rowNumber];
+                styles = new Style[_indexes.length];
+                for (int i = 0; i < _indexes.length; i++) {
+                    styles[i] = rowStyles[_indexes[i]];
+                }
+            }
+
+            _row = new DefaultRow(getHeader(), values, styles);
+            return true;
+        }
+
+        @Override
+        public Row getRow() {
+            return _row;
+        }
+
+        @Override
+        public boolean isBatchNative() {
+            return true;
+        }
+
+        @Override
+        public RowBatch nextBatch(int maxRows) {
+            _row = null;
+            final int firstRow = _rowNumber + 1;
+            final int size = Math.min(maxRows, _rowCount - firstRow);
+            if (size <= 0) {
+                _rowNumber = _rowCount;
+                return null;
+            }
+
+            final Object[][] columns = new Object[_indexes.length][size];
+            for (int i = 0; i < _indexes.length; i++) {
+                final ColumnVector vector = _vectors[_indexes[i]];
+                final Object[] column = columns[i];
+                for (int j = 0; j < size; j++) {
+                    column[j] = vector.get(firstRow + j);
+                }
+            }
+
+            Style[][] styles = null;
+            if (_styles != null) {
+                for (int j = 0; j < size; j++) {
+                    final Style[] rowStyles = _styles[firstRow + j];
+                    if (rowStyles != null) {
+                        if (styles == null) {
+                            styles = new Style[_indexes.length][size];
+                        }
+                        for (int i = 0; i < _indexes.length; i++) {
+                            styles[i][j] = rowStyles[_indexes[i]];
+                        }
+                    }
+                }
+            }
+
+            _rowNumber += size;
+            return new RowBatch(getHeader(), columns, styles, size, null, size);
+        }
+    }
+
+    /**
+     * Growable storage of the values of a single column.
+     */
+    private static abstract class ColumnVector {
+
+        protected final BitSet _nulls = new BitSet();
+        protected int _size = 0;
+
+        /**
+         * Adds a value to the vector.
+         *
+         * @param value
+         * @return false if the value is not supported by this vector
+         */
+        public final boolean add(Object value) {
+            if (value == null) {
+                _nulls.set(_size);
+                ensureCapacity(_size + 1);
+                _size++;
+                return true;
+            }
+            if (!isSupported(value)) {
+                return false;
+            }
+            ensureCapacity(_size + 1);
+            set(_size, value);
+            _size++;
+            return true;
+        }
+
+        public final Object get(int index) {
+            if (_nulls.get(index)) {
+                return null;
+            }
+            return getValue(index);
+        }
+
+        /**
+         * Creates a vector which holds the values of this vector as well as
+         * values like the given value.
+         *
+         * @param value
+         * @return
+         */
+        public ColumnVector toTypedVector(Object value) {
+            final ColumnVector vector = new ObjectVector();
+            copyTo(vector);
+            return vector;
+        }
+
+        protected final void copyTo(ColumnVector vector) {
+            for (int i = 0; i < _size; i++) {
+                vector.add(get(i));
+            }
+        }
+
+        public long getEstimatedSize() {
+            return 16 + _nulls.size() / 8;
+        }
+
+        protected abstract boolean isSupported(Object value);
+
+        protected abstract void ensureCapacity(int capacity);
+
+        protected abstract void set(int index, Object value);
+
+        protected abstract Object getValue(int index);
+
+        public abstract void trim();
+    }
+
+    /**
+     * Vector used until the first non-null value has been added.
+     */
+    private static final class UntypedVector extends ColumnVector {
+
+        @Override
+        public ColumnVector toTypedVector(Object value) {
+            final ColumnVector vector;
+            if (value instanceof String) {
+                vector = new StringVector();
+            } else if (value instanceof Integer) {
+                vector = new IntegerVector();
+            } else if (value instanceof Long) {
+                vector = new LongVector();
+            } else if (value instanceof Double) {
+                vector = new DoubleVector();
+            } else if (value instanceof Boolean) {
+                vector = new BooleanVector();
+            } else {
+                vector = new ObjectVector();
+            }
+            copyTo(vector);
+            return vector;
+        }
+
+        @Override
+        protected boolean isSupported(Object value) {
+            return false;
+        }
+
+        @Override
+        protected void ensureCapacity(int capacity) {
+        }
+
+        @Override
+        protected void set(int index, Object value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected Object getValue(int index) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void trim() {
+        }
+    }
+
+    private static final class StringVector extends ColumnVector {
+
+        private final List<String> _dictionary = new ArrayList<String>();
+        private Map<String, Integer> _codes = new HashMap<String, Integer>();
+        private int[] _values = new int[INITIAL_CAPACITY];
+        private long _dictionarySize = 0;
+
+        @Override
+        protected boolean isSupported(Object value) {
+            return value instanceof String;
+        }
+
+        @Override
+        protected void ensureCapacity(int capacity) {
+            if (_values.length < capacity) {
+                _values = Arrays.copyOf(_values, _values.length * 2);
+            }
+        }
+
+        @Override
+        protected void set(int index, Object value) {
+            final String str = (String) value;
+            Integer code = _codes.get(str);
+            if (code == null) {
+                code = _dictionary.size();
+                _dictionary.add(str);
+                _codes.put(str, code);
+                _dictionarySize += 40 + 2 * str.length();
+            }
+            _values[index] = code;
+        }
+
+        @Override
+        protected Object getValue(int index) {
+            return _dictionary.get(_values[index]);
+        }
+
+        @Override
+        public long getEstimatedSize() {
+            // the dictionary lookup map is only needed while building
+            final long codesSize = _codes == null ? 0 : 48L * _codes.size();
+            return super.getEstimatedSize() + 4L * _values.length + 8L * _dictionary.size() + _dictionarySize
+                    + codesSize;
+        }
+
+        @Override
+        public void trim() {
+            _values = Arrays.copyOf(_values, _size);
+            _codes = null;
+        }
+    }
+
+    private static final class IntegerVector extends ColumnVector {
+
+        private int[] _values = new int[INITIAL_CAPACITY];
+
+        @Override
+        protected boolean isSupported(Object value) {
+            return value instanceof Integer;
+        }
+
+        @Override
+        protected void ensureCapacity(int capacity) {
+            if (_values.length < capacity) {
+                _values = Arrays.copyOf(_values, _values.length * 2);
+            }
+        }
+
+        @Override
+        protected void set(int index, Object value) {
+            _values[index] = (Integer) value;
+        }
+
+        @Override
+        protected Object getValue(int index) {
+            return _values[index];
+        }
+
+        @Override
+        public long getEstimatedSize() {
+            return super.getEstimatedSize() + 4L * _values.length;
+        }
+
+        @Override
+        public void trim() {
+            _values = Arrays.copyOf(_values, _size);
+        }
+    }
+
+    private static final class LongVector extends ColumnVector {
+
+        private long[] _values = new long[INITIAL_CAPACITY];
+
+        @Override
+        protected boolean isSupported(Object value) {
+            return value instanceof Long;
+        }
+
+        @Override
+        protected void ensureCapacity(int capacity) {
+            if (_values.length < capacity) {
+                _values = Arrays.copyOf(_values, _values.length * 2);
+            }
+        }
+
+        @Override
+        protected void set(int index, Object value) {
+            _values[index] = (Long) value;
+        }
+
+        @Override
+        protected Object getValue(int index) {
+            return _values[index];
+        }
+
+        @Override
+        public long getEstimatedSize() {
+            return super.getEstimatedSize() + 8L * _values.length;
+        }
+
+        @Override
+        public void trim() {
+            _values = Arrays.copyOf(_values, _size);
+        }
+    }
+
+    private static final class DoubleVector extends ColumnVector {
+
+        private double[] _values = new double[INITIAL_CAPACITY];
+
+        @Override
+        protected boolean isSupported(Object value) {
+            return value instanceof Double;
+        }
+
+        @Override
+        protected void ensureCapacity(int capacity) {
+            if (_values.length < capacity) {
+                _values = Arrays.copyOf(_values, _values.length * 2);
+            }
+        }
+
+        @Override
+        protected void set(int index, Object value) {
+            _values[index] = (Double) value;
+        }
+
+        @Override
+        protected Object getValue(int index) {
+            return _values[index];
+        }
+
+        @Override
+        public long getEstimatedSize() {
+            return super.getEstimatedSize() + 8L * _values.length;
+        }
+
+        @Override
+        public void trim() {
+            _values = Arrays.copyOf(_values, _size);
+        }
+    }
+
+    private static final class BooleanVector extends ColumnVector {
+
+        private final BitSet _values = new BitSet();
+
+        @Override
+        protected boolean isSupported(Object value) {
+            return value instanceof Boolean;
+        }
+
+        @Override
+        protected void ensureCapacity(int capacity) {
+        }
+
+        @Override
+        protected void set(int index, Object value) {
+            _values.set(index, ((Boolean) value).booleanValue());
+        }
+
+        @Override
+        protected Object getValue(int index) {
+            return _values.get(index);
+        }
+
+        @Override
+        public long getEstimatedSize() {
+            return super.getEstimatedSize() + _values.size() / 8;
+        }
+
+        @Override
+        public void trim() {
+        }
+    }
+
+    private static final class ObjectVector extends ColumnVector {
+
+        private Object[] _values = new Object[INITIAL_CAPACITY];
+        private long _valuesSize = 0;
+
+        @Override
+        protected boolean isSupported(Object value) {
+            return true;
+        }
+
+        @Override
+        protected void ensureCapacity(int capacity) {
+            if (_values.length < capacity) {
+                _values = Arrays.copyOf(_values, _values.length * 2);
+            }
+        }
+
+        @Override
+        protected void set(int index, Object value) {
+            _values[index] = value;
+            if (value instanceof String) {
+                _valuesSize += 40 + 2 * ((String) value).length();
+            } else {
+                _valuesSize += 24;
+            }
+        }
+
+        @Override
+        protected Object getValue(int index) {
+            return _values[index];
+        }
+
+        @Override
+        public long getEstimatedSize() {
+            return super.getEstimatedSize() + 8L * _values.length + _valuesSize;
+        }
+
+        @Override
+        public void trim() {
+            _values = Arrays.copyOf(_values, _size);
+        }
+    }
+}
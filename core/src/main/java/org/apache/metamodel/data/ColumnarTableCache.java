@@ -0,0 +1,252 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.data;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A size-bounded cache of {@link ColumnarTable}s. Each cached table is
+ * associated with a version (eg. the last modified timestamp and size of the
+ * file that the table was read from), and is only returned while the version
+ * is unchanged. When the cache exceeds its maximum size, the least recently
+ * used tables are evicted.
+ *
+ * Tables which turned out to be too large to be cached are remembered (per
+ * version), so that they are not read again in an attempt to cache them.
+ *
+ * The cache is thread-safe and may be shared among several DataContexts.
+ */
+public final class ColumnarTableCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ColumnarTableCache.class);
+
+    private final long _maxEstimatedSize;
+    private final Map<Object, CacheEntry> _entries;
+    private long _estimatedSize;
+    private long _hitCount;
+    private long _missCount;
+    private long _evictionCount;
+
+    /**
+     * Creates a columnar table cache.
+     *
+     * @param maxEstimatedSize
+     *            the maximum estimated memory usage (in bytes) of the cached
+     *            tables
+     */
+    public ColumnarTableCache(long maxEstimatedSize) {
+        if (maxEstimatedSize <= 0) {
+            throw new IllegalArgumentException("Max estimated size must be a positive number, was: "
+                    + maxEstimatedSize);
+        }
+        _maxEstimatedSize = maxEstimatedSize;
+        // access ordered, to find the least recently used entries
+        _entries = new LinkedHashMap<Object, CacheEntry>(16, 0.75f, true);
+    }
+
+    /**
+     * Gets a cached table.
+     *
+     * @param key
+     *            the key of the table
+     * @param version
+     *            the current version of the table
+     * @return the cached table, or null if the table is not cached in the
+     *         current version
+     */
+    public synchronized ColumnarTable get(Object key, Object version) {
+        final CacheEntry entry = _entries.get(key);
+        if (entry == null) {
+            _missCount++;
+            return null;
+        }
+        if (!entry.version.equals(version)) {
+            logger.debug("Cached table {} is outdated, version {} is now {}", key, entry.version, version);
+            remove(key);
+            _missCount++;
+            return null;
+        }
+        if (entry.table == null) {
+            // too large to be cached
+            _missCount++;
+            return null;
+        }
+        _hitCount++;
+        return entry.table;
+    }
+
+    /**
+     * Determines if a table has been marked as too large to be cached in it's
+     * current version.
+     *
+     * @param key
+     *            the key of the table
+     * @param version
+     *            the current version of the table
+     * @return
+     * @see #markTooLarge(Object, Object)
+     */
+    public synchronized boolean isTooLarge(Object key, Object version) {
+        final CacheEntry entry = _entries.get(key);
+        return entry != null && entry.table == null && entry.version.equals(version);
+    }
+
+    /**
+     * Remembers that a table is too large to be cached in a particular
+     * version. The mark is removed once the table changes, or is evicted like
+     * any other entry.
+     *
+     * @param key
+     *            the key of the table
+     * @param version
+     *            the version of the table
+     */
+    public synchronized void markTooLarge(Object key, Object version) {
+        remove(key);
+        _entries.put(key, new CacheEntry(version, null));
+    }
+
+    /**
+     * Adds a table to the cache, evicting the least recently used tables if
+     * necessary.
+     *
+     * @param key
+     *            the key of the table
+     * @param version
+     *            the version of the table
+     * @param table
+     *            the table to cache
+     */
+    public synchronized void put(Object key, Object version, ColumnarTable table) {
+        remove(key);
+        if (table.getEstimatedSize() > _maxEstimatedSize) {
+            logger.debug("Table {} is too large to be cached: {} bytes", key, table.getEstimatedSize());
+            _entries.put(key, new CacheEntry(version, null));
+            return;
+        }
+
+        final Iterator<Entry<Object, CacheEntry>> it = _entries.entrySet().iterator();
+        while (_estimatedSize + table.getEstimatedSize() > _maxEstimatedSize && it.hasNext()) {
+            final Entry<Object, CacheEntry> evicted = it.next();
+            logger.debug("Evicting cached table {}", evicted.getKey());
+            _estimatedSize -= evicted.getValue().getEstimatedSize();
+            _evictionCount++;
+            it.remove();
+        }
+
+        _entries.put(key, new CacheEntry(version, table));
+        _estimatedSize += table.getEstimatedSize();
+    }
+
+    /**
+     * Removes a table from the cache.
+     *
+     * @param key
+     */
+    public synchronized void invalidate(Object key) {
+        remove(key);
+    }
+
+    /**
+     * Removes all tables from the cache.
+     */
+    public synchronized void invalidateAll() {
+        _entries.clear();
+        _estimatedSize = 0;
+    }
+
+    private void remove(Object key) {
+        final CacheEntry entry = _entries.remove(key);
+        if (entry != null) {
+            _estimatedSize -= entry.getEstimatedSize();
+        }
+    }
+
+    public long getMaxEstimatedSize() {
+        return _maxEstimatedSize;
+    }
+
+    /**
+     * Gets the estimated memory usage (in bytes) of the cached tables.
+     *
+     * @return
+     */
+    public synchronized long getEstimatedSize() {
+        return _estimatedSize;
+    }
+
+    public synchronized int getTableCount() {
+        int count = 0;
+        for (CacheEntry entry : _entries.values()) {
+            if (entry.table != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the number of times a table was found in the cache.
+     *
+     * @return
+     */
+    public synchronized long getHitCount() {
+        return _hitCount;
+    }
+
+    /**
+     * Gets the number of times a table was not found in the cache (or was
+     * outdated).
+     *
+     * @return
+     */
+    public synchronized long getMissCount() {
+        return _missCount;
+    }
+
+    /**
+     * Gets the number of tables that have been evicted to make room for other
+     * tables.
+     *
+     * @return
+     */
+    public synchronized long getEvictionCount() {
+        return _evictionCount;
+    }
+
+    private static final class CacheEntry {
+        final Object version;
+        final ColumnarTable table;
+
+        CacheEntry(Object version, ColumnarTable table) {
+            this.version = version;
+            this.table = table;
+        }
+
+        long getEstimatedSize() {
+            return (table == null ? 0 : table.getEstimatedSize());
+        }
+    }
+}
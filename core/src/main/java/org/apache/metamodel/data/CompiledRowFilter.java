@@ -0,0 +1,507 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.data;
+
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.LogicalOperator;
+import org.apache.metamodel.query.OperatorType;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.util.BooleanComparator;
+import org.apache.metamodel.util.CollectionUtils;
+import org.apache.metamodel.util.NumberComparator;
+import org.apache.metamodel.util.ObjectComparator;
+import org.apache.metamodel.util.TimeComparator;
+import org.apache.metamodel.util.WildcardPattern;
+
+/**
+ * A compiled form of a {@link FilterItem}, which evaluates rows the same way as
+ * {@link FilterItem#evaluate(Row)}, but with the work that does not depend on
+ * the row done up front: the operator is resolved to a specialized predicate,
+ * LIKE patterns and IN sets are built once, the index of the filtered value is
+ * resolved once per {@link DataSetHeader} and constant operands are prepared
+ * for comparison with numbers, booleans and strings.
+ *
+ * Compiled filters can also evaluate the rows of a {@link RowBatch} directly,
+ * without creating a {@link Row} object per row. See
+ * {@link #filter(RowBatch, int[], int)}.
+ * 
+ * A compiled filter caches state while evaluating rows and is therefore not
+ * thread-safe.
+ */
+public abstract class CompiledRowFilter implements IRowFilter {
+
+    /**
+     * Evaluates a row of a batch.
+     * 
+     * @param batch
+     * @param rowIndex
+     *            the index of the row in the column arrays of the batch
+     * @return
+     */
+    public boolean accept(RowBatch batch, int rowIndex) {
+        return accept(batch.getRow(rowIndex));
+    }
+
+    /**
+     * Evaluates the selected rows of a batch, and narrows down the selection
+     * to the rows that are accepted.
+     * 
+     * @param batch
+     * @param selection
+     *            the indexes of the rows to evaluate. Accepted rows are moved
+     *            to the beginning of the array.
+     * @param rowCount
+     *            the number of valid entries in the selection
+     * @return the number of accepted rows
+     */
+    public int filter(RowBatch batch, int[] selection, int rowCount) {
+        int accepted = 0;
+        for (int i = 0; i < rowCount; i++) {
+            final int rowIndex = selection[i];
+            if (accept(batch, rowIndex)) {
+                selection[accepted++] = rowIndex;
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Compiles a row filter. Filter items are compiled, while other filters
+     * are returned as-is.
+     *
+     * @param filter
+     * @return
+     */
+    public static IRowFilter compile(IRowFilter filter) {
+        if (filter == null || filter.getClass() != FilterItem.class) {
+            // subclasses of FilterItem may evaluate rows differently
+            return filter;
+        }
+        final CompiledRowFilter compiledFilter = compile((FilterItem) filter);
+        if (compiledFilter == null) {
+            return filter;
+        }
+        return compiledFilter;
+    }
+
+    private static CompiledRowFilter compile(FilterItem filterItem) {
+        if (filterItem.getExpression() != null) {
+            // expression based filters cannot be evaluated
+            return null;
+        }
+
+        if (filterItem.isCompoundFilter()) {
+            final FilterItem[] childItems = filterItem.getChildItems();
+            final CompiledRowFilter[] childFilters = new CompiledRowFilter[childItems.length];
+            for (int i = 0; i < childItems.length; i++) {
+                if (childItems[i].getClass() != FilterItem.class) {
+                    return null;
+                }
+                childFilters[i] = compile(childItems[i]);
+                if (childFilters[i] == null) {
+                    return null;
+                }
+            }
+            if (filterItem.getLogicalOperator() == LogicalOperator.AND) {
+                return new AndFilter(childFilters);
+            }
+            return new OrFilter(childFilters);
+        }
+
+        final ValueReference value = new ValueReference(filterItem.getSelectItem());
+        final OperatorType operator = filterItem.getOperator();
+        final Object operand = filterItem.getOperand();
+
+        if (operand instanceof SelectItem) {
+            if (operator == OperatorType.LIKE || operator == OperatorType.IN) {
+                return null;
+            }
+            return new ComparisonFilter(operator, value, new ValueReference((SelectItem) operand), null);
+        }
+        if (operand == null) {
+            if (operator == OperatorType.EQUALS_TO) {
+                return new NullFilter(value, true);
+            } else if (operator == OperatorType.DIFFERENT_FROM) {
+                return new NullFilter(value, false);
+            }
+            return FALSE;
+        }
+        if (operator == OperatorType.LIKE) {
+            if (!(operand instanceof String)) {
+                return null;
+            }
+            return new LikeFilter(value, new WildcardPattern((String) operand, '%'));
+        }
+        if (operator == OperatorType.IN) {
+            final Set<?> inValues;
+            if (operand instanceof Set) {
+                inValues = (Set<?>) operand;
+            } else {
+                inValues = new HashSet<Object>(CollectionUtils.toList(operand));
+            }
+            return new InFilter(value, inValues);
+        }
+        if (operator == OperatorType.EQUALS_TO || operator == OperatorType.DIFFERENT_FROM
+                || operator == OperatorType.GREATER_THAN || operator == OperatorType.GREATER_THAN_OR_EQUAL
+                || operator == OperatorType.LESS_THAN || operator == OperatorType.LESS_THAN_OR_EQUAL) {
+            return new ComparisonFilter(operator, value, null, new ConstantOperand(operand));
+        }
+        return null;
+    }
+
+    /**
+     * Resolves the value of a {@link SelectItem} in rows, caching the index
+     * of the select item for the header of the rows.
+     */
+    private static final class ValueReference {
+
+        private final SelectItem _selectItem;
+        private DataSetHeader _header;
+        private int _index;
+
+        public ValueReference(SelectItem selectItem) {
+            _selectItem = selectItem;
+        }
+
+        public Object getValue(Row row) {
+            if (row instanceof AbstractRow) {
+                final DataSetHeader header = ((AbstractRow) row).getHeader();
+                if (header != _header) {
+                    _index = header.indexOf(_selectItem);
+                    _header = header;
+                }
+                if (_index == -1) {
+                    return null;
+                }
+                return row.getValue(_index);
+            }
+            return row.getValue(_selectItem);
+        }
+
+        public Object getValue(RowBatch batch, int rowIndex) {
+            final DataSetHeader header = batch.getHeader();
+            if (header != _header) {
+                _index = header.indexOf(_selectItem);
+                _header = header;
+            }
+            if (_index == -1) {
+                return null;
+            }
+            return batch.getValue(_index, rowIndex);
+        }
+    }
+
+    /**
+     * A constant operand, prepared for the kinds of comparisons that
+     * {@link ObjectComparator} makes.
+     */
+    private static final class ConstantOperand {
+
+        private final Object _value;
+        private final boolean _string;
+        private final boolean _boolean;
+        private final boolean _timeBased;
+        private boolean _numberResolved;
+        private Number _number;
+
+        public ConstantOperand(Object value) {
+            _value = value;
+            _string = value instanceof String;
+            _boolean = BooleanComparator.isBoolean(value);
+            _timeBased = TimeComparator.isTimeBased(value);
+        }
+
+        public int compareTo(Object value) {
+            if (value instanceof Number) {
+                if (!_numberResolved) {
+                    // converted lazily, since it may not be a number
+                    _number = NumberComparator.toNumber(_value);
+                    _numberResolved = true;
+                }
+                return NumberComparator.getComparator().compare(value, _number);
+            }
+            if (value instanceof String && _string && !_boolean) {
+                return ((String) value).compareTo((String) _value);
+            }
+            if (_timeBased && TimeComparator.isTimeBased(value)) {
+                return TimeComparator.getComparator().compare(value, _value);
+            }
+            if (_boolean && BooleanComparator.isBoolean(value)) {
+                return BooleanComparator.getComparator().compare(value, _value);
+            }
+            return ObjectComparator.getComparator().compare(value, _value);
+        }
+
+        public boolean isEqualTo(Object value) {
+            if (value instanceof String && _string && !_boolean) {
+                return value.equals(_value);
+            }
+            return compareTo(value) == 0;
+        }
+    }
+
+    private static final CompiledRowFilter FALSE = new CompiledRowFilter() {
+        @Override
+        public boolean accept(Row row) {
+            return false;
+        }
+
+        @Override
+        public boolean accept(RowBatch batch, int rowIndex) {
+            return false;
+        }
+
+        @Override
+        public int filter(RowBatch batch, int[] selection, int rowCount) {
+            return 0;
+        }
+    };
+
+    private static final class AndFilter extends CompiledRowFilter {
+
+        private final CompiledRowFilter[] _filters;
+
+        public AndFilter(CompiledRowFilter[] filters) {
+            _filters = filters;
+        }
+
+        @Override
+        public boolean accept(Row row) {
+            for (CompiledRowFilter filter : _filters) {
+                if (!filter.accept(row)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean accept(RowBatch batch, int rowIndex) {
+            for (CompiledRowFilter filter : _filters) {
+                if (!filter.accept(batch, rowIndex)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int filter(RowBatch batch, int[] selection, int rowCount) {
+            int count = rowCount;
+            for (int i = 0; i < _filters.length && count > 0; i++) {
+                count = _filters[i].filter(batch, selection, count);
+            }
+            return count;
+        }
+    }
+
+    private static final class OrFilter extends CompiledRowFilter {
+
+        private final CompiledRowFilter[] _filters;
+
+        public OrFilter(CompiledRowFilter[] filters) {
+            _filters = filters;
+        }
+
+        @Override
+        public boolean accept(Row row) {
+            for (CompiledRowFilter filter : _filters) {
+                if (filter.accept(row)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean accept(RowBatch batch, int rowIndex) {
+            for (CompiledRowFilter filter : _filters) {
+                if (filter.accept(batch, rowIndex)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class NullFilter extends CompiledRowFilter {
+
+        private final ValueReference _value;
+        private final boolean _null;
+
+        public NullFilter(ValueReference value, boolean isNull) {
+            _value = value;
+            _null = isNull;
+        }
+
+        @Override
+        public boolean accept(Row row) {
+            return (_value.getValue(row) == null) == _null;
+        }
+
+        @Override
+        public boolean accept(RowBatch batch, int rowIndex) {
+            return (_value.getValue(batch, rowIndex) == null) == _null;
+        }
+    }
+
+    private static final class LikeFilter extends CompiledRowFilter {
+
+        private final ValueReference _value;
+        private final WildcardPattern _pattern;
+
+        public LikeFilter(ValueReference value, WildcardPattern pattern) {
+            _value = value;
+            _pattern = pattern;
+        }
+
+        @Override
+        public boolean accept(Row row) {
+            return matches(_value.getValue(row));
+        }
+
+        @Override
+        public boolean accept(RowBatch batch, int rowIndex) {
+            return matches(_value.getValue(batch, rowIndex));
+        }
+
+        private boolean matches(Object value) {
+            if (value == null) {
+                return false;
+            }
+            return _pattern.matches((String) value);
+        }
+    }
+
+    private static final class InFilter extends CompiledRowFilter {
+
+        private final ValueReference _value;
+        private final Set<?> _inValues;
+
+        public InFilter(ValueReference value, Set<?> inValues) {
+            _value = value;
+            _inValues = inValues;
+        }
+
+        @Override
+        public boolean accept(Row row) {
+            return matches(_value.getValue(row));
+        }
+
+        @Override
+        public boolean accept(RowBatch batch, int rowIndex) {
+            return matches(_value.getValue(batch, rowIndex));
+        }
+
+        private boolean matches(Object value) {
+            if (value == null) {
+                return false;
+            }
+            return _inValues.contains(value);
+        }
+    }
+
+    /**
+     * Compares the value of a row with either a constant operand or another
+     * value of the row.
+     */
+    private static final class ComparisonFilter extends CompiledRowFilter {
+
+        private final OperatorType _operator;
+        private final ValueReference _value;
+        private final ValueReference _operandValue;
+        private final ConstantOperand _constantOperand;
+        private final Comparator<Object> _comparator;
+
+        public ComparisonFilter(OperatorType operator, ValueReference value, ValueReference operandValue,
+                ConstantOperand constantOperand) {
+            _operator = operator;
+            _value = value;
+            _operandValue = operandValue;
+            _constantOperand = constantOperand;
+            _comparator = ObjectComparator.getComparator();
+        }
+
+        @Override
+        public boolean accept(Row row) {
+            final Object value = _value.getValue(row);
+            if (_constantOperand != null) {
+                return matchesConstant(value);
+            }
+            return matches(value, _operandValue.getValue(row));
+        }
+
+        @Override
+        public boolean accept(RowBatch batch, int rowIndex) {
+            final Object value = _value.getValue(batch, rowIndex);
+            if (_constantOperand != null) {
+                return matchesConstant(value);
+            }
+            return matches(value, _operandValue.getValue(batch, rowIndex));
+        }
+
+        private boolean matchesConstant(Object value) {
+            if (value == null) {
+                return _operator == OperatorType.DIFFERENT_FROM;
+            }
+            if (_operator == OperatorType.EQUALS_TO) {
+                return _constantOperand.isEqualTo(value);
+            } else if (_operator == OperatorType.DIFFERENT_FROM) {
+                return !_constantOperand.isEqualTo(value);
+            }
+            return matches(_constantOperand.compareTo(value));
+        }
+
+        private boolean matches(Object value, Object operandValue) {
+            if (operandValue == null) {
+                if (_operator == OperatorType.DIFFERENT_FROM) {
+                    return value != null;
+                } else if (_operator == OperatorType.EQUALS_TO) {
+                    return value == null;
+                }
+                return false;
+            }
+            if (value == null) {
+                return _operator == OperatorType.DIFFERENT_FROM;
+            }
+            return matches(_comparator.compare(value, operandValue));
+        }
+
+        private boolean matches(int comparison) {
+            if (_operator == OperatorType.DIFFERENT_FROM) {
+                return comparison != 0;
+            } else if (_operator == OperatorType.EQUALS_TO) {
+                return comparison == 0;
+            } else if (_operator == OperatorType.GREATER_THAN) {
+                return comparison > 0;
+            } else if (_operator == OperatorType.GREATER_THAN_OR_EQUAL) {
+                return comparison >= 0;
+            } else if (_operator == OperatorType.LESS_THAN) {
+                return comparison < 0;
+            } else if (_operator == OperatorType.LESS_THAN_OR_EQUAL) {
+                return comparison <= 0;
+            }
+            throw new IllegalStateException("Operator could not be determined");
+        }
+    }
+}
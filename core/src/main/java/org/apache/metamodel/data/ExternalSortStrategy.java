@@ -0,0 +1,360 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.metamodel.MetaModelException;
+import org.apache.metamodel.util.SpillFile;
+
+/**
+ * {@link SortStrategy} which sorts rows in memory as long as the number of rows
+ * stays within a budget, and otherwise performs an external merge sort: The
+ * rows are sorted in runs that fit the budget, each run is spilled to disk and
+ * the runs are merged while the sorted dataset is being read.
+ *
+ * At most a fixed number of runs (the "fan-in") are merged at the same time,
+ * to bound the number of open files. If there are more runs, they are first
+ * merged into fewer, larger runs in intermediate merge passes.
+ */
+public final class ExternalSortStrategy implements SortStrategy {
+
+    public static final int DEFAULT_MAX_FAN_IN = 32;
+
+    private final int _maxRowsInMemory;
+    private final int _maxFanIn;
+
+    /**
+     * Creates an external sort strategy.
+     *
+     * @param maxRowsInMemory
+     *            the maximum number of rows to hold in memory while sorting
+     */
+    public ExternalSortStrategy(int maxRowsInMemory) {
+        this(maxRowsInMemory, DEFAULT_MAX_FAN_IN);
+    }
+
+    /**
+     * Creates an external sort strategy.
+     *
+     * @param maxRowsInMemory
+     *            the maximum number of rows to hold in memory while sorting
+     * @param maxFanIn
+     *            the maximum number of runs to merge at the same time
+     */
+    public ExternalSortStrategy(int maxRowsInMemory, int maxFanIn) {
+        if (maxRowsInMemory < 1) {
+            throw new IllegalArgumentException("Max rows in memory must be a positive number, was: "
+                    + maxRowsInMemory);
+        }
+        if (maxFanIn < 2) {
+            throw new IllegalArgumentException("Max fan-in must be at least 2, was: " + maxFanIn);
+        }
+        _maxRowsInMemory = maxRowsInMemory;
+        _maxFanIn = maxFanIn;
+    }
+
+    public int getMaxRowsInMemory() {
+        return _maxRowsInMemory;
+    }
+
+    public int getMaxFanIn() {
+        return _maxFanIn;
+    }
+
+    @Override
+    public DataSet sort(DataSet dataSet, Comparator<Row> comparator) {
+        final DataSetHeader header = new CachingDataSetHeader(dataSet.getSelectItems());
+        List<SpillFile> runs = new ArrayList<SpillFile>();
+        final List<Row> rows = new ArrayList<Row>();
+        try {
+            while (dataSet.next()) {
+                rows.add(dataSet.getRow());
+                if (rows.size() >= _maxRowsInMemory) {
+                    Collections.sort(rows, comparator);
+                    runs.add(writeRun(new InMemoryDataSet(header, rows)));
+                    rows.clear();
+                }
+            }
+
+            // leave room for the in-memory run in the final merge
+            while (runs.size() > _maxFanIn - 1) {
+                runs = mergeRuns(header, runs, comparator);
+            }
+        } catch (RuntimeException e) {
+            for (SpillFile run : runs) {
+                run.close();
+            }
+            throw e;
+        } finally {
+            dataSet.close();
+        }
+
+        Collections.sort(rows, comparator);
+        if (runs.isEmpty()) {
+            if (rows.isEmpty()) {
+                return new EmptyDataSet(header);
+            }
+            return new InMemoryDataSet(header, rows);
+        }
+        return new MergedRunsDataSet(header, runs, rows, comparator);
+    }
+
+    /**
+     * Performs a merge pass, which merges each group of (up to) max fan-in
+     * consecutive runs into a single run. Consecutive runs are merged to keep
+     * the sort stable.
+     */
+    private List<SpillFile> mergeRuns(DataSetHeader header, List<SpillFile> runs, Comparator<Row> comparator) {
+        final List<SpillFile> result = new ArrayList<SpillFile>();
+        for (int i = 0; i < runs.size(); i += _maxFanIn) {
+            final List<SpillFile> group = runs.subList(i, Math.min(i + _maxFanIn, runs.size()));
+            if (group.size() == 1) {
+                result.add(group.get(0));
+            } else {
+                try {
+                    result.add(writeRun(new MergedRunsDataSet(header, new ArrayList<SpillFile>(group),
+                            new ArrayList<Row>(0), comparator)));
+                } catch (RuntimeException e) {
+                    for (SpillFile run : result) {
+                        run.close();
+                    }
+                    for (SpillFile run : runs.subList(i, runs.size())) {
+                        run.close();
+                    }
+                    runs.clear();
+                    throw e;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes the (sorted) rows of a dataset to a new run.
+     */
+    private SpillFile writeRun(DataSet rows) {
+        final SpillFile run = new SpillFile("metamodel_sorting");
+        try {
+            while (rows.next()) {
+                run.write(toRecord(rows.getRow()));
+            }
+            // don't keep the file open until the run is read
+            run.finishWriting();
+        } catch (IOException e) {
+            run.close();
+            throw new MetaModelException("Could not write sorted run", e);
+        } catch (RuntimeException e) {
+            run.close();
+            throw e;
+        } finally {
+            rows.close();
+        }
+        return run;
+    }
+
+    /**
+     * Creates the record of a row in a run. The styles of the row are stored
+     * after the values, or null if the row has no styles, which is by far the
+     * most common case.
+     */
+    private static Object[] toRecord(Row row) {
+        final Object[] values = row.getValues();
+        final Object[] record = Arrays.copyOf(values, values.length + 1);
+        final Style[] styles = row.getStyles();
+        if (styles != null) {
+            for (Style style : styles) {
+                if (!Style.NO_STYLE.equals(style)) {
+                    record[values.length] = styles;
+                    break;
+                }
+            }
+        }
+        return record;
+    }
+
+    /**
+     * A sorted run, ie. a source of sorted rows.
+     */
+    private static abstract class Run {
+
+        private final int _index;
+        private Row _row;
+
+        public Run(int index) {
+            _index = index;
+        }
+
+        public boolean advance() {
+            _row = readRow();
+            return _row != null;
+        }
+
+        public Row getRow() {
+            return _row;
+        }
+
+        public int getIndex() {
+            return _index;
+        }
+
+        protected abstract Row readRow();
+
+        public abstract void close();
+    }
+
+    private static final class SpillFileRun extends Run {
+
+        private final DataSetHeader _header;
+        private final SpillFile _spillFile;
+
+        public SpillFileRun(int index, DataSetHeader header, SpillFile spillFile) {
+            super(index);
+            _header = header;
+            _spillFile = spillFile;
+        }
+
+        @Override
+        protected Row readRow() {
+            final Object[] record = _spillFile.read();
+            if (record == null) {
+                return null;
+            }
+            final Object[] values = Arrays.copyOf(record, record.length - 1);
+            final Style[] styles = (Style[]) record[record.length - 1];
+            if (styles == null) {
+                return new DefaultRow(_header, values);
+            }
+            return new DefaultRow(_header, values, styles);
+        }
+
+        @Override
+        public void close() {
+            _spillFile.close();
+        }
+    }
+
+    private static final class InMemoryRun extends Run {
+
+        private final List<Row> _rows;
+        private int _rowIndex;
+
+        public InMemoryRun(int index, List<Row> rows) {
+            super(index);
+            _rows = rows;
+            _rowIndex = 0;
+        }
+
+        @Override
+        protected Row readRow() {
+            if (_rowIndex < _rows.size()) {
+                return _rows.get(_rowIndex++);
+            }
+            return null;
+        }
+
+        @Override
+        public void close() {
+            _rows.clear();
+        }
+    }
+
+    /**
+     * {@link DataSet} which merges a number of sorted runs into a single sorted
+     * dataset.
+     */
+    private static final class MergedRunsDataSet extends AbstractDataSet {
+
+        private final List<Run> _runs;
+        private final PriorityQueue<Run> _queue;
+        private boolean _initialized;
+        private Row _row;
+
+        public MergedRunsDataSet(DataSetHeader header, List<SpillFile> spillFiles, List<Row> lastRun,
+                final Comparator<Row> comparator) {
+            super(header);
+            _runs = new ArrayList<Run>(spillFiles.size() + 1);
+            for (SpillFile spillFile : spillFiles) {
+                _runs.add(new SpillFileRun(_runs.size(), header, spillFile));
+            }
+            _runs.add(new InMemoryRun(_runs.size(), lastRun));
+
+            // rows that compare equally are taken from the earliest run, to
+            // keep the sort stable
+            _queue = new PriorityQueue<Run>(_runs.size(), new Comparator<Run>() {
+                @Override
+                public int compare(Run o1, Run o2) {
+                    final int compare = comparator.compare(o1.getRow(), o2.getRow());
+                    if (compare != 0) {
+                        return compare;
+                    }
+                    return o1.getIndex() - o2.getIndex();
+                }
+            });
+            _initialized = false;
+        }
+
+        @Override
+        public boolean next() {
+            if (!_initialized) {
+                _initialized = true;
+                for (Run run : _runs) {
+                    if (run.advance()) {
+                        _queue.add(run);
+                    } else {
+                        run.close();
+                    }
+                }
+            }
+
+            final Run run = _queue.poll();
+            if (run == null) {
+                _row = null;
+                return false;
+            }
+            _row = run.getRow();
+            if (run.advance()) {
+                _queue.add(run);
+            } else {
+                run.close();
+            }
+            return true;
+        }
+
+        @Override
+        public Row getRow() {
+            return _row;
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            for (Run run : _runs) {
+                run.close();
+            }
+            _queue.clear();
+        }
+    }
+}
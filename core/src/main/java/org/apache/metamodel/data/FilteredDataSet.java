@@ -21,17 +21,25 @@ package org.apache.metamodel.data;
 
 /**
  * Wraps another DataSet and transparently applies a set of filters to it.
+ * 
+ * If the wrapped DataSet produces batches natively, the filters are applied to
+ * whole batches by narrowing down their selection vectors, and rows are only
+ * created for the rows that pass the filters.
  */
-public final class FilteredDataSet extends AbstractDataSet implements WrappingDataSet {
+public final class FilteredDataSet extends AbstractBatchDataSet implements WrappingDataSet {
 
 	private final DataSet _dataSet;
 	private final IRowFilter[] _filters;
 	private Row _row;
 
 	public FilteredDataSet(DataSet dataSet, IRowFilter... filters) {
-	    super(dataSet);
+		super(dataSet);
 		_dataSet = dataSet;
-		_filters = filters;
+		// filter items are compiled for faster evaluation
+		_filters = new IRowFilter[filters.length];
+		for (int i = 0; i < filters.length; i++) {
+			_filters[i] = CompiledRowFilter.compile(filters[i]);
+		}
 	}
 
 	@Override
@@ -46,7 +54,7 @@ public final class FilteredDataSet extends AbstractDataSet implements WrappingDa
 	}
 
 	@Override
-	public boolean next() {
+	protected boolean nextRowWise() {
 		boolean next = false;
 		while (_dataSet.next()) {
 			Row row = _dataSet.getRow();
@@ -65,7 +73,39 @@ public final class FilteredDataSet extends AbstractDataSet implements WrappingDa
 	}
 
 	@Override
-	public Row getRow() {
+	protected Row getRowWise() {
 		return _row;
 	}
+
+	@Override
+	protected RowBatch readBatch(int maxRows) {
+		while (true) {
+			final RowBatch batch = RowBatch.read(_dataSet, maxRows);
+			if (batch == null) {
+				return null;
+			}
+			final int[] selection = batch.copySelection();
+			int rowCount = selection.length;
+			for (int i = 0; i < _filters.length && rowCount > 0; i++) {
+				rowCount = filter(_filters[i], batch, selection, rowCount);
+			}
+			if (rowCount > 0) {
+				return batch.withSelection(selection, rowCount);
+			}
+		}
+	}
+
+	private static int filter(IRowFilter filter, RowBatch batch, int[] selection, int rowCount) {
+		if (filter instanceof CompiledRowFilter) {
+			return ((CompiledRowFilter) filter).filter(batch, selection, rowCount);
+		}
+		int accepted = 0;
+		for (int i = 0; i < rowCount; i++) {
+			final int rowIndex = selection[i];
+			if (filter.accept(batch.getRow(rowIndex))) {
+				selection[accepted++] = rowIndex;
+			}
+		}
+		return accepted;
+	}
 }
\ No newline at end of file
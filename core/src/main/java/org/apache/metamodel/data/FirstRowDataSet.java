@@ -21,7 +21,7 @@ package org.apache.metamodel.data;
 /**
  * Wraps another DataSet and enforces a first row offset.
  */
-public final class FirstRowDataSet extends AbstractDataSet implements WrappingDataSet {
+public final class FirstRowDataSet extends AbstractBatchDataSet implements WrappingDataSet {
 
     private final DataSet _dataSet;
     private volatile int _rowsLeftToSkip;
@@ -49,7 +49,7 @@ public final class FirstRowDataSet extends AbstractDataSet implements WrappingDa
     }
 
     @Override
-    public Row getRow() {
+    protected Row getRowWise() {
         return _dataSet.getRow();
     }
     
@@ -59,7 +59,7 @@ public final class FirstRowDataSet extends AbstractDataSet implements WrappingDa
     }
 
     @Override
-    public boolean next() {
+    protected boolean nextRowWise() {
         boolean next = true;
         if (_rowsLeftToSkip > 0) {
             while (_rowsLeftToSkip > 0) {
@@ -75,4 +75,23 @@ public final class FirstRowDataSet extends AbstractDataSet implements WrappingDa
         }
         return _dataSet.next();
     }
+
+    @Override
+    protected RowBatch readBatch(int maxRows) {
+        while (_rowsLeftToSkip > 0) {
+            final RowBatch batch = RowBatch.read(_dataSet, maxRows);
+            if (batch == null) {
+                _rowsLeftToSkip = 0;
+                return null;
+            }
+            final int rowCount = batch.getRowCount();
+            if (rowCount > _rowsLeftToSkip) {
+                final RowBatch result = batch.subBatch(_rowsLeftToSkip, rowCount);
+                _rowsLeftToSkip = 0;
+                return result;
+            }
+            _rowsLeftToSkip -= rowCount;
+        }
+        return RowBatch.read(_dataSet, maxRows);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,294 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.metamodel.query.GroupByItem;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.util.AggregateBuilder;
+import org.apache.metamodel.util.SpillFile;
+
+/**
+ * {@link DataSet} which groups the rows of another dataset and calculates
+ * aggregates for each group. Aggregates are calculated incrementally using an
+ * {@link AggregateBuilder} per group and aggregate, so only the groups (and not
+ * the grouped values) are held in memory.
+ *
+ * Optionally the number of groups held in memory can be bounded. When the
+ * bound is reached, rows that belong to groups that are not already in memory
+ * are spilled to disk and grouped in subsequent passes, each of which is again
+ * bounded. Since all rows of a group are processed in the same pass, in their
+ * original order, the results are the same as with unbounded grouping.
+ */
+public final class GroupedDataSet extends AbstractDataSet {
+
+    private final DataSet _dataSet;
+    private final SelectItem[] _groupBySelectItems;
+    private final SelectItem[] _aggregateSelectItems;
+    private final SelectItem[] _aggregateInputSelectItems;
+    private final int[] _groupByIndexes;
+    private final int[] _aggregateIndexes;
+    private final int _maxGroupsInMemory;
+    private final LinkedList<SpillFile> _pendingSpillFiles;
+
+    private boolean _dataSetProcessed;
+    private Iterator<Row> _groupRows;
+    private Row _row;
+
+    /**
+     * Creates a grouped dataset without any bound on the number of groups held
+     * in memory.
+     *
+     * @param selectItems
+     * @param dataSet
+     * @param groupByItems
+     */
+    public GroupedDataSet(List<SelectItem> selectItems, DataSet dataSet, GroupByItem[] groupByItems) {
+        this(selectItems, dataSet, groupByItems, -1);
+    }
+
+    /**
+     * Creates a grouped dataset.
+     *
+     * @param selectItems
+     *            the select items of the grouped dataset, ie. grouped items
+     *            and aggregates
+     * @param dataSet
+     *            the dataset to group
+     * @param groupByItems
+     *            the items to group by
+     * @param maxGroupsInMemory
+     *            the maximum number of groups to hold in memory, or -1 if
+     *            there is no maximum
+     */
+    public GroupedDataSet(List<SelectItem> selectItems, DataSet dataSet, GroupByItem[] groupByItems,
+            int maxGroupsInMemory) {
+        super(selectItems);
+        _dataSet = dataSet;
+        _maxGroupsInMemory = maxGroupsInMemory;
+        _pendingSpillFiles = new LinkedList<SpillFile>();
+
+        _groupBySelectItems = new SelectItem[groupByItems.length];
+        for (int i = 0; i < groupByItems.length; i++) {
+            _groupBySelectItems[i] = groupByItems[i].getSelectItem();
+        }
+
+        final List<SelectItem> aggregateSelectItems = new ArrayList<SelectItem>();
+        final List<SelectItem> aggregateInputSelectItems = new ArrayList<SelectItem>();
+        for (SelectItem item : selectItems) {
+            if (item.getAggregateFunction() != null) {
+                final Column column = item.getColumn();
+                if (column != null) {
+                    aggregateInputSelectItems.add(new SelectItem(column));
+                } else if (SelectItem.isCountAllItem(item)) {
+                    aggregateInputSelectItems.add(null);
+                } else {
+                    throw new IllegalArgumentException("Expression function not supported: " + item);
+                }
+                aggregateSelectItems.add(item);
+            }
+        }
+        _aggregateSelectItems = aggregateSelectItems.toArray(new SelectItem[aggregateSelectItems.size()]);
+        _aggregateInputSelectItems = aggregateInputSelectItems.toArray(new SelectItem[aggregateInputSelectItems
+                .size()]);
+
+        // resolve where the values of each output column come from
+        final DataSetHeader groupByHeader = new SimpleDataSetHeader(_groupBySelectItems);
+        _groupByIndexes = new int[selectItems.size()];
+        _aggregateIndexes = new int[selectItems.size()];
+        for (int i = 0; i < _groupByIndexes.length; i++) {
+            final SelectItem item = selectItems.get(i);
+            _groupByIndexes[i] = groupByHeader.indexOf(item);
+            _aggregateIndexes[i] = aggregateSelectItems.indexOf(item);
+        }
+    }
+
+    @Override
+    public boolean next() {
+        while (_groupRows == null || !_groupRows.hasNext()) {
+            if (!_dataSetProcessed) {
+                _dataSetProcessed = true;
+                _groupRows = group(new DataSetRecords()).iterator();
+            } else if (!_pendingSpillFiles.isEmpty()) {
+                final SpillFile spillFile = _pendingSpillFiles.removeFirst();
+                try {
+                    _groupRows = group(new SpillFileRecords(spillFile)).iterator();
+                } finally {
+                    spillFile.close();
+                }
+            } else {
+                _row = null;
+                return false;
+            }
+        }
+        _row = _groupRows.next();
+        return true;
+    }
+
+    @Override
+    public Row getRow() {
+        return _row;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        _dataSet.close();
+        for (SpillFile spillFile : _pendingSpillFiles) {
+            spillFile.close();
+        }
+        _pendingSpillFiles.clear();
+    }
+
+    /**
+     * Performs a single grouping pass over a number of records.
+     *
+     * @param records
+     * @return the rows of the groups that where completed in this pass
+     */
+    private List<Row> group(Records records) {
+        final Map<List<Object>, AggregateBuilder<?>[]> groups = new LinkedHashMap<List<Object>, AggregateBuilder<?>[]>();
+        SpillFile spillFile = null;
+
+        try {
+            for (Object[] record = records.next(); record != null; record = records.next()) {
+                final List<Object> key = Arrays.asList(record).subList(0, _groupBySelectItems.length);
+                AggregateBuilder<?>[] aggregateBuilders = groups.get(key);
+                if (aggregateBuilders == null) {
+                    if (_maxGroupsInMemory > 0 && groups.size() >= _maxGroupsInMemory) {
+                        // postpone the group to a later pass
+                        if (spillFile == null) {
+                            spillFile = new SpillFile("metamodel_grouping");
+                        }
+                        spillFile.write(record);
+                        continue;
+                    }
+                    aggregateBuilders = new AggregateBuilder<?>[_aggregateSelectItems.length];
+                    for (int i = 0; i < aggregateBuilders.length; i++) {
+                        aggregateBuilders[i] = _aggregateSelectItems[i].getAggregateFunction()
+                                .createAggregateBuilder();
+                    }
+                    groups.put(Arrays.asList(Arrays.copyOf(record, _groupBySelectItems.length)), aggregateBuilders);
+                }
+
+                for (int i = 0; i < aggregateBuilders.length; i++) {
+                    aggregateBuilders[i].add(record[_groupBySelectItems.length + i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            if (spillFile != null) {
+                spillFile.close();
+            }
+            throw e;
+        } finally {
+            records.close();
+        }
+
+        if (spillFile != null) {
+            _pendingSpillFiles.add(spillFile);
+        }
+
+        final DataSetHeader header = getHeader();
+        final List<Row> result = new ArrayList<Row>(groups.size());
+        for (Entry<List<Object>, AggregateBuilder<?>[]> entry : groups.entrySet()) {
+            final List<Object> key = entry.getKey();
+            final AggregateBuilder<?>[] aggregateBuilders = entry.getValue();
+            final Object[] values = new Object[header.size()];
+            for (int i = 0; i < values.length; i++) {
+                if (_groupByIndexes[i] != -1) {
+                    values[i] = key.get(_groupByIndexes[i]);
+                } else if (_aggregateIndexes[i] != -1) {
+                    values[i] = aggregateBuilders[_aggregateIndexes[i]].getAggregate();
+                }
+            }
+            result.add(new DefaultRow(header, values));
+        }
+        return result;
+    }
+
+    /**
+     * Source of records to group. A record consists of the group by values
+     * followed by the aggregate input values.
+     */
+    private interface Records {
+
+        public Object[] next();
+
+        public void close();
+    }
+
+    private final class DataSetRecords implements Records {
+
+        @Override
+        public Object[] next() {
+            if (!_dataSet.next()) {
+                return null;
+            }
+            final Row row = _dataSet.getRow();
+            final Object[] record = new Object[_groupBySelectItems.length + _aggregateInputSelectItems.length];
+            for (int i = 0; i < _groupBySelectItems.length; i++) {
+                record[i] = row.getValue(_groupBySelectItems[i]);
+            }
+            for (int i = 0; i < _aggregateInputSelectItems.length; i++) {
+                final SelectItem inputItem = _aggregateInputSelectItems[i];
+                if (inputItem == null) {
+                    // Just use the empty string, since COUNT(*) don't
+                    // evaluate values (but null values should be prevented)
+                    record[_groupBySelectItems.length + i] = "";
+                } else {
+                    record[_groupBySelectItems.length + i] = row.getValue(inputItem);
+                }
+            }
+            return record;
+        }
+
+        @Override
+        public void close() {
+            _dataSet.close();
+        }
+    }
+
+    private static final class SpillFileRecords implements Records {
+
+        private final SpillFile _spillFile;
+
+        public SpillFileRecords(SpillFile spillFile) {
+            _spillFile = spillFile;
+        }
+
+        @Override
+        public Object[] next() {
+            return _spillFile.read();
+        }
+
+        @Override
+        public void close() {
+            // the spill file is closed by the caller
+        }
+    }
+}
@@ -0,0 +1,391 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.OperatorType;
+import org.apache.metamodel.query.SelectItem;
+
+/**
+ * {@link DataSet} which performs an equi-join of two datasets using a hash
+ * table. One side of the join (the "build" side) is read into memory and
+ * indexed by the values of the join keys, while the other side (the "probe"
+ * side) is streamed, looking up matching rows in the hash table.
+ *
+ * Hashing is only used to find candidate rows. Every candidate is verified
+ * using the join conditions themselves, so the result is the same as that of
+ * a nested loop join (including the type-lenient comparison semantics of
+ * {@link FilterItem}). If key values of incompatible types are encountered, the
+ * affected rows are matched by scanning the build side instead. Likewise, join
+ * conditions that are not {@link OperatorType#EQUALS_TO} conditions between the
+ * two sides are only used for verification, and if there are no such equi-join
+ * conditions at all, every probe row is matched against the whole build side.
+ *
+ * The join can be made an outer join on the probe side, in which case probe
+ * rows without any matching build rows are retained in the result, padded with
+ * null values.
+ *
+ * The columns of the resulting dataset are always the columns of the left
+ * dataset followed by the columns of the right dataset.
+ */
+public final class HashJoinDataSet extends AbstractDataSet {
+
+    private static final int FAMILY_NONE = 0;
+    private static final int FAMILY_NUMBER = 1;
+    private static final int FAMILY_STRING = 2;
+    private static final int FAMILY_BOOLEAN = 3;
+    private static final int FAMILY_TIME = 4;
+    private static final int FAMILY_MIXED = -1;
+
+    private final DataSet _probeDataSet;
+    private final boolean _buildLeft;
+    private final boolean _outer;
+    private final int _leftSize;
+    private final int _rightSize;
+    private final FilterItem[] _joinConditions;
+    private final int[] _probeKeyIndexes;
+    private final int[] _keyFamilies;
+    private final List<Row> _buildRows;
+    private final Map<Object, List<Row>> _buildTable;
+
+    private Row _probeRow;
+    private boolean _probeRowMatched;
+    private List<Row> _candidates;
+    private int _candidateIndex;
+    private Row _row;
+
+    /**
+     * Creates a hash join of two datasets.
+     *
+     * @param leftDataSet
+     *            the left side of the join
+     * @param rightDataSet
+     *            the right side of the join
+     * @param joinConditions
+     *            the join conditions. Typically these are
+     *            {@link OperatorType#EQUALS_TO} conditions between a
+     *            {@link SelectItem} of one side and a {@link SelectItem} of
+     *            the other side.
+     * @param buildLeft
+     *            whether to read and index the left side (true) or the right
+     *            side (false) in memory. The other side will be streamed.
+     */
+    public HashJoinDataSet(DataSet leftDataSet, DataSet rightDataSet, FilterItem[] joinConditions, boolean buildLeft) {
+        this(leftDataSet, rightDataSet, joinConditions, buildLeft, false);
+    }
+
+    /**
+     * Creates a hash join of two datasets.
+     *
+     * @param leftDataSet
+     *            the left side of the join
+     * @param rightDataSet
+     *            the right side of the join
+     * @param joinConditions
+     *            the join conditions. Typically these are
+     *            {@link OperatorType#EQUALS_TO} conditions between a
+     *            {@link SelectItem} of one side and a {@link SelectItem} of
+     *            the other side.
+     * @param buildLeft
+     *            whether to read and index the left side (true) or the right
+     *            side (false) in memory. The other side will be streamed.
+     * @param outer
+     *            whether to retain rows of the streamed (probe) side that do
+     *            not match any rows of the build side. A LEFT join is thus an
+     *            outer join that builds the right side and a RIGHT join is an
+     *            outer join that builds the left side.
+     */
+    public HashJoinDataSet(DataSet leftDataSet, DataSet rightDataSet, FilterItem[] joinConditions, boolean buildLeft,
+            boolean outer) {
+        super(createHeader(leftDataSet, rightDataSet));
+        if (joinConditions == null) {
+            throw new IllegalArgumentException("Join conditions cannot be null");
+        }
+
+        _buildLeft = buildLeft;
+        _outer = outer;
+        _leftSize = leftDataSet.getSelectItems().length;
+        _rightSize = rightDataSet.getSelectItems().length;
+        _joinConditions = joinConditions;
+
+        final DataSet buildDataSet = buildLeft ? leftDataSet : rightDataSet;
+        _probeDataSet = buildLeft ? rightDataSet : leftDataSet;
+
+        final List<Integer> probeKeyIndexes = new ArrayList<Integer>();
+        final List<Integer> buildKeyIndexes = new ArrayList<Integer>();
+        for (FilterItem condition : joinConditions) {
+            if (condition.isCompoundFilter() || condition.getOperator() != OperatorType.EQUALS_TO
+                    || !(condition.getOperand() instanceof SelectItem)) {
+                // not usable as a key, will only be verified
+                continue;
+            }
+            final int buildIndex1 = buildDataSet.indexOf(condition.getSelectItem());
+            final int buildIndex2 = buildDataSet.indexOf((SelectItem) condition.getOperand());
+            final int probeIndex1 = _probeDataSet.indexOf(condition.getSelectItem());
+            final int probeIndex2 = _probeDataSet.indexOf((SelectItem) condition.getOperand());
+            if (buildIndex1 != -1 && probeIndex2 != -1 && buildIndex2 == -1 && probeIndex1 == -1) {
+                buildKeyIndexes.add(buildIndex1);
+                probeKeyIndexes.add(probeIndex2);
+            } else if (buildIndex2 != -1 && probeIndex1 != -1 && buildIndex1 == -1 && probeIndex2 == -1) {
+                buildKeyIndexes.add(buildIndex2);
+                probeKeyIndexes.add(probeIndex1);
+            }
+        }
+        _probeKeyIndexes = toArray(probeKeyIndexes);
+        final int[] buildKeys = toArray(buildKeyIndexes);
+
+        _buildRows = readAll(buildDataSet);
+        _keyFamilies = getKeyFamilies(_buildRows, buildKeys);
+
+        if (buildKeys.length > 0 && isHashable(_keyFamilies)) {
+            _buildTable = new HashMap<Object, List<Row>>();
+            for (Row row : _buildRows) {
+                final Object key = createKey(row, buildKeys);
+                List<Row> bucket = _buildTable.get(key);
+                if (bucket == null) {
+                    bucket = new ArrayList<Row>(1);
+                    _buildTable.put(key, bucket);
+                }
+                bucket.add(row);
+            }
+        } else {
+            // keys cannot be safely hashed - every probe row will be matched
+            // against the whole build side
+            _buildTable = null;
+        }
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        final int[] result = new int[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i);
+        }
+        return result;
+    }
+
+    private static DataSetHeader createHeader(DataSet leftDataSet, DataSet rightDataSet) {
+        final SelectItem[] leftItems = leftDataSet.getSelectItems();
+        final SelectItem[] rightItems = rightDataSet.getSelectItems();
+        final SelectItem[] selectItems = new SelectItem[leftItems.length + rightItems.length];
+        System.arraycopy(leftItems, 0, selectItems, 0, leftItems.length);
+        System.arraycopy(rightItems, 0, selectItems, leftItems.length, rightItems.length);
+        return new CachingDataSetHeader(selectItems);
+    }
+
+    private static List<Row> readAll(DataSet dataSet) {
+        final List<Row> result;
+        if (dataSet instanceof InMemoryDataSet) {
+            result = ((InMemoryDataSet) dataSet).getRows();
+        } else {
+            result = new ArrayList<Row>();
+            while (dataSet.next()) {
+                result.add(dataSet.getRow());
+            }
+        }
+        dataSet.close();
+        return result;
+    }
+
+    @Override
+    public boolean next() {
+        while (true) {
+            if (_candidates != null) {
+                while (_candidateIndex < _candidates.size()) {
+                    final Row buildRow = _candidates.get(_candidateIndex);
+                    _candidateIndex++;
+
+                    final Row row = _buildLeft ? join(buildRow, _probeRow) : join(_probeRow, buildRow);
+                    if (accept(row)) {
+                        _probeRowMatched = true;
+                        _row = row;
+                        return true;
+                    }
+                }
+
+                if (_outer && !_probeRowMatched) {
+                    _probeRowMatched = true;
+                    _row = _buildLeft ? join(null, _probeRow) : join(_probeRow, null);
+                    return true;
+                }
+            }
+
+            if (!_probeDataSet.next()) {
+                _row = null;
+                _candidates = null;
+                return false;
+            }
+
+            _probeRow = _probeDataSet.getRow();
+            _probeRowMatched = false;
+            _candidates = getCandidates(_probeRow);
+            _candidateIndex = 0;
+        }
+    }
+
+    @Override
+    public Row getRow() {
+        return _row;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        _probeDataSet.close();
+    }
+
+    private boolean accept(Row row) {
+        for (FilterItem condition : _joinConditions) {
+            if (!condition.evaluate(row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Combines a left and a right row. Either side may be null, in which case
+     * its values will be null.
+     */
+    private Row join(Row leftRow, Row rightRow) {
+        final DataSetHeader header = getHeader();
+        final Object[] values = new Object[header.size()];
+        if (leftRow != null) {
+            System.arraycopy(leftRow.getValues(), 0, values, 0, _leftSize);
+        }
+        if (rightRow != null) {
+            System.arraycopy(rightRow.getValues(), 0, values, _leftSize, _rightSize);
+        }
+        return new DefaultRow(header, values);
+    }
+
+    private List<Row> getCandidates(Row probeRow) {
+        if (_buildTable == null) {
+            return _buildRows;
+        }
+        for (int i = 0; i < _probeKeyIndexes.length; i++) {
+            final Object value = probeRow.getValue(_probeKeyIndexes[i]);
+            if (value != null && _keyFamilies[i] != FAMILY_NONE && getFamily(value) != _keyFamilies[i]) {
+                // the comparison semantics for values of different types are
+                // not reflected by the hash keys - fall back to scanning
+                return _buildRows;
+            }
+        }
+        final List<Row> bucket = _buildTable.get(createKey(probeRow, _probeKeyIndexes));
+        if (bucket == null) {
+            return Collections.emptyList();
+        }
+        return bucket;
+    }
+
+    private static int[] getKeyFamilies(List<Row> rows, int[] keyIndexes) {
+        final int[] families = new int[keyIndexes.length];
+        for (Row row : rows) {
+            for (int i = 0; i < keyIndexes.length; i++) {
+                if (families[i] == FAMILY_MIXED) {
+                    continue;
+                }
+                final Object value = row.getValue(keyIndexes[i]);
+                if (value != null) {
+                    final int family = getFamily(value);
+                    if (families[i] == FAMILY_NONE) {
+                        families[i] = family;
+                    } else if (families[i] != family) {
+                        families[i] = FAMILY_MIXED;
+                    }
+                }
+            }
+        }
+        return families;
+    }
+
+    private static boolean isHashable(int[] families) {
+        for (int family : families) {
+            if (family == FAMILY_MIXED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int getFamily(Object value) {
+        if (value instanceof Number) {
+            return FAMILY_NUMBER;
+        }
+        if (value instanceof String) {
+            return FAMILY_STRING;
+        }
+        if (value instanceof Boolean) {
+            return FAMILY_BOOLEAN;
+        }
+        if (value instanceof Date || value instanceof Calendar) {
+            return FAMILY_TIME;
+        }
+        return FAMILY_MIXED;
+    }
+
+    private static Object createKey(Row row, int[] keyIndexes) {
+        if (keyIndexes.length == 1) {
+            return normalize(row.getValue(keyIndexes[0]));
+        }
+        final Object[] key = new Object[keyIndexes.length];
+        for (int i = 0; i < keyIndexes.length; i++) {
+            key[i] = normalize(row.getValue(keyIndexes[i]));
+        }
+        return Arrays.asList(key);
+    }
+
+    /**
+     * Normalizes a value to a hash key so that values that are considered
+     * equal by the join conditions also produce equal hash keys.
+     */
+    private static Object normalize(Object value) {
+        if (value instanceof Number) {
+            final double d = ((Number) value).doubleValue();
+            if (d == 0d) {
+                // avoid distinguishing between 0.0 and -0.0
+                return 0d;
+            }
+            return d;
+        }
+        if (value instanceof String) {
+            final String str = (String) value;
+            if ("true".equalsIgnoreCase(str) || "false".equalsIgnoreCase(str)) {
+                // boolean strings are compared case insensitively
+                return str.toLowerCase();
+            }
+            return str;
+        }
+        if (value instanceof Date) {
+            return ((Date) value).getTime();
+        }
+        if (value instanceof Calendar) {
+            return ((Calendar) value).getTimeInMillis();
+        }
+        return value;
+    }
+}
@@ -21,7 +21,7 @@ package org.apache.metamodel.data;
 /**
  * Wraps another DataSet and enforces a maximum number of rows constraint
  */
-public final class MaxRowsDataSet extends AbstractDataSet implements WrappingDataSet {
+public final class MaxRowsDataSet extends AbstractBatchDataSet implements WrappingDataSet {
 
     private final DataSet _dataSet;
     private volatile int _rowsLeft;
@@ -43,12 +43,12 @@ public final class MaxRowsDataSet extends AbstractDataSet implements WrappingDat
     }
 
     @Override
-    public Row getRow() {
+    protected Row getRowWise() {
         return _dataSet.getRow();
     }
 
     @Override
-    public boolean next() {
+    protected boolean nextRowWise() {
         if (_rowsLeft > 0) {
             boolean next = _dataSet.next();
             if (next) {
@@ -58,4 +58,18 @@ public final class MaxRowsDataSet extends AbstractDataSet implements WrappingDat
         }
         return false;
     }
+
+    @Override
+    protected RowBatch readBatch(int maxRows) {
+        if (_rowsLeft <= 0) {
+            return null;
+        }
+        RowBatch batch = RowBatch.read(_dataSet, Math.min(maxRows, _rowsLeft));
+        if (batch == null) {
+            return null;
+        }
+        batch = batch.subBatch(0, _rowsLeft);
+        _rowsLeft -= batch.getRowCount();
+        return batch;
+    }
 }
\ No newline at end of file
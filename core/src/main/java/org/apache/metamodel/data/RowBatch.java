@@ -0,0 +1,349 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.data;
+
+import java.util.Arrays;
+
+/**
+ * A column-oriented batch of rows, as produced by
+ * {@link BatchDataSet#nextBatch(int)}.
+ * 
+ * The values of a batch are stored as one array per column. Rows that have
+ * been filtered away are not removed from the arrays, in stead the batch has a
+ * selection vector: the (ascending) indexes of the rows that are still part of
+ * the batch. The methods that take a "row index" refer to the position in the
+ * column arrays, while {@link #getRowIndex(int)} translates a position in the
+ * selection into such a row index. A typical loop over a batch looks like
+ * this:
+ * 
+ * <pre>
+ * for (int i = 0; i &lt; batch.getRowCount(); i++) {
+ *     final int rowIndex = batch.getRowIndex(i);
+ *     final Object value = batch.getValue(columnIndex, rowIndex);
+ *     ...
+ * }
+ * </pre>
+ * 
+ * Batches are immutable once they have been handed out. Operators create new
+ * batches that share the column arrays of their source batch.
+ */
+public final class RowBatch {
+
+    private final DataSetHeader _header;
+    private final Object[][] _columns;
+    private final Style[][] _styles;
+    private final int _size;
+    private final int[] _selection;
+    private final int _rowCount;
+
+    /**
+     * Creates a batch where all rows are selected and no styles are applied.
+     * 
+     * @param header
+     * @param columns
+     *            the values of the batch, one array per column of the header
+     * @param size
+     *            the number of rows in the column arrays
+     */
+    public RowBatch(DataSetHeader header, Object[][] columns, int size) {
+        this(header, columns, null, size, null, size);
+    }
+
+    /**
+     * Creates a batch.
+     * 
+     * @param header
+     * @param columns
+     *            the values of the batch, one array per column of the header
+     * @param styles
+     *            the styles of the batch, one array per column of the header,
+     *            or null if no styles are applied. Individual arrays may also
+     *            be null.
+     * @param size
+     *            the number of rows in the column arrays
+     * @param selection
+     *            the indexes of the selected rows, or null if all rows are
+     *            selected
+     * @param rowCount
+     *            the number of selected rows, ie. the number of valid entries
+     *            in the selection
+     */
+    public RowBatch(DataSetHeader header, Object[][] columns, Style[][] styles, int size, int[] selection,
+            int rowCount) {
+        if (columns.length != header.size()) {
+            throw new IllegalArgumentException("Column count (" + columns.length + ") does not match header size ("
+                    + header.size() + ")");
+        }
+        _header = header;
+        _columns = columns;
+        _styles = styles;
+        _size = size;
+        _selection = selection;
+        _rowCount = (selection == null ? size : rowCount);
+    }
+
+    /**
+     * Reads the next batch of a {@link DataSet}. If the {@link DataSet} is a
+     * {@link BatchDataSet}, the batch is read natively. Otherwise the batch is
+     * built from rows read one at a time.
+     * 
+     * @param dataSet
+     * @param maxRows
+     * @return a batch with at least one row, or null if there are no more rows
+     */
+    public static RowBatch read(DataSet dataSet, int maxRows) {
+        if (dataSet instanceof BatchDataSet) {
+            return ((BatchDataSet) dataSet).nextBatch(maxRows);
+        }
+
+        final DataSetHeader header;
+        if (dataSet instanceof AbstractDataSet) {
+            header = ((AbstractDataSet) dataSet).getHeader();
+        } else {
+            header = new CachingDataSetHeader(dataSet.getSelectItems());
+        }
+        final int columnCount = header.size();
+        int capacity = Math.max(0, Math.min(maxRows, BatchDataSet.DEFAULT_BATCH_SIZE));
+        Object[][] columns = new Object[columnCount][capacity];
+        Style[][] styles = null;
+        int size = 0;
+        while (size < maxRows && dataSet.next()) {
+            final Row row = dataSet.getRow();
+            if (size == capacity) {
+                capacity = Math.min(maxRows, size * 2);
+                columns = grow(columns, capacity);
+                if (styles != null) {
+                    styles = grow(styles, capacity);
+                }
+            }
+            for (int i = 0; i < columnCount; i++) {
+                columns[i][size] = row.getValue(i);
+                final Style style = row.getStyle(i);
+                if (style != null && style != Style.NO_STYLE) {
+                    if (styles == null) {
+                        styles = new Style[columnCount][capacity];
+                    }
+                    styles[i][size] = style;
+                }
+            }
+            size++;
+        }
+        if (size == 0) {
+            return null;
+        }
+        return new RowBatch(header, columns, styles, size, null, size);
+    }
+
+    private static Object[][] grow(Object[][] columns, int newCapacity) {
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = Arrays.copyOf(columns[i], newCapacity);
+        }
+        return columns;
+    }
+
+    private static Style[][] grow(Style[][] styles, int newCapacity) {
+        for (int i = 0; i < styles.length; i++) {
+            styles[i] = Arrays.copyOf(styles[i], newCapacity);
+        }
+        return styles;
+    }
+
+    public DataSetHeader getHeader() {
+        return _header;
+    }
+
+    public int getColumnCount() {
+        return _columns.length;
+    }
+
+    /**
+     * Gets the number of selected rows of this batch.
+     * 
+     * @return
+     */
+    public int getRowCount() {
+        return _rowCount;
+    }
+
+    /**
+     * Gets the number of rows in the column arrays of this batch, including
+     * rows that are not selected.
+     * 
+     * @return
+     */
+    public int getSize() {
+        return _size;
+    }
+
+    /**
+     * Gets the row index of a selected row.
+     * 
+     * @param selectedIndex
+     *            the position of the row in the selection (0-based)
+     * @return the index of the row in the column arrays
+     */
+    public int getRowIndex(int selectedIndex) {
+        if (_selection == null) {
+            return selectedIndex;
+        }
+        return _selection[selectedIndex];
+    }
+
+    /**
+     * Gets the selection vector of this batch.
+     * 
+     * @return the indexes of the selected rows (only the first
+     *         {@link #getRowCount()} entries are valid), or null if all rows
+     *         are selected
+     */
+    public int[] getSelection() {
+        return _selection;
+    }
+
+    /**
+     * Gets the values of a column. Note that the array is shared and must not
+     * be modified.
+     * 
+     * @param columnIndex
+     * @return
+     */
+    public Object[] getColumn(int columnIndex) {
+        return _columns[columnIndex];
+    }
+
+    /**
+     * Gets the styles of a column.
+     * 
+     * @param columnIndex
+     * @return the styles, or null if no styles are applied to the column
+     */
+    public Style[] getStyles(int columnIndex) {
+        if (_styles == null) {
+            return null;
+        }
+        return _styles[columnIndex];
+    }
+
+    public Object getValue(int columnIndex, int rowIndex) {
+        return _columns[columnIndex][rowIndex];
+    }
+
+    public Style getStyle(int columnIndex, int rowIndex) {
+        if (_styles == null || _styles[columnIndex] == null) {
+            return Style.NO_STYLE;
+        }
+        final Style style = _styles[columnIndex][rowIndex];
+        if (style == null) {
+            return Style.NO_STYLE;
+        }
+        return style;
+    }
+
+    /**
+     * Creates a {@link Row} with the values of a row of this batch.
+     * 
+     * @param rowIndex
+     *            the index of the row in the column arrays
+     * @return
+     */
+    public Row getRow(int rowIndex) {
+        final int columnCount = _columns.length;
+        final Object[] values = new Object[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            values[i] = _columns[i][rowIndex];
+        }
+        Style[] styles = null;
+        if (_styles != null) {
+            styles = new Style[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                styles[i] = getStyle(i, rowIndex);
+            }
+        }
+        return new DefaultRow(_header, values, styles);
+    }
+
+    /**
+     * Creates a batch with the same values, but a different selection.
+     * 
+     * @param selection
+     *            the indexes of the selected rows
+     * @param rowCount
+     *            the number of valid entries in the selection
+     * @return
+     */
+    public RowBatch withSelection(int[] selection, int rowCount) {
+        return new RowBatch(_header, _columns, _styles, _size, selection, rowCount);
+    }
+
+    /**
+     * Creates a batch with the same values, but different columns and header.
+     * 
+     * @param header
+     * @param columns
+     * @param styles
+     * @return
+     */
+    public RowBatch withColumns(DataSetHeader header, Object[][] columns, Style[][] styles) {
+        return new RowBatch(header, columns, styles, _size, _selection, _rowCount);
+    }
+
+    /**
+     * Creates a batch with a range of the selected rows of this batch.
+     * 
+     * @param offset
+     *            the number of selected rows to skip
+     * @param rowCount
+     *            the maximum number of selected rows to include
+     * @return
+     */
+    public RowBatch subBatch(int offset, int rowCount) {
+        final int count = Math.max(0, Math.min(rowCount, _rowCount - offset));
+        if (offset == 0 && count == _rowCount) {
+            return this;
+        }
+        final int[] selection = new int[count];
+        for (int i = 0; i < count; i++) {
+            selection[i] = getRowIndex(offset + i);
+        }
+        return withSelection(selection, count);
+    }
+
+    /**
+     * Creates a copy of the selection vector, which can be modified by
+     * operators that narrow down the selection.
+     * 
+     * @return
+     */
+    public int[] copySelection() {
+        final int[] selection = new int[_rowCount];
+        if (_selection == null) {
+            for (int i = 0; i < _rowCount; i++) {
+                selection[i] = i;
+            }
+        } else {
+            System.arraycopy(_selection, 0, selection, 0, _rowCount);
+        }
+        return selection;
+    }
+
+    @Override
+    public String toString() {
+        return "RowBatch[columns=" + _columns.length + ",size=" + _size + ",rowCount=" + _rowCount + "]";
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.data;
+
+/**
+ * A {@link Row} which is a view of a row in a {@link RowBatch}. The same
+ * object can be moved from row to row, which avoids creating a {@link Row}
+ * object per row when rows are only evaluated and not retained, eg. by scalar
+ * functions.
+ */
+final class RowBatchRow extends AbstractRow {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient RowBatch _batch;
+    private int _rowIndex;
+
+    public RowBatchRow(RowBatch batch) {
+        _batch = batch;
+    }
+
+    public void setRowIndex(int rowIndex) {
+        _rowIndex = rowIndex;
+    }
+
+    @Override
+    public Object getValue(int index) throws IndexOutOfBoundsException {
+        return _batch.getValue(index, _rowIndex);
+    }
+
+    @Override
+    public Style getStyle(int index) throws IndexOutOfBoundsException {
+        return _batch.getStyle(index, _rowIndex);
+    }
+
+    @Override
+    protected DataSetHeader getHeader() {
+        return _batch.getHeader();
+    }
+}
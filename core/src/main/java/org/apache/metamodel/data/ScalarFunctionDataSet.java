@@ -29,28 +29,62 @@ import org.apache.metamodel.util.CollectionUtils;
  * A {@link DataSet} that enhances another {@link DataSet} with
  * {@link ScalarFunction}s.
  */
-public class ScalarFunctionDataSet extends AbstractDataSet implements WrappingDataSet {
+public class ScalarFunctionDataSet extends AbstractBatchDataSet implements WrappingDataSet {
 
     private final DataSet _dataSet;
     private final List<SelectItem> _scalarFunctionSelectItemsToEvaluate;
 
     public ScalarFunctionDataSet(List<SelectItem> scalarFunctionSelectItemsToEvaluate, DataSet dataSet) {
         super(CollectionUtils.concat(false, scalarFunctionSelectItemsToEvaluate,
-                Arrays.<SelectItem> asList(dataSet.getSelectItems())));
+                Arrays.<SelectItem> asList(dataSet.getSelectItems())), dataSet);
         _scalarFunctionSelectItemsToEvaluate = scalarFunctionSelectItemsToEvaluate;
         _dataSet = dataSet;
     }
 
     @Override
-    public boolean next() {
+    protected boolean nextRowWise() {
         return _dataSet.next();
     }
 
     @Override
-    public Row getRow() {
+    protected Row getRowWise() {
         final Row row = _dataSet.getRow();
         return new ScalarFunctionRow(this, row);
     }
+
+    /**
+     * Evaluates the scalar functions for the selected rows of a batch of the
+     * wrapped {@link DataSet}, and prepends the results to its columns.
+     */
+    @Override
+    protected RowBatch readBatch(int maxRows) {
+        final RowBatch batch = RowBatch.read(_dataSet, maxRows);
+        if (batch == null) {
+            return null;
+        }
+        final int scalarFunctionCount = _scalarFunctionSelectItemsToEvaluate.size();
+        final int columnCount = batch.getColumnCount();
+        final Object[][] columns = new Object[scalarFunctionCount + columnCount][];
+        final RowBatchRow row = new RowBatchRow(batch);
+        for (int i = 0; i < scalarFunctionCount; i++) {
+            final SelectItem selectItem = _scalarFunctionSelectItemsToEvaluate.get(i);
+            final SelectItem selectItemWithoutFunction = selectItem.replaceFunction(null);
+            final ScalarFunction function = selectItem.getScalarFunction();
+            final Object[] parameters = selectItem.getFunctionParameters();
+            final Object[] column = new Object[batch.getSize()];
+            for (int j = 0; j < batch.getRowCount(); j++) {
+                final int rowIndex = batch.getRowIndex(j);
+                row.setRowIndex(rowIndex);
+                column[rowIndex] = function.evaluate(row, parameters, selectItemWithoutFunction);
+            }
+            columns[i] = column;
+        }
+        for (int i = 0; i < columnCount; i++) {
+            columns[scalarFunctionCount + i] = batch.getColumn(i);
+        }
+        // like ScalarFunctionRow, no styles are exposed
+        return batch.withColumns(getHeader(), columns, null);
+    }
     
     public List<SelectItem> getScalarFunctionSelectItemsToEvaluate() {
         return _scalarFunctionSelectItemsToEvaluate;
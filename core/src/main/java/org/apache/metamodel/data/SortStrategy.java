@@ -0,0 +1,42 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.data;
+
+import java.util.Comparator;
+
+/**
+ * Strategy for sorting the rows of a {@link DataSet}, used when post-processing
+ * ORDER BY and DISTINCT clauses of queries.
+ */
+public interface SortStrategy {
+
+    /**
+     * Sorts the rows of a dataset. The sort must be stable, ie. rows that
+     * compare equally must keep their relative order. The dataset to sort will
+     * be consumed and closed by this method (or by the returned dataset).
+     *
+     * @param dataSet
+     *            the dataset to sort
+     * @param comparator
+     *            the comparator that defines the order of rows
+     * @return a dataset with the same rows as the original dataset, in sorted
+     *         order
+     */
+    public DataSet sort(DataSet dataSet, Comparator<Row> comparator);
+}
@@ -0,0 +1,86 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.data;
+
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * {@link DataSet} which removes duplicate rows from a sorted dataset. Since the
+ * dataset is sorted, only the rows that compare equally to the current row need
+ * to be remembered.
+ */
+public final class SortedDistinctDataSet extends AbstractDataSet implements WrappingDataSet {
+
+    private final DataSet _dataSet;
+    private final Comparator<Row> _comparator;
+    private final Set<Row> _equalRows;
+    private Row _row;
+
+    /**
+     * Creates a distinct dataset.
+     *
+     * @param dataSet
+     *            the sorted dataset to remove duplicates from
+     * @param comparator
+     *            the comparator which the dataset is sorted by
+     */
+    public SortedDistinctDataSet(DataSet dataSet, Comparator<Row> comparator) {
+        super(dataSet);
+        _dataSet = dataSet;
+        _comparator = comparator;
+        _equalRows = new HashSet<Row>();
+    }
+
+    @Override
+    public DataSet getWrappedDataSet() {
+        return _dataSet;
+    }
+
+    @Override
+    public boolean next() {
+        while (_dataSet.next()) {
+            final Row row = _dataSet.getRow();
+            if (_row == null || _comparator.compare(_row, row) != 0) {
+                _equalRows.clear();
+            }
+            // rows may compare equally without being equal (eg. 1 and "1"),
+            // so all the equally comparing rows are checked for duplicates
+            if (_equalRows.add(row)) {
+                _row = row;
+                return true;
+            }
+        }
+        _row = null;
+        return false;
+    }
+
+    @Override
+    public Row getRow() {
+        return _row;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        _dataSet.close();
+        _equalRows.clear();
+    }
+}
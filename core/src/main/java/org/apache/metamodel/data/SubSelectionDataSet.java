@@ -18,6 +18,7 @@
  */
 package org.apache.metamodel.data;
 
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.metamodel.query.SelectItem;
@@ -25,17 +26,19 @@ import org.apache.metamodel.query.SelectItem;
 /**
  * {@link DataSet} wrapper for doing subselection.
  */
-public final class SubSelectionDataSet extends AbstractDataSet implements WrappingDataSet {
+public final class SubSelectionDataSet extends AbstractBatchDataSet implements WrappingDataSet {
 
     private final DataSet _dataSet;
+    private DataSetHeader _sourceHeader;
+    private int[] _indexes;
+    private int[] _fallbackIndexes;
 
     public SubSelectionDataSet(SelectItem[] selectItemsArray, DataSet dataSet) {
-        super(selectItemsArray);
-        _dataSet = dataSet;
+        this(Arrays.asList(selectItemsArray), dataSet);
     }
 
     public SubSelectionDataSet(List<SelectItem> selectItems, DataSet dataSet) {
-        super(selectItems);
+        super(selectItems, dataSet);
         _dataSet = dataSet;
     }
 
@@ -45,16 +48,85 @@ public final class SubSelectionDataSet extends AbstractDataSet implements Wrappi
     }
 
     @Override
-    public boolean next() {
+    protected boolean nextRowWise() {
         return _dataSet.next();
     }
 
     @Override
-    public Row getRow() {
+    protected Row getRowWise() {
         final DataSetHeader header = getHeader();
         return _dataSet.getRow().getSubSelection(header);
     }
 
+    /**
+     * Projects a batch of the wrapped {@link DataSet} by reusing its column
+     * arrays. The columns are resolved the same way as in
+     * {@link Row#getSubSelection(DataSetHeader)}.
+     */
+    @Override
+    protected RowBatch readBatch(int maxRows) {
+        final RowBatch batch = RowBatch.read(_dataSet, maxRows);
+        if (batch == null) {
+            return null;
+        }
+        final DataSetHeader sourceHeader = batch.getHeader();
+        final DataSetHeader header = getHeader();
+        final int size = header.size();
+        if (sourceHeader != _sourceHeader) {
+            _indexes = new int[size];
+            _fallbackIndexes = new int[size];
+            for (int i = 0; i < size; i++) {
+                final SelectItem selectItem = header.getSelectItem(i);
+                final SelectItem subQuerySelectItem = selectItem.getSubQuerySelectItem();
+                if (subQuerySelectItem == null) {
+                    _indexes[i] = sourceHeader.indexOf(selectItem);
+                    _fallbackIndexes[i] = -1;
+                } else {
+                    _indexes[i] = sourceHeader.indexOf(subQuerySelectItem);
+                    _fallbackIndexes[i] = sourceHeader.indexOf(selectItem);
+                }
+            }
+            _sourceHeader = sourceHeader;
+        }
+
+        final Object[][] columns = new Object[size][];
+        Style[][] styles = null;
+        for (int i = 0; i < size; i++) {
+            final int index = _indexes[i];
+            final int fallbackIndex = _fallbackIndexes[i];
+            if (index == -1 && fallbackIndex == -1) {
+                columns[i] = new Object[batch.getSize()];
+            } else if (index == -1 || fallbackIndex == -1 || index == fallbackIndex) {
+                final int sourceIndex = (index == -1 ? fallbackIndex : index);
+                columns[i] = batch.getColumn(sourceIndex);
+                final Style[] columnStyles = batch.getStyles(sourceIndex);
+                if (columnStyles != null) {
+                    if (styles == null) {
+                        styles = new Style[size][];
+                    }
+                    styles[i] = columnStyles;
+                }
+            } else {
+                // values of the sub query select item, with fallback to the
+                // select item itself when null
+                final Object[] column = new Object[batch.getSize()];
+                final Style[] columnStyles = new Style[batch.getSize()];
+                for (int j = 0; j < batch.getRowCount(); j++) {
+                    final int rowIndex = batch.getRowIndex(j);
+                    final int sourceIndex = (batch.getValue(index, rowIndex) == null ? fallbackIndex : index);
+                    column[rowIndex] = batch.getValue(sourceIndex, rowIndex);
+                    columnStyles[rowIndex] = batch.getStyle(sourceIndex, rowIndex);
+                }
+                columns[i] = column;
+                if (styles == null) {
+                    styles = new Style[size][];
+                }
+                styles[i] = columnStyles;
+            }
+        }
+        return batch.withColumns(header, columns, styles);
+    }
+
     @Override
     public void close() {
         super.close();
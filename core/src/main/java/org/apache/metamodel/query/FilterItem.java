@@ -55,6 +55,7 @@ public class FilterItem extends BaseObject implements QueryItem, Cloneable, IRow
     private final LogicalOperator _logicalOperator;
     private final String _expression;
     private transient Set<?> _inValues;
+    private transient WildcardPattern _likePattern;
 
     /**
      * Private constructor, used for cloning
@@ -373,7 +374,15 @@ public class FilterItem extends BaseObject implements QueryItem, Cloneable, IRow
         } else if (_operator == OperatorType.LESS_THAN_OR_EQUAL) {
             return comparator.compare(selectItemValue, operandValue) <= 0;
         } else if (_operator == OperatorType.LIKE) {
-            WildcardPattern matcher = new WildcardPattern((String) operandValue, '%');
+            final WildcardPattern matcher;
+            if (operandValue == _operand) {
+                if (_likePattern == null) {
+                    _likePattern = new WildcardPattern((String) operandValue, '%');
+                }
+                matcher = _likePattern;
+            } else {
+                matcher = new WildcardPattern((String) operandValue, '%');
+            }
             return matcher.matches((String) selectItemValue);
         } else if (_operator == OperatorType.IN) {
             Set<?> inValues = getInValues();
@@ -0,0 +1,212 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.StringTokenizer;
+
+import org.apache.metamodel.util.BooleanComparator;
+import org.apache.metamodel.util.CollectionUtils;
+
+/**
+ * A cheap, conservative filter on the raw text lines of a text based
+ * datastore, derived from the WHERE items of a query. It allows lines that
+ * cannot possibly satisfy the WHERE items to be skipped before they are parsed
+ * into rows.
+ *
+ * A line is rejected only if, for one of the WHERE items, it does not contain
+ * any of the string literals that a matching value would consist of. Since
+ * the line may still contain a literal somewhere else than in the filtered
+ * column, accepted lines must always be evaluated using the real WHERE items
+ * afterwards.
+ *
+ * The prefilter requires that every value of a line appears literally in the
+ * line. Datastores where values may be encoded (eg. quoted or escaped) can
+ * specify the characters that indicate such encoding - lines that contain
+ * those characters are always accepted.
+ */
+public final class LinePrefilter {
+
+    private final List<String[][]> _conditions;
+    private final char[] _encodingChars;
+
+    private LinePrefilter(List<String[][]> conditions, char[] encodingChars) {
+        _conditions = conditions;
+        _encodingChars = encodingChars;
+    }
+
+    /**
+     * Creates a line prefilter for a list of WHERE items, which are all
+     * required to be satisfied.
+     *
+     * @param whereItems
+     *            the WHERE items of the query
+     * @param encodingChars
+     *            characters that indicate that the values of a line may not
+     *            appear literally in the line, eg. quote and escape
+     *            characters.
+     * @return a line prefilter, or null if none of the WHERE items can be used
+     *         for prefiltering
+     */
+    public static LinePrefilter create(List<FilterItem> whereItems, char... encodingChars) {
+        final List<String[][]> conditions = new ArrayList<String[][]>();
+        for (FilterItem whereItem : whereItems) {
+            addConditions(whereItem, conditions);
+        }
+        if (conditions.isEmpty()) {
+            return null;
+        }
+        return new LinePrefilter(conditions, encodingChars);
+    }
+
+    private static void addConditions(FilterItem filterItem, List<String[][]> conditions) {
+        if (filterItem.isCompoundFilter() && filterItem.getLogicalOperator() == LogicalOperator.AND) {
+            for (FilterItem childItem : filterItem.getChildItems()) {
+                addConditions(childItem, conditions);
+            }
+            return;
+        }
+
+        final List<String[]> alternatives = getAlternatives(filterItem);
+        if (alternatives != null) {
+            conditions.add(alternatives.toArray(new String[alternatives.size()][]));
+        }
+    }
+
+    /**
+     * Gets the alternative sets of literals that a line must contain (at least
+     * one of) to satisfy a filter item.
+     *
+     * @param filterItem
+     * @return the alternatives, or null if the filter item cannot be used for
+     *         prefiltering
+     */
+    private static List<String[]> getAlternatives(FilterItem filterItem) {
+        if (filterItem.isCompoundFilter()) {
+            if (filterItem.getLogicalOperator() != LogicalOperator.OR) {
+                return null;
+            }
+            final List<String[]> alternatives = new ArrayList<String[]>();
+            for (FilterItem childItem : filterItem.getChildItems()) {
+                final List<String[]> childAlternatives = getAlternatives(childItem);
+                if (childAlternatives == null) {
+                    return null;
+                }
+                alternatives.addAll(childAlternatives);
+            }
+            return alternatives;
+        }
+
+        if (filterItem.getExpression() != null) {
+            return null;
+        }
+        final SelectItem selectItem = filterItem.getSelectItem();
+        if (selectItem == null || selectItem.getColumn() == null || selectItem.getScalarFunction() != null
+                || selectItem.getAggregateFunction() != null) {
+            return null;
+        }
+
+        final OperatorType operator = filterItem.getOperator();
+        final Object operand = filterItem.getOperand();
+        if (operator == OperatorType.EQUALS_TO) {
+            if (!isLiteral(operand)) {
+                return null;
+            }
+            return Collections.singletonList(new String[] { (String) operand });
+        } else if (operator == OperatorType.IN) {
+            if (operand == null) {
+                return null;
+            }
+            final List<?> inValues = CollectionUtils.toList(operand);
+            final List<String[]> alternatives = new ArrayList<String[]>(inValues.size());
+            for (Object inValue : inValues) {
+                if (!isLiteral(inValue)) {
+                    return null;
+                }
+                alternatives.add(new String[] { (String) inValue });
+            }
+            return alternatives;
+        } else if (operator == OperatorType.LIKE) {
+            if (!(operand instanceof String)) {
+                return null;
+            }
+            // all the fragments between the wildcards must be present
+            final List<String> fragments = new ArrayList<String>();
+            final StringTokenizer tokenizer = new StringTokenizer((String) operand, "%");
+            while (tokenizer.hasMoreTokens()) {
+                fragments.add(tokenizer.nextToken());
+            }
+            return Collections.singletonList(fragments.toArray(new String[fragments.size()]));
+        }
+        return null;
+    }
+
+    /**
+     * Determines if a value is a string that will only be considered equal to
+     * values that contain the exact same characters.
+     */
+    private static boolean isLiteral(Object value) {
+        if (!(value instanceof String)) {
+            return false;
+        }
+        // booleans are compared case-insensitively
+        return !BooleanComparator.isBoolean(value);
+    }
+
+    /**
+     * Determines if a line may contain a row that satisfies the WHERE items.
+     *
+     * @param line
+     * @return false if the line can safely be skipped, true otherwise
+     */
+    public boolean accept(String line) {
+        for (char c : _encodingChars) {
+            if (line.indexOf(c) != -1) {
+                return true;
+            }
+        }
+
+        for (String[][] alternatives : _conditions) {
+            if (!containsAny(line, alternatives)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean containsAny(String line, String[][] alternatives) {
+        for (String[] literals : alternatives) {
+            if (containsAll(line, literals)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean containsAll(String line, String[] literals) {
+        for (String literal : literals) {
+            if (line.indexOf(literal) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,270 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Date;
+
+import org.apache.metamodel.MetaModelException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A temporary file which holds a sequence of records (object arrays) that have
+ * been spilled to disk, typically because they would not fit in memory while
+ * processing a query client-side. Records are written sequentially and can
+ * afterwards be read back in the same order.
+ *
+ * Records are stored in a compact binary format. Common value types (strings,
+ * numbers, booleans and dates) are written directly, while other values are
+ * written using Java serialization, and must therefore be serializable.
+ *
+ * The file is deleted when the spill file is closed, so a spill file must
+ * always be closed after use.
+ */
+public final class SpillFile implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpillFile.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // a negative record length marks the end of the file
+    private static final int END_OF_FILE = -1;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_INTEGER = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_DOUBLE = 4;
+    private static final byte TYPE_FLOAT = 5;
+    private static final byte TYPE_SHORT = 6;
+    private static final byte TYPE_BYTE = 7;
+    private static final byte TYPE_BOOLEAN = 8;
+    private static final byte TYPE_CHARACTER = 9;
+    private static final byte TYPE_DATE = 10;
+    private static final byte TYPE_SERIALIZED = 11;
+
+    private final File _file;
+    private DataOutputStream _out;
+    private DataInputStream _in;
+    private int _recordCount;
+
+    public SpillFile(String prefix) {
+        _file = FileHelper.createTempFile(prefix, "dat");
+        try {
+            _out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(_file), BUFFER_SIZE));
+        } catch (IOException e) {
+            _file.delete();
+            throw new MetaModelException("Could not create spill file: " + _file, e);
+        }
+        _recordCount = 0;
+    }
+
+    /**
+     * Writes a record to the spill file.
+     *
+     * @param record
+     */
+    public void write(Object[] record) {
+        if (_out == null) {
+            throw new IllegalStateException("Spill file is not writable anymore: " + _file);
+        }
+        try {
+            _out.writeInt(record.length);
+            for (Object value : record) {
+                writeValue(value);
+            }
+            _recordCount++;
+        } catch (IOException e) {
+            throw new MetaModelException("Could not write record to spill file: " + _file, e);
+        }
+    }
+
+    /**
+     * Reads the next record of the spill file. The first invocation of this
+     * method will finish the writing of the file.
+     *
+     * @return the next record, or null if there are no more records.
+     */
+    public Object[] read() {
+        try {
+            if (_in == null) {
+                finishWriting();
+                _in = new DataInputStream(new BufferedInputStream(new FileInputStream(_file), BUFFER_SIZE));
+            }
+            final int length = _in.readInt();
+            if (length == END_OF_FILE) {
+                return null;
+            }
+            final Object[] record = new Object[length];
+            for (int i = 0; i < length; i++) {
+                record[i] = readValue();
+            }
+            return record;
+        } catch (IOException e) {
+            throw new MetaModelException("Could not read record from spill file: " + _file, e);
+        } catch (ClassNotFoundException e) {
+            throw new MetaModelException("Could not read record from spill file: " + _file, e);
+        }
+    }
+
+    /**
+     * Gets the number of records written to the spill file.
+     *
+     * @return
+     */
+    public int getRecordCount() {
+        return _recordCount;
+    }
+
+    private void writeValue(Object value) throws IOException {
+        if (value == null) {
+            _out.writeByte(TYPE_NULL);
+            return;
+        }
+
+        // only exact classes are written directly, since subclasses (eg.
+        // java.sql.Timestamp) would not be restored as such
+        final Class<?> cls = value.getClass();
+        if (cls == String.class) {
+            final byte[] bytes = ((String) value).getBytes(FileHelper.UTF_8_ENCODING);
+            _out.writeByte(TYPE_STRING);
+            _out.writeInt(bytes.length);
+            _out.write(bytes);
+        } else if (cls == Integer.class) {
+            _out.writeByte(TYPE_INTEGER);
+            _out.writeInt((Integer) value);
+        } else if (cls == Long.class) {
+            _out.writeByte(TYPE_LONG);
+            _out.writeLong((Long) value);
+        } else if (cls == Double.class) {
+            _out.writeByte(TYPE_DOUBLE);
+            _out.writeDouble((Double) value);
+        } else if (cls == Float.class) {
+            _out.writeByte(TYPE_FLOAT);
+            _out.writeFloat((Float) value);
+        } else if (cls == Short.class) {
+            _out.writeByte(TYPE_SHORT);
+            _out.writeShort((Short) value);
+        } else if (cls == Byte.class) {
+            _out.writeByte(TYPE_BYTE);
+            _out.writeByte((Byte) value);
+        } else if (cls == Boolean.class) {
+            _out.writeByte(TYPE_BOOLEAN);
+            _out.writeBoolean((Boolean) value);
+        } else if (cls == Character.class) {
+            _out.writeByte(TYPE_CHARACTER);
+            _out.writeChar((Character) value);
+        } else if (cls == Date.class) {
+            _out.writeByte(TYPE_DATE);
+            _out.writeLong(((Date) value).getTime());
+        } else {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final ObjectOutputStream objectOut = new ObjectOutputStream(bytes);
+            objectOut.writeObject(value);
+            objectOut.close();
+            _out.writeByte(TYPE_SERIALIZED);
+            _out.writeInt(bytes.size());
+            bytes.writeTo(_out);
+        }
+    }
+
+    private Object readValue() throws IOException, ClassNotFoundException {
+        final byte type = _in.readByte();
+        switch (type) {
+        case TYPE_NULL:
+            return null;
+        case TYPE_STRING:
+            return new String(readBytes(), FileHelper.UTF_8_ENCODING);
+        case TYPE_INTEGER:
+            return _in.readInt();
+        case TYPE_LONG:
+            return _in.readLong();
+        case TYPE_DOUBLE:
+            return _in.readDouble();
+        case TYPE_FLOAT:
+            return _in.readFloat();
+        case TYPE_SHORT:
+            return _in.readShort();
+        case TYPE_BYTE:
+            return _in.readByte();
+        case TYPE_BOOLEAN:
+            return _in.readBoolean();
+        case TYPE_CHARACTER:
+            return _in.readChar();
+        case TYPE_DATE:
+            return new Date(_in.readLong());
+        case TYPE_SERIALIZED:
+            final ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(readBytes()));
+            try {
+                return objectIn.readObject();
+            } finally {
+                objectIn.close();
+            }
+        default:
+            throw new IOException("Unexpected value type in spill file: " + type);
+        }
+    }
+
+    private byte[] readBytes() throws IOException {
+        final byte[] bytes = new byte[_in.readInt()];
+        _in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Finishes the writing of the spill file, releasing the file handle used
+     * for writing until the file is read. Invoking this method is optional,
+     * but recommended when many spill files are written before they are read.
+     *
+     * @throws IOException
+     */
+    public void finishWriting() throws IOException {
+        if (_out != null) {
+            _out.writeInt(END_OF_FILE);
+            _out.close();
+            _out = null;
+        }
+    }
+
+    /**
+     * Closes and deletes the spill file.
+     */
+    @Override
+    public void close() {
+        FileHelper.safeClose(_out, _in);
+        _out = null;
+        _in = null;
+        if (_file.exists() && !_file.delete()) {
+            logger.warn("Could not delete spill file: {}", _file);
+        }
+    }
+}
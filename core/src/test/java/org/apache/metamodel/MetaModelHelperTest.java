@@ -32,6 +32,8 @@ import org.apache.metamodel.data.SimpleDataSetHeader;
 import org.apache.metamodel.data.SubSelectionDataSet;
 import org.apache.metamodel.query.FilterItem;
 import org.apache.metamodel.query.FromItem;
+import org.apache.metamodel.query.FunctionType;
+import org.apache.metamodel.query.GroupByItem;
 import org.apache.metamodel.query.JoinType;
 import org.apache.metamodel.query.OperatorType;
 import org.apache.metamodel.query.OrderByItem;
@@ -113,6 +115,80 @@ public class MetaModelHelperTest extends MetaModelTestCase {
         assertEquals(3, objectArrays.size());
     }
 
+    public void testLeftJoinWithMultipleMatchesAndNonEquiCondition() throws Exception {
+        SelectItem si1 = new SelectItem(new MutableColumn("order_id", ColumnType.INTEGER));
+        SelectItem si2 = new SelectItem(new MutableColumn("order_amount", ColumnType.INTEGER));
+        SelectItem si3 = new SelectItem(new MutableColumn("line_order_id", ColumnType.INTEGER));
+        SelectItem si4 = new SelectItem(new MutableColumn("line_amount", ColumnType.INTEGER));
+        List<Object[]> data1 = new ArrayList<Object[]>();
+        data1.add(new Object[] { 1, 100 });
+        data1.add(new Object[] { 2, 50 });
+        data1.add(new Object[] { 3, 10 });
+
+        List<Object[]> data2 = new ArrayList<Object[]>();
+        data2.add(new Object[] { 1, 60 });
+        data2.add(new Object[] { 2, 70 });
+        data2.add(new Object[] { 1, 40 });
+        data2.add(new Object[] { 2, 20 });
+
+        DataSet ds1 = createDataSet(new SelectItem[] { si1, si2 }, data1);
+        DataSet ds2 = createDataSet(new SelectItem[] { si3, si4 }, data2);
+        FilterItem[] onConditions = new FilterItem[2];
+        onConditions[0] = new FilterItem(si1, OperatorType.EQUALS_TO, si3);
+        onConditions[1] = new FilterItem(si2, OperatorType.GREATER_THAN, si4);
+
+        DataSet result = MetaModelHelper.getLeftJoin(ds1, ds2, onConditions);
+        List<Object[]> objectArrays = result.toObjectArrays();
+        assertEquals("[1, 100, 1, 60]", Arrays.toString(objectArrays.get(0)));
+        assertEquals("[1, 100, 1, 40]", Arrays.toString(objectArrays.get(1)));
+        assertEquals("[2, 50, 2, 20]", Arrays.toString(objectArrays.get(2)));
+        assertEquals("[3, 10, null, null]", Arrays.toString(objectArrays.get(3)));
+        assertEquals(4, objectArrays.size());
+    }
+
+    public void testGetGroupedWithMaxGroupsInMemory() throws Exception {
+        MutableColumn nameColumn = new MutableColumn("name", ColumnType.VARCHAR);
+        MutableColumn amountColumn = new MutableColumn("amount", ColumnType.INTEGER);
+        SelectItem nameItem = new SelectItem(nameColumn);
+        SelectItem amountItem = new SelectItem(amountColumn);
+
+        List<Object[]> data = new ArrayList<Object[]>();
+        data.add(new Object[] { "a", 1 });
+        data.add(new Object[] { "b", 2 });
+        data.add(new Object[] { "c", 3 });
+        data.add(new Object[] { "a", 4 });
+        data.add(new Object[] { "d", 5 });
+        data.add(new Object[] { "c", 6 });
+        data.add(new Object[] { "e", null });
+        data.add(new Object[] { "d", 8 });
+
+        List<SelectItem> selectItems = new ArrayList<SelectItem>();
+        selectItems.add(nameItem);
+        selectItems.add(SelectItem.getCountAllItem());
+        selectItems.add(new SelectItem(FunctionType.SUM, amountColumn));
+        selectItems.add(new SelectItem(FunctionType.FIRST, amountColumn));
+        selectItems.add(new SelectItem(FunctionType.LAST, amountColumn));
+
+        GroupByItem[] groupByItems = new GroupByItem[] { new GroupByItem(nameItem) };
+
+        List<Object[]> unbounded = MetaModelHelper.getGrouped(selectItems,
+                createDataSet(new SelectItem[] { nameItem, amountItem }, data), groupByItems).toObjectArrays();
+        List<Object[]> bounded = MetaModelHelper.getGrouped(selectItems,
+                createDataSet(new SelectItem[] { nameItem, amountItem }, data), groupByItems, 2).toObjectArrays();
+
+        assertEquals(5, unbounded.size());
+        assertEquals("[a, 2, 5.0, 1, 4]", Arrays.toString(unbounded.get(0)));
+        assertEquals("[b, 1, 2.0, 2, 2]", Arrays.toString(unbounded.get(1)));
+        assertEquals("[c, 2, 9.0, 3, 6]", Arrays.toString(unbounded.get(2)));
+        assertEquals("[d, 2, 13.0, 5, 8]", Arrays.toString(unbounded.get(3)));
+        assertEquals("[e, 1, 0.0, null, null]", Arrays.toString(unbounded.get(4)));
+
+        assertEquals(5, bounded.size());
+        for (int i = 0; i < bounded.size(); i++) {
+            assertEquals(Arrays.toString(unbounded.get(i)), Arrays.toString(bounded.get(i)));
+        }
+    }
+
     public void testSimpleCarthesianProduct() throws Exception {
         DataSet dataSet = MetaModelHelper.getCarthesianProduct(createDataSet1(), createDataSet2());
 
@@ -155,6 +231,64 @@ public class MetaModelHelperTest extends MetaModelTestCase {
         assertFalse(dataSet.next());
     }
 
+    public void testCarthesianProductWithEquiJoinCondition() throws Exception {
+        SelectItem si1 = new SelectItem(new MutableColumn("person_id", ColumnType.INTEGER));
+        SelectItem si2 = new SelectItem(new MutableColumn("person_role_id", ColumnType.INTEGER));
+        SelectItem si3 = new SelectItem(new MutableColumn("role_id", ColumnType.INTEGER));
+        SelectItem si4 = new SelectItem(new MutableColumn("role_name", ColumnType.VARCHAR));
+
+        List<Object[]> data1 = new ArrayList<Object[]>();
+        data1.add(new Object[] { 1, 1 });
+        data1.add(new Object[] { 2, 2 });
+        data1.add(new Object[] { 3, null });
+        data1.add(new Object[] { 4, 1 });
+        data1.add(new Object[] { 5, 3 });
+
+        List<Object[]> data2 = new ArrayList<Object[]>();
+        data2.add(new Object[] { 1, "class president" });
+        data2.add(new Object[] { 2L, "bad boy" });
+        data2.add(new Object[] { 1.0, "vice president" });
+        data2.add(new Object[] { null, "nobody" });
+
+        DataSet ds1 = createDataSet(new SelectItem[] { si1, si2 }, data1);
+        DataSet ds2 = createDataSet(new SelectItem[] { si3, si4 }, data2);
+
+        DataSet result = MetaModelHelper.getCarthesianProduct(new DataSet[] { ds1, ds2 }, new FilterItem(si2,
+                OperatorType.EQUALS_TO, si3), new FilterItem(si1, OperatorType.GREATER_THAN, 1));
+        List<Object[]> objectArrays = result.toObjectArrays();
+        assertEquals("[2, 2, 2, bad boy]", Arrays.toString(objectArrays.get(0)));
+        assertEquals("[3, null, null, nobody]", Arrays.toString(objectArrays.get(1)));
+        assertEquals("[4, 1, 1, class president]", Arrays.toString(objectArrays.get(2)));
+        assertEquals("[4, 1, 1.0, vice president]", Arrays.toString(objectArrays.get(3)));
+        assertEquals(4, objectArrays.size());
+    }
+
+    public void testCarthesianProductWithEquiJoinConditionOnMixedTypes() throws Exception {
+        SelectItem si1 = new SelectItem(new MutableColumn("foo", ColumnType.VARCHAR));
+        SelectItem si2 = new SelectItem(new MutableColumn("bar", ColumnType.INTEGER));
+
+        List<Object[]> data1 = new ArrayList<Object[]>();
+        data1.add(new Object[] { "1" });
+        data1.add(new Object[] { "2" });
+        data1.add(new Object[] { "TRUE" });
+
+        List<Object[]> data2 = new ArrayList<Object[]>();
+        data2.add(new Object[] { 2 });
+        data2.add(new Object[] { "true" });
+        data2.add(new Object[] { 1 });
+
+        DataSet ds1 = createDataSet(new SelectItem[] { si1 }, data1);
+        DataSet ds2 = createDataSet(new SelectItem[] { si2 }, data2);
+
+        DataSet result = MetaModelHelper.getCarthesianProduct(new DataSet[] { ds1, ds2 }, new FilterItem(si1,
+                OperatorType.EQUALS_TO, si2));
+        List<Object[]> objectArrays = result.toObjectArrays();
+        assertEquals("[1, 1]", Arrays.toString(objectArrays.get(0)));
+        assertEquals("[2, 2]", Arrays.toString(objectArrays.get(1)));
+        assertEquals("[TRUE, true]", Arrays.toString(objectArrays.get(2)));
+        assertEquals(3, objectArrays.size());
+    }
+
     public void testGetCarthesianProductNoRows() throws Exception {
         DataSet dataSet = MetaModelHelper.getCarthesianProduct(createDataSet4(), createDataSet2(), createDataSet3());
         assertEquals(4, dataSet.getSelectItems().length);
@@ -182,6 +316,40 @@ public class MetaModelHelperTest extends MetaModelTestCase {
         assertFalse(dataSet.next());
     }
 
+    public void testGetOrderedWithMaxRows() throws Exception {
+        SelectItem nameItem = new SelectItem(new MutableColumn("name", ColumnType.VARCHAR));
+        SelectItem scoreItem = new SelectItem(new MutableColumn("score", ColumnType.INTEGER));
+        List<Object[]> data = new ArrayList<Object[]>();
+        data.add(new Object[] { "a", 3 });
+        data.add(new Object[] { "b", 7 });
+        data.add(new Object[] { "c", 5 });
+        data.add(new Object[] { "d", 7 });
+        data.add(new Object[] { "e", null });
+        data.add(new Object[] { "f", 5 });
+        data.add(new Object[] { "g", 1 });
+
+        List<OrderByItem> orderByItems = new ArrayList<OrderByItem>();
+        orderByItems.add(new OrderByItem(scoreItem, OrderByItem.Direction.DESC));
+
+        List<Object[]> expected = MetaModelHelper.getOrdered(
+                createDataSet(new SelectItem[] { nameItem, scoreItem }, data), orderByItems).toObjectArrays();
+        assertEquals(7, expected.size());
+
+        for (int maxRows = 1; maxRows <= 8; maxRows++) {
+            DataSet dataSet = MetaModelHelper.getOrdered(createDataSet(new SelectItem[] { nameItem, scoreItem }, data),
+                    orderByItems, maxRows);
+            List<Object[]> objectArrays = dataSet.toObjectArrays();
+            assertEquals(Math.min(maxRows, 7), objectArrays.size());
+            for (int i = 0; i < objectArrays.size(); i++) {
+                assertEquals(Arrays.toString(expected.get(i)), Arrays.toString(objectArrays.get(i)));
+            }
+        }
+
+        DataSet dataSet = MetaModelHelper.getOrdered(createDataSet(new SelectItem[] { nameItem, scoreItem }, data),
+                orderByItems, 3);
+        assertEquals("[[b, 7], [d, 7], [c, 5]]", Arrays.deepToString(dataSet.toObjectArrays().toArray()));
+    }
+
     private DataSet createDataSet1() {
         List<Object[]> data1 = new ArrayList<Object[]>();
         data1.add(new Object[] { "f" });
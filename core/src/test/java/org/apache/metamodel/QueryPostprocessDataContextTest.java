@@ -1134,4 +1134,116 @@ public class QueryPostprocessDataContextTest extends MetaModelTestCase {
         assertEquals("[hello, world]", values.toString());
     }
 
+    public void testPushdownOfGroupingOrderingAndPaging() throws Exception {
+        final PushdownMockDataContext dc = new PushdownMockDataContext(true, true, true);
+
+        final Query query = dc.parseQuery("SELECT baz, COUNT(*) AS c FROM tab GROUP BY baz ORDER BY baz");
+        DataSet ds = dc.executeQuery(query);
+        assertEquals("[SELECT tab.baz, COUNT(*) AS c FROM sch.tab GROUP BY tab.baz ORDER BY tab.baz ASC]",
+                dc.pushdownQueries.toString());
+        assertTrue(ds.next());
+        assertEquals("Row[values=[hello, 1]]", ds.getRow().toString());
+        assertTrue(ds.next());
+        assertEquals("Row[values=[world, 3]]", ds.getRow().toString());
+        assertFalse(ds.next());
+        ds.close();
+
+        dc.pushdownQueries.clear();
+        dc.pushdownFirstRows.clear();
+        query.setFirstRow(2);
+        ds = dc.executeQuery(query);
+        assertEquals("[SELECT tab.baz, COUNT(*) AS c FROM sch.tab GROUP BY tab.baz ORDER BY tab.baz ASC]",
+                dc.pushdownQueries.toString());
+        assertEquals(Integer.valueOf(2), dc.pushdownFirstRows.get(0));
+        assertTrue(ds.next());
+        assertEquals("Row[values=[world, 3]]", ds.getRow().toString());
+        assertFalse(ds.next());
+        ds.close();
+    }
+
+    public void testPushdownOfPartialWhereClause() throws Exception {
+        final PushdownMockDataContext dc = new PushdownMockDataContext(true, true, true);
+
+        // only the EQUALS_TO item can be pushed down, which means that the
+        // grouping needs to be done client-side
+        final Query query = dc.parseQuery("SELECT baz, COUNT(*) FROM tab WHERE bar = 'hello' AND foo > '1' "
+                + "GROUP BY baz ORDER BY baz");
+        final DataSet ds = dc.executeQuery(query);
+        assertEquals("[SELECT tab.baz, tab.foo FROM sch.tab WHERE tab.bar = 'hello']", dc.pushdownQueries.toString());
+        assertTrue(ds.next());
+        assertEquals("Row[values=[world, 1]]", ds.getRow().toString());
+        assertFalse(ds.next());
+        ds.close();
+    }
+
+    public void testPushdownOfWhereClauseOnly() throws Exception {
+        final PushdownMockDataContext dc = new PushdownMockDataContext(false, false, false);
+
+        final Query query = dc.parseQuery("SELECT baz, COUNT(*) AS c FROM tab WHERE baz = 'world' GROUP BY baz");
+        final DataSet ds = dc.executeQuery(query);
+        assertEquals("[SELECT tab.baz FROM sch.tab WHERE tab.baz = 'world']", dc.pushdownQueries.toString());
+        assertTrue(ds.next());
+        assertEquals("Row[values=[world, 3]]", ds.getRow().toString());
+        assertFalse(ds.next());
+        ds.close();
+    }
+
+    /**
+     * {@link MockDataContext} which executes pushdown queries by running them
+     * through the regular (post-processing) query execution.
+     */
+    private static class PushdownMockDataContext extends MockDataContext {
+
+        private final boolean _groupingSupported;
+        private final boolean _orderingSupported;
+        private final boolean _pagingSupported;
+        private boolean _executingPushdown;
+
+        final List<String> pushdownQueries = new ArrayList<String>();
+        final List<Integer> pushdownFirstRows = new ArrayList<Integer>();
+
+        public PushdownMockDataContext(boolean groupingSupported, boolean orderingSupported, boolean pagingSupported) {
+            super("sch", "tab", "hello");
+            _groupingSupported = groupingSupported;
+            _orderingSupported = orderingSupported;
+            _pagingSupported = pagingSupported;
+        }
+
+        @Override
+        protected DataSet executePushdownQuery(Table table, Query query) {
+            pushdownQueries.add(query.toSql());
+            pushdownFirstRows.add(query.getFirstRow());
+            _executingPushdown = true;
+            try {
+                return executeQuery(query);
+            } finally {
+                _executingPushdown = false;
+            }
+        }
+
+        @Override
+        protected boolean isFilterPushdownSupported(Table table, FilterItem filterItem) {
+            return !_executingPushdown && filterItem.getOperator() == OperatorType.EQUALS_TO;
+        }
+
+        @Override
+        protected boolean isGroupByPushdownSupported(Table table, GroupByItem groupByItem) {
+            return !_executingPushdown && _groupingSupported;
+        }
+
+        @Override
+        protected boolean isAggregatePushdownSupported(Table table, SelectItem aggregateItem) {
+            return !_executingPushdown && _groupingSupported;
+        }
+
+        @Override
+        protected boolean isOrderByPushdownSupported(Table table, OrderByItem orderByItem) {
+            return !_executingPushdown && _orderingSupported;
+        }
+
+        @Override
+        protected boolean isPagingPushdownSupported(Table table) {
+            return !_executingPushdown && _pagingSupported;
+        }
+    }
 }
\ No newline at end of file
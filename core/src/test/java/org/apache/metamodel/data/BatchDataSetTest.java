@@ -0,0 +1,142 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.metamodel.MetaModelHelper;
+import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.FunctionType;
+import org.apache.metamodel.query.OperatorType;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.ColumnType;
+import org.apache.metamodel.schema.MutableColumn;
+
+public class BatchDataSetTest extends TestCase {
+
+    private final Column[] columns = new Column[] { new MutableColumn("str", ColumnType.VARCHAR),
+            new MutableColumn("int", ColumnType.INTEGER), new MutableColumn("bool", ColumnType.BOOLEAN) };
+    private final DataSetHeader header = new SimpleDataSetHeader(MetaModelHelper.createSelectItems(columns));
+
+    private List<Row> createRows(int count) {
+        final List<Row> rows = new ArrayList<Row>();
+        for (int i = 0; i < count; i++) {
+            final Object str = (i % 11 == 0 ? null : "s" + (i % 5));
+            rows.add(new DefaultRow(header, new Object[] { str, i, i % 2 == 0 }));
+        }
+        return rows;
+    }
+
+    private DataSet createPipeline(DataSet dataSet) {
+        final SelectItem[] selectItems = dataSet.getSelectItems();
+        DataSet result = new FilteredDataSet(dataSet, new FilterItem(selectItems[1], OperatorType.GREATER_THAN, 100),
+                new FilterItem(selectItems[0], OperatorType.LIKE, "s1%"));
+        final SelectItem toStringItem = new SelectItem(FunctionType.TO_STRING, columns[1]);
+        result = new ScalarFunctionDataSet(Arrays.asList(toStringItem), result);
+        result = new SubSelectionDataSet(new SelectItem[] { toStringItem, selectItems[2] }, result);
+        result = new FirstRowDataSet(result, 5);
+        return new MaxRowsDataSet(result, 300);
+    }
+
+    public void testPipelineOverNativeBatches() throws Exception {
+        final List<Row> rows = createRows(5000);
+        final ColumnarTable table = ColumnarTable.build(columns, new InMemoryDataSet(header, rows), -1);
+
+        final DataSet rowWise = createPipeline(new InMemoryDataSet(header, rows));
+        final DataSet batchWise = createPipeline(table.toDataSet(columns));
+        assertFalse(((BatchDataSet) rowWise).isBatchNative());
+        assertTrue(((BatchDataSet) batchWise).isBatchNative());
+
+        final List<Row> expected = rowWise.toRows();
+        assertEquals(300, expected.size());
+        assertEquals("Row[values=[126, true]]", expected.get(0).toString());
+        assertEquals(expected.toString(), batchWise.toRows().toString());
+
+        final DataSet batches = createPipeline(table.toDataSet(columns));
+        final List<String> actual = new ArrayList<String>();
+        RowBatch batch;
+        while ((batch = RowBatch.read(batches, 128)) != null) {
+            assertTrue(batch.getRowCount() > 0);
+            assertTrue(batch.getRowCount() <= 128);
+            for (int i = 0; i < batch.getRowCount(); i++) {
+                actual.add(batch.getRow(batch.getRowIndex(i)).toString());
+            }
+        }
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    public void testReadBatchesFromRowWiseDataSet() throws Exception {
+        final List<Row> rows = createRows(20);
+        final DataSet dataSet = new InMemoryDataSet(header, rows);
+
+        final RowBatch batch1 = RowBatch.read(dataSet, 15);
+        assertEquals(15, batch1.getRowCount());
+        assertEquals(15, batch1.getSize());
+        assertNull(batch1.getSelection());
+        assertEquals("s1", batch1.getValue(0, 1));
+        assertEquals(14, batch1.getValue(1, 14));
+        assertEquals(rows.get(3), batch1.getRow(3));
+
+        final RowBatch batch2 = RowBatch.read(dataSet, 15);
+        assertEquals(5, batch2.getRowCount());
+        assertEquals(15, batch2.getValue(1, 0));
+
+        assertNull(RowBatch.read(dataSet, 15));
+    }
+
+    public void testCombinedRowAndBatchReading() throws Exception {
+        final List<Row> rows = createRows(100);
+        final ColumnarTable table = ColumnarTable.build(columns, new InMemoryDataSet(header, rows), -1);
+        final FilteredDataSet dataSet = new FilteredDataSet(table.toDataSet(columns), new FilterItem(
+                new SelectItem(columns[2]), OperatorType.EQUALS_TO, true));
+
+        assertTrue(dataSet.next());
+        assertEquals(0, dataSet.getRow().getValue(1));
+        assertTrue(dataSet.next());
+        assertEquals(2, dataSet.getRow().getValue(1));
+
+        final RowBatch batch = dataSet.nextBatch(10);
+        assertEquals(10, batch.getRowCount());
+        assertEquals(100, batch.getSize());
+        assertEquals(4, batch.getValue(1, batch.getRowIndex(0)));
+        assertEquals(22, batch.getValue(1, batch.getRowIndex(9)));
+
+        assertTrue(dataSet.next());
+        assertEquals(24, dataSet.getRow().getValue(1));
+        dataSet.close();
+    }
+
+    public void testSubBatch() throws Exception {
+        final RowBatch batch = RowBatch.read(new InMemoryDataSet(header, createRows(10)), 10);
+        final RowBatch filtered = batch.withSelection(new int[] { 1, 3, 5, 7, 9 }, 4);
+        assertEquals(4, filtered.getRowCount());
+        assertEquals("[1, 3, 5, 7]", Arrays.toString(filtered.copySelection()));
+
+        final RowBatch subBatch = filtered.subBatch(1, 10);
+        assertEquals(3, subBatch.getRowCount());
+        assertEquals(3, subBatch.getRowIndex(0));
+        assertEquals(7, subBatch.getValue(1, subBatch.getRowIndex(2)));
+        assertSame(filtered, filtered.subBatch(0, 4));
+    }
+}
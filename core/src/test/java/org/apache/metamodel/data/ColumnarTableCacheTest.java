@@ -0,0 +1,137 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.data;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.metamodel.MetaModelHelper;
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.MutableColumn;
+
+import junit.framework.TestCase;
+
+public class ColumnarTableCacheTest extends TestCase {
+
+    private Column[] columns = new Column[] { new MutableColumn("str"), new MutableColumn("int"),
+            new MutableColumn("dbl"), new MutableColumn("bool"), new MutableColumn("mixed") };
+    private DataSetHeader header = new SimpleDataSetHeader(MetaModelHelper.createSelectItems(columns));
+
+    private List<Row> createRows(int count) {
+        List<Row> rows = new ArrayList<Row>();
+        for (int i = 0; i < count; i++) {
+            Object mixed = (i % 3 == 0 ? new Date(i) : "m" + i);
+            Object[] values = new Object[] { "s" + (i % 5), i, i / 2.0, i % 2 == 0, mixed };
+            if (i % 7 == 0) {
+                values[i % 5] = null;
+            }
+            rows.add(new DefaultRow(header, values));
+        }
+        return rows;
+    }
+
+    public void testBuildAndRead() throws Exception {
+        List<Row> rows = createRows(3000);
+        ColumnarTable table = ColumnarTable.build(columns, new InMemoryDataSet(header, rows), -1);
+        assertEquals(3000, table.getRowCount());
+        assertTrue(table.getEstimatedSize() > 0);
+
+        DataSet ds = table.toDataSet(columns);
+        int i = 0;
+        while (ds.next()) {
+            assertEquals(rows.get(i).toString(), ds.getRow().toString());
+            i++;
+        }
+        ds.close();
+        assertEquals(3000, i);
+
+        ds = table.toDataSet(new Column[] { columns[3], columns[0] });
+        assertTrue(ds.next());
+        assertEquals("Row[values=[true, null]]", ds.getRow().toString());
+        assertTrue(ds.next());
+        assertEquals("Row[values=[false, s1]]", ds.getRow().toString());
+        ds.close();
+    }
+
+    public void testBuildTooLarge() throws Exception {
+        assertNull(ColumnarTable.build(columns, new InMemoryDataSet(header, createRows(3000)), 1000));
+    }
+
+    public void testToDataSetWithUnknownColumn() throws Exception {
+        ColumnarTable table = ColumnarTable.build(columns, new InMemoryDataSet(header, createRows(10)), -1);
+        try {
+            table.toDataSet(new Column[] { new MutableColumn("foo") });
+            fail("Exception expected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Column is not part of columnar table: "));
+        }
+    }
+
+    public void testCacheVersionsAndEviction() throws Exception {
+        ColumnarTable table1 = ColumnarTable.build(columns, new InMemoryDataSet(header, createRows(100)), -1);
+        ColumnarTable table2 = ColumnarTable.build(columns, new InMemoryDataSet(header, createRows(100)), -1);
+        ColumnarTableCache cache = new ColumnarTableCache(table1.getEstimatedSize() + table2.getEstimatedSize() / 2);
+
+        assertNull(cache.get("t1", 1));
+        cache.put("t1", 1, table1);
+        assertSame(table1, cache.get("t1", 1));
+        assertNull(cache.get("t1", 2));
+        assertEquals(0, cache.getTableCount());
+
+        cache.put("t1", 2, table1);
+        cache.put("t2", 1, table2);
+        assertEquals(1, cache.getTableCount());
+        assertNull(cache.get("t1", 2));
+        assertSame(table2, cache.get("t2", 1));
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(table2.getEstimatedSize(), cache.getEstimatedSize());
+
+        cache.invalidate("t2");
+        assertEquals(0, cache.getTableCount());
+        assertEquals(0, cache.getEstimatedSize());
+    }
+
+    public void testMarkTooLarge() throws Exception {
+        ColumnarTable table = ColumnarTable.build(columns, new InMemoryDataSet(header, createRows(100)), -1);
+        ColumnarTableCache cache = new ColumnarTableCache(table.getEstimatedSize());
+
+        assertFalse(cache.isTooLarge("t1", 1));
+        cache.markTooLarge("t1", 1);
+        assertTrue(cache.isTooLarge("t1", 1));
+        assertNull(cache.get("t1", 1));
+        assertEquals(0, cache.getTableCount());
+        assertEquals(0, cache.getEstimatedSize());
+
+        // a new version may fit into the cache
+        assertFalse(cache.isTooLarge("t1", 2));
+        assertNull(cache.get("t1", 2));
+        assertFalse(cache.isTooLarge("t1", 1));
+        cache.put("t1", 2, table);
+        assertSame(table, cache.get("t1", 2));
+
+        ColumnarTable largeTable = ColumnarTable.build(columns, new InMemoryDataSet(header, createRows(200)), -1);
+        cache.put("t2", 1, largeTable);
+        assertTrue(cache.isTooLarge("t2", 1));
+        assertSame(table, cache.get("t1", 2));
+    }
+}
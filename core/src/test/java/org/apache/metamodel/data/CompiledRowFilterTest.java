@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.LogicalOperator;
+import org.apache.metamodel.query.OperatorType;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.ColumnType;
+import org.apache.metamodel.schema.MutableColumn;
+
+public class CompiledRowFilterTest extends TestCase {
+
+    private static final Object[] VALUES = { null, 1, 2L, 1.5, -3, "1", "2.0", "abc", "abd", "", "true", "FALSE",
+            "yes", true, false, new Date(1000), new Date(2000) };
+
+    private static final OperatorType[] OPERATORS = { OperatorType.EQUALS_TO, OperatorType.DIFFERENT_FROM,
+            OperatorType.GREATER_THAN, OperatorType.GREATER_THAN_OR_EQUAL, OperatorType.LESS_THAN,
+            OperatorType.LESS_THAN_OR_EQUAL };
+
+    private final SelectItem item1 = new SelectItem(new MutableColumn("foo", ColumnType.VARCHAR));
+    private final SelectItem item2 = new SelectItem(new MutableColumn("bar", ColumnType.OTHER));
+    private final DataSetHeader header = new SimpleDataSetHeader(new SelectItem[] { item1, item2 });
+
+    public void testComparisonsAgainstConstants() throws Exception {
+        for (OperatorType operator : OPERATORS) {
+            for (Object operand : VALUES) {
+                if (operand == null && operator != OperatorType.EQUALS_TO
+                        && operator != OperatorType.DIFFERENT_FROM) {
+                    continue;
+                }
+                assertSameResults(new FilterItem(item2, operator, operand));
+            }
+        }
+    }
+
+    public void testComparisonsBetweenValues() throws Exception {
+        for (OperatorType operator : OPERATORS) {
+            assertSameResults(new FilterItem(item1, operator, item2));
+        }
+    }
+
+    public void testLikeAndIn() throws Exception {
+        assertSameResults(new FilterItem(item1, OperatorType.LIKE, "ab%"));
+        assertSameResults(new FilterItem(item1, OperatorType.LIKE, "%b%"));
+        assertSameResults(new FilterItem(item1, OperatorType.LIKE, "abc"));
+        assertSameResults(new FilterItem(item2, OperatorType.IN, new Object[] { 1, "abc", true }));
+        assertSameResults(new FilterItem(item2, OperatorType.IN, Arrays.asList("1", 2L)));
+    }
+
+    public void testCompoundFilters() throws Exception {
+        final FilterItem or = new FilterItem(new FilterItem(item1, OperatorType.LIKE, "a%"), new FilterItem(item2,
+                OperatorType.GREATER_THAN, 1));
+        assertSameResults(or);
+        assertSameResults(new FilterItem(LogicalOperator.AND, or, new FilterItem(item2, OperatorType.DIFFERENT_FROM,
+                null)));
+    }
+
+    public void testExpressionFilterIsNotCompiled() throws Exception {
+        final FilterItem filterItem = new FilterItem("foo > 1");
+        assertSame(filterItem, CompiledRowFilter.compile(filterItem));
+    }
+
+    public void testRowsWithDifferentHeaders() throws Exception {
+        final IRowFilter filter = CompiledRowFilter.compile(new FilterItem(item2, OperatorType.EQUALS_TO, "x"));
+        final DataSetHeader reversedHeader = new SimpleDataSetHeader(new SelectItem[] { item2, item1 });
+
+        assertTrue(filter.accept(new DefaultRow(header, new Object[] { "y", "x" })));
+        assertTrue(filter.accept(new DefaultRow(reversedHeader, new Object[] { "x", "y" })));
+        assertFalse(filter.accept(new DefaultRow(header, new Object[] { "x", "y" })));
+    }
+
+    private void assertSameResults(FilterItem filterItem) {
+        final IRowFilter compiledFilter = CompiledRowFilter.compile(filterItem);
+        assertTrue(compiledFilter instanceof CompiledRowFilter);
+
+        for (Row row : createRows()) {
+            String expected;
+            try {
+                expected = String.valueOf(filterItem.evaluate(row));
+            } catch (RuntimeException e) {
+                expected = e.getClass().getName();
+            }
+            String actual;
+            try {
+                actual = String.valueOf(compiledFilter.accept(row));
+            } catch (RuntimeException e) {
+                actual = e.getClass().getName();
+            }
+            if (!expected.equals(actual)) {
+                fail("Filter " + filterItem.getOperator() + " " + filterItem.getOperand() + " on " + row
+                        + ", expected " + expected + " but was " + actual);
+            }
+        }
+    }
+
+    private List<Row> createRows() {
+        final List<Row> rows = new ArrayList<Row>();
+        for (Object value1 : VALUES) {
+            if (value1 instanceof String || value1 == null) {
+                for (Object value2 : VALUES) {
+                    rows.add(new DefaultRow(header, new Object[] { value1, value2 }));
+                }
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.metamodel.MetaModelHelper;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.MutableColumn;
+
+import junit.framework.TestCase;
+
+public class ExternalSortStrategyTest extends TestCase {
+
+    private SelectItem[] items = new SelectItem[] { new SelectItem(new MutableColumn("key")),
+            new SelectItem(new MutableColumn("value")) };
+    private DataSetHeader header = new SimpleDataSetHeader(items);
+
+    private Comparator<Row> keyComparator = new Comparator<Row>() {
+        @Override
+        public int compare(Row o1, Row o2) {
+            return ((Integer) o1.getValue(0)).compareTo((Integer) o2.getValue(0));
+        }
+    };
+
+    private List<Row> createRows(int count) {
+        List<Row> rows = new ArrayList<Row>();
+        for (int i = 0; i < count; i++) {
+            Object value;
+            switch (i % 4) {
+            case 0:
+                value = "str" + i;
+                break;
+            case 1:
+                value = (long) i;
+                break;
+            case 2:
+                value = new Date(i);
+                break;
+            default:
+                value = null;
+            }
+            rows.add(new DefaultRow(header, new Object[] { (i * 7) % 10, value }));
+        }
+        return rows;
+    }
+
+    public void testSortInMemory() throws Exception {
+        List<Row> rows = createRows(20);
+        DataSet ds = new ExternalSortStrategy(100).sort(new InMemoryDataSet(header, new ArrayList<Row>(rows)),
+                keyComparator);
+        assertTrue(ds instanceof InMemoryDataSet);
+        assertSorted(rows, ds);
+    }
+
+    public void testSortWithSpilledRuns() throws Exception {
+        List<Row> rows = createRows(103);
+        DataSet ds = new ExternalSortStrategy(10).sort(new InMemoryDataSet(header, new ArrayList<Row>(rows)),
+                keyComparator);
+        assertFalse(ds instanceof InMemoryDataSet);
+        assertSorted(rows, ds);
+    }
+
+    public void testSortWithIntermediateMergePasses() throws Exception {
+        List<Row> rows = createRows(1003);
+        DataSet ds = new ExternalSortStrategy(10, 3).sort(new InMemoryDataSet(header, new ArrayList<Row>(rows)),
+                keyComparator);
+        assertSorted(rows, ds);
+    }
+
+    public void testSortRetainsStyles() throws Exception {
+        Style style = new StyleBuilder().bold().create();
+        List<Row> rows = new ArrayList<Row>();
+        for (int i = 0; i < 25; i++) {
+            Style[] styles = new Style[] { Style.NO_STYLE, i % 5 == 0 ? style : Style.NO_STYLE };
+            rows.add(new DefaultRow(header, new Object[] { (i * 7) % 10, "v" + i }, styles));
+        }
+
+        List<Row> result = new ExternalSortStrategy(4, 2).sort(new InMemoryDataSet(header, rows), keyComparator)
+                .toRows();
+        assertEquals(25, result.size());
+        for (Row row : result) {
+            int i = Integer.parseInt(((String) row.getValue(1)).substring(1));
+            assertEquals(i % 5 == 0 ? style : Style.NO_STYLE, row.getStyle(1));
+            assertEquals(Style.NO_STYLE, row.getStyle(0));
+        }
+    }
+
+    public void testSortEmpty() throws Exception {
+        DataSet ds = new ExternalSortStrategy(10).sort(new EmptyDataSet(header), keyComparator);
+        assertFalse(ds.next());
+        ds.close();
+    }
+
+    public void testDistinctWithSpilledRuns() throws Exception {
+        List<Row> rows = new ArrayList<Row>();
+        for (int i = 0; i < 50; i++) {
+            rows.add(new DefaultRow(header, new Object[] { i % 7, i % 2 == 0 ? "1" : 1 }));
+        }
+
+        DataSet ds = MetaModelHelper.getDistinct(new InMemoryDataSet(header, rows), new ExternalSortStrategy(8));
+        List<Row> result = ds.toRows();
+        assertEquals(14, result.size());
+        for (int i = 0; i < result.size(); i++) {
+            assertEquals(i / 2, result.get(i).getValue(0));
+        }
+    }
+
+    private void assertSorted(List<Row> rows, DataSet ds) {
+        // the expected result of a stable sort
+        List<Row> expected = new ArrayList<Row>(rows);
+        Collections.sort(expected, keyComparator);
+
+        List<Row> result = ds.toRows();
+        ds.close();
+        assertEquals(expected.size(), result.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), result.get(i));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.query;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+import org.apache.metamodel.schema.ColumnType;
+import org.apache.metamodel.schema.MutableColumn;
+
+public class LinePrefilterTest extends TestCase {
+
+    private final SelectItem nameItem = new SelectItem(new MutableColumn("name", ColumnType.VARCHAR));
+    private final SelectItem cityItem = new SelectItem(new MutableColumn("city", ColumnType.VARCHAR));
+
+    public void testEqualsAndIn() throws Exception {
+        final LinePrefilter prefilter = LinePrefilter.create(Arrays.asList(new FilterItem(nameItem,
+                OperatorType.EQUALS_TO, "bob"), new FilterItem(cityItem, OperatorType.IN, new String[] { "Paris",
+                "Rome" })));
+
+        assertTrue(prefilter.accept("1,bob,Paris"));
+        assertTrue(prefilter.accept("2,bob,Rome"));
+        assertFalse(prefilter.accept("3,bob,London"));
+        assertFalse(prefilter.accept("4,alice,Paris"));
+    }
+
+    public void testLike() throws Exception {
+        final LinePrefilter prefilter = LinePrefilter.create(Collections.singletonList(new FilterItem(nameItem,
+                OperatorType.LIKE, "%ob%by")));
+
+        assertTrue(prefilter.accept("1,bobby"));
+        assertTrue(prefilter.accept("1,hobo,baby"));
+        assertFalse(prefilter.accept("1,bob"));
+    }
+
+    public void testCompoundFilters() throws Exception {
+        final FilterItem or = new FilterItem(new FilterItem(nameItem, OperatorType.EQUALS_TO, "bob"), new FilterItem(
+                cityItem, OperatorType.EQUALS_TO, "Paris"));
+        final FilterItem and = new FilterItem(LogicalOperator.AND, or, new FilterItem(nameItem, OperatorType.LIKE,
+                "%o%"));
+        final LinePrefilter prefilter = LinePrefilter.create(Collections.singletonList(and));
+
+        assertTrue(prefilter.accept("1,bob,London"));
+        assertTrue(prefilter.accept("2,tom,Paris"));
+        assertFalse(prefilter.accept("3,jim,Berlin"));
+        assertFalse(prefilter.accept("4,tom,Rome"));
+    }
+
+    public void testEncodingCharsAcceptLine() throws Exception {
+        final LinePrefilter prefilter = LinePrefilter.create(
+                Collections.singletonList(new FilterItem(nameItem, OperatorType.EQUALS_TO, "bob")), '"', '\\');
+
+        assertFalse(prefilter.accept("1,alice"));
+        assertTrue(prefilter.accept("1,\"b\\ob\""));
+    }
+
+    public void testUnsupportedFilters() throws Exception {
+        assertNull(LinePrefilter.create(Collections.<FilterItem> emptyList()));
+        assertNull(LinePrefilter.create(Collections.singletonList(new FilterItem(nameItem,
+                OperatorType.GREATER_THAN, "bob"))));
+        assertNull(LinePrefilter.create(Collections.singletonList(new FilterItem(nameItem,
+                OperatorType.EQUALS_TO, 42))));
+        assertNull(LinePrefilter.create(Collections.singletonList(new FilterItem(nameItem,
+                OperatorType.EQUALS_TO, null))));
+        // booleans are not compared literally
+        assertNull(LinePrefilter.create(Collections.singletonList(new FilterItem(nameItem,
+                OperatorType.EQUALS_TO, "true"))));
+        assertNull(LinePrefilter.create(Collections.singletonList(new FilterItem(new FilterItem(nameItem,
+                OperatorType.EQUALS_TO, "bob"), new FilterItem(nameItem, OperatorType.DIFFERENT_FROM, "alice")))));
+    }
+}
@@ -31,12 +31,16 @@ import java.net.URL;
 import java.util.List;
 
 import org.apache.metamodel.MetaModelException;
+import org.apache.metamodel.MetaModelHelper;
 import org.apache.metamodel.QueryPostprocessDataContext;
 import org.apache.metamodel.UpdateScript;
 import org.apache.metamodel.UpdateableDataContext;
 import org.apache.metamodel.data.DataSet;
 import org.apache.metamodel.data.EmptyDataSet;
 import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.LinePrefilter;
+import org.apache.metamodel.query.Query;
+import org.apache.metamodel.query.SelectItem;
 import org.apache.metamodel.schema.Column;
 import org.apache.metamodel.schema.Table;
 import org.apache.metamodel.util.FileHelper;
@@ -48,7 +52,6 @@ import org.apache.metamodel.util.UrlResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import au.com.bytecode.opencsv.CSVParser;
 import au.com.bytecode.opencsv.CSVReader;
 
 /**
@@ -63,6 +66,10 @@ public final class CsvDataContext extends QueryPostprocessDataContext implements
     private final Resource _resource;
     private final CsvConfiguration _configuration;
     private final boolean _writable;
+    private volatile int _parallelScanThreads = 1;
+    private volatile boolean _parallelScanOrdered = true;
+    private final ThreadLocal<Boolean> _orderedScanRequired = new ThreadLocal<Boolean>();
+    private volatile RecordCount _cachedRecordCount;
 
     /**
      * Constructs a CSV DataContext based on a file
@@ -228,6 +235,78 @@ public final class CsvDataContext extends QueryPostprocessDataContext implements
         return _resource;
     }
 
+    /**
+     * Enables or disables parallel scanning of the CSV file. When enabled, full
+     * scans of large, single-line CSV files are split into chunks which are
+     * read and parsed by a number of threads. Parallel scanning requires that
+     * the resource is a {@link FileResource}, that multiline values are
+     * disabled in the configuration, and that the encoding represents line
+     * breaks as single bytes (eg. UTF-8 or ISO-8859-1).
+     * 
+     * @param threads
+     *            the number of threads to scan with, or 1 to disable
+     *            parallel scanning
+     * @param ordered
+     *            whether rows should be returned in the order of the file. If
+     *            false, rows are returned as soon as they are parsed, which
+     *            is faster but only appropriate when the order of rows does
+     *            not matter, eg. for aggregations or ordered queries. Queries
+     *            which are paged but not ordered are always scanned in the
+     *            order of the file, since otherwise the rows they return would
+     *            be arbitrary.
+     */
+    public void setParallelScan(int threads, boolean ordered) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be a positive number, was: " + threads);
+        }
+        _parallelScanThreads = threads;
+        _parallelScanOrdered = ordered;
+    }
+
+    /**
+     * Gets the number of threads used for scanning the CSV file.
+     * 
+     * @return
+     * 
+     * @see #setParallelScan(int, boolean)
+     */
+    public int getParallelScanThreads() {
+        return _parallelScanThreads;
+    }
+
+    /**
+     * Determines if parallel scans return rows in the order of the file.
+     * 
+     * @return
+     * 
+     * @see #setParallelScan(int, boolean)
+     */
+    public boolean isParallelScanOrdered() {
+        return _parallelScanOrdered;
+    }
+
+    @Override
+    public DataSet executeQuery(Query query) {
+        final Boolean previous = _orderedScanRequired.get();
+        final boolean pagedWithoutOrdering = (query.getFirstRow() != null || query.getMaxRows() != null)
+                && query.getOrderByClause().getItems().isEmpty();
+        _orderedScanRequired.set(Boolean.TRUE.equals(previous) || pagedWithoutOrdering);
+        try {
+            return super.executeQuery(query);
+        } finally {
+            if (previous == null) {
+                _orderedScanRequired.remove();
+            } else {
+                _orderedScanRequired.set(previous);
+            }
+        }
+    }
+
+    @Override
+    protected Resource getTableResource(Table table) {
+        return _resource;
+    }
+
     private static File createFileFromInputStream(InputStream inputStream, String encoding) {
         final File file;
         final File tempDir = FileHelper.getTempDir();
@@ -271,14 +350,14 @@ public final class CsvDataContext extends QueryPostprocessDataContext implements
 
     @Override
     protected Number executeCountQuery(Table table, List<FilterItem> whereItems, boolean functionApproximationAllowed) {
-        if (!functionApproximationAllowed) {
-            return null;
-        }
-        
         if (whereItems != null && !whereItems.isEmpty()) {
             return null;
         }
-        
+
+        if (!functionApproximationAllowed) {
+            return countRecords();
+        }
+
         final long length = _resource.getSize();
         if (length < 0) {
             // METAMODEL-30: Sometimes the size of the resource is not known
@@ -334,6 +413,36 @@ public final class CsvDataContext extends QueryPostprocessDataContext implements
         });
     }
 
+    /**
+     * Counts the records of the CSV resource exactly, by scanning it for
+     * record boundaries. The count is cached as long as the last modified
+     * timestamp and the size of the resource are unchanged.
+     * 
+     * @return the number of records, or null if the records cannot be counted
+     *         without parsing them
+     */
+    private Long countRecords() {
+        if (_configuration.isFailOnInconsistentRowLength()) {
+            // the records need to be parsed to validate their length
+            return null;
+        }
+
+        final long lastModified = _resource.getLastModified();
+        final long size = _resource.getSize();
+        final RecordCount cachedRecordCount = _cachedRecordCount;
+        if (cachedRecordCount != null && lastModified != -1 && cachedRecordCount.lastModified == lastModified
+                && cachedRecordCount.size == size) {
+            logger.debug("Using cached record count of {}: {}", _resource, cachedRecordCount.count);
+            return cachedRecordCount.count;
+        }
+
+        final long count = CsvRecordCounter.countRecords(_resource, _configuration);
+        if (lastModified != -1) {
+            _cachedRecordCount = new RecordCount(lastModified, size, count);
+        }
+        return count;
+    }
+
     private Reader getReader(byte[] byteBuffer, String encoding) throws UnsupportedEncodingException {
         try {
             return new InputStreamReader(new ByteArrayInputStream(byteBuffer), encoding);
@@ -348,11 +457,66 @@ public final class CsvDataContext extends QueryPostprocessDataContext implements
         }
     }
 
+    @Override
+    protected DataSet materializeMainSchemaTable(Table table, List<SelectItem> selectItems, List<FilterItem> whereItems,
+            int firstRow, int maxRows) {
+        final LinePrefilter linePrefilter = createLinePrefilter(whereItems);
+        if (linePrefilter == null) {
+            return super.materializeMainSchemaTable(table, selectItems, whereItems, firstRow, maxRows);
+        }
+
+        final List<SelectItem> workingSelectItems = buildWorkingSelectItems(selectItems, whereItems);
+        final Column[] columns = new Column[workingSelectItems.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = workingSelectItems.get(i).getColumn();
+        }
+
+        DataSet dataSet = materializeMainSchemaTable(table, columns, -1, linePrefilter);
+        dataSet = MetaModelHelper.getSelection(workingSelectItems, dataSet);
+        dataSet = MetaModelHelper.getFiltered(dataSet, whereItems);
+        dataSet = MetaModelHelper.getPaged(dataSet, firstRow, maxRows);
+        dataSet = MetaModelHelper.getSelection(selectItems, dataSet);
+        return dataSet;
+    }
+
+    /**
+     * Creates a prefilter which allows lines that cannot match the WHERE items
+     * of a query to be skipped before they are parsed.
+     * 
+     * @param whereItems
+     * @return a line prefilter, or null if the lines cannot be prefiltered
+     */
+    private LinePrefilter createLinePrefilter(List<FilterItem> whereItems) {
+        if (whereItems.isEmpty() || _configuration.isMultilineValues()) {
+            return null;
+        }
+        if (_configuration.isFailOnInconsistentRowLength()) {
+            // all lines need to be parsed to validate their length
+            return null;
+        }
+        return LinePrefilter.create(whereItems, _configuration.getQuoteChar(), _configuration.getEscapeChar());
+    }
+
     @Override
     public DataSet materializeMainSchemaTable(Table table, Column[] columns, int maxRows) {
+        return materializeMainSchemaTable(table, columns, maxRows, null);
+    }
+
+    private DataSet materializeMainSchemaTable(Table table, Column[] columns, int maxRows, LinePrefilter linePrefilter) {
         final int lineNumber = _configuration.getColumnNameLineNumber();
         final int columnCount = table.getColumnCount();
 
+        // parallel scans are only worth while when the whole file is read
+        final int parallelScanThreads = _parallelScanThreads;
+        if (maxRows <= 0 && parallelScanThreads > 1 && _resource instanceof FileResource) {
+            final File file = ((FileResource) _resource).getFile();
+            if (ParallelCsvDataSet.isApplicable(file, _configuration, parallelScanThreads)) {
+                final boolean ordered = _parallelScanOrdered || Boolean.TRUE.equals(_orderedScanRequired.get());
+                return new ParallelCsvDataSet(file, _configuration, columns, columnCount, parallelScanThreads,
+                        ordered, linePrefilter);
+            }
+        }
+
         final BufferedReader reader = FileHelper.getBufferedReader(_resource.read(), _configuration.getEncoding());
 
         try {
@@ -369,19 +533,15 @@ public final class CsvDataContext extends QueryPostprocessDataContext implements
             throw new MetaModelException("IOException occurred while reading from CSV resource: " + _resource, e);
         }
 
-        final boolean failOnInconsistentRowLength = _configuration.isFailOnInconsistentRowLength();
-
         final Integer maxRowsOrNull = (maxRows > 0 ? maxRows : null);
 
         if (_configuration.isMultilineValues()) {
             final CSVReader csvReader = createCsvReader(reader);
-            return new CsvDataSet(csvReader, columns, maxRowsOrNull, columnCount, failOnInconsistentRowLength);
+            return new CsvDataSet(csvReader, columns, maxRowsOrNull, columnCount,
+                    _configuration.isFailOnInconsistentRowLength());
         }
 
-        final CSVParser csvParser = new CSVParser(_configuration.getSeparatorChar(), _configuration.getQuoteChar(),
-                _configuration.getEscapeChar());
-        return new SingleLineCsvDataSet(reader, csvParser, columns, maxRowsOrNull, columnCount,
-                failOnInconsistentRowLength);
+        return new SingleLineCsvDataSet(reader, _configuration, columns, maxRowsOrNull, columnCount, linePrefilter);
     }
 
     protected CSVReader createCsvReader(int skipLines) {
@@ -431,7 +591,21 @@ public final class CsvDataContext extends QueryPostprocessDataContext implements
                 update.run(callback);
             } finally {
                 callback.close();
+                invalidateTableCache();
+                _cachedRecordCount = null;
             }
         }
     }
+
+    private static final class RecordCount {
+        final long lastModified;
+        final long size;
+        final long count;
+
+        RecordCount(long lastModified, long size, long count) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.count = count;
+        }
+    }
 }
\ No newline at end of file
@@ -22,17 +22,21 @@ import java.io.IOException;
 
 import org.apache.metamodel.MetaModelException;
 import org.apache.metamodel.data.AbstractDataSet;
+import org.apache.metamodel.data.BatchDataSet;
+import org.apache.metamodel.data.DataSetHeader;
 import org.apache.metamodel.data.DefaultRow;
 import org.apache.metamodel.data.Row;
+import org.apache.metamodel.data.RowBatch;
 import org.apache.metamodel.schema.Column;
 import org.apache.metamodel.util.FileHelper;
 
 import au.com.bytecode.opencsv.CSVReader;
 
 /**
- * Streaming DataSet implementation for CSV support
+ * Streaming DataSet implementation for CSV support. Lines can also be read in
+ * batches, in which case the values are put directly into column arrays.
  */
-final class CsvDataSet extends AbstractDataSet {
+final class CsvDataSet extends AbstractDataSet implements BatchDataSet {
 
     private final CSVReader _reader;
     private final boolean _failOnInconsistentRowLength;
@@ -40,6 +44,8 @@ final class CsvDataSet extends AbstractDataSet {
     private volatile int _rowNumber;
     private volatile Integer _rowsRemaining;
     private volatile Row _row;
+    private InconsistentRowLengthException _pendingException;
+    private volatile boolean _closed;
 
     public CsvDataSet(CSVReader reader, Column[] columns, Integer maxRows, int columnsInTable,
             boolean failOnInconsistentRowLength) {
@@ -54,6 +60,7 @@ final class CsvDataSet extends AbstractDataSet {
     @Override
     public void close() {
         FileHelper.safeClose(_reader);
+        _closed = true;
         _row = null;
         _rowsRemaining = null;
     }
@@ -82,24 +89,108 @@ final class CsvDataSet extends AbstractDataSet {
         }
     }
 
-    private boolean nextInternal() {
-        if (_reader == null) {
-            return false;
+    @Override
+    public boolean isBatchNative() {
+        return true;
+    }
+
+    @Override
+    public RowBatch nextBatch(int maxRows) {
+        _row = null;
+        if (_pendingException != null) {
+            final InconsistentRowLengthException exception = _pendingException;
+            _pendingException = null;
+            throw exception;
         }
-        final String[] csvValues;
-        try {
-            csvValues = _reader.readNext();
-        } catch (IOException e) {
-            throw new IllegalStateException("Exception reading from file", e);
+
+        int rowsToRead = maxRows;
+        if (_rowsRemaining != null) {
+            rowsToRead = Math.min(rowsToRead, _rowsRemaining);
         }
-        if (csvValues == null) {
-            close();
-            return false;
+
+        final DataSetHeader header = getHeader();
+        final int size = header.size();
+        final int[] columnNumbers = new int[size];
+        for (int i = 0; i < size; i++) {
+            columnNumbers[i] = header.getSelectItem(i).getColumn().getColumnNumber();
         }
+        final int capacity = Math.max(0, Math.min(rowsToRead, DEFAULT_BATCH_SIZE));
+        final Object[][] columns = new Object[size][capacity];
 
-        if (csvValues.length == 1 && "".equals(csvValues[0])) {
-            // blank line - move to next line
-            return nextInternal();
+        int rowCount = 0;
+        while (rowCount < capacity) {
+            final String[] csvValues = readLine();
+            if (csvValues == null) {
+                break;
+            }
+            for (int i = 0; i < size; i++) {
+                final int columnNumber = columnNumbers[i];
+                if (columnNumber < csvValues.length) {
+                    columns[i][rowCount] = csvValues[columnNumber];
+                }
+            }
+
+            if (_failOnInconsistentRowLength) {
+                _rowNumber++;
+                if (_columnsInTable != csvValues.length) {
+                    final Object[] rowValues = new Object[size];
+                    for (int i = 0; i < size; i++) {
+                        rowValues[i] = columns[i][rowCount];
+                    }
+                    final InconsistentRowLengthException exception = new InconsistentRowLengthException(
+                            _columnsInTable, new DefaultRow(header, rowValues), csvValues, _rowNumber);
+                    if (rowCount == 0) {
+                        throw exception;
+                    }
+                    // hand out the rows before the inconsistent row first
+                    _pendingException = exception;
+                    break;
+                }
+            }
+            rowCount++;
+        }
+
+        if (_rowsRemaining != null) {
+            _rowsRemaining = _rowsRemaining - rowCount;
+        }
+        if (rowCount == 0) {
+            return null;
+        }
+        return new RowBatch(header, columns, rowCount);
+    }
+
+    /**
+     * Reads the next non-blank line.
+     * 
+     * @return the values of the line, or null if there are no more lines
+     */
+    private String[] readLine() {
+        if (_reader == null || _closed) {
+            return null;
+        }
+        while (true) {
+            final String[] csvValues;
+            try {
+                csvValues = _reader.readNext();
+            } catch (IOException e) {
+                throw new IllegalStateException("Exception reading from file", e);
+            }
+            if (csvValues == null) {
+                close();
+                return null;
+            }
+            if (csvValues.length == 1 && "".equals(csvValues[0])) {
+                // blank line - move to next line
+                continue;
+            }
+            return csvValues;
+        }
+    }
+
+    private boolean nextInternal() {
+        final String[] csvValues = readLine();
+        if (csvValues == null) {
+            return false;
         }
 
         final int size = getHeader().size();
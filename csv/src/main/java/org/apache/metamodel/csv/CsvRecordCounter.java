@@ -0,0 +1,383 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.csv;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import org.apache.metamodel.MetaModelException;
+import org.apache.metamodel.util.FileHelper;
+import org.apache.metamodel.util.FileResource;
+import org.apache.metamodel.util.Resource;
+
+/**
+ * Counts the records of a CSV resource without parsing them into rows.
+ *
+ * The counter mimics the way the CSV DataContext reads records: the column
+ * header lines are skipped, blank records are ignored and, when multiline
+ * values are enabled, newlines within quoted values do not end a record.
+ *
+ * When the encoding allows it (eg. UTF-8 or a single byte encoding), the raw
+ * bytes of the resource are scanned using a large direct buffer, otherwise the
+ * resource is decoded and scanned char by char.
+ */
+final class CsvRecordCounter {
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private static final int END_OF_LINE = -1;
+    private static final int NO_CHAR = -2;
+
+    private static final int PENDING_NONE = 0;
+    private static final int PENDING_ESCAPE = 1;
+    private static final int PENDING_QUOTE = 2;
+
+    private final boolean _multilineValues;
+    private final int _separatorChar;
+    private final int _quoteChar;
+    private final int _escapeChar;
+
+    private int _headerLinesRemaining;
+    private long _recordCount;
+    private boolean _previousCarriageReturn;
+
+    // state of the current line
+    private int _lineLength;
+    private int _previousChar;
+
+    // state of the current record (multiline values only)
+    private boolean _inQuotes;
+    private boolean _recordHasContent;
+    private boolean _recordContinued;
+    private int _recordSeparators;
+    private boolean _firstValueHasContent;
+    private int _pending;
+    private boolean _pendingQuoteInQuotes;
+    private int _pendingQuotePosition;
+    private int _pendingQuotePreviousChar;
+
+    /**
+     * Counts the records of a CSV resource.
+     *
+     * @param resource
+     * @param configuration
+     * @return the number of records in the resource
+     */
+    public static long countRecords(Resource resource, CsvConfiguration configuration) {
+        final CsvRecordCounter counter = new CsvRecordCounter(configuration);
+        try {
+            final int bytesToSkip = getBytesToSkip(resource, configuration);
+            if (bytesToSkip == -1) {
+                counter.countChars(resource, configuration.getEncoding());
+            } else if (resource instanceof FileResource) {
+                counter.countBytes((FileResource) resource, bytesToSkip);
+            } else {
+                counter.countBytes(resource, bytesToSkip);
+            }
+        } catch (IOException e) {
+            throw new MetaModelException("Could not count records of CSV resource: " + resource, e);
+        }
+        return counter.getRecordCount();
+    }
+
+    /**
+     * Determines if the raw bytes of a resource can be scanned, and if so, how
+     * many bytes (of a byte order mark) to skip.
+     *
+     * @return the number of bytes to skip, or -1 if the resource needs to be
+     *         decoded to be scanned
+     */
+    private static int getBytesToSkip(Resource resource, CsvConfiguration configuration) throws IOException {
+        final String encoding = configuration.getEncoding();
+        final Charset charset;
+        try {
+            charset = Charset.forName(encoding);
+        } catch (RuntimeException e) {
+            return -1;
+        }
+
+        // line breaks (and the special chars) must be single bytes which
+        // never occur inside other characters
+        if (!"UTF-8".equals(charset.name()) && charset.newEncoder().maxBytesPerChar() != 1.0f) {
+            return -1;
+        }
+        if (!isAsciiByte("\n", charset) || !isAsciiByte("\r", charset)) {
+            return -1;
+        }
+        if (configuration.isMultilineValues()) {
+            for (char c : new char[] { configuration.getSeparatorChar(), configuration.getQuoteChar(),
+                    configuration.getEscapeChar() }) {
+                if (c != CsvConfiguration.NOT_A_CHAR && !isAsciiByte(String.valueOf(c), charset)) {
+                    return -1;
+                }
+            }
+        }
+
+        // byte order marks may change the encoding, see FileHelper.getReader()
+        final byte[] bom = new byte[4];
+        final InputStream in = resource.read();
+        try {
+            int read = 0;
+            while (read < bom.length) {
+                final int n = in.read(bom, read, bom.length - read);
+                if (n == -1) {
+                    break;
+                }
+                read += n;
+            }
+        } finally {
+            FileHelper.safeClose(in);
+        }
+        if ((bom[0] == (byte) 0xFE && bom[1] == (byte) 0xFF) || (bom[0] == (byte) 0xFF && bom[1] == (byte) 0xFE)
+                || (bom[0] == 0x00 && bom[1] == 0x00 && bom[2] == (byte) 0xFE && bom[3] == (byte) 0xFF)) {
+            return -1;
+        }
+        if (bom[0] == (byte) 0xEF && bom[1] == (byte) 0xBB && bom[2] == (byte) 0xBF
+                && encoding.toLowerCase().indexOf("utf") != -1) {
+            return 3;
+        }
+        return 0;
+    }
+
+    private static boolean isAsciiByte(String str, Charset charset) {
+        final byte[] bytes = str.getBytes(charset);
+        return bytes.length == 1 && bytes[0] == str.charAt(0) && bytes[0] >= 0;
+    }
+
+    private static int toInt(char c) {
+        if (c == CsvConfiguration.NOT_A_CHAR) {
+            return NO_CHAR;
+        }
+        return c;
+    }
+
+    public CsvRecordCounter(CsvConfiguration configuration) {
+        _multilineValues = configuration.isMultilineValues();
+        _separatorChar = toInt(configuration.getSeparatorChar());
+        _quoteChar = toInt(configuration.getQuoteChar());
+        _escapeChar = toInt(configuration.getEscapeChar());
+        _headerLinesRemaining = Math.max(0, configuration.getColumnNameLineNumber());
+        _recordCount = 0;
+        _previousCarriageReturn = false;
+        _lineLength = 0;
+        _previousChar = NO_CHAR;
+        _inQuotes = false;
+        _recordHasContent = false;
+        _recordContinued = false;
+        _recordSeparators = 0;
+        _firstValueHasContent = false;
+        _pending = PENDING_NONE;
+    }
+
+    private void countBytes(FileResource resource, int bytesToSkip) throws IOException {
+        final FileInputStream in = new FileInputStream(resource.getFile());
+        try {
+            final FileChannel channel = in.getChannel();
+            channel.position(bytesToSkip);
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    update(buffer.get() & 0xFF);
+                }
+                buffer.clear();
+            }
+        } finally {
+            FileHelper.safeClose(in);
+        }
+    }
+
+    private void countBytes(Resource resource, int bytesToSkip) throws IOException {
+        final InputStream in = resource.read();
+        try {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int skip = bytesToSkip;
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                for (int i = skip; i < read; i++) {
+                    update(buffer[i] & 0xFF);
+                }
+                skip = Math.max(0, skip - read);
+            }
+        } finally {
+            FileHelper.safeClose(in);
+        }
+    }
+
+    private void countChars(Resource resource, String encoding) throws IOException {
+        final Reader reader = FileHelper.getReader(resource.read(), encoding);
+        try {
+            final char[] buffer = new char[BUFFER_SIZE / 2];
+            for (int read = reader.read(buffer); read != -1; read = reader.read(buffer)) {
+                for (int i = 0; i < read; i++) {
+                    update(buffer[i]);
+                }
+            }
+        } finally {
+            FileHelper.safeClose(reader);
+        }
+    }
+
+    /**
+     * Gets the number of records counted, treating the end of the scanned
+     * content as the end of the resource.
+     *
+     * @return
+     */
+    public long getRecordCount() {
+        if (_lineLength > 0) {
+            // the last line was not terminated
+            endOfLine();
+        }
+        if (_recordContinued) {
+            // the last record has an unterminated quoted value. The
+            // CSVReader only returns the values that were completed before
+            // it, and skips the record if that is none or a single blank one
+            if (_recordSeparators > 1 || (_recordSeparators == 1 && _firstValueHasContent)) {
+                _recordCount++;
+            }
+            _recordContinued = false;
+        }
+        return _recordCount;
+    }
+
+    /**
+     * Processes the next char (or byte) of the resource.
+     *
+     * @param c
+     */
+    public void update(int c) {
+        if (c == '\n' || c == '\r') {
+            if (c == '\n' && _previousCarriageReturn) {
+                // CRLF line break
+                _previousCarriageReturn = false;
+                return;
+            }
+            _previousCarriageReturn = (c == '\r');
+            endOfLine();
+            return;
+        }
+        _previousCarriageReturn = false;
+
+        if (_headerLinesRemaining == 0 && _multilineValues) {
+            updateRecord(c);
+        }
+        _previousChar = c;
+        _lineLength++;
+    }
+
+    private void endOfLine() {
+        if (_headerLinesRemaining > 0) {
+            _headerLinesRemaining--;
+        } else if (_multilineValues) {
+            resolvePending(END_OF_LINE);
+            if (_inQuotes) {
+                // the newline is part of a quoted value
+                _recordContinued = true;
+                appendContent();
+            } else {
+                if (_recordHasContent) {
+                    _recordCount++;
+                }
+                _recordContinued = false;
+                _recordHasContent = false;
+                _recordSeparators = 0;
+                _firstValueHasContent = false;
+            }
+        } else if (_lineLength > 0) {
+            _recordCount++;
+        }
+        _lineLength = 0;
+        _previousChar = NO_CHAR;
+    }
+
+    /**
+     * Tracks the quoting state and whether a record has any content, the same
+     * way as the CSVParser does.
+     */
+    private void updateRecord(int c) {
+        if (_pending != PENDING_NONE && resolvePending(c)) {
+            // the char was consumed by the pending escape or quote
+            return;
+        }
+        if (c == _escapeChar) {
+            if (_inQuotes) {
+                _pending = PENDING_ESCAPE;
+            }
+            // escape chars outside of quotes are ignored
+        } else if (c == _quoteChar) {
+            _pending = PENDING_QUOTE;
+            _pendingQuoteInQuotes = _inQuotes;
+            _pendingQuotePosition = _lineLength;
+            _pendingQuotePreviousChar = _previousChar;
+        } else if (c == _separatorChar && !_inQuotes) {
+            _recordHasContent = true;
+            if (_recordSeparators < 2) {
+                _recordSeparators++;
+            }
+        } else {
+            appendContent();
+        }
+    }
+
+    /**
+     * Registers that content is appended to the current value of the record.
+     */
+    private void appendContent() {
+        _recordHasContent = true;
+        if (_recordSeparators == 0) {
+            _firstValueHasContent = true;
+        }
+    }
+
+    /**
+     * Resolves a pending escape or quote char, based on the char following it.
+     *
+     * @return true if the next char was consumed
+     */
+    private boolean resolvePending(int next) {
+        final int pending = _pending;
+        _pending = PENDING_NONE;
+        if (pending == PENDING_ESCAPE) {
+            if (next == _quoteChar || next == _escapeChar) {
+                appendContent();
+                return true;
+            }
+            return false;
+        } else if (pending == PENDING_QUOTE) {
+            if (_pendingQuoteInQuotes && next == _quoteChar) {
+                // escaped (doubled) quote
+                appendContent();
+                return true;
+            }
+            _inQuotes = !_inQuotes;
+            if (_pendingQuotePosition > 2 && _pendingQuotePreviousChar != _separatorChar && next != END_OF_LINE
+                    && next != _separatorChar) {
+                // a quote in the middle of a value is kept
+                appendContent();
+            }
+            return false;
+        }
+        return false;
+    }
+}
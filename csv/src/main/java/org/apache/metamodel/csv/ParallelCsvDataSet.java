@@ -0,0 +1,301 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.csv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.metamodel.MetaModelException;
+import org.apache.metamodel.MetaModelHelper;
+import org.apache.metamodel.data.AbstractParallelDataSet;
+import org.apache.metamodel.data.DataSet;
+import org.apache.metamodel.query.LinePrefilter;
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.util.FileHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A DataSet implementation for the CSV module which reads a single-line CSV
+ * file in parallel. The file is split into chunks at line boundaries, and the
+ * chunks are read and parsed by a number of worker threads, each using a
+ * {@link SingleLineCsvDataSet} of its own.
+ *
+ * The rows are either delivered in the order of the file, or in the order in
+ * which the workers produce them.
+ *
+ * Note that row numbers in error messages (eg. in
+ * {@link InconsistentRowLengthException}s) are relative to the chunk in which
+ * the row was found.
+ */
+final class ParallelCsvDataSet extends AbstractParallelDataSet {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelCsvDataSet.class);
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final long MIN_CHUNK_SIZE = 1024 * 1024;
+
+    private final File _file;
+    private final CsvConfiguration _configuration;
+    private final Column[] _columns;
+    private final int _columnsInTable;
+    private final LinePrefilter _linePrefilter;
+    private final long[] _chunkStarts;
+
+    /**
+     * Determines if a file can be read in parallel, given a configuration.
+     *
+     * @param file
+     * @param configuration
+     * @param threads
+     * @return true if reading the file in parallel is possible and worth while
+     */
+    public static boolean isApplicable(File file, CsvConfiguration configuration, int threads) {
+        if (threads < 2 || configuration.isMultilineValues()) {
+            return false;
+        }
+        if (!file.isFile() || file.length() < 2 * MIN_CHUNK_SIZE) {
+            return false;
+        }
+
+        // the file is split at newline bytes, so the encoding must represent
+        // newlines as single 0x0A bytes which never occur inside other
+        // characters
+        final Charset charset;
+        try {
+            charset = Charset.forName(configuration.getEncoding());
+        } catch (RuntimeException e) {
+            return false;
+        }
+        final byte[] newline = "\n".getBytes(charset);
+        if (newline.length != 1 || newline[0] != '\n') {
+            return false;
+        }
+        if (!"UTF-8".equals(charset.name()) && charset.newEncoder().maxBytesPerChar() != 1.0f) {
+            return false;
+        }
+
+        // a UTF-16/32 byte order mark would change the encoding
+        final byte[] bom = new byte[2];
+        try {
+            final InputStream in = new FileInputStream(file);
+            try {
+                if (in.read(bom) != 2) {
+                    return false;
+                }
+            } finally {
+                FileHelper.safeClose(in);
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        if ((bom[0] == (byte) 0xFE && bom[1] == (byte) 0xFF) || (bom[0] == (byte) 0xFF && bom[1] == (byte) 0xFE)
+                || (bom[0] == 0x00 && bom[1] == 0x00)) {
+            return false;
+        }
+        return true;
+    }
+
+    public ParallelCsvDataSet(File file, CsvConfiguration configuration, Column[] columns, int columnsInTable,
+            int threads, boolean ordered, LinePrefilter linePrefilter) {
+        super(Arrays.asList(MetaModelHelper.createSelectItems(columns)), threads, ordered, BATCH_SIZE);
+        _file = file;
+        _configuration = configuration;
+        _columns = columns;
+        _columnsInTable = columnsInTable;
+        _linePrefilter = linePrefilter;
+        _chunkStarts = findChunkStarts(file, configuration.getColumnNameLineNumber(), threads * CHUNKS_PER_THREAD);
+    }
+
+    /**
+     * Finds the byte offsets at which the chunks of a file start. Each offset
+     * (except the first) is the start of a line.
+     */
+    private static long[] findChunkStarts(File file, int headerLines, int maxChunks) {
+        final long length = file.length();
+        final long chunkSize = Math.max(MIN_CHUNK_SIZE, length / maxChunks);
+
+        final List<Long> starts = new ArrayList<Long>();
+        starts.add(0L);
+        try {
+            final InputStream in = new BufferedInputStream(new FileInputStream(file));
+            try {
+                long position = 0;
+
+                // the header lines must be part of the first chunk
+                int linesToSkip = headerLines;
+                while (linesToSkip > 0) {
+                    final int b = in.read();
+                    if (b == -1) {
+                        break;
+                    }
+                    position++;
+                    if (b == '\n') {
+                        linesToSkip--;
+                    }
+                }
+
+                long nextStart = chunkSize;
+                while (nextStart < length) {
+                    if (position < nextStart) {
+                        position += skipFully(in, nextStart - position);
+                    }
+                    // move to the beginning of the next line
+                    int b = in.read();
+                    while (b != -1 && b != '\n') {
+                        position++;
+                        b = in.read();
+                    }
+                    if (b == -1) {
+                        break;
+                    }
+                    position++;
+                    if (position < length) {
+                        starts.add(position);
+                    }
+                    nextStart = position + chunkSize;
+                }
+            } finally {
+                FileHelper.safeClose(in);
+            }
+        } catch (IOException e) {
+            throw new MetaModelException("IOException occurred while splitting CSV file: " + file, e);
+        }
+
+        final long[] result = new long[starts.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = starts.get(i);
+        }
+        logger.debug("Split CSV file {} into {} chunks", file, result.length);
+        return result;
+    }
+
+    private static long skipFully(InputStream in, long bytes) throws IOException {
+        long skipped = 0;
+        while (skipped < bytes) {
+            final long n = in.skip(bytes - skipped);
+            if (n <= 0) {
+                break;
+            }
+            skipped += n;
+        }
+        return skipped;
+    }
+
+    @Override
+    protected int getPartitionCount() {
+        return _chunkStarts.length;
+    }
+
+    @Override
+    protected DataSet openPartition(int chunk) throws IOException {
+        return new SingleLineCsvDataSet(createChunkReader(chunk), _configuration, _columns, null, _columnsInTable,
+                _linePrefilter);
+    }
+
+    private BufferedReader createChunkReader(int chunk) throws IOException {
+        final long start = _chunkStarts[chunk];
+        final long end = (chunk + 1 < _chunkStarts.length ? _chunkStarts[chunk + 1] : Long.MAX_VALUE);
+        final FileInputStream fileInputStream = new FileInputStream(_file);
+        try {
+            fileInputStream.getChannel().position(start);
+        } catch (IOException e) {
+            FileHelper.safeClose(fileInputStream);
+            throw e;
+        }
+        final InputStream in = new RangeInputStream(new BufferedInputStream(fileInputStream), end - start);
+        if (chunk == 0) {
+            // the first chunk is read like the whole file would be, including
+            // byte order mark detection and skipping of header lines
+            final BufferedReader reader = FileHelper.getBufferedReader(in, _configuration.getEncoding());
+            for (int i = 0; i < _configuration.getColumnNameLineNumber(); i++) {
+                if (reader.readLine() == null) {
+                    break;
+                }
+            }
+            return reader;
+        }
+        return new BufferedReader(new InputStreamReader(in, _configuration.getEncoding()));
+    }
+
+    /**
+     * Input stream which reads a limited number of bytes from another stream.
+     */
+    private static final class RangeInputStream extends FilterInputStream {
+
+        private long _remaining;
+
+        public RangeInputStream(InputStream in, long length) {
+            super(in);
+            _remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (_remaining <= 0) {
+                return -1;
+            }
+            final int b = super.read();
+            if (b != -1) {
+                _remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (_remaining <= 0) {
+                return -1;
+            }
+            final int n = super.read(b, off, (int) Math.min(len, _remaining));
+            if (n > 0) {
+                _remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = super.skip(Math.min(n, _remaining));
+            _remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), _remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -25,6 +25,7 @@ import org.apache.metamodel.MetaModelException;
 import org.apache.metamodel.data.AbstractDataSet;
 import org.apache.metamodel.data.DataSetHeader;
 import org.apache.metamodel.data.Row;
+import org.apache.metamodel.query.LinePrefilter;
 import org.apache.metamodel.schema.Column;
 import org.apache.metamodel.util.FileHelper;
 
@@ -41,6 +42,11 @@ final class SingleLineCsvDataSet extends AbstractDataSet {
     private final CSVParser _csvParser;
     private final int _columnsInTable;
     private final boolean _failOnInconsistentRowLength;
+    private final LinePrefilter _linePrefilter;
+    private final char _separatorChar;
+    private final char _quoteChar;
+    private final char _escapeChar;
+    private final boolean[] _selectedColumns;
 
     private volatile int _rowNumber;
     private volatile Integer _rowsRemaining;
@@ -48,13 +54,60 @@ final class SingleLineCsvDataSet extends AbstractDataSet {
 
     public SingleLineCsvDataSet(BufferedReader reader, CSVParser csvParser, Column[] columns, Integer maxRows,
             int columnsInTable, boolean failOnInconsistentRowLength) {
+        this(reader, csvParser, columns, maxRows, columnsInTable, failOnInconsistentRowLength, null, null);
+    }
+
+    /**
+     * Creates a single line CSV dataset.
+     * 
+     * @param reader
+     * @param configuration
+     *            the CSV configuration, which also enables splitting lines
+     *            without quote or escape characters directly, without parsing
+     *            them
+     * @param columns
+     * @param maxRows
+     * @param columnsInTable
+     * @param linePrefilter
+     *            an optional prefilter used to skip lines before they are
+     *            parsed, or null
+     */
+    public SingleLineCsvDataSet(BufferedReader reader, CsvConfiguration configuration, Column[] columns,
+            Integer maxRows, int columnsInTable, LinePrefilter linePrefilter) {
+        this(reader, new CSVParser(configuration.getSeparatorChar(), configuration.getQuoteChar(), configuration
+                .getEscapeChar()), columns, maxRows, columnsInTable, configuration.isFailOnInconsistentRowLength(),
+                configuration, linePrefilter);
+    }
+
+    private SingleLineCsvDataSet(BufferedReader reader, CSVParser csvParser, Column[] columns, Integer maxRows,
+            int columnsInTable, boolean failOnInconsistentRowLength, CsvConfiguration configuration,
+            LinePrefilter linePrefilter) {
         super(columns);
         _reader = reader;
         _csvParser = csvParser;
         _columnsInTable = columnsInTable;
         _failOnInconsistentRowLength = failOnInconsistentRowLength;
+        _linePrefilter = linePrefilter;
         _rowNumber = 0;
         _rowsRemaining = maxRows;
+
+        if (configuration == null) {
+            _separatorChar = CsvConfiguration.NOT_A_CHAR;
+            _quoteChar = CsvConfiguration.NOT_A_CHAR;
+            _escapeChar = CsvConfiguration.NOT_A_CHAR;
+            _selectedColumns = null;
+        } else {
+            _separatorChar = configuration.getSeparatorChar();
+            _quoteChar = configuration.getQuoteChar();
+            _escapeChar = configuration.getEscapeChar();
+            _selectedColumns = new boolean[columnsInTable];
+            for (Column column : columns) {
+                final int columnNumber = column.getColumnNumber();
+                if (columnNumber < columnsInTable) {
+                    _selectedColumns[columnNumber] = true;
+                }
+            }
+        }
     }
 
     @Override
@@ -95,26 +148,64 @@ final class SingleLineCsvDataSet extends AbstractDataSet {
         return _csvParser;
     }
 
+    /**
+     * Determines if a line can be split at the separator chars instead of
+     * being parsed, which is the case when it contains no quote or escape
+     * chars.
+     * 
+     * @param line
+     * @return
+     */
+    protected boolean isSplittable(String line) {
+        if (_selectedColumns == null) {
+            return false;
+        }
+        return line.indexOf(_quoteChar) == -1 && line.indexOf(_escapeChar) == -1;
+    }
+
+    protected char getSeparatorChar() {
+        return _separatorChar;
+    }
+
+    /**
+     * Gets which columns of the table (by column number) are selected in this
+     * dataset.
+     * 
+     * @return
+     */
+    protected boolean[] getSelectedColumns() {
+        return _selectedColumns;
+    }
+
     public boolean nextInternal() {
         if (_reader == null) {
             return false;
         }
 
         try {
-            final String line = _reader.readLine();
-            if (line == null) {
-                close();
-                return false;
-            }
-
-            if ("".equals(line)) {
-                // blank line - move to next line
-                return nextInternal();
+            while (true) {
+                final String line = _reader.readLine();
+                if (line == null) {
+                    close();
+                    return false;
+                }
+
+                if ("".equals(line)) {
+                    // blank line - move to next line
+                    continue;
+                }
+
+                _rowNumber++;
+
+                if (_linePrefilter != null && !_linePrefilter.accept(line)) {
+                    // the line cannot match the query - skip it without
+                    // parsing it
+                    continue;
+                }
+
+                _row = new SingleLineCsvRow(this, line, _columnsInTable, _failOnInconsistentRowLength, _rowNumber);
+                return true;
             }
-
-            _rowNumber++;
-            _row = new SingleLineCsvRow(this, line, _columnsInTable, _failOnInconsistentRowLength, _rowNumber);
-            return true;
         } catch (IOException e) {
             close();
             throw new MetaModelException("IOException occurred while reading next line of CSV resource", e);
@@ -100,6 +100,13 @@ final class SingleLineCsvRow extends AbstractRow {
     }
 
     private String[] parseLine() {
+        if (_dataSet.isSplittable(_line)) {
+            final String[] csvValues = splitLine();
+            if (!_failOnInconsistentRowLength || _columnsInTable == csvValues.length) {
+                return csvValues;
+            }
+            // parse the line to report all of its values
+        }
         try {
             final CSVParser parser = _dataSet.getCsvParser();
             return parser.parseLine(_line);
@@ -117,6 +124,37 @@ final class SingleLineCsvRow extends AbstractRow {
         }
     }
 
+    /**
+     * Splits a line without quote or escape chars at the separator chars. Only
+     * the values of the selected columns are extracted, the remaining values
+     * are left as null.
+     * 
+     * @return
+     */
+    private String[] splitLine() {
+        final char separatorChar = _dataSet.getSeparatorChar();
+        final boolean[] selectedColumns = _dataSet.getSelectedColumns();
+
+        int valueCount = 1;
+        for (int i = _line.indexOf(separatorChar); i != -1; i = _line.indexOf(separatorChar, i + 1)) {
+            valueCount++;
+        }
+
+        final String[] csvValues = new String[valueCount];
+        int start = 0;
+        for (int valueIndex = 0; valueIndex < valueCount && valueIndex < selectedColumns.length; valueIndex++) {
+            int end = _line.indexOf(separatorChar, start);
+            if (end == -1) {
+                end = _line.length();
+            }
+            if (selectedColumns[valueIndex]) {
+                csvValues[valueIndex] = _line.substring(start, end);
+            }
+            start = end + 1;
+        }
+        return csvValues;
+    }
+
     @Override
     public Object getValue(int index) throws IndexOutOfBoundsException {
         final String[] values = getValuesInternal();
@@ -36,9 +36,11 @@ import org.apache.metamodel.convert.Converters;
 import org.apache.metamodel.convert.StringToBooleanConverter;
 import org.apache.metamodel.convert.StringToIntegerConverter;
 import org.apache.metamodel.convert.TypeConverter;
+import org.apache.metamodel.data.ColumnarTableCache;
 import org.apache.metamodel.data.DataSet;
 import org.apache.metamodel.data.DataSetTableModel;
 import org.apache.metamodel.data.Row;
+import org.apache.metamodel.data.RowBatch;
 import org.apache.metamodel.query.FilterItem;
 import org.apache.metamodel.query.FunctionType;
 import org.apache.metamodel.query.OperatorType;
@@ -233,6 +235,41 @@ public class CsvDataContextTest extends TestCase {
         assertFalse(ds.next());
     }
 
+    public void testInconsistentColumnsInBatches() throws Exception {
+        CsvConfiguration conf = new CsvConfiguration(CsvConfiguration.DEFAULT_COLUMN_NAME_LINE, "UTF8", ',', '"', '\\',
+                true);
+        DataContext dc = new CsvDataContext(new File("src/test/resources/csv_inconsistent_columns.csv"), conf);
+        DataSet ds = dc.query().from("csv_inconsistent_columns.csv").select("hello").and("world").execute();
+
+        RowBatch batch = RowBatch.read(ds, 100);
+        assertEquals(2, batch.getRowCount());
+        assertEquals("3", batch.getValue(0, 1));
+
+        try {
+            RowBatch.read(ds, 100);
+            fail("Exception expected");
+        } catch (InconsistentRowLengthException e) {
+            assertEquals("Inconsistent length of row no. 3. Expected 2 columns but found 3.", e.getMessage());
+        }
+
+        // the rows before an inconsistent row are returned first
+        batch = RowBatch.read(ds, 100);
+        assertEquals(1, batch.getRowCount());
+        assertEquals("[8, 9]", Arrays.toString(batch.getRow(0).getValues()));
+
+        try {
+            RowBatch.read(ds, 100);
+            fail("Exception expected");
+        } catch (InconsistentRowLengthException e) {
+            assertEquals("[10, null]", Arrays.toString(e.getProposedRow().getValues()));
+        }
+
+        batch = RowBatch.read(ds, 100);
+        assertEquals(1, batch.getRowCount());
+        assertNull(RowBatch.read(ds, 100));
+        ds.close();
+    }
+
     public void testApproximatedCountSmallFile() throws Exception {
         DataContext dc = new CsvDataContext(new File("src/test/resources/csv_people.csv"));
 
@@ -250,6 +287,104 @@ public class CsvDataContextTest extends TestCase {
         assertFalse(ds.next());
     }
 
+    public void testTableCache() throws Exception {
+        final File file = new File("target/csv_people_cached.csv");
+        FileHelper.copy(new File("src/test/resources/csv_people.csv"), file);
+
+        final CsvDataContext dc = new CsvDataContext(file);
+        final ColumnarTableCache tableCache = new ColumnarTableCache(1024 * 1024);
+        dc.setTableCache(tableCache);
+        final Table table = dc.getDefaultSchema().getTables()[0];
+
+        Query q = dc.query().from(table).select("name").where("age").greaterThan(18).toQuery();
+        assertEquals("[[michael], [hillary]]", Arrays.deepToString(dc.executeQuery(q).toObjectArrays().toArray()));
+        assertEquals(0, tableCache.getHitCount());
+        assertEquals(1, tableCache.getMissCount());
+        assertEquals(1, tableCache.getTableCount());
+
+        assertEquals("[[michael], [hillary]]", Arrays.deepToString(dc.executeQuery(q).toObjectArrays().toArray()));
+        q = dc.query().from(table).select("id").where("name").eq("bob").toQuery();
+        assertEquals("[[4]]", Arrays.deepToString(dc.executeQuery(q).toObjectArrays().toArray()));
+        assertEquals(2, tableCache.getHitCount());
+        assertEquals(1, tableCache.getMissCount());
+
+        dc.executeUpdate(new UpdateScript() {
+            @Override
+            public void run(UpdateCallback callback) {
+                callback.insertInto(table).value("id", "10").value("name", "bob").execute();
+            }
+        });
+
+        assertEquals(0, tableCache.getTableCount());
+        assertEquals("[[4], [10]]", Arrays.deepToString(dc.executeQuery(q).toObjectArrays().toArray()));
+        assertEquals(2, tableCache.getMissCount());
+    }
+
+    public void testTableCacheSharedByDataContexts() throws Exception {
+        final File file = new File("target/csv_people_shared_cache.csv");
+        FileHelper.copy(new File("src/test/resources/csv_people.csv"), file);
+
+        final ColumnarTableCache tableCache = new ColumnarTableCache(1024 * 1024);
+        final CsvDataContext dc1 = new CsvDataContext(file);
+        dc1.setTableCache(tableCache);
+        final CsvDataContext dc2 = new CsvDataContext(file);
+        dc2.setTableCache(tableCache);
+
+        final Table table1 = dc1.getDefaultSchema().getTables()[0];
+        final Table table2 = dc2.getDefaultSchema().getTables()[0];
+        final Query q1 = dc1.query().from(table1).select("name").where("age").greaterThan(18).toQuery();
+        final Query q2 = dc2.query().from(table2).select("name").where("age").greaterThan(18).toQuery();
+        assertEquals("[[michael], [hillary]]", Arrays.deepToString(dc1.executeQuery(q1).toObjectArrays().toArray()));
+        assertEquals("[[michael], [hillary]]", Arrays.deepToString(dc2.executeQuery(q2).toObjectArrays().toArray()));
+        assertEquals(1, tableCache.getMissCount());
+        assertEquals(1, tableCache.getHitCount());
+        assertEquals(1, tableCache.getTableCount());
+    }
+
+    public void testTableCacheRemembersTooLargeTables() throws Exception {
+        final File file = new File("target/csv_people_too_large.csv");
+        FileHelper.copy(new File("src/test/resources/csv_people.csv"), file);
+
+        final CsvDataContext dc = new CsvDataContext(file);
+        final ColumnarTableCache tableCache = new ColumnarTableCache(10);
+        dc.setTableCache(tableCache);
+        final Table table = dc.getDefaultSchema().getTables()[0];
+
+        final Query q = dc.query().from(table).select("name").where("age").greaterThan(18).toQuery();
+        assertEquals("[[michael], [hillary]]", Arrays.deepToString(dc.executeQuery(q).toObjectArrays().toArray()));
+        assertEquals(1, tableCache.getMissCount());
+
+        // the table is not read into the cache again
+        assertEquals("[[michael], [hillary]]", Arrays.deepToString(dc.executeQuery(q).toObjectArrays().toArray()));
+        assertEquals(1, tableCache.getMissCount());
+        assertEquals(0, tableCache.getTableCount());
+    }
+
+    public void testFilterWithLinePrefilter() throws Exception {
+        final File file = new File("target/csv_line_prefilter.csv");
+        FileHelper.writeStringAsFile(file, "id,name,city\n" + "1,bob,Paris\n" + "2,alice,bob\n"
+                + "3,\"bob\",Rome\n" + "4,\"b\"\"ob\",London\n" + "5,bobby,Paris\n" + "\n" + "6,bob\n"
+                + "7,Bob,Paris,extra\n");
+
+        final CsvDataContext dc = new CsvDataContext(file);
+        final Table table = dc.getDefaultSchema().getTables()[0];
+
+        Query q = dc.query().from(table).select("id", "city").where("name").eq("bob").toQuery();
+        assertEquals("[[1, Paris], [3, Rome], [6, null]]",
+                Arrays.deepToString(dc.executeQuery(q).toObjectArrays().toArray()));
+
+        q = dc.query().from(table).select("id").where("name").like("%ob%").and("city").in("Paris", "Rome")
+                .toQuery();
+        assertEquals("[[1], [3], [5], [7]]", Arrays.deepToString(dc.executeQuery(q).toObjectArrays().toArray()));
+
+        q = dc.query().from(table).select("name").where("city").eq("Paris").or("name").eq("b\"ob").toQuery();
+        assertEquals("[[bob], [b\"ob], [bobby], [Bob]]",
+                Arrays.deepToString(dc.executeQuery(q).toObjectArrays().toArray()));
+
+        q = dc.query().from(table).select("id").where("name").eq("bob").firstRow(2).maxRows(1).toQuery();
+        assertEquals("[[3]]", Arrays.deepToString(dc.executeQuery(q).toObjectArrays().toArray()));
+    }
+
     public void testFilterOnNumberColumn() throws Exception {
         CsvDataContext dc = new CsvDataContext(new File("src/test/resources/csv_people.csv"));
         Table table = dc.getDefaultSchema().getTables()[0];
@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.csv;
+
+import java.io.File;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.metamodel.UpdateCallback;
+import org.apache.metamodel.UpdateScript;
+import org.apache.metamodel.data.DataSet;
+import org.apache.metamodel.schema.Table;
+import org.apache.metamodel.util.FileHelper;
+import org.apache.metamodel.util.FileResource;
+import org.apache.metamodel.util.InMemoryResource;
+import org.apache.metamodel.util.Resource;
+
+public class CsvRecordCounterTest extends TestCase {
+
+    private static final String[] FRAGMENTS = { "a", "bc", "æø", "\u300Ax\u300B", ",", ",", "\"", "\"", "\\", "\n",
+            "\r\n", "\r", " " };
+
+    public void testCountMatchesParsedRecords() throws Exception {
+        final Random random = new Random(1234);
+        final File file = new File("target/csv_record_counter.csv");
+        for (int i = 0; i < 300; i++) {
+            final StringBuilder sb = new StringBuilder("foo,bar\n");
+            final int fragments = random.nextInt(40);
+            for (int j = 0; j < fragments; j++) {
+                sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+            }
+            final String content = sb.toString();
+            FileHelper.writeStringAsFile(file, content);
+
+            for (boolean multilineValues : new boolean[] { false, true }) {
+                final CsvConfiguration configuration = new CsvConfiguration(1, "UTF-8", ',', '"', '\\', false,
+                        multilineValues);
+                final long expected = countParsedRecords(new FileResource(file), configuration);
+                final String message = "Content: " + content + ", multiline values: " + multilineValues;
+
+                assertEquals(message, expected, CsvRecordCounter.countRecords(new FileResource(file), configuration));
+                assertEquals(message, expected,
+                        CsvRecordCounter.countRecords(new InMemoryResource("foo.csv", content.getBytes("UTF-8"), 0),
+                                configuration));
+                final CsvConfiguration utf16Configuration = new CsvConfiguration(1, "UTF-16LE", ',', '"', '\\',
+                        false, multilineValues);
+                assertEquals(message, expected, CsvRecordCounter.countRecords(new InMemoryResource("foo.csv",
+                        content.getBytes("UTF-16LE"), 0), utf16Configuration));
+            }
+        }
+    }
+
+    private long countParsedRecords(Resource resource, CsvConfiguration configuration) {
+        final CsvDataContext dc = new CsvDataContext(resource, configuration);
+        final Table table = dc.getDefaultSchema().getTables()[0];
+        final DataSet ds = dc.query().from(table).select(table.getColumns()).execute();
+        long count = 0;
+        while (ds.next()) {
+            count++;
+        }
+        ds.close();
+        return count;
+    }
+
+    public void testCountCharsOutsideLatin1() throws Exception {
+        // the low bytes of U+300A, U+300D and U+3022 are the same as those of
+        // '\n', '\r' and '"'
+        final String content = "foo,bar\n1,\u300Ax\u300B\n2,\u300Dy\u3022\n";
+        for (boolean multilineValues : new boolean[] { false, true }) {
+            final CsvConfiguration configuration = new CsvConfiguration(1, "UTF-16LE", ',', '"', '\\', false,
+                    multilineValues);
+            assertEquals(2, CsvRecordCounter.countRecords(new InMemoryResource("foo.csv", content
+                    .getBytes("UTF-16LE"), 0), configuration));
+        }
+    }
+
+    public void testExactCountQuery() throws Exception {
+        final File file = new File("target/csv_exact_count.csv");
+        FileHelper.writeStringAsFile(file, "id,name\n1,\"foo\nbar\"\n\n2,baz\n");
+
+        final CsvDataContext dc = new CsvDataContext(file, new CsvConfiguration(1, "UTF-8", ',', '"', '\\', false,
+                true));
+        final Table table = dc.getDefaultSchema().getTables()[0];
+        assertEquals(2, ((Number) dc.query().from(table).selectCount().execute().toObjectArrays().get(0)[0])
+                .intValue());
+
+        dc.executeUpdate(new UpdateScript() {
+            @Override
+            public void run(UpdateCallback callback) {
+                callback.insertInto(table).value("id", "3").value("name", "qux").execute();
+            }
+        });
+        assertEquals(3, ((Number) dc.query().from(table).selectCount().execute().toObjectArrays().get(0)[0])
+                .intValue());
+    }
+}
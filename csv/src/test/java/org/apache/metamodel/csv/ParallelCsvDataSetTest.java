@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.csv;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.metamodel.data.DataSet;
+import org.apache.metamodel.data.Row;
+import org.apache.metamodel.query.Query;
+import org.apache.metamodel.schema.Table;
+import org.apache.metamodel.util.FileHelper;
+
+public class ParallelCsvDataSetTest extends TestCase {
+
+    private static final int ROWS = 100000;
+
+    private File createFile() throws Exception {
+        final File file = new File("target/parallel_csv_test.csv");
+        final BufferedWriter writer = FileHelper.getBufferedWriter(file, "UTF-8");
+        try {
+            writer.write("id,name,amount\n");
+            for (int i = 0; i < ROWS; i++) {
+                if (i % 1000 == 0) {
+                    // blank lines should be skipped
+                    writer.write("\r\n");
+                }
+                writer.write(i + ",\"næme, no. " + i + "\"," + (i % 100) + "." + (i % 7) + "xxxxxxxxxxxx\r\n");
+            }
+        } finally {
+            writer.close();
+        }
+        assertTrue(file.length() > 3 * 1024 * 1024);
+        return file;
+    }
+
+    public void testOrderedScan() throws Exception {
+        final File file = createFile();
+
+        final CsvDataContext sequentialDataContext = new CsvDataContext(file, new CsvConfiguration(1, false, false));
+        final CsvDataContext parallelDataContext = new CsvDataContext(file, new CsvConfiguration(1, false, false));
+        parallelDataContext.setParallelScan(4, true);
+
+        final Table table = parallelDataContext.getDefaultSchema().getTable(0);
+        final DataSet dataSet = parallelDataContext.materializeMainSchemaTable(table, table.getColumns(), -1);
+        assertTrue(dataSet instanceof ParallelCsvDataSet);
+        dataSet.close();
+
+        final List<Row> expected = sequentialDataContext.query().from(table.getName()).select("id", "name")
+                .execute().toRows();
+        final List<Row> actual = parallelDataContext.query().from(table.getName()).select("id", "name").execute()
+                .toRows();
+        assertEquals(ROWS, expected.size());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).toString(), actual.get(i).toString());
+        }
+        assertEquals("Row[values=[0, næme, no. 0]]", actual.get(0).toString());
+    }
+
+    public void testUnorderedScanAndAggregate() throws Exception {
+        final File file = createFile();
+
+        final CsvDataContext dc = new CsvDataContext(file, new CsvConfiguration(1, false, false));
+        dc.setParallelScan(3, false);
+
+        final Set<String> ids = new HashSet<String>();
+        final DataSet dataSet = dc.query().from(dc.getDefaultSchema().getTable(0)).select("id").execute();
+        while (dataSet.next()) {
+            assertTrue(ids.add((String) dataSet.getRow().getValue(0)));
+        }
+        dataSet.close();
+        assertEquals(ROWS, ids.size());
+
+        final Query query = dc.query().from(dc.getDefaultSchema().getTable(0)).selectCount().where("id")
+                .like("%7").toQuery();
+        final CsvDataContext sequentialDataContext = new CsvDataContext(file, new CsvConfiguration(1, false, false));
+        final Object[] expected = sequentialDataContext.executeQuery(query).toObjectArrays().get(0);
+        assertEquals(Arrays.toString(expected), Arrays.toString(dc.executeQuery(query).toObjectArrays().get(0)));
+    }
+
+    public void testUnorderedScanWithPaging() throws Exception {
+        final File file = createFile();
+
+        final CsvDataContext dc = new CsvDataContext(file, new CsvConfiguration(1, false, false));
+        dc.setParallelScan(4, false);
+        final CsvDataContext sequentialDataContext = new CsvDataContext(file, new CsvConfiguration(1, false, false));
+
+        // paged queries without an ORDER BY clause should still return the
+        // first rows of the file
+        final Query limitQuery = dc.query().from(dc.getDefaultSchema().getTable(0)).select("id").where("name")
+                .like("%no. %").maxRows(5000).toQuery();
+        final List<Row> expected = sequentialDataContext.executeQuery(limitQuery).toRows();
+        final List<Row> actual = dc.executeQuery(limitQuery).toRows();
+        assertEquals(5000, actual.size());
+        assertEquals(expected.toString(), actual.toString());
+
+        final Query offsetQuery = dc.query().from(dc.getDefaultSchema().getTable(0)).select("id").where("name")
+                .like("%no. %").firstRow(95001).toQuery();
+        final List<Row> rows = dc.executeQuery(offsetQuery).toRows();
+        assertEquals(5000, rows.size());
+        assertEquals("Row[values=[95000]]", rows.get(0).toString());
+        assertEquals("Row[values=[99999]]", rows.get(4999).toString());
+    }
+
+    public void testCloseBeforeEnd() throws Exception {
+        final File file = createFile();
+
+        final CsvDataContext dc = new CsvDataContext(file, new CsvConfiguration(1, false, false));
+        dc.setParallelScan(4, true);
+
+        final Table table = dc.getDefaultSchema().getTable(0);
+        final DataSet dataSet = dc.materializeMainSchemaTable(table, table.getColumns(), -1);
+        assertTrue(dataSet.next());
+        assertEquals("0", dataSet.getRow().getValue(0));
+        dataSet.close();
+        assertFalse(dataSet.next());
+    }
+}
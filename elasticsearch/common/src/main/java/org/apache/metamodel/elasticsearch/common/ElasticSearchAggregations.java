@@ -0,0 +1,351 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.elasticsearch.common;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.metamodel.data.DataSet;
+import org.apache.metamodel.data.DataSetHeader;
+import org.apache.metamodel.data.DefaultRow;
+import org.apache.metamodel.data.InMemoryDataSet;
+import org.apache.metamodel.data.Row;
+import org.apache.metamodel.data.SimpleDataSetHeader;
+import org.apache.metamodel.query.AggregateFunction;
+import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.FunctionType;
+import org.apache.metamodel.query.GroupByItem;
+import org.apache.metamodel.query.LogicalOperator;
+import org.apache.metamodel.query.Query;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.ColumnType;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.aggregations.AbstractAggregationBuilder;
+import org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+
+/**
+ * Translates grouped and aggregated queries into ElasticSearch aggregations,
+ * and reads the results of these aggregations. Used by the pushdown of
+ * queries in both the native and the REST based data contexts.
+ * 
+ * Each GROUP BY item is translated into a 'terms' aggregation (named
+ * <code>g&lt;level&gt;</code>) and a sibling 'missing' aggregation (named
+ * <code>m&lt;level&gt;</code>), since MetaModel groups records without a
+ * value in a group of their own. The aggregates of the innermost level are
+ * named <code>a&lt;index of select item&gt;</code>.
+ * 
+ * Only number columns can be grouped on, since the terms of analyzed string
+ * fields are not the values of the field.
+ */
+public final class ElasticSearchAggregations {
+
+    private ElasticSearchAggregations() {
+        // prevent instantiation
+    }
+
+    /**
+     * Determines if a WHERE item can be translated into an ElasticSearch
+     * query.
+     * 
+     * @param filterItem
+     * @return
+     */
+    public static boolean isFilterSupported(FilterItem filterItem) {
+        if (!isPlainFilter(filterItem)) {
+            return false;
+        }
+        return ElasticSearchUtils.createQueryBuilderForSimpleWhere(Collections.singletonList(filterItem),
+                LogicalOperator.AND) != null;
+    }
+
+    private static boolean isPlainFilter(FilterItem filterItem) {
+        if (filterItem.getExpression() != null) {
+            return false;
+        }
+        if (filterItem.isCompoundFilter()) {
+            for (FilterItem childItem : filterItem.getChildItems()) {
+                if (!isPlainFilter(childItem)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        final SelectItem selectItem = filterItem.getSelectItem();
+        return selectItem.getColumn() != null && !selectItem.hasFunction() && selectItem.getExpression() == null
+                && !(filterItem.getOperand() instanceof SelectItem);
+    }
+
+    public static boolean isGroupBySupported(GroupByItem groupByItem) {
+        final SelectItem selectItem = groupByItem.getSelectItem();
+        return isNumberColumnItem(selectItem) && !selectItem.getColumn().isPrimaryKey();
+    }
+
+    /**
+     * Determines if a select item with an aggregate function can be
+     * translated into an aggregation.
+     * 
+     * @param selectItem
+     * @return
+     */
+    public static boolean isAggregateSupported(SelectItem selectItem) {
+        if (SelectItem.isCountAllItem(selectItem)) {
+            return true;
+        }
+        final AggregateFunction function = selectItem.getAggregateFunction();
+        if (function == null || selectItem.getScalarFunction() != null || selectItem.getExpression() != null) {
+            return false;
+        }
+        final Column column = selectItem.getColumn();
+        if (column == null || column.isPrimaryKey()) {
+            // the document id is not indexed and cannot be aggregated on
+            return false;
+        }
+        if (FunctionType.COUNT.equals(function)) {
+            return true;
+        }
+        if (FunctionType.SUM.equals(function) || FunctionType.AVG.equals(function)
+                || FunctionType.MIN.equals(function) || FunctionType.MAX.equals(function)) {
+            return column.getType() != null && column.getType().isNumber();
+        }
+        return false;
+    }
+
+    private static boolean isNumberColumnItem(SelectItem selectItem) {
+        final Column column = selectItem.getColumn();
+        return column != null && !selectItem.hasFunction() && selectItem.getExpression() == null
+                && column.getType() != null && column.getType().isNumber();
+    }
+
+    /**
+     * Determines if a (pushdown) query is grouped or aggregated, and should
+     * be executed using aggregations.
+     * 
+     * @param query
+     * @return
+     */
+    public static boolean isAggregationQuery(Query query) {
+        if (!query.getGroupByClause().isEmpty()) {
+            return true;
+        }
+        for (SelectItem selectItem : query.getSelectClause().getItems()) {
+            if (selectItem.getAggregateFunction() != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates the query for the WHERE clause of a query.
+     * 
+     * @param query
+     * @return
+     */
+    public static QueryBuilder createQueryBuilder(Query query) {
+        return ElasticSearchUtils.createQueryBuilderForSimpleWhere(query.getWhereClause().getItems(),
+                LogicalOperator.AND);
+    }
+
+    /**
+     * Creates the top-level aggregations of a grouped or aggregated query.
+     * 
+     * @param query
+     * @return
+     */
+    public static List<AbstractAggregationBuilder> createAggregations(Query query) {
+        final List<SelectItem> groupBySelectItems = query.getGroupByClause().getEvaluatedSelectItems();
+        return createAggregations(query.getSelectClause().getItems(), groupBySelectItems, 0);
+    }
+
+    private static List<AbstractAggregationBuilder> createAggregations(List<SelectItem> selectItems,
+            List<SelectItem> groupBySelectItems, int level) {
+        final List<AbstractAggregationBuilder> result = new ArrayList<>();
+        if (level < groupBySelectItems.size()) {
+            final String fieldName = groupBySelectItems.get(level).getColumn().getName();
+            // size 0 returns all terms
+            final AggregationBuilder<?> terms = AggregationBuilders.terms("g" + level).field(fieldName).size(0);
+            final AggregationBuilder<?> missing = AggregationBuilders.missing("m" + level).field(fieldName);
+            for (AbstractAggregationBuilder subAggregation : createAggregations(selectItems, groupBySelectItems,
+                    level + 1)) {
+                terms.subAggregation(subAggregation);
+                missing.subAggregation(subAggregation);
+            }
+            result.add(terms);
+            result.add(missing);
+            return result;
+        }
+
+        for (int i = 0; i < selectItems.size(); i++) {
+            final SelectItem selectItem = selectItems.get(i);
+            final AggregateFunction function = selectItem.getAggregateFunction();
+            if (function == null || SelectItem.isCountAllItem(selectItem)) {
+                // group keys and counts are read from the buckets
+                continue;
+            }
+            final String name = "a" + i;
+            final String fieldName = selectItem.getColumn().getName();
+            if (FunctionType.COUNT.equals(function)) {
+                // the values are counted as the docs which are not missing
+                // the field, so multi-valued fields are only counted once
+                result.add(AggregationBuilders.missing(name).field(fieldName));
+            } else if (FunctionType.SUM.equals(function)) {
+                result.add(AggregationBuilders.sum(name).field(fieldName));
+            } else if (FunctionType.AVG.equals(function)) {
+                result.add(AggregationBuilders.avg(name).field(fieldName));
+            } else if (FunctionType.MIN.equals(function)) {
+                result.add(AggregationBuilders.min(name).field(fieldName));
+            } else if (FunctionType.MAX.equals(function)) {
+                result.add(AggregationBuilders.max(name).field(fieldName));
+            } else {
+                throw new UnsupportedOperationException("Unsupported aggregate function: " + function);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates a {@link DataSet} with the result of the aggregations of a
+     * query.
+     * 
+     * @param query
+     *            the query that the aggregations were created for
+     * @param aggregations
+     *            the "aggregations" element of the search response, as a map
+     * @param totalHits
+     *            the total number of hits of the search response
+     * @return
+     */
+    public static DataSet createDataSet(Query query, Map<String, ?> aggregations, long totalHits) {
+        final List<SelectItem> selectItems = query.getSelectClause().getItems();
+        final List<SelectItem> groupBySelectItems = query.getGroupByClause().getEvaluatedSelectItems();
+        final DataSetHeader header = new SimpleDataSetHeader(selectItems);
+        final List<Row> rows = new ArrayList<>();
+        final Map<String, ?> bucket = (aggregations == null ? Collections.<String, Object> emptyMap()
+                : aggregations);
+        readBuckets(header, groupBySelectItems, bucket, totalHits, new Object[groupBySelectItems.size()], 0, rows);
+        return new InMemoryDataSet(header, rows);
+    }
+
+    private static void readBuckets(DataSetHeader header, List<SelectItem> groupBySelectItems, Map<String, ?> bucket,
+            long docCount, Object[] keys, int level, List<Row> rows) {
+        if (level == groupBySelectItems.size()) {
+            rows.add(createRow(header, groupBySelectItems, bucket, docCount, keys));
+            return;
+        }
+
+        final Column column = groupBySelectItems.get(level).getColumn();
+        final Map<?, ?> terms = (Map<?, ?>) bucket.get("g" + level);
+        if (terms != null) {
+            final List<?> termBuckets = (List<?>) terms.get("buckets");
+            if (termBuckets != null) {
+                for (Object termBucket : termBuckets) {
+                    @SuppressWarnings("unchecked")
+                    final Map<String, ?> termBucketMap = (Map<String, ?>) termBucket;
+                    keys[level] = toColumnValue(column, termBucketMap.get("key"));
+                    readBuckets(header, groupBySelectItems, termBucketMap, getDocCount(termBucketMap), keys,
+                            level + 1, rows);
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        final Map<String, ?> missing = (Map<String, ?>) bucket.get("m" + level);
+        if (missing != null) {
+            final long missingDocCount = getDocCount(missing);
+            if (missingDocCount > 0) {
+                keys[level] = null;
+                readBuckets(header, groupBySelectItems, missing, missingDocCount, keys, level + 1, rows);
+            }
+        }
+    }
+
+    private static Row createRow(DataSetHeader header, List<SelectItem> groupBySelectItems, Map<String, ?> bucket,
+            long docCount, Object[] keys) {
+        final Object[] values = new Object[header.size()];
+        for (int i = 0; i < values.length; i++) {
+            final SelectItem selectItem = header.getSelectItem(i);
+            final AggregateFunction function = selectItem.getAggregateFunction();
+            if (function == null) {
+                values[i] = keys[groupBySelectItems.indexOf(selectItem)];
+            } else if (SelectItem.isCountAllItem(selectItem)) {
+                values[i] = docCount;
+            } else {
+                final Map<?, ?> aggregation = (Map<?, ?>) bucket.get("a" + i);
+                if (FunctionType.COUNT.equals(function)) {
+                    values[i] = docCount - (aggregation == null ? 0 : getDocCount(aggregation));
+                } else {
+                    final Object value = (aggregation == null ? null : aggregation.get("value"));
+                    if (FunctionType.SUM.equals(function) || FunctionType.AVG.equals(function)) {
+                        // MetaModel yields 0 for the sum and average of no
+                        // values
+                        values[i] = (value instanceof Number ? ((Number) value).doubleValue() : 0d);
+                    } else {
+                        values[i] = toColumnValue(selectItem.getColumn(), value);
+                    }
+                }
+            }
+        }
+        return new DefaultRow(header, values);
+    }
+
+    private static long getDocCount(Map<?, ?> bucket) {
+        final Object docCount = bucket.get("doc_count");
+        return (docCount instanceof Number ? ((Number) docCount).longValue() : 0);
+    }
+
+    /**
+     * Converts a number of an aggregation result (eg. a term or the minimum
+     * of a field) to the java type of a column.
+     * 
+     * @param column
+     * @param value
+     * @return
+     */
+    static Object toColumnValue(Column column, Object value) {
+        if (!(value instanceof Number)) {
+            return value;
+        }
+        final Number number = (Number) value;
+        final ColumnType type = column.getType();
+        final Class<?> javaType = (type == null ? null : type.getJavaEquivalentClass());
+        if (javaType == Integer.class) {
+            return number.intValue();
+        } else if (javaType == Long.class || javaType == BigInteger.class) {
+            // BIGINT is used for 'long' fields, which are read as longs
+            return number.longValue();
+        } else if (javaType == Short.class) {
+            return number.shortValue();
+        } else if (javaType == Byte.class) {
+            return number.byteValue();
+        } else if (javaType == Float.class) {
+            return number.floatValue();
+        } else if (javaType == Double.class) {
+            return number.doubleValue();
+        } else if (javaType == BigDecimal.class) {
+            return new BigDecimal(number.toString());
+        }
+        return number;
+    }
+}
@@ -0,0 +1,360 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.elasticsearch.common;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.metamodel.MetaModelException;
+import org.apache.metamodel.util.SharedExecutorService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Buffers bulkable actions (index and delete requests) and executes them as
+ * bulk requests in the background, so that the writing thread does not have
+ * to wait for ElasticSearch to process each bulk.
+ * 
+ * A bulk is sent when either the number of buffered actions or their
+ * (approximate) size in bytes reaches a threshold. At most a configurable
+ * number of bulk requests are in flight at the same time - when the limit is
+ * reached, {@link #add(Object, long)} blocks until a bulk request has
+ * completed. With zero concurrent requests the bulks are executed
+ * synchronously.
+ * 
+ * Items which are rejected because the cluster is overloaded (status 429)
+ * are retried with an exponential backoff. Other failed items are logged and
+ * reported as a {@link MetaModelException} by {@link #awaitCompletion()} and
+ * {@link #close()}.
+ * 
+ * @param <A>
+ *            the type of action that the client library uses
+ */
+public abstract class ElasticSearchBulkProcessor<A> implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ElasticSearchBulkProcessor.class);
+
+    public static final String SYSTEM_PROPERTY_BULK_CONCURRENT_REQUESTS = "metamodel.elasticsearch.bulk.concurrent.requests";
+    public static final String SYSTEM_PROPERTY_BULK_MAX_ACTIONS = "metamodel.elasticsearch.bulk.max.actions";
+    public static final String SYSTEM_PROPERTY_BULK_MAX_BYTES = "metamodel.elasticsearch.bulk.max.bytes";
+    public static final String SYSTEM_PROPERTY_BULK_BACKOFF_RETRIES = "metamodel.elasticsearch.bulk.backoff.retries";
+    public static final String SYSTEM_PROPERTY_BULK_BACKOFF_MILLIS = "metamodel.elasticsearch.bulk.backoff.millis";
+
+    public static final int STATUS_TOO_MANY_REQUESTS = 429;
+
+    private static final int DEFAULT_CONCURRENT_REQUESTS = 1;
+    private static final int DEFAULT_MAX_ACTIONS = 1000;
+    private static final long DEFAULT_MAX_BYTES = 5 * 1024 * 1024;
+    private static final int DEFAULT_BACKOFF_RETRIES = 8;
+    private static final long DEFAULT_BACKOFF_MILLIS = 50;
+
+    private static final int MAX_REPORTED_FAILURES = 10;
+
+    /**
+     * Represents an action of a bulk request which failed.
+     */
+    public static final class BulkItemFailure {
+
+        private final int index;
+        private final String operation;
+        private final String id;
+        private final int status;
+        private final String message;
+
+        /**
+         * 
+         * @param index
+         *            the index of the action in the list of actions passed to
+         *            {@link ElasticSearchBulkProcessor#executeBulk(List)}
+         * @param operation
+         * @param id
+         * @param status
+         *            the HTTP status code of the failure
+         * @param message
+         */
+        public BulkItemFailure(int index, String operation, String id, int status, String message) {
+            this.index = index;
+            this.operation = operation;
+            this.id = id;
+            this.status = status;
+            this.message = message;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "BulkItemFailure[op=" + operation + ",id=" + id + ",status=" + status + ",error=" + message + "]";
+        }
+    }
+
+    private final String indexName;
+    private final int concurrentRequests;
+    private final int maxActions;
+    private final long maxBytes;
+    private final int backoffRetries;
+    private final long backoffMillis;
+    private final Semaphore semaphore;
+    private final List<BulkItemFailure> failures;
+    private final AtomicReference<Exception> error;
+
+    private List<A> actions;
+    private long bytes;
+
+    /**
+     * Creates a bulk processor configured by system properties.
+     * 
+     * @param indexName
+     *            the name of the index, used for logging
+     */
+    public ElasticSearchBulkProcessor(String indexName) {
+        this(indexName, (int) getSystemPropertyValue(SYSTEM_PROPERTY_BULK_CONCURRENT_REQUESTS,
+                DEFAULT_CONCURRENT_REQUESTS), (int) getSystemPropertyValue(SYSTEM_PROPERTY_BULK_MAX_ACTIONS,
+                DEFAULT_MAX_ACTIONS), getSystemPropertyValue(SYSTEM_PROPERTY_BULK_MAX_BYTES, DEFAULT_MAX_BYTES),
+                (int) getSystemPropertyValue(SYSTEM_PROPERTY_BULK_BACKOFF_RETRIES, DEFAULT_BACKOFF_RETRIES),
+                getSystemPropertyValue(SYSTEM_PROPERTY_BULK_BACKOFF_MILLIS, DEFAULT_BACKOFF_MILLIS));
+    }
+
+    public ElasticSearchBulkProcessor(String indexName, int concurrentRequests, int maxActions, long maxBytes,
+            int backoffRetries, long backoffMillis) {
+        if (concurrentRequests < 0) {
+            throw new IllegalArgumentException("Concurrent requests cannot be negative");
+        }
+        this.indexName = indexName;
+        this.concurrentRequests = concurrentRequests;
+        this.maxActions = Math.max(1, maxActions);
+        this.maxBytes = maxBytes;
+        this.backoffRetries = backoffRetries;
+        this.backoffMillis = backoffMillis;
+        this.semaphore = new Semaphore(concurrentRequests);
+        this.failures = Collections.synchronizedList(new ArrayList<BulkItemFailure>());
+        this.error = new AtomicReference<>();
+        this.actions = new ArrayList<>();
+        this.bytes = 0;
+    }
+
+    private static long getSystemPropertyValue(String property, long defaultValue) {
+        final String str = System.getProperty(property);
+        if (str == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(str);
+        } catch (NumberFormatException e) {
+            logger.debug("Failed to parse system property '{}': '{}'", property, str);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Executes a bulk request.
+     * 
+     * @param actions
+     *            the actions of the bulk
+     * @return the failed actions of the bulk. If the bulk request as a whole
+     *         was rejected, all actions should be reported as failed.
+     * @throws Exception
+     *             if the bulk request could not be executed
+     */
+    protected abstract List<BulkItemFailure> executeBulk(List<A> actions) throws Exception;
+
+    /**
+     * Adds an action to the buffer, sending a bulk request if the buffer is
+     * full.
+     * 
+     * @param action
+     * @param sizeInBytes
+     *            the (approximate) size of the action in the bulk request
+     */
+    public void add(A action, long sizeInBytes) {
+        actions.add(action);
+        bytes += sizeInBytes;
+        if (actions.size() >= maxActions || (maxBytes > 0 && bytes >= maxBytes)) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends the buffered actions as a bulk request, without waiting for it to
+     * complete.
+     */
+    public void flush() {
+        if (actions.isEmpty()) {
+            return;
+        }
+        final List<A> bulk = actions;
+        logger.debug("Flushing {} actions ({} bytes) to ElasticSearch index {}", bulk.size(), bytes, indexName);
+        actions = new ArrayList<>();
+        bytes = 0;
+
+        if (concurrentRequests == 0) {
+            runBulk(bulk);
+            return;
+        }
+
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MetaModelException("Interrupted while waiting to send bulk request", e);
+        }
+        try {
+            SharedExecutorService.get().submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        runBulk(bulk);
+                    } finally {
+                        semaphore.release();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            semaphore.release();
+            throw e;
+        }
+    }
+
+    private void runBulk(List<A> bulk) {
+        List<A> pending = bulk;
+        int attempt = 0;
+        while (true) {
+            final List<BulkItemFailure> itemFailures;
+            try {
+                itemFailures = executeBulk(pending);
+            } catch (Exception e) {
+                logger.warn("Could not execute bulk request on ElasticSearch index " + indexName, e);
+                error.compareAndSet(null, e);
+                return;
+            }
+
+            final List<A> rejected = new ArrayList<>();
+            for (BulkItemFailure itemFailure : itemFailures) {
+                if (itemFailure.getStatus() == STATUS_TOO_MANY_REQUESTS && attempt < backoffRetries) {
+                    rejected.add(pending.get(itemFailure.getIndex()));
+                } else {
+                    logger.error("Bulk failed with item no. {} of {}: {}", itemFailure.getIndex() + 1, pending.size(),
+                            itemFailure);
+                    failures.add(itemFailure);
+                }
+            }
+            if (rejected.isEmpty()) {
+                return;
+            }
+
+            final long delay = backoffMillis << Math.min(attempt, 20);
+            logger.info("{} of {} bulk actions were rejected by ElasticSearch index {}, retrying in {} ms",
+                    rejected.size(), pending.size(), indexName, delay);
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error.compareAndSet(null, e);
+                return;
+            }
+            pending = rejected;
+            attempt++;
+        }
+    }
+
+    /**
+     * Sends the buffered actions and waits for all bulk requests to complete.
+     * 
+     * @throws MetaModelException
+     *             if any of the actions failed since the last call
+     */
+    public void awaitCompletion() throws MetaModelException {
+        flush();
+        try {
+            semaphore.acquire(concurrentRequests);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MetaModelException("Interrupted while waiting for bulk requests to complete", e);
+        }
+        semaphore.release(concurrentRequests);
+
+        final Exception exception = error.getAndSet(null);
+        if (exception != null) {
+            failures.clear();
+            if (exception instanceof MetaModelException) {
+                throw (MetaModelException) exception;
+            }
+            throw new MetaModelException("Could not execute bulk request on ElasticSearch index " + indexName,
+                    exception);
+        }
+
+        final List<BulkItemFailure> reportedFailures;
+        synchronized (failures) {
+            if (failures.isEmpty()) {
+                return;
+            }
+            reportedFailures = new ArrayList<>(failures);
+            failures.clear();
+        }
+        final StringBuilder sb = new StringBuilder();
+        sb.append(reportedFailures.size()).append(" bulk action(s) failed on ElasticSearch index ").append(indexName)
+                .append(": ");
+        for (int i = 0; i < reportedFailures.size() && i < MAX_REPORTED_FAILURES; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(reportedFailures.get(i));
+        }
+        if (reportedFailures.size() > MAX_REPORTED_FAILURES) {
+            sb.append(", ...");
+        }
+        throw new MetaModelException(sb.toString());
+    }
+
+    /**
+     * Gets the number of buffered actions which have not yet been sent.
+     * 
+     * @return
+     */
+    public int getBufferedActionCount() {
+        return actions.size();
+    }
+
+    @Override
+    public void close() throws MetaModelException {
+        awaitCompletion();
+    }
+}
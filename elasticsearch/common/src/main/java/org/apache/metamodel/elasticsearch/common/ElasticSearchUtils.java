@@ -21,10 +21,12 @@ package org.apache.metamodel.elasticsearch.common;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 
 import org.apache.metamodel.query.FilterItem;
 import org.apache.metamodel.query.LogicalOperator;
@@ -294,4 +296,44 @@ public class ElasticSearchUtils {
         }
         return columnType;
     }
+
+    /**
+     * Gets the approximate number of bytes that a value occupies when encoded
+     * as JSON. Used to limit the size of bulk requests without having to
+     * encode the documents twice.
+     * 
+     * @param value
+     *            a document source, or a value of a document.
+     * @return the approximate number of bytes.
+     */
+    public static long getApproximateSize(Object value) {
+        if (value == null) {
+            return 4;
+        }
+        if (value instanceof CharSequence) {
+            return ((CharSequence) value).length() + 2;
+        }
+        if (value instanceof Map) {
+            long size = 2;
+            for (Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += String.valueOf(entry.getKey()).length() + 4 + getApproximateSize(entry.getValue());
+            }
+            return size;
+        }
+        if (value instanceof Iterable) {
+            long size = 2;
+            for (Object element : (Iterable<?>) value) {
+                size += getApproximateSize(element) + 1;
+            }
+            return size;
+        }
+        if (value instanceof Object[]) {
+            return getApproximateSize(Arrays.asList((Object[]) value));
+        }
+        if (value instanceof Date) {
+            // formatted as an ISO date
+            return 30;
+        }
+        return 8;
+    }
 }
@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.elasticsearch.common;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.metamodel.data.DataSet;
+import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.FunctionType;
+import org.apache.metamodel.query.GroupByItem;
+import org.apache.metamodel.query.OperatorType;
+import org.apache.metamodel.query.Query;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.ColumnType;
+import org.apache.metamodel.schema.MutableColumn;
+import org.apache.metamodel.schema.MutableTable;
+import org.elasticsearch.search.aggregations.AbstractAggregationBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+public class ElasticSearchAggregationsTest extends TestCase {
+
+    private MutableTable table;
+    private MutableColumn idColumn;
+    private MutableColumn nameColumn;
+    private MutableColumn ageColumn;
+    private MutableColumn scoreColumn;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        table = new MutableTable("person");
+        idColumn = new MutableColumn("_id", ColumnType.STRING, table, 0, false).setPrimaryKey(true);
+        nameColumn = new MutableColumn("name", ColumnType.STRING, table, 1, true);
+        ageColumn = new MutableColumn("age", ColumnType.BIGINT, table, 2, true);
+        scoreColumn = new MutableColumn("score", ColumnType.DOUBLE, table, 3, true);
+        table.addColumn(idColumn).addColumn(nameColumn).addColumn(ageColumn).addColumn(scoreColumn);
+    }
+
+    public void testIsSupported() throws Exception {
+        assertTrue(ElasticSearchAggregations.isFilterSupported(new FilterItem(new SelectItem(nameColumn),
+                OperatorType.EQUALS_TO, "foo")));
+        assertFalse(ElasticSearchAggregations.isFilterSupported(new FilterItem(new SelectItem(ageColumn),
+                OperatorType.GREATER_THAN, 10)));
+        assertFalse(ElasticSearchAggregations.isFilterSupported(new FilterItem(SelectItem.getCountAllItem(),
+                OperatorType.EQUALS_TO, 10)));
+
+        assertTrue(ElasticSearchAggregations.isGroupBySupported(new GroupByItem(new SelectItem(ageColumn))));
+        assertFalse(ElasticSearchAggregations.isGroupBySupported(new GroupByItem(new SelectItem(nameColumn))));
+
+        assertTrue(ElasticSearchAggregations.isAggregateSupported(SelectItem.getCountAllItem()));
+        assertTrue(ElasticSearchAggregations.isAggregateSupported(new SelectItem(FunctionType.COUNT, nameColumn)));
+        assertTrue(ElasticSearchAggregations.isAggregateSupported(new SelectItem(FunctionType.SUM, scoreColumn)));
+        assertTrue(ElasticSearchAggregations.isAggregateSupported(new SelectItem(FunctionType.MAX, ageColumn)));
+        assertFalse(ElasticSearchAggregations.isAggregateSupported(new SelectItem(FunctionType.MAX, nameColumn)));
+        assertFalse(ElasticSearchAggregations.isAggregateSupported(new SelectItem(FunctionType.COUNT, idColumn)));
+    }
+
+    public void testCreateAggregations() throws Exception {
+        final Query query = new Query().from(table).select(ageColumn).selectCount()
+                .select(FunctionType.SUM, scoreColumn).groupBy(ageColumn);
+        assertTrue(ElasticSearchAggregations.isAggregationQuery(query));
+
+        final List<AbstractAggregationBuilder> aggregations = ElasticSearchAggregations.createAggregations(query);
+        assertEquals(2, aggregations.size());
+
+        final SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
+        for (AbstractAggregationBuilder aggregation : aggregations) {
+            searchSourceBuilder.aggregation(aggregation);
+        }
+        final String json = searchSourceBuilder.toString().replaceAll("\\s", "");
+        assertTrue(json, json.contains("\"g0\":{\"terms\":{\"field\":\"age\",\"size\":0}"));
+        assertTrue(json, json.contains("\"m0\":{\"missing\":{\"field\":\"age\"}"));
+        assertTrue(json, json.contains("\"a2\":{\"sum\":{\"field\":\"score\"}"));
+        assertFalse(json, json.contains("\"a1\""));
+    }
+
+    public void testCreateDataSetGrouped() throws Exception {
+        final Query query = new Query().from(table).select(ageColumn).selectCount()
+                .select(FunctionType.COUNT, scoreColumn).select(FunctionType.MAX, scoreColumn).groupBy(ageColumn);
+
+        final Map<String, Object> aggregations = new HashMap<>();
+        aggregations.put("g0", Collections.singletonMap("buckets", Arrays.asList(
+                createBucket(30.0, 3, 1, 7.5), createBucket(40, 1, 0, 2.0))));
+        aggregations.put("m0", createBucket(null, 2, 2, null));
+
+        final DataSet dataSet = ElasticSearchAggregations.createDataSet(query, aggregations, 6);
+        assertTrue(dataSet.next());
+        assertEquals("Row[values=[30, 3, 2, 7.5]]", dataSet.getRow().toString());
+        assertEquals(Long.class, dataSet.getRow().getValue(0).getClass());
+        assertTrue(dataSet.next());
+        assertEquals("Row[values=[40, 1, 1, 2.0]]", dataSet.getRow().toString());
+        assertTrue(dataSet.next());
+        assertEquals("Row[values=[null, 2, 0, null]]", dataSet.getRow().toString());
+        assertFalse(dataSet.next());
+        dataSet.close();
+    }
+
+    public void testCreateDataSetUngrouped() throws Exception {
+        final Query query = new Query().from(table).selectCount().select(FunctionType.SUM, scoreColumn)
+                .select(FunctionType.AVG, ageColumn);
+
+        final Map<String, Object> aggregations = new HashMap<>();
+        aggregations.put("a1", Collections.singletonMap("value", 0.0));
+        aggregations.put("a2", Collections.singletonMap("value", null));
+
+        final DataSet dataSet = ElasticSearchAggregations.createDataSet(query, aggregations, 0);
+        assertTrue(dataSet.next());
+        assertEquals("Row[values=[0, 0.0, 0.0]]", dataSet.getRow().toString());
+        assertFalse(dataSet.next());
+        dataSet.close();
+    }
+
+    private Map<String, Object> createBucket(Object key, long docCount, long missingScores, Object maxScore) {
+        final Map<String, Object> bucket = new HashMap<>();
+        if (key != null) {
+            bucket.put("key", key);
+        }
+        bucket.put("doc_count", docCount);
+        bucket.put("a2", Collections.singletonMap("doc_count", missingScores));
+        bucket.put("a3", Collections.singletonMap("value", maxScore));
+        return bucket;
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.elasticsearch.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.apache.metamodel.MetaModelException;
+
+public class ElasticSearchBulkProcessorTest extends TestCase {
+
+    /**
+     * Bulk processor which records the bulks and fails the items given by a
+     * map of action to list of status codes (one per attempt).
+     */
+    private static class RecordingBulkProcessor extends ElasticSearchBulkProcessor<String> {
+
+        private final List<List<String>> bulks = Collections.synchronizedList(new ArrayList<List<String>>());
+        private final Map<String, List<Integer>> statuses = new HashMap<>();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+        private long delayMillis = 0;
+        private RuntimeException exception;
+
+        public RecordingBulkProcessor(int concurrentRequests, int maxActions, long maxBytes, int backoffRetries) {
+            super("test", concurrentRequests, maxActions, maxBytes, backoffRetries, 1);
+        }
+
+        @Override
+        protected List<BulkItemFailure> executeBulk(List<String> actions) throws Exception {
+            final int count = inFlight.incrementAndGet();
+            synchronized (maxInFlight) {
+                maxInFlight.set(Math.max(maxInFlight.get(), count));
+            }
+            try {
+                if (exception != null) {
+                    throw exception;
+                }
+                Thread.sleep(delayMillis);
+                bulks.add(new ArrayList<>(actions));
+                final List<BulkItemFailure> failures = new ArrayList<>();
+                for (int i = 0; i < actions.size(); i++) {
+                    final String action = actions.get(i);
+                    final List<Integer> actionStatuses = statuses.get(action);
+                    if (actionStatuses != null && !actionStatuses.isEmpty()) {
+                        failures.add(new BulkItemFailure(i, "index", action, actionStatuses.remove(0), "failed"));
+                    }
+                }
+                return failures;
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    public void testFlushByNumberOfActions() throws Exception {
+        final RecordingBulkProcessor processor = new RecordingBulkProcessor(0, 2, 0, 0);
+        for (String action : Arrays.asList("a", "b", "c", "d", "e")) {
+            processor.add(action, 10);
+        }
+        assertEquals("[[a, b], [c, d]]", processor.bulks.toString());
+        assertEquals(1, processor.getBufferedActionCount());
+
+        processor.close();
+        assertEquals("[[a, b], [c, d], [e]]", processor.bulks.toString());
+        assertEquals(0, processor.getBufferedActionCount());
+    }
+
+    public void testFlushByNumberOfBytes() throws Exception {
+        final RecordingBulkProcessor processor = new RecordingBulkProcessor(0, 100, 25, 0);
+        for (String action : Arrays.asList("a", "b", "c", "d", "e")) {
+            processor.add(action, 10);
+        }
+        processor.close();
+        assertEquals("[[a, b, c], [d, e]]", processor.bulks.toString());
+    }
+
+    public void testRetryRejectedItems() throws Exception {
+        final RecordingBulkProcessor processor = new RecordingBulkProcessor(0, 3, 0, 3);
+        processor.statuses.put("b", new ArrayList<>(Arrays.asList(429, 429)));
+        processor.add("a", 10);
+        processor.add("b", 10);
+        processor.add("c", 10);
+        processor.close();
+        assertEquals("[[a, b, c], [b], [b]]", processor.bulks.toString());
+    }
+
+    public void testReportFailedItems() throws Exception {
+        final RecordingBulkProcessor processor = new RecordingBulkProcessor(0, 3, 0, 1);
+        processor.statuses.put("a", new ArrayList<>(Arrays.asList(409)));
+        processor.statuses.put("c", new ArrayList<>(Arrays.asList(429, 429)));
+        processor.add("a", 10);
+        processor.add("b", 10);
+        processor.add("c", 10);
+        try {
+            processor.awaitCompletion();
+            fail("Exception expected");
+        } catch (MetaModelException e) {
+            assertEquals("2 bulk action(s) failed on ElasticSearch index test: "
+                    + "BulkItemFailure[op=index,id=a,status=409,error=failed], "
+                    + "BulkItemFailure[op=index,id=c,status=429,error=failed]", e.getMessage());
+        }
+        assertEquals("[[a, b, c], [c]]", processor.bulks.toString());
+
+        // failures are only reported once
+        processor.close();
+    }
+
+    public void testReportBulkException() throws Exception {
+        final RecordingBulkProcessor processor = new RecordingBulkProcessor(1, 1, 0, 0);
+        processor.exception = new IllegalStateException("foo");
+        processor.add("a", 10);
+        try {
+            processor.close();
+            fail("Exception expected");
+        } catch (MetaModelException e) {
+            assertEquals("Could not execute bulk request on ElasticSearch index test", e.getMessage());
+            assertEquals("foo", e.getCause().getMessage());
+        }
+    }
+
+    public void testConcurrentRequests() throws Exception {
+        final RecordingBulkProcessor processor = new RecordingBulkProcessor(2, 1, 0, 0);
+        processor.delayMillis = 20;
+        for (int i = 0; i < 10; i++) {
+            processor.add("action" + i, 10);
+        }
+        processor.close();
+        assertEquals(10, processor.bulks.size());
+        assertTrue(processor.maxInFlight.get() <= 2);
+    }
+}
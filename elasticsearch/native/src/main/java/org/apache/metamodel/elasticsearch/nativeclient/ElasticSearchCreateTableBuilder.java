@@ -53,6 +53,8 @@ final class ElasticSearchCreateTableBuilder extends AbstractTableCreationBuilder
         final PutMappingRequestBuilder requestBuilder = new PutMappingRequestBuilder(indicesAdmin).setIndices(indexName)
                 .setType(table.getName());
         requestBuilder.setSource(source);
+        // let preceding bulk actions complete first
+        getUpdateCallback().flushBulkActions();
         final PutMappingResponse result = requestBuilder.execute().actionGet();
 
         logger.debug("PutMapping response: acknowledged={}", result.isAcknowledged());
@@ -18,6 +18,7 @@
  */
 package org.apache.metamodel.elasticsearch.nativeclient;
 
+import java.io.IOException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -25,6 +26,7 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.metamodel.BatchUpdateScript;
 import org.apache.metamodel.DataContext;
 import org.apache.metamodel.MetaModelException;
 import org.apache.metamodel.QueryPostprocessDataContext;
@@ -34,10 +36,13 @@ import org.apache.metamodel.data.DataSet;
 import org.apache.metamodel.data.DataSetHeader;
 import org.apache.metamodel.data.Row;
 import org.apache.metamodel.data.SimpleDataSetHeader;
+import org.apache.metamodel.elasticsearch.common.ElasticSearchAggregations;
 import org.apache.metamodel.elasticsearch.common.ElasticSearchMetaData;
 import org.apache.metamodel.elasticsearch.common.ElasticSearchUtils;
 import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.GroupByItem;
 import org.apache.metamodel.query.LogicalOperator;
+import org.apache.metamodel.query.Query;
 import org.apache.metamodel.query.SelectItem;
 import org.apache.metamodel.schema.Column;
 import org.apache.metamodel.schema.MutableColumn;
@@ -60,8 +65,13 @@ import org.elasticsearch.common.collect.ImmutableOpenMap;
 import org.elasticsearch.common.hppc.ObjectLookupContainer;
 import org.elasticsearch.common.hppc.cursors.ObjectCursor;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.aggregations.AbstractAggregationBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -343,25 +353,97 @@ public class ElasticSearchDataContext extends QueryPostprocessDataContext implem
 
     @Override
     protected Number executeCountQuery(Table table, List<FilterItem> whereItems, boolean functionApproximationAllowed) {
-        if (!whereItems.isEmpty()) {
+        final QueryBuilder queryBuilder = ElasticSearchUtils.createQueryBuilderForSimpleWhere(whereItems,
+                LogicalOperator.AND);
+        if (queryBuilder == null) {
             // not supported - will have to be done by counting client-side
             return null;
         }
         final String documentType = table.getName();
-        final CountResponse response = elasticSearchClient.prepareCount(indexName)
-                .setQuery(QueryBuilders.termQuery("_type", documentType)).execute().actionGet();
+        final CountResponse response = elasticSearchClient.prepareCount(indexName).setTypes(documentType)
+                .setQuery(queryBuilder).execute().actionGet();
         return response.getCount();
     }
 
+    @Override
+    protected boolean isFilterPushdownSupported(Table table, FilterItem filterItem) {
+        return ElasticSearchAggregations.isFilterSupported(filterItem);
+    }
+
+    @Override
+    protected boolean isGroupByPushdownSupported(Table table, GroupByItem groupByItem) {
+        return ElasticSearchAggregations.isGroupBySupported(groupByItem);
+    }
+
+    @Override
+    protected boolean isAggregatePushdownSupported(Table table, SelectItem aggregateItem) {
+        return ElasticSearchAggregations.isAggregateSupported(aggregateItem);
+    }
+
+    /**
+     * Executes grouped and aggregated queries as a single search with
+     * aggregations and no hits. Other queries are left to
+     * {@link #materializeMainSchemaTable(Table, List, List, int, int)}.
+     */
+    @Override
+    protected DataSet executePushdownQuery(Table table, Query query) {
+        if (!ElasticSearchAggregations.isAggregationQuery(query)) {
+            return null;
+        }
+        final QueryBuilder queryBuilder = ElasticSearchAggregations.createQueryBuilder(query);
+        if (queryBuilder == null) {
+            return null;
+        }
+
+        final SearchRequestBuilder requestBuilder = elasticSearchClient.prepareSearch(indexName)
+                .setTypes(table.getName()).setQuery(queryBuilder).setSize(0);
+        for (AbstractAggregationBuilder aggregation : ElasticSearchAggregations.createAggregations(query)) {
+            requestBuilder.addAggregation(aggregation);
+        }
+        final SearchResponse response = requestBuilder.execute().actionGet();
+
+        final Map<String, ?> aggregations;
+        try {
+            final XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+            response.toXContent(builder, ToXContent.EMPTY_PARAMS);
+            builder.endObject();
+            final Map<String, Object> responseMap = XContentHelper.convertToMap(builder.bytes(), false).v2();
+            @SuppressWarnings("unchecked")
+            final Map<String, ?> aggregationsMap = (Map<String, ?>) responseMap.get("aggregations");
+            aggregations = aggregationsMap;
+        } catch (IOException e) {
+            throw new MetaModelException("Could not read ElasticSearch aggregation results", e);
+        }
+        return ElasticSearchAggregations.createDataSet(query, aggregations, response.getHits().getTotalHits());
+    }
+
     private boolean limitMaxRowsIsSet(int maxRows) {
         return (maxRows != -1);
     }
 
     @Override
     public void executeUpdate(UpdateScript update) {
-        final ElasticSearchUpdateCallback callback = new ElasticSearchUpdateCallback(this);
-        update.run(callback);
-        callback.onExecuteUpdateFinished();
+        final boolean isBatch = update instanceof BatchUpdateScript;
+        final ElasticSearchUpdateCallback callback = new ElasticSearchUpdateCallback(this, isBatch);
+        Throwable failure = null;
+        try {
+            update.run(callback);
+        } catch (RuntimeException | Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            // send or wait for any outstanding bulk actions, also when the
+            // update script failed halfway
+            if (failure == null) {
+                callback.onExecuteUpdateFinished();
+            } else {
+                try {
+                    callback.onExecuteUpdateFinished();
+                } catch (RuntimeException e) {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
     }
 
     /**
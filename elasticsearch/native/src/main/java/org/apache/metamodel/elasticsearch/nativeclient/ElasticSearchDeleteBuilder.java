@@ -75,6 +75,8 @@ final class ElasticSearchDeleteBuilder extends AbstractRowDeletionBuilder {
                     + whereItems);
         }
         deleteByQueryRequestBuilder.setQuery(queryBuilder);
+        // let preceding bulk actions complete first
+        _updateCallback.flushBulkActions();
         deleteByQueryRequestBuilder.execute().actionGet();
 
         logger.debug("Deleted documents by query.");
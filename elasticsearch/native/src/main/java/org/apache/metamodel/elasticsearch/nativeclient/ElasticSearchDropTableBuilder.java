@@ -61,6 +61,8 @@ final class ElasticSearchDropTableBuilder extends AbstractTableDropBuilder {
                 .setIndices(indexName);
         setType(requestBuilder, documentType);
 
+        // let preceding bulk actions complete first
+        _updateCallback.flushBulkActions();
         final DeleteMappingResponse result = requestBuilder.execute().actionGet();
         logger.debug("Delete mapping response: acknowledged={}", result.isAcknowledged());
 
@@ -27,15 +27,10 @@ import org.apache.metamodel.insert.AbstractRowInsertionBuilder;
 import org.apache.metamodel.schema.Column;
 import org.apache.metamodel.schema.Table;
 import org.elasticsearch.action.index.IndexRequestBuilder;
-import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.client.Client;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 final class ElasticSearchInsertBuilder extends AbstractRowInsertionBuilder<ElasticSearchUpdateCallback> {
 
-    private static final Logger logger = LoggerFactory.getLogger(ElasticSearchInsertBuilder.class);
-
     public ElasticSearchInsertBuilder(ElasticSearchUpdateCallback updateCallback, Table table) {
         super(updateCallback, table);
     }
@@ -70,9 +65,7 @@ final class ElasticSearchInsertBuilder extends AbstractRowInsertionBuilder<Elast
         requestBuilder.setSource(valueMap);
         requestBuilder.setCreate(true);
 
-        final IndexResponse result = requestBuilder.execute().actionGet();
-        
-        logger.debug("Inserted document: id={}", result.getId());
+        getUpdateCallback().execute(requestBuilder.request());
     }
 
 }
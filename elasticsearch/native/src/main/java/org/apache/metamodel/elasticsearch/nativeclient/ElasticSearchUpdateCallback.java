@@ -26,15 +26,29 @@ import org.apache.metamodel.drop.TableDropBuilder;
 import org.apache.metamodel.insert.RowInsertionBuilder;
 import org.apache.metamodel.schema.Schema;
 import org.apache.metamodel.schema.Table;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.client.Client;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * {@link UpdateCallback} implementation for {@link ElasticSearchDataContext}.
  */
 final class ElasticSearchUpdateCallback extends AbstractUpdateCallback {
 
-    public ElasticSearchUpdateCallback(ElasticSearchDataContext dataContext) {
+    private static final Logger logger = LoggerFactory.getLogger(ElasticSearchUpdateCallback.class);
+
+    private final boolean isBatch;
+    private NativeElasticSearchBulkProcessor bulkProcessor;
+
+    public ElasticSearchUpdateCallback(ElasticSearchDataContext dataContext, boolean isBatch) {
         super(dataContext);
+        this.isBatch = isBatch;
+    }
+
+    private boolean isBatch() {
+        return isBatch;
     }
 
     @Override
@@ -76,7 +90,44 @@ final class ElasticSearchUpdateCallback extends AbstractUpdateCallback {
         return new ElasticSearchDeleteBuilder(this, table);
     }
 
+    /**
+     * Executes an index request. In batch updates the request is added to a
+     * bulk which is sent asynchronously.
+     * 
+     * @param request
+     */
+    public void execute(IndexRequest request) {
+        if (isBatch()) {
+            getBulkProcessor().add(request, request.source().length());
+        } else {
+            final IndexResponse result = getDataContext().getElasticSearchClient().index(request).actionGet();
+            logger.debug("Inserted document: id={}", result.getId());
+        }
+    }
+
+    /**
+     * Sends all buffered bulk actions and waits for them to complete. Called
+     * before executing requests which cannot be part of a bulk, so that they
+     * see the effect of the preceding actions.
+     */
+    public void flushBulkActions() {
+        if (bulkProcessor != null) {
+            bulkProcessor.awaitCompletion();
+        }
+    }
+
+    private NativeElasticSearchBulkProcessor getBulkProcessor() {
+        if (bulkProcessor == null) {
+            final ElasticSearchDataContext dataContext = getDataContext();
+            bulkProcessor = new NativeElasticSearchBulkProcessor(dataContext.getElasticSearchClient(),
+                    dataContext.getIndexName());
+        }
+        return bulkProcessor;
+    }
+
     public void onExecuteUpdateFinished() {
+        flushBulkActions();
+
         // force refresh of the index
         final ElasticSearchDataContext dataContext = getDataContext();
         final Client client = dataContext.getElasticSearchClient();
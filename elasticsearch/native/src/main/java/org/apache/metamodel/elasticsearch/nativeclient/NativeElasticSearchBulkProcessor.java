@@ -0,0 +1,74 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.elasticsearch.nativeclient;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.metamodel.elasticsearch.common.ElasticSearchBulkProcessor;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+
+/**
+ * {@link ElasticSearchBulkProcessor} which executes bulk requests using the
+ * native {@link Client}.
+ */
+final class NativeElasticSearchBulkProcessor extends ElasticSearchBulkProcessor<ActionRequest<?>> {
+
+    private final Client client;
+
+    public NativeElasticSearchBulkProcessor(Client client, String indexName) {
+        super(indexName);
+        this.client = client;
+    }
+
+    @Override
+    protected List<BulkItemFailure> executeBulk(List<ActionRequest<?>> actions) throws Exception {
+        final BulkRequest bulkRequest = new BulkRequest();
+        for (ActionRequest<?> action : actions) {
+            bulkRequest.add(action);
+        }
+
+        final List<BulkItemFailure> failures = new ArrayList<>();
+        final BulkResponse response;
+        try {
+            response = client.bulk(bulkRequest).actionGet();
+        } catch (EsRejectedExecutionException e) {
+            // the bulk as a whole was rejected, retry all of it
+            for (int i = 0; i < actions.size(); i++) {
+                failures.add(new BulkItemFailure(i, null, null, STATUS_TOO_MANY_REQUESTS, e.getMessage()));
+            }
+            return failures;
+        }
+
+        if (response.hasFailures()) {
+            for (BulkItemResponse item : response.getItems()) {
+                if (item.isFailed()) {
+                    failures.add(new BulkItemFailure(item.getItemId(), item.getOpType(), item.getId(), item
+                            .getFailure().getStatus().getStatus(), item.getFailureMessage()));
+                }
+            }
+        }
+        return failures;
+    }
+}
@@ -34,12 +34,17 @@ import org.apache.metamodel.UpdateScript;
 import org.apache.metamodel.UpdateableDataContext;
 import org.apache.metamodel.data.DataSet;
 import org.apache.metamodel.data.DataSetHeader;
+import org.apache.metamodel.data.FirstRowDataSet;
+import org.apache.metamodel.data.MaxRowsDataSet;
 import org.apache.metamodel.data.Row;
 import org.apache.metamodel.data.SimpleDataSetHeader;
+import org.apache.metamodel.elasticsearch.common.ElasticSearchAggregations;
 import org.apache.metamodel.elasticsearch.common.ElasticSearchMetaData;
 import org.apache.metamodel.elasticsearch.common.ElasticSearchUtils;
 import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.GroupByItem;
 import org.apache.metamodel.query.LogicalOperator;
+import org.apache.metamodel.query.Query;
 import org.apache.metamodel.query.SelectItem;
 import org.apache.metamodel.schema.Column;
 import org.apache.metamodel.schema.MutableColumn;
@@ -50,10 +55,12 @@ import org.apache.metamodel.schema.Table;
 import org.apache.metamodel.util.SimpleTableDef;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.aggregations.AbstractAggregationBuilder;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
@@ -65,7 +72,9 @@ import io.searchbox.core.Get;
 import io.searchbox.core.Search;
 import io.searchbox.core.SearchResult;
 import io.searchbox.indices.mapping.GetMapping;
+import io.searchbox.indices.settings.GetSettings;
 import io.searchbox.params.Parameters;
+import io.searchbox.params.SearchType;
 
 /**
  * DataContext implementation for ElasticSearch analytics engine.
@@ -95,6 +104,12 @@ public class ElasticSearchRestDataContext extends QueryPostprocessDataContext im
     // 1 minute timeout
     public static final String TIMEOUT_SCROLL = "1m";
 
+    public static final String SYSTEM_PROPERTY_SCROLL_SIZE = "metamodel.elasticsearch.scroll.size";
+    public static final String SYSTEM_PROPERTY_SCROLL_SLICES = "metamodel.elasticsearch.scroll.slices";
+    public static final String SYSTEM_PROPERTY_SCROLL_PREFETCH = "metamodel.elasticsearch.scroll.prefetch";
+
+    private static final int DEFAULT_SCROLL_SIZE = 1000;
+
     private final JestClient elasticSearchClient;
 
     private final String indexName;
@@ -264,19 +279,154 @@ public class ElasticSearchRestDataContext extends QueryPostprocessDataContext im
                 LogicalOperator.AND);
         if (queryBuilder != null) {
             // where clause can be pushed down to an ElasticSearch query
-            SearchSourceBuilder searchSourceBuilder = createSearchRequest(firstRow, maxRows, queryBuilder);
-            SearchResult result = executeSearch(table, searchSourceBuilder, false);
-
-            return new JestElasticSearchDataSet(elasticSearchClient, result, selectItems);
+            return createDataSet(table, selectItems, queryBuilder, firstRow, maxRows);
         }
         return super.materializeMainSchemaTable(table, selectItems, whereItems, firstRow, maxRows);
     }
 
-    private SearchResult executeSearch(Table table, SearchSourceBuilder searchSourceBuilder, boolean scroll) {
+    @Override
+    protected DataSet materializeMainSchemaTable(Table table, Column[] columns, int maxRows) {
+        final List<SelectItem> selectItems = new ArrayList<>(columns.length);
+        for (Column column : columns) {
+            selectItems.add(new SelectItem(column));
+        }
+        return createDataSet(table, selectItems, null, 1, maxRows);
+    }
+
+    /**
+     * Creates a {@link DataSet} for the hits of a search. If the number of
+     * hits is limited to a single page, a single search request is executed.
+     * Otherwise the hits are read using 'scan' scrolls, optionally split into
+     * slices of shards that are read concurrently, with the next pages being
+     * prefetched while the current page is consumed.
+     */
+    private DataSet createDataSet(Table table, List<SelectItem> selectItems, QueryBuilder queryBuilder, int firstRow,
+            int maxRows) {
+        final int scrollSize = (int) getSystemPropertyValue(SYSTEM_PROPERTY_SCROLL_SIZE, DEFAULT_SCROLL_SIZE);
+        if (limitMaxRowsIsSet(maxRows) && maxRows <= scrollSize) {
+            final SearchSourceBuilder searchRequest = createSearchRequest(firstRow, maxRows, queryBuilder,
+                    selectItems);
+            final SearchResult result = executeSearch(table, searchRequest, false, null);
+            return new JestElasticSearchDataSet(new JestElasticSearchScroll(elasticSearchClient, result),
+                    selectItems);
+        }
+
+        // the number of shards is only looked up when the hits should be read
+        // in slices, since it takes a request of its own
+        final long requestedSlices = getSystemPropertyValue(SYSTEM_PROPERTY_SCROLL_SLICES, 1);
+        final int numberOfShards = (requestedSlices > 1 ? getNumberOfShards() : -1);
+        final int slices;
+        if (numberOfShards > 1) {
+            slices = (int) Math.max(1, Math.min(numberOfShards, requestedSlices));
+        } else {
+            slices = 1;
+        }
+        // the size of a 'scan' scroll applies to each shard
+        final int shardsPerSlice = (numberOfShards > 1 ? (numberOfShards + slices - 1) / slices : 1);
+        final int sizePerShard = Math.max(1, scrollSize / shardsPerSlice);
+
+        final List<JestElasticSearchHitSource> scrolls = new ArrayList<>(slices);
+        try {
+            for (int slice = 0; slice < slices; slice++) {
+                final SearchSourceBuilder searchRequest = createSearchRequest(1, sizePerShard, queryBuilder,
+                        selectItems);
+                final String preference = (slices == 1 ? null : getShardsPreference(slice, slices, numberOfShards));
+                final SearchResult result = executeSearch(table, searchRequest, true, preference);
+                scrolls.add(new JestElasticSearchScroll(elasticSearchClient, result));
+            }
+        } catch (RuntimeException e) {
+            for (JestElasticSearchHitSource scroll : scrolls) {
+                scroll.close();
+            }
+            throw e;
+        }
+
+        final JestElasticSearchHitSource hitSource;
+        if (slices == 1 && "false".equals(System.getProperty(SYSTEM_PROPERTY_SCROLL_PREFETCH))) {
+            hitSource = scrolls.get(0);
+        } else {
+            hitSource = new JestElasticSearchPrefetchingHitSource(scrolls, slices * 2);
+        }
+
+        DataSet dataSet = new JestElasticSearchDataSet(hitSource, selectItems);
+        if (firstRow > 1) {
+            dataSet = new FirstRowDataSet(dataSet, firstRow);
+        }
+        if (limitMaxRowsIsSet(maxRows)) {
+            dataSet = new MaxRowsDataSet(dataSet, maxRows);
+        }
+        return dataSet;
+    }
+
+    /**
+     * Creates a search preference which restricts a search to the shards of a
+     * slice.
+     */
+    static String getShardsPreference(int slice, int slices, int numberOfShards) {
+        final StringBuilder sb = new StringBuilder("_shards:");
+        for (int shard = slice; shard < numberOfShards; shard += slices) {
+            if (shard != slice) {
+                sb.append(',');
+            }
+            sb.append(shard);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gets the number of shards of the index (or the max. number of shards of
+     * the indices, if the index name is an alias).
+     * 
+     * @return the number of shards, or -1 if it could not be determined
+     */
+    private int getNumberOfShards() {
+        final JestResult result = JestClientExecutor.execute(elasticSearchClient, new GetSettings.Builder().addIndex(
+                indexName).build(), false);
+        if (result == null || !result.isSucceeded()) {
+            logger.debug("Could not get settings of index '{}'", indexName);
+            return -1;
+        }
+        int numberOfShards = -1;
+        for (Map.Entry<String, JsonElement> entry : result.getJsonObject().entrySet()) {
+            try {
+                final JsonObject settings = entry.getValue().getAsJsonObject().getAsJsonObject("settings");
+                final JsonElement value;
+                if (settings.has("index.number_of_shards")) {
+                    value = settings.get("index.number_of_shards");
+                } else {
+                    value = settings.getAsJsonObject("index").get("number_of_shards");
+                }
+                numberOfShards = Math.max(numberOfShards, value.getAsInt());
+            } catch (RuntimeException e) {
+                logger.debug("Could not read number of shards of index '{}'", entry.getKey(), e);
+            }
+        }
+        return numberOfShards;
+    }
+
+    private static long getSystemPropertyValue(String property, long defaultValue) {
+        final String str = System.getProperty(property);
+        if (str == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(str);
+        } catch (NumberFormatException e) {
+            logger.debug("Failed to parse system property '{}': '{}'", property, str);
+            return defaultValue;
+        }
+    }
+
+    private SearchResult executeSearch(Table table, SearchSourceBuilder searchSourceBuilder, boolean scroll,
+            String preference) {
         Search.Builder builder = new Search.Builder(searchSourceBuilder.toString()).addIndex(getIndexName()).addType(
                 table.getName());
         if (scroll) {
             builder.setParameter(Parameters.SCROLL, TIMEOUT_SCROLL);
+            builder.setSearchType(SearchType.SCAN);
+        }
+        if (preference != null) {
+            builder.setParameter("preference", preference);
         }
 
         Search search = builder.build();
@@ -290,15 +440,8 @@ public class ElasticSearchRestDataContext extends QueryPostprocessDataContext im
         return result;
     }
 
-    @Override
-    protected DataSet materializeMainSchemaTable(Table table, Column[] columns, int maxRows) {
-        SearchResult searchResult = executeSearch(table, createSearchRequest(1, maxRows, null), limitMaxRowsIsSet(
-                maxRows));
-
-        return new JestElasticSearchDataSet(elasticSearchClient, searchResult, columns);
-    }
-
-    private SearchSourceBuilder createSearchRequest(int firstRow, int maxRows, QueryBuilder queryBuilder) {
+    private SearchSourceBuilder createSearchRequest(int firstRow, int maxRows, QueryBuilder queryBuilder,
+            List<SelectItem> selectItems) {
         final SearchSourceBuilder searchRequest = new SearchSourceBuilder();
         if (firstRow > 1) {
             final int zeroBasedFrom = firstRow - 1;
@@ -312,6 +455,21 @@ public class ElasticSearchRestDataContext extends QueryPostprocessDataContext im
             searchRequest.query(queryBuilder);
         }
 
+        // only fetch the fields of the selected columns. The document id is
+        // not part of the source.
+        final List<String> fields = new ArrayList<>();
+        for (SelectItem selectItem : selectItems) {
+            final Column column = selectItem.getColumn();
+            if (column != null && !column.isPrimaryKey() && !fields.contains(column.getName())) {
+                fields.add(column.getName());
+            }
+        }
+        if (fields.isEmpty()) {
+            searchRequest.fetchSource(false);
+        } else {
+            searchRequest.fetchSource(fields.toArray(new String[fields.size()]), null);
+        }
+
         return searchRequest;
     }
 
@@ -335,15 +493,18 @@ public class ElasticSearchRestDataContext extends QueryPostprocessDataContext im
 
     @Override
     protected Number executeCountQuery(Table table, List<FilterItem> whereItems, boolean functionApproximationAllowed) {
-        if (!whereItems.isEmpty()) {
+        final QueryBuilder queryBuilder = ElasticSearchUtils.createQueryBuilderForSimpleWhere(whereItems,
+                LogicalOperator.AND);
+        if (queryBuilder == null) {
             // not supported - will have to be done by counting client-side
             return null;
         }
         final String documentType = table.getName();
         SearchSourceBuilder sourceBuilder = new SearchSourceBuilder();
-        sourceBuilder.query(QueryBuilders.termQuery("_type", documentType));
+        sourceBuilder.query(queryBuilder);
 
-        Count count = new Count.Builder().addIndex(indexName).query(sourceBuilder.toString()).build();
+        Count count = new Count.Builder().addIndex(indexName).addType(documentType).query(sourceBuilder.toString())
+                .build();
 
         CountResult countResult;
         try {
@@ -356,6 +517,58 @@ public class ElasticSearchRestDataContext extends QueryPostprocessDataContext im
         return countResult.getCount();
     }
 
+    @Override
+    protected boolean isFilterPushdownSupported(Table table, FilterItem filterItem) {
+        return ElasticSearchAggregations.isFilterSupported(filterItem);
+    }
+
+    @Override
+    protected boolean isGroupByPushdownSupported(Table table, GroupByItem groupByItem) {
+        return ElasticSearchAggregations.isGroupBySupported(groupByItem);
+    }
+
+    @Override
+    protected boolean isAggregatePushdownSupported(Table table, SelectItem aggregateItem) {
+        return ElasticSearchAggregations.isAggregateSupported(aggregateItem);
+    }
+
+    /**
+     * Executes grouped and aggregated queries as a single search with
+     * aggregations and no hits. Other queries are left to
+     * {@link #materializeMainSchemaTable(Table, List, List, int, int)}.
+     */
+    @Override
+    protected DataSet executePushdownQuery(Table table, Query query) {
+        if (!ElasticSearchAggregations.isAggregationQuery(query)) {
+            return null;
+        }
+        final QueryBuilder queryBuilder = ElasticSearchAggregations.createQueryBuilder(query);
+        if (queryBuilder == null) {
+            return null;
+        }
+
+        final SearchSourceBuilder searchRequest = new SearchSourceBuilder();
+        searchRequest.size(0);
+        searchRequest.query(queryBuilder);
+        for (AbstractAggregationBuilder aggregation : ElasticSearchAggregations.createAggregations(query)) {
+            searchRequest.aggregation(aggregation);
+        }
+
+        final SearchResult result = executeSearch(table, searchRequest, false, null);
+        if (!result.isSucceeded()) {
+            throw new MetaModelException("Could not execute ElasticSearch aggregation query: "
+                    + result.getErrorMessage());
+        }
+
+        final JsonObject jsonObject = result.getJsonObject();
+        final long totalHits = jsonObject.getAsJsonObject("hits").get("total").getAsLong();
+        final JsonElement aggregations = jsonObject.get("aggregations");
+        @SuppressWarnings("unchecked")
+        final Map<String, ?> aggregationsMap = (aggregations == null ? null : new Gson().fromJson(aggregations,
+                Map.class));
+        return ElasticSearchAggregations.createDataSet(query, aggregationsMap, totalHits);
+    }
+
     private boolean limitMaxRowsIsSet(int maxRows) {
         return (maxRows != -1);
     }
@@ -364,8 +577,25 @@ public class ElasticSearchRestDataContext extends QueryPostprocessDataContext im
     public void executeUpdate(UpdateScript update) {
         final boolean isBatch = update instanceof BatchUpdateScript;
         final JestElasticSearchUpdateCallback callback = new JestElasticSearchUpdateCallback(this, isBatch);
-        update.run(callback);
-        callback.onExecuteUpdateFinished();
+        Throwable failure = null;
+        try {
+            update.run(callback);
+        } catch (RuntimeException | Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            // send or wait for any outstanding bulk actions, also when the
+            // update script failed halfway
+            if (failure == null) {
+                callback.onExecuteUpdateFinished();
+            } else {
+                try {
+                    callback.onExecuteUpdateFinished();
+                } catch (RuntimeException e) {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
     }
 
     /**
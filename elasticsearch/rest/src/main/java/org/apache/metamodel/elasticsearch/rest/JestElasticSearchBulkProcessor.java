@@ -0,0 +1,77 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.elasticsearch.rest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.metamodel.MetaModelException;
+import org.apache.metamodel.elasticsearch.common.ElasticSearchBulkProcessor;
+
+import io.searchbox.action.BulkableAction;
+import io.searchbox.client.JestClient;
+import io.searchbox.core.Bulk;
+import io.searchbox.core.BulkResult;
+import io.searchbox.core.BulkResult.BulkResultItem;
+
+/**
+ * {@link ElasticSearchBulkProcessor} which executes bulk requests using a
+ * {@link JestClient}.
+ */
+final class JestElasticSearchBulkProcessor extends ElasticSearchBulkProcessor<BulkableAction<?>> {
+
+    private final JestClient client;
+    private final String indexName;
+
+    public JestElasticSearchBulkProcessor(JestClient client, String indexName) {
+        super(indexName);
+        this.client = client;
+        this.indexName = indexName;
+    }
+
+    @Override
+    protected List<BulkItemFailure> executeBulk(List<BulkableAction<?>> actions) throws Exception {
+        final Bulk.Builder bulkBuilder = new Bulk.Builder();
+        bulkBuilder.defaultIndex(indexName);
+        bulkBuilder.addAction(actions);
+
+        final BulkResult result = JestClientExecutor.execute(client, bulkBuilder.build());
+
+        final List<BulkItemFailure> failures = new ArrayList<>();
+        if (result.getResponseCode() == STATUS_TOO_MANY_REQUESTS) {
+            // the bulk as a whole was rejected, retry all of it
+            for (int i = 0; i < actions.size(); i++) {
+                failures.add(new BulkItemFailure(i, null, null, STATUS_TOO_MANY_REQUESTS, result.getErrorMessage()));
+            }
+            return failures;
+        }
+
+        final List<BulkResultItem> items = result.getItems();
+        if (!result.isSucceeded() && items.isEmpty()) {
+            throw new MetaModelException(result.getResponseCode() + " - " + result.getErrorMessage());
+        }
+        for (int i = 0; i < items.size(); i++) {
+            final BulkResultItem item = items.get(i);
+            if (item.error != null) {
+                failures.add(new BulkItemFailure(i, item.operation, item.id, item.status, item.error));
+            }
+        }
+        return failures;
+    }
+}
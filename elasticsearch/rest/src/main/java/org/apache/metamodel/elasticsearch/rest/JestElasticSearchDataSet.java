@@ -20,10 +20,6 @@ package org.apache.metamodel.elasticsearch.rest;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonPrimitive;
-import io.searchbox.client.JestClient;
-import io.searchbox.client.JestResult;
-import io.searchbox.core.SearchScroll;
 import org.apache.metamodel.data.AbstractDataSet;
 import org.apache.metamodel.data.DataSet;
 import org.apache.metamodel.data.Row;
@@ -42,34 +38,31 @@ final class JestElasticSearchDataSet extends AbstractDataSet {
 
     private static final Logger logger = LoggerFactory.getLogger(JestElasticSearchDataSet.class);
 
-    private final JestClient _client;
+    private final JestElasticSearchHitSource _hitSource;
     private final AtomicBoolean _closed;
 
-    private JestResult _searchResponse;
+    private JsonArray _hits;
     private JsonObject _currentHit;
     private int _hitIndex = 0;
 
-    public JestElasticSearchDataSet(JestClient client, JestResult searchResponse, List<SelectItem> selectItems) {
+    public JestElasticSearchDataSet(JestElasticSearchHitSource hitSource, List<SelectItem> selectItems) {
         super(selectItems);
-        _client = client;
-        _searchResponse = searchResponse;
+        _hitSource = hitSource;
         _closed = new AtomicBoolean(false);
     }
 
-    public JestElasticSearchDataSet(JestClient client, JestResult searchResponse, Column[] columns) {
+    public JestElasticSearchDataSet(JestElasticSearchHitSource hitSource, Column[] columns) {
         super(columns);
-        _client = client;
-        _searchResponse = searchResponse;
+        _hitSource = hitSource;
         _closed = new AtomicBoolean(false);
     }
 
     @Override
     public void close() {
         super.close();
-        boolean closeNow = _closed.compareAndSet(true, false);
+        boolean closeNow = _closed.compareAndSet(false, true);
         if (closeNow) {
-            final String scrollId = _searchResponse.getJsonObject().getAsJsonPrimitive("_scroll_id").getAsString();
-            JestClientExecutor.execute(_client, new JestDeleteScroll.Builder(scrollId).build(), false);
+            _hitSource.close();
         }
     }
 
@@ -84,35 +77,24 @@ final class JestElasticSearchDataSet extends AbstractDataSet {
 
     @Override
     public boolean next() {
-        final JsonArray hits = _searchResponse.getJsonObject().getAsJsonObject("hits").getAsJsonArray("hits");
-        if (hits.size() == 0) {
-            // break condition for the scroll
-            _currentHit = null;
-            return false;
+        while (_hits == null || _hitIndex >= _hits.size()) {
+            if (_closed.get()) {
+                _currentHit = null;
+                return false;
+            }
+            _hits = _hitSource.nextHits();
+            _hitIndex = 0;
+            if (_hits == null) {
+                // break condition for the scroll
+                _currentHit = null;
+                return false;
+            }
         }
 
-        if (_hitIndex < hits.size()) {
-            // pick the next hit within this search response
-            _currentHit = hits.get(_hitIndex).getAsJsonObject();
-            _hitIndex++;
-            return true;
-        }
-
-        final JsonPrimitive scrollId = _searchResponse.getJsonObject().getAsJsonPrimitive("_scroll_id");
-        if (scrollId == null) {
-            // this search response is not scrollable - then it's the end.
-            _currentHit = null;
-            return false;
-        }
-
-        // try to scroll to the next set of hits
-        final SearchScroll scroll = new SearchScroll.Builder(scrollId.getAsString(), ElasticSearchRestDataContext.TIMEOUT_SCROLL).build();
-
-        _searchResponse = JestClientExecutor.execute(_client, scroll);
-
-        // start over (recursively)
-        _hitIndex = 0;
-        return next();
+        // pick the next hit within this page
+        _currentHit = _hits.get(_hitIndex).getAsJsonObject();
+        _hitIndex++;
+        return true;
     }
 
     @Override
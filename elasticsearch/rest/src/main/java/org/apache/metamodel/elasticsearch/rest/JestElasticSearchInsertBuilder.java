@@ -68,7 +68,7 @@ final class JestElasticSearchInsertBuilder extends AbstractRowInsertionBuilder<J
         final Index index = new Index.Builder(source).index(indexName).type(documentType).id(id).setParameter(
                 Parameters.OP_TYPE, "create").build();
 
-        getUpdateCallback().execute(index);
+        getUpdateCallback().execute(index, ElasticSearchUtils.getApproximateSize(source));
     }
 
 }
@@ -0,0 +1,171 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.elasticsearch.rest;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.metamodel.MetaModelException;
+import org.apache.metamodel.util.SharedExecutorService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonArray;
+
+/**
+ * {@link JestElasticSearchHitSource} which reads a number of scrolls in the
+ * background, so that the next pages of hits are fetched while the current
+ * page is being consumed. Each scroll is read by its own task, and the pages
+ * of all scrolls are delivered in the order they arrive.
+ * 
+ * The number of pages that are buffered is bounded, so a slow consumer will
+ * eventually pause the fetching. If the consumer does not take a page for as
+ * long as the scroll timeout, it is considered gone (eg. a DataSet which was
+ * never closed) and the fetching is stopped, so that no threads are kept
+ * waiting for it.
+ */
+final class JestElasticSearchPrefetchingHitSource implements JestElasticSearchHitSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(JestElasticSearchPrefetchingHitSource.class);
+
+    private static final Object END_OF_SCROLL = new Object();
+
+    /**
+     * The time to wait for the consumer, which corresponds to
+     * {@link ElasticSearchRestDataContext#TIMEOUT_SCROLL}. After that the
+     * scroll has expired on the server anyway.
+     */
+    private static final long DEFAULT_MAX_WAIT_MILLIS = 60 * 1000;
+
+    private final List<JestElasticSearchHitSource> _scrolls;
+    private final BlockingQueue<Object> _pages;
+    private final long _maxWaitMillis;
+    private volatile boolean _closed;
+    private volatile RuntimeException _abandonedException;
+    private int _activeScrolls;
+
+    public JestElasticSearchPrefetchingHitSource(List<JestElasticSearchHitSource> scrolls, int bufferedPages) {
+        this(scrolls, bufferedPages, DEFAULT_MAX_WAIT_MILLIS);
+    }
+
+    JestElasticSearchPrefetchingHitSource(List<JestElasticSearchHitSource> scrolls, int bufferedPages,
+            long maxWaitMillis) {
+        _scrolls = scrolls;
+        _pages = new ArrayBlockingQueue<Object>(Math.max(1, bufferedPages));
+        _maxWaitMillis = maxWaitMillis;
+        _closed = false;
+        _activeScrolls = scrolls.size();
+
+        for (final JestElasticSearchHitSource scroll : scrolls) {
+            SharedExecutorService.get().submit(new Runnable() {
+                @Override
+                public void run() {
+                    readScroll(scroll);
+                }
+            });
+        }
+    }
+
+    private void readScroll(JestElasticSearchHitSource scroll) {
+        try {
+            while (!_closed) {
+                final JsonArray hits = scroll.nextHits();
+                if (hits == null) {
+                    break;
+                }
+                if (!offer(hits)) {
+                    break;
+                }
+            }
+            offer(END_OF_SCROLL);
+        } catch (RuntimeException e) {
+            logger.debug("Reading scroll failed", e);
+            offer(e);
+        } finally {
+            scroll.close();
+        }
+    }
+
+    /**
+     * Adds an element to the queue, waiting for room in the queue unless the
+     * hit source is closed or the consumer has not taken any element for too
+     * long.
+     * 
+     * @return whether or not the element was added
+     */
+    private boolean offer(Object element) {
+        final long deadline = System.currentTimeMillis() + _maxWaitMillis;
+        try {
+            while (!_closed && _abandonedException == null) {
+                if (_pages.offer(element, 100, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    logger.info("Hits were not consumed for {} ms, stopping to read scrolls", _maxWaitMillis);
+                    _abandonedException = new MetaModelException("Hits were not consumed for " + _maxWaitMillis
+                            + " ms, the scroll has been cleared");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    @Override
+    public JsonArray nextHits() {
+        while (_activeScrolls > 0 && !_closed) {
+            final Object element;
+            try {
+                element = _pages.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MetaModelException("Interrupted while waiting for ElasticSearch hits", e);
+            }
+            if (element == null) {
+                final RuntimeException abandonedException = _abandonedException;
+                if (abandonedException != null && _pages.isEmpty()) {
+                    close();
+                    throw abandonedException;
+                }
+            } else if (element == END_OF_SCROLL) {
+                _activeScrolls--;
+            } else if (element instanceof RuntimeException) {
+                close();
+                throw (RuntimeException) element;
+            } else {
+                return (JsonArray) element;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        _closed = true;
+        _pages.clear();
+        // clears the scrolls on the server. A scroll with a page request in
+        // flight is cleared by it's reading task once that request completes.
+        for (JestElasticSearchHitSource scroll : _scrolls) {
+            scroll.close();
+        }
+    }
+}
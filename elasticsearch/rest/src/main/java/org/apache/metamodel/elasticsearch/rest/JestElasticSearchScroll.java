@@ -0,0 +1,167 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.elasticsearch.rest;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.metamodel.MetaModelException;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResult;
+import io.searchbox.core.SearchScroll;
+
+/**
+ * A cursor over the hits of a search, which (if the search was executed with
+ * a scroll timeout) scrolls through all hits one page at a time.
+ * 
+ * Searches executed with the 'scan' search type return no hits in their
+ * initial response, so the end of the hits is only signaled by a scroll
+ * response without hits.
+ * 
+ * The scroll may be closed by another thread than the one reading it. If a
+ * page request is in flight at that time, the scroll is cleared by the
+ * reading thread once the request returns, since the request may yield a new
+ * scroll id.
+ */
+final class JestElasticSearchScroll implements JestElasticSearchHitSource {
+
+    private final JestClient _client;
+
+    private final AtomicBoolean _cleared;
+
+    private JestResult _response;
+    private volatile String _scrollId;
+    private boolean _initialResponse;
+    private volatile boolean _closed;
+    private volatile boolean _requestInFlight;
+
+    public JestElasticSearchScroll(JestClient client, JestResult searchResponse) {
+        _client = client;
+        _cleared = new AtomicBoolean(false);
+        _response = checkResponse(searchResponse);
+        _scrollId = getScrollId(searchResponse);
+        _initialResponse = true;
+        _closed = false;
+        _requestInFlight = false;
+    }
+
+    private static JestResult checkResponse(JestResult response) {
+        if (response == null) {
+            throw new MetaModelException("No response from ElasticSearch");
+        }
+        if (!response.isSucceeded()) {
+            throw new MetaModelException("ElasticSearch search failed: " + response.getErrorMessage());
+        }
+        return response;
+    }
+
+    private static String getScrollId(JestResult response) {
+        final JsonPrimitive scrollId = response.getJsonObject().getAsJsonPrimitive("_scroll_id");
+        if (scrollId == null) {
+            return null;
+        }
+        return scrollId.getAsString();
+    }
+
+    private static JsonArray getHits(JestResult response) {
+        final JsonObject hits = response.getJsonObject().getAsJsonObject("hits");
+        if (hits == null) {
+            return new JsonArray();
+        }
+        return hits.getAsJsonArray("hits");
+    }
+
+    private static long getTotalHits(JestResult response) {
+        final JsonObject hits = response.getJsonObject().getAsJsonObject("hits");
+        if (hits == null) {
+            return 0;
+        }
+        final JsonElement total = hits.get("total");
+        return (total == null ? 0 : total.getAsLong());
+    }
+
+    @Override
+    public synchronized JsonArray nextHits() {
+        while (!_closed) {
+            if (_response != null) {
+                final JestResult response = _response;
+                final boolean initialResponse = _initialResponse;
+                _response = null;
+                _initialResponse = false;
+
+                final JsonArray hits = getHits(response);
+                if (hits.size() > 0) {
+                    return hits;
+                }
+                if (!initialResponse || getTotalHits(response) == 0) {
+                    break;
+                }
+                // the initial response of a scan has no hits
+            }
+
+            if (_scrollId == null) {
+                // the search response is not scrollable - then it's the end.
+                break;
+            }
+
+            _requestInFlight = true;
+            try {
+                if (_closed) {
+                    break;
+                }
+                final SearchScroll scroll = new SearchScroll.Builder(_scrollId,
+                        ElasticSearchRestDataContext.TIMEOUT_SCROLL).build();
+                _response = checkResponse(JestClientExecutor.execute(_client, scroll));
+                final String scrollId = getScrollId(_response);
+                if (scrollId != null) {
+                    _scrollId = scrollId;
+                }
+            } finally {
+                _requestInFlight = false;
+            }
+        }
+        close();
+        return null;
+    }
+
+    @Override
+    public void close() {
+        _closed = true;
+        if (!_requestInFlight) {
+            clearScroll();
+        }
+        // else the scroll is cleared by the reading thread when the request
+        // returns
+    }
+
+    private void clearScroll() {
+        if (!_cleared.compareAndSet(false, true)) {
+            return;
+        }
+        final String scrollId = _scrollId;
+        if (scrollId != null) {
+            JestClientExecutor.execute(_client, new JestDeleteScroll.Builder(scrollId).build(), false);
+        }
+    }
+}
@@ -18,8 +18,6 @@
  */
 package org.apache.metamodel.elasticsearch.rest;
 
-import java.util.List;
-
 import org.apache.metamodel.AbstractUpdateCallback;
 import org.apache.metamodel.MetaModelException;
 import org.apache.metamodel.UpdateCallback;
@@ -29,17 +27,10 @@ import org.apache.metamodel.drop.TableDropBuilder;
 import org.apache.metamodel.insert.RowInsertionBuilder;
 import org.apache.metamodel.schema.Schema;
 import org.apache.metamodel.schema.Table;
-import org.elasticsearch.action.bulk.BulkRequest;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import io.searchbox.action.Action;
 import io.searchbox.action.BulkableAction;
 import io.searchbox.client.JestResult;
-import io.searchbox.core.Bulk;
-import io.searchbox.core.Bulk.Builder;
-import io.searchbox.core.BulkResult;
-import io.searchbox.core.BulkResult.BulkResultItem;
 import io.searchbox.indices.Refresh;
 
 /**
@@ -48,13 +39,10 @@ import io.searchbox.indices.Refresh;
  */
 final class JestElasticSearchUpdateCallback extends AbstractUpdateCallback {
 
-    private static final Logger logger = LoggerFactory.getLogger(JestElasticSearchUpdateCallback.class);
-
-    private static final int BULK_BUFFER_SIZE = 1000;
+    private static final long DEFAULT_ACTION_SIZE = 100;
 
-    private Bulk.Builder bulkBuilder;
-    private int bulkActionCount = 0;
     private final boolean isBatch;
+    private JestElasticSearchBulkProcessor bulkProcessor;
 
     public JestElasticSearchUpdateCallback(ElasticSearchRestDataContext dataContext, boolean isBatch) {
         super(dataContext);
@@ -105,9 +93,7 @@ final class JestElasticSearchUpdateCallback extends AbstractUpdateCallback {
     }
 
     public void onExecuteUpdateFinished() {
-        if (isBatch()) {
-            flushBulkActions();
-        }
+        flushBulkActions();
 
         final String indexName = getDataContext().getIndexName();
         final Refresh refresh = new Refresh.Builder().addIndex(indexName).build();
@@ -115,28 +101,34 @@ final class JestElasticSearchUpdateCallback extends AbstractUpdateCallback {
         JestClientExecutor.execute(getDataContext().getElasticSearchClient(), refresh, false);
     }
 
+    /**
+     * Sends all buffered bulk actions and waits for them to complete.
+     */
     private void flushBulkActions() {
-        if (bulkBuilder == null || bulkActionCount == 0) {
-            // nothing to flush
-            return;
+        if (bulkProcessor != null) {
+            bulkProcessor.awaitCompletion();
         }
-        final Bulk bulk = getBulkBuilder().build();
-        logger.info("Flushing {} actions to ElasticSearch index {}", bulkActionCount, getDataContext().getIndexName());
-        executeBlocking(bulk);
-
-        bulkActionCount = 0;
-        bulkBuilder = null;
     }
 
     public void execute(Action<?> action) {
+        execute(action, DEFAULT_ACTION_SIZE);
+    }
+
+    /**
+     * Executes an action. In batch updates, bulkable actions are added to a
+     * bulk which is sent asynchronously. Other actions are executed once the
+     * preceding bulk actions have completed.
+     * 
+     * @param action
+     * @param approximateSize
+     *            the approximate size of the action in a bulk request, in
+     *            bytes
+     */
+    public void execute(Action<?> action, long approximateSize) {
         if (isBatch() && action instanceof BulkableAction) {
-            final Bulk.Builder bulkBuilder = getBulkBuilder();
-            bulkBuilder.addAction((BulkableAction<?>) action);
-            bulkActionCount++;
-            if (bulkActionCount == BULK_BUFFER_SIZE) {
-                flushBulkActions();
-            }
+            getBulkProcessor().add((BulkableAction<?>) action, approximateSize);
         } else {
+            flushBulkActions();
             executeBlocking(action);
         }
     }
@@ -144,22 +136,16 @@ final class JestElasticSearchUpdateCallback extends AbstractUpdateCallback {
     private void executeBlocking(Action<?> action) {
         final JestResult result = JestClientExecutor.execute(getDataContext().getElasticSearchClient(), action);
         if (!result.isSucceeded()) {
-            if (result instanceof BulkResult) {
-                final List<BulkResultItem> failedItems = ((BulkResult) result).getFailedItems();
-                for (int i = 0; i < failedItems.size(); i++) {
-                    final BulkResultItem failedItem = failedItems.get(i);
-                    logger.error("Bulk failed with item no. {} of {}: id={} op={} status={} error={}", i+1, failedItems.size(), failedItem.id, failedItem.operation, failedItem.status, failedItem.error);
-                }
-            }
             throw new MetaModelException(result.getResponseCode() + " - " + result.getErrorMessage());
         }
     }
 
-    private Builder getBulkBuilder() {
-        if (bulkBuilder == null) {
-            bulkBuilder = new Bulk.Builder();
-            bulkBuilder.defaultIndex(getDataContext().getIndexName());
+    private JestElasticSearchBulkProcessor getBulkProcessor() {
+        if (bulkProcessor == null) {
+            final ElasticSearchRestDataContext dataContext = getDataContext();
+            bulkProcessor = new JestElasticSearchBulkProcessor(dataContext.getElasticSearchClient(),
+                    dataContext.getIndexName());
         }
-        return bulkBuilder;
+        return bulkProcessor;
     }
 }
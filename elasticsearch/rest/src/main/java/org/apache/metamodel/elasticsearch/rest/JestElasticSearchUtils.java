@@ -51,7 +51,8 @@ final class JestElasticSearchUtils {
             if (column.isPrimaryKey()) {
                 values[i] = documentId;
             } else {
-                values[i] = getDataFromColumnType(source.get(column.getName()), column.getType());
+                final JsonElement field = (source == null ? null : source.get(column.getName()));
+                values[i] = getDataFromColumnType(field, column.getType());
             }
         }
 
@@ -0,0 +1,268 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.elasticsearch.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.metamodel.MetaModelException;
+import org.apache.metamodel.data.DataSet;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.ColumnType;
+import org.apache.metamodel.schema.MutableColumn;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import io.searchbox.action.Action;
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResult;
+import io.searchbox.client.JestResultHandler;
+
+public class JestElasticSearchScrollTest {
+
+    @Test
+    public void testGetShardsPreference() throws Exception {
+        assertEquals("_shards:0,3", ElasticSearchRestDataContext.getShardsPreference(0, 3, 5));
+        assertEquals("_shards:1,4", ElasticSearchRestDataContext.getShardsPreference(1, 3, 5));
+        assertEquals("_shards:2", ElasticSearchRestDataContext.getShardsPreference(2, 3, 5));
+    }
+
+    @Test
+    public void testScanScrollStartsWithEmptyPage() throws Exception {
+        final ScrollingJestClient client = new ScrollingJestClient();
+        client.addPages("scroll-a", 2, 2);
+
+        final JestElasticSearchScroll scroll = new JestElasticSearchScroll(client, createResponse("scroll-a", 4, 0,
+                0));
+        assertEquals(2, scroll.nextHits().size());
+        assertEquals(2, scroll.nextHits().size());
+        assertNull(scroll.nextHits());
+        assertEquals(Arrays.asList("scroll-a"), client.deletedScrolls);
+    }
+
+    @Test
+    public void testEmptySearchResult() throws Exception {
+        final ScrollingJestClient client = new ScrollingJestClient();
+        final JestElasticSearchScroll scroll = new JestElasticSearchScroll(client, createResponse(null, 0, 0, 0));
+        assertNull(scroll.nextHits());
+        assertEquals(0, client.scrollRequests);
+    }
+
+    @Test
+    public void testPrefetchMultipleSlices() throws Exception {
+        final ScrollingJestClient client = new ScrollingJestClient();
+        client.addPages("scroll-a", 3, 10);
+        client.addPages("scroll-b", 5, 10);
+
+        final List<JestElasticSearchHitSource> scrolls = new ArrayList<>();
+        scrolls.add(new JestElasticSearchScroll(client, createResponse("scroll-a", 30, 0, 0)));
+        scrolls.add(new JestElasticSearchScroll(client, createResponse("scroll-b", 50, 0, 0)));
+
+        final MutableColumn idColumn = new MutableColumn("_id", ColumnType.STRING).setPrimaryKey(true);
+        final DataSet dataSet = new JestElasticSearchDataSet(new JestElasticSearchPrefetchingHitSource(scrolls, 2),
+                Collections.singletonList(new SelectItem(idColumn)));
+        int count = 0;
+        while (dataSet.next()) {
+            assertTrue(dataSet.getRow().getValue(0).toString().startsWith("doc"));
+            count++;
+        }
+        dataSet.close();
+
+        assertEquals(80, count);
+        assertEquals(2, client.deletedScrolls.size());
+    }
+
+    @Test
+    public void testCloseBeforeEndClearsScrolls() throws Exception {
+        final ScrollingJestClient client = new ScrollingJestClient();
+        client.addPages("scroll-a", 100, 10);
+
+        final List<JestElasticSearchHitSource> scrolls = new ArrayList<>();
+        scrolls.add(new JestElasticSearchScroll(client, createResponse("scroll-a", 1000, 0, 0)));
+
+        final MutableColumn idColumn = new MutableColumn("_id", ColumnType.STRING).setPrimaryKey(true);
+        final DataSet dataSet = new JestElasticSearchDataSet(new JestElasticSearchPrefetchingHitSource(scrolls, 2),
+                Collections.singletonList(new SelectItem(idColumn)));
+        assertTrue(dataSet.next());
+        dataSet.close();
+
+        // a scroll request may still be in flight, then the reading task
+        // clears the scroll
+        waitForDeletedScrolls(client, 1);
+        assertEquals(Arrays.asList("scroll-a"), client.deletedScrolls);
+        assertTrue(client.scrollRequests < 100);
+    }
+
+    @Test
+    public void testAbandonedConsumerStopsPrefetching() throws Exception {
+        final ScrollingJestClient client = new ScrollingJestClient();
+        client.addPages("scroll-a", 100, 10);
+
+        final List<JestElasticSearchHitSource> scrolls = new ArrayList<>();
+        scrolls.add(new JestElasticSearchScroll(client, createResponse("scroll-a", 1000, 0, 0)));
+
+        final JestElasticSearchPrefetchingHitSource hitSource = new JestElasticSearchPrefetchingHitSource(scrolls, 1,
+                100);
+        waitForDeletedScrolls(client, 1);
+        assertEquals(Arrays.asList("scroll-a"), client.deletedScrolls);
+        assertTrue(client.scrollRequests < 100);
+
+        // the buffered page can still be read, then the consumer is told
+        assertEquals(10, hitSource.nextHits().size());
+        try {
+            hitSource.nextHits();
+            fail("Exception expected");
+        } catch (MetaModelException e) {
+            assertEquals("Hits were not consumed for 100 ms, the scroll has been cleared", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testCloseDoesNotWaitForScrollRequest() throws Exception {
+        final CountDownLatch requestStarted = new CountDownLatch(1);
+        final CountDownLatch releaseRequest = new CountDownLatch(1);
+        final ScrollingJestClient client = new ScrollingJestClient() {
+            @Override
+            public <T extends JestResult> T execute(Action<T> action) throws IOException {
+                if (!(action instanceof JestDeleteScroll)) {
+                    requestStarted.countDown();
+                    try {
+                        releaseRequest.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+                return super.execute(action);
+            }
+        };
+        client.addPages("scroll-a", 3, 10);
+
+        final List<JestElasticSearchHitSource> scrolls = new ArrayList<>();
+        scrolls.add(new JestElasticSearchScroll(client, createResponse("scroll-a", 30, 0, 0)));
+        final JestElasticSearchPrefetchingHitSource hitSource = new JestElasticSearchPrefetchingHitSource(scrolls, 2);
+        assertTrue(requestStarted.await(5, TimeUnit.SECONDS));
+
+        // returns while the scroll request is still in flight
+        hitSource.close();
+        assertTrue(client.deletedScrolls.isEmpty());
+
+        releaseRequest.countDown();
+        waitForDeletedScrolls(client, 1);
+        assertEquals(Arrays.asList("scroll-a"), client.deletedScrolls);
+        assertEquals(1, client.scrollRequests);
+    }
+
+    private static void waitForDeletedScrolls(ScrollingJestClient client, int count) throws InterruptedException {
+        for (int i = 0; i < 500 && client.deletedScrolls.size() < count; i++) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static JestResult createResponse(String scrollId, long total, int offset, int hitCount) {
+        final JsonArray hitArray = new JsonArray();
+        for (int i = 0; i < hitCount; i++) {
+            final JsonObject hit = new JsonObject();
+            hit.addProperty("_id", "doc" + (offset + i));
+            hit.add("_source", new JsonObject());
+            hitArray.add(hit);
+        }
+        final JsonObject hits = new JsonObject();
+        hits.addProperty("total", total);
+        hits.add("hits", hitArray);
+
+        final JsonObject json = new JsonObject();
+        if (scrollId != null) {
+            json.addProperty("_scroll_id", scrollId);
+        }
+        json.add("hits", hits);
+
+        final JestResult result = new JestResult(new Gson());
+        result.setJsonObject(json);
+        result.setSucceeded(true);
+        return result;
+    }
+
+    /**
+     * {@link JestClient} which serves pages of hits for scroll requests.
+     */
+    private static class ScrollingJestClient implements JestClient {
+
+        private final Map<String, LinkedList<Integer>> pages = new HashMap<>();
+        final List<String> deletedScrolls = Collections.synchronizedList(new ArrayList<String>());
+        volatile int scrollRequests;
+
+        public void addPages(String scrollId, int pageCount, int pageSize) {
+            final LinkedList<Integer> sizes = new LinkedList<>();
+            for (int i = 0; i < pageCount; i++) {
+                sizes.add(pageSize);
+            }
+            pages.put(scrollId, sizes);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public synchronized <T extends JestResult> T execute(Action<T> action) throws IOException {
+            final String request = action.getURI() + " " + action.getData(new Gson());
+            for (Map.Entry<String, LinkedList<Integer>> entry : pages.entrySet()) {
+                final String scrollId = entry.getKey();
+                if (request.contains(scrollId)) {
+                    if (action instanceof JestDeleteScroll) {
+                        deletedScrolls.add(scrollId);
+                        return (T) createResponse(null, 0, 0, 0);
+                    }
+                    scrollRequests++;
+                    final LinkedList<Integer> sizes = entry.getValue();
+                    final int pageSize = (sizes.isEmpty() ? 0 : sizes.removeFirst());
+                    return (T) createResponse(scrollId, 0, scrollRequests * 1000, pageSize);
+                }
+            }
+            throw new IOException("Unexpected request: " + request);
+        }
+
+        @Override
+        public <T extends JestResult> void executeAsync(Action<T> action, JestResultHandler<? super T> handler) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void shutdownClient() {
+        }
+
+        @Override
+        public void setServers(Set<String> servers) {
+        }
+    }
+}
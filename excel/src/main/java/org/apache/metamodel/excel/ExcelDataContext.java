@@ -135,6 +135,11 @@ public final class ExcelDataContext extends QueryPostprocessDataContext implemen
         return _resource;
     }
 
+    @Override
+    protected Resource getTableResource(Table table) {
+        return _resource;
+    }
+
     @Override
     protected String getMainSchemaName() throws MetaModelException {
         return _resource.getName();
@@ -232,6 +237,7 @@ public final class ExcelDataContext extends QueryPostprocessDataContext implemen
                 update.run(updateCallback);
             } finally {
                 updateCallback.close();
+                invalidateTableCache();
             }
         }
     }
@@ -21,10 +21,15 @@ package org.apache.metamodel.fixedwidth;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.InputStream;
+import java.util.List;
 
 import org.apache.metamodel.MetaModelException;
+import org.apache.metamodel.MetaModelHelper;
 import org.apache.metamodel.QueryPostprocessDataContext;
 import org.apache.metamodel.data.DataSet;
+import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.LinePrefilter;
+import org.apache.metamodel.query.SelectItem;
 import org.apache.metamodel.schema.Column;
 import org.apache.metamodel.schema.ColumnType;
 import org.apache.metamodel.schema.MutableColumn;
@@ -112,6 +117,11 @@ public class FixedWidthDataContext extends QueryPostprocessDataContext {
         return _resource;
     }
 
+    @Override
+    protected Resource getTableResource(Table table) {
+        return _resource;
+    }
+
     @Override
     protected Schema getMainSchema() throws MetaModelException {
         final String schemaName = getDefaultSchemaName();
@@ -164,8 +174,40 @@ public class FixedWidthDataContext extends QueryPostprocessDataContext {
         return ResourceUtils.getParentName(_resource);
     }
 
+    @Override
+    protected DataSet materializeMainSchemaTable(Table table, List<SelectItem> selectItems, List<FilterItem> whereItems,
+            int firstRow, int maxRows) {
+        if (whereItems.isEmpty() || _configuration.isFailOnInconsistentLineWidth()) {
+            // when failing on inconsistent line widths, all lines need to be
+            // split to validate them
+            return super.materializeMainSchemaTable(table, selectItems, whereItems, firstRow, maxRows);
+        }
+        final LinePrefilter linePrefilter = LinePrefilter.create(whereItems);
+        if (linePrefilter == null) {
+            return super.materializeMainSchemaTable(table, selectItems, whereItems, firstRow, maxRows);
+        }
+
+        final List<SelectItem> workingSelectItems = buildWorkingSelectItems(selectItems, whereItems);
+        final Column[] columns = new Column[workingSelectItems.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = workingSelectItems.get(i).getColumn();
+        }
+
+        DataSet dataSet = materializeMainSchemaTable(table, columns, -1, linePrefilter);
+        dataSet = MetaModelHelper.getSelection(workingSelectItems, dataSet);
+        dataSet = MetaModelHelper.getFiltered(dataSet, whereItems);
+        dataSet = MetaModelHelper.getPaged(dataSet, firstRow, maxRows);
+        dataSet = MetaModelHelper.getSelection(selectItems, dataSet);
+        return dataSet;
+    }
+
     @Override
     public DataSet materializeMainSchemaTable(Table table, Column[] columns, int maxRows) {
+        return materializeMainSchemaTable(table, columns, maxRows, null);
+    }
+
+    private DataSet materializeMainSchemaTable(Table table, Column[] columns, int maxRows,
+            LinePrefilter linePrefilter) {
         final FixedWidthReader reader = createReader();
         try {
             for (int i = 1; i <= _configuration.getColumnNameLineNumber(); i++) {
@@ -175,6 +217,8 @@ public class FixedWidthDataContext extends QueryPostprocessDataContext {
             FileHelper.safeClose(reader);
             throw e;
         }
+        // the prefilter is not applied to the column header lines
+        reader.setLinePrefilter(linePrefilter);
         if (maxRows > 0) {
             return new FixedWidthDataSet(reader, columns, maxRows);
         } else {
@@ -31,6 +31,8 @@ import java.text.StringCharacterIterator;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.metamodel.query.LinePrefilter;
+
 /**
  * Reader capable of separating values based on a fixed width setting.
  */
@@ -45,6 +47,7 @@ class FixedWidthReader implements Closeable {
     private final boolean _failOnInconsistentLineWidth;
     private final boolean _constantWidth;
     private volatile int _rowNumber;
+    private LinePrefilter _linePrefilter;
     protected final Reader _reader;
     protected final int _expectedLineLength;
 
@@ -118,9 +121,25 @@ class FixedWidthReader implements Closeable {
     protected void beforeReadLine() {
     }
 
+    /**
+     * Sets a prefilter which is applied to the records before they are split
+     * into values. Records that are not accepted are skipped.
+     * 
+     * @param linePrefilter
+     *            the prefilter, or null to read all records
+     */
+    void setLinePrefilter(LinePrefilter linePrefilter) {
+        _linePrefilter = linePrefilter;
+    }
+
     private String[] getValues() throws IOException {
         final List<String> values = new ArrayList<>();
-        final String singleRecordData = readSingleRecordData();
+        String singleRecordData = readSingleRecordData();
+
+        while (singleRecordData != null && _linePrefilter != null && !_linePrefilter.accept(singleRecordData)) {
+            _rowNumber++;
+            singleRecordData = readSingleRecordData();
+        }
 
         if (singleRecordData == null) {
             return null;
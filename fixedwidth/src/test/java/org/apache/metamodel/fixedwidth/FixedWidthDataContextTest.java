@@ -94,6 +94,23 @@ public class FixedWidthDataContextTest extends TestCase {
         assertFalse(ds.next());
     }
 
+    public void testFilterWithLinePrefilter() throws Exception {
+        FixedWidthConfiguration conf = new FixedWidthConfiguration(10);
+        FixedWidthDataContext dc = new FixedWidthDataContext(new File("src/test/resources/example_simple1.txt"), conf);
+        Table table = dc.getDefaultSchema().getTables()[0];
+
+        Query q = dc.query().from(table).select("greeting").where("greeter").eq("there").toQuery();
+        assertEquals("[[hi]]", Arrays.deepToString(dc.executeQuery(q).toObjectArrays().toArray()));
+
+        q = dc.query().from(table).select("greeter").where("greeting").like("h%").and("greeter")
+                .in("world", "partner").toQuery();
+        assertEquals("[[world], [partner]]", Arrays.deepToString(dc.executeQuery(q).toObjectArrays().toArray()));
+
+        // "hi" is contained in the line of "there", but is not the greeter
+        q = dc.query().from(table).select("greeting").where("greeter").eq("hi").toQuery();
+        assertEquals("[]", Arrays.deepToString(dc.executeQuery(q).toObjectArrays().toArray()));
+    }
+
     public void testFailOnInconsistentWidth() throws Exception {
         FixedWidthConfiguration conf = new FixedWidthConfiguration(FixedWidthConfiguration.NO_COLUMN_NAME_LINE, "UTF8",
                 10, true);
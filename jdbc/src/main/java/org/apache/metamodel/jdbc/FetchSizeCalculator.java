@@ -18,7 +18,10 @@
  */
 package org.apache.metamodel.jdbc;
 
+import java.sql.Blob;
+import java.sql.Clob;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.metamodel.query.Query;
 import org.apache.metamodel.query.SelectItem;
@@ -34,6 +37,11 @@ import org.slf4j.LoggerFactory;
  * Oracle's caching size, see <a href=
  * "http://www.oracle.com/technetwork/database/enterprise-edition/memory.pdf"
  * >JDBC Memory Management</a>, section "Where does it all go?".
+ * 
+ * In adaptive mode, the row sizes observed while reading the results of
+ * queries are fed back to the calculator, which will then base the fetch size
+ * of subsequent queries of the same shape (select, from and group by clause)
+ * on the observed sizes, rather than on the column types and sizes.
  */
 final class FetchSizeCalculator {
 
@@ -53,10 +61,36 @@ final class FetchSizeCalculator {
 
 	private static final int MIN_FETCH_SIZE = 1;
 	private static final int MAX_FETCH_SIZE = 25000;
+
+	/**
+	 * The max number of query shapes to keep observed row sizes of.
+	 */
+	private static final int MAX_OBSERVED_QUERY_SHAPES = 1000;
+
 	private final int _bytesInMemory;
+	private final ConcurrentHashMap<String, Integer> _observedRowSizes;
 
 	public FetchSizeCalculator(int bytesInMemory) {
+		this(bytesInMemory, false);
+	}
+
+	public FetchSizeCalculator(int bytesInMemory, boolean adaptive) {
 		_bytesInMemory = bytesInMemory;
+		if (adaptive) {
+			_observedRowSizes = new ConcurrentHashMap<String, Integer>();
+		} else {
+			_observedRowSizes = null;
+		}
+	}
+
+	/**
+	 * Determines if this calculator adapts fetch sizes to observed row
+	 * sizes.
+	 * 
+	 * @return
+	 */
+	public boolean isAdaptive() {
+		return _observedRowSizes != null;
 	}
 
 	/**
@@ -72,6 +106,15 @@ final class FetchSizeCalculator {
 			return 1;
 		}
 		int bytesPerRow = getRowSize(query);
+		if (_observedRowSizes != null) {
+			final Integer observedRowSize = _observedRowSizes
+					.get(getQueryShape(query));
+			if (observedRowSize != null) {
+				logger.debug("Using observed row size ({}) in stead of {}",
+						observedRowSize, bytesPerRow);
+				bytesPerRow = observedRowSize;
+			}
+		}
 		int result = getFetchSize(bytesPerRow);
 		final Integer maxRows = query.getMaxRows();
 		if (maxRows != null && result > maxRows) {
@@ -82,6 +125,47 @@ final class FetchSizeCalculator {
 		return result;
 	}
 
+	/**
+	 * Registers the average size of the rows that were read from the result
+	 * of a query. The size is merged with the sizes observed previously for
+	 * queries of the same shape.
+	 * 
+	 * @param query
+	 *            the query that yielded the rows
+	 * @param bytesPerRow
+	 *            the average size of the rows (in bytes)
+	 */
+	public void observeRowSize(Query query, int bytesPerRow) {
+		if (_observedRowSizes == null) {
+			return;
+		}
+		final String queryShape = getQueryShape(query);
+		final Integer previousRowSize = _observedRowSizes.get(queryShape);
+		final int rowSize;
+		if (previousRowSize == null) {
+			rowSize = Math.max(1, bytesPerRow);
+			if (_observedRowSizes.size() >= MAX_OBSERVED_QUERY_SHAPES) {
+				// prevent ad-hoc queries from filling up the memory
+				_observedRowSizes.clear();
+			}
+		} else {
+			// converge towards the observed sizes, without letting a single
+			// result decide alone
+			rowSize = Math.max(1,
+					(int) (((long) previousRowSize + bytesPerRow) / 2));
+		}
+		_observedRowSizes.put(queryShape, rowSize);
+	}
+
+	/**
+	 * Gets the shape of a query, ie. the parts of a query that determine the
+	 * size of the rows it yields.
+	 */
+	private String getQueryShape(Query query) {
+		return query.getSelectClause().toSql() + query.getFromClause().toSql()
+				+ query.getGroupByClause().toSql();
+	}
+
 	/**
 	 * Gets whether a query is guaranteed to only yield a single row. Such
 	 * queries are queries that only consist of aggregation functions and no
@@ -150,6 +234,44 @@ final class FetchSizeCalculator {
 		return bytesPerRow;
 	}
 
+	/**
+	 * Gets the (approximate) size (in bytes) of a row with the given values,
+	 * as read from a result set.
+	 * 
+	 * @param values
+	 *            the values of the row
+	 * @return
+	 */
+	protected int getObservedRowSize(Object[] values) {
+		int bytesPerRow = 0;
+		for (Object value : values) {
+			bytesPerRow += getObservedValueSize(value);
+		}
+		return bytesPerRow;
+	}
+
+	/**
+	 * Gets the (approximate) size (in bytes) of a value read from a result
+	 * set.
+	 */
+	protected int getObservedValueSize(Object value) {
+		if (value == null) {
+			return 1;
+		} else if (value instanceof String) {
+			return 2 * ((String) value).length();
+		} else if (value instanceof byte[]) {
+			return ((byte[]) value).length;
+		} else if (value instanceof Boolean) {
+			return 2;
+		} else if (value instanceof Number) {
+			return 16;
+		} else if (value instanceof Blob || value instanceof Clob) {
+			return 4 * KB;
+		} else {
+			return DEFAULT_COLUMN_SIZE;
+		}
+	}
+
 	/**
 	 * Gets the principal fetch size for a query where a row has the given size.
 	 * 
@@ -21,8 +21,12 @@ package org.apache.metamodel.jdbc;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.metamodel.UpdateCallback;
+import org.apache.metamodel.jdbc.dialects.IQueryRewriter;
+import org.apache.metamodel.schema.Column;
 import org.apache.metamodel.util.FileHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,36 +34,156 @@ import org.slf4j.LoggerFactory;
 /**
  * Jdbc {@link UpdateCallback} for databases that support the JDBC Batch
  * features.
+ * 
+ * Batches are executed when the prepared statement is closed, or when the
+ * number of rows or the (approximate) number of bytes in the batch reaches a
+ * limit. If the database supports it, inserted rows are furthermore buffered
+ * and inserted using INSERT statements with multiple rows.
+ * 
+ * @see JdbcDataContext#SYSTEM_PROPERTY_BATCH_MAX_ROWS
+ * @see JdbcDataContext#SYSTEM_PROPERTY_BATCH_MAX_BYTES
+ * @see JdbcDataContext#SYSTEM_PROPERTY_INSERT_ROWS_PER_STATEMENT
  */
 final class JdbcBatchUpdateCallback extends JdbcUpdateCallback {
 
     private static final Logger logger = LoggerFactory.getLogger(JdbcBatchUpdateCallback.class);
 
+    private static final int DEFAULT_BATCH_MAX_ROWS = 10000;
+    private static final long DEFAULT_BATCH_MAX_BYTES = 16 * 1024 * 1024;
+    private static final int DEFAULT_INSERT_ROWS_PER_STATEMENT = 100;
+
+    /**
+     * The max number of parameters in a multiple row INSERT statement. Some
+     * drivers (eg. PostgreSQL) do not allow more than 32767 parameters.
+     */
+    private static final int MAX_PARAMETERS_PER_STATEMENT = 30000;
+
+    private final int _batchMaxRows;
+    private final long _batchMaxBytes;
+    private final int _insertRowsPerStatement;
+
+    // the buffered rows to insert
+    private final List<Object[]> _insertValues;
+    private String _insertSql;
+    private Column[] _insertColumns;
+    private long _insertBytes;
+
+    // the rows added to the current batch
+    private int _batchRows;
+    private long _batchBytes;
+    private long _batchStartTime;
+    private int _batchCount;
+
     public JdbcBatchUpdateCallback(JdbcDataContext dataContext) {
         super(dataContext);
+        _batchMaxRows = getBatchMaxRows();
+        _batchMaxBytes = JdbcUtils.getSystemPropertyValue(JdbcDataContext.SYSTEM_PROPERTY_BATCH_MAX_BYTES,
+                DEFAULT_BATCH_MAX_BYTES);
+        _insertRowsPerStatement = getInsertRowsPerStatement(dataContext.getQueryRewriter());
+        _insertValues = new ArrayList<Object[]>();
+    }
+
+    /**
+     * Gets the max number of rows in a batch.
+     */
+    static int getBatchMaxRows() {
+        return (int) JdbcUtils.getSystemPropertyValue(JdbcDataContext.SYSTEM_PROPERTY_BATCH_MAX_ROWS,
+                DEFAULT_BATCH_MAX_ROWS);
+    }
+
+    /**
+     * Gets the max number of rows to insert with a single INSERT statement.
+     */
+    static int getInsertRowsPerStatement(IQueryRewriter queryRewriter) {
+        if (queryRewriter.isMultipleRowInsertSupported()) {
+            return (int) JdbcUtils.getSystemPropertyValue(
+                    JdbcDataContext.SYSTEM_PROPERTY_INSERT_ROWS_PER_STATEMENT, DEFAULT_INSERT_ROWS_PER_STATEMENT);
+        }
+        return 1;
+    }
+
+    /**
+     * Gets the max number of rows to insert with a single INSERT statement,
+     * given the number of columns (and thereby parameters) of each row.
+     */
+    static int getInsertRowsPerStatement(int rowsPerStatement, int columnCount) {
+        if (columnCount == 0) {
+            return 1;
+        }
+        return Math.max(1, Math.min(rowsPerStatement, MAX_PARAMETERS_PER_STATEMENT / columnCount));
     }
 
     @Override
-    protected void closePreparedStatement(PreparedStatement preparedStatement) {
+    public void executeInsert(String sql, Column[] columns, Object[] values) throws SQLException {
+        if (!sql.equals(_insertSql)) {
+            flushBufferedStatements();
+            _insertSql = sql;
+            _insertColumns = columns;
+        }
+        _insertValues.add(values);
+        _insertBytes += getDataContext().getFetchSizeCalculator().getObservedRowSize(values);
+
+        if (_insertValues.size() >= getInsertRowsPerStatement(_insertRowsPerStatement, columns.length)) {
+            flushBufferedStatements();
+        }
+    }
+
+    @Override
+    protected void flushBufferedStatements() {
+        if (_insertValues.isEmpty()) {
+            return;
+        }
+
+        final String singleRowSql = _insertSql;
+        final Column[] columns = _insertColumns;
+        final List<Object[]> rows = new ArrayList<Object[]>(_insertValues);
+        final long bytes = _insertBytes;
+        _insertValues.clear();
+        _insertSql = null;
+        _insertColumns = null;
+        _insertBytes = 0;
+
+        final String sql = getMultipleRowInsertSql(singleRowSql, columns.length, rows.size());
+        final PreparedStatement st = getPreparedStatement(sql, true);
         try {
-            int[] results = preparedStatement.executeBatch();
-            if (logger.isDebugEnabled()) {
-                for (int i = 0; i < results.length; i++) {
-                    int result = results[i];
-                    final String resultString;
-                    switch (result) {
-                    case Statement.SUCCESS_NO_INFO:
-                        resultString = "SUCCESS_NO_INFO";
-                        break;
-                    case Statement.EXECUTE_FAILED:
-                        resultString = "EXECUTE_FAILED";
-                        break;
-                    default:
-                        resultString = result + " rows updated";
-                    }
-                    logger.debug("batch execute result[" + i + "]:" + resultString);
-                }
+            for (int i = 0; i < rows.size(); i++) {
+                setStatementParameters(st, i * columns.length, columns, rows.get(i));
             }
+            addBatch(st, rows.size(), bytes);
+        } catch (SQLException e) {
+            throw JdbcUtils.wrapException(e, "execute insert statement: " + sql);
+        }
+    }
+
+    /**
+     * Creates an INSERT statement for multiple rows, based on the statement
+     * for a single row, which ends with the (parameterized) values.
+     */
+    static String getMultipleRowInsertSql(String singleRowSql, int columnCount, int rowCount) {
+        if (rowCount == 1) {
+            return singleRowSql;
+        }
+        final StringBuilder values = new StringBuilder(",(");
+        for (int i = 0; i < columnCount; i++) {
+            if (i != 0) {
+                values.append(',');
+            }
+            values.append('?');
+        }
+        values.append(')');
+
+        final StringBuilder sb = new StringBuilder(singleRowSql.length() + values.length() * (rowCount - 1));
+        sb.append(singleRowSql);
+        for (int i = 1; i < rowCount; i++) {
+            sb.append(values);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    protected void closePreparedStatement(PreparedStatement preparedStatement) {
+        try {
+            executeBatch(preparedStatement);
         } catch (SQLException e) {
             throw JdbcUtils.wrapException(e, "execute batch: " + preparedStatement);
         } finally {
@@ -69,6 +193,48 @@ final class JdbcBatchUpdateCallback extends JdbcUpdateCallback {
 
     @Override
     protected void executePreparedStatement(PreparedStatement st) throws SQLException {
+        addBatch(st, 1, 0);
+    }
+
+    private void addBatch(PreparedStatement st, int rows, long bytes) throws SQLException {
+        if (_batchRows == 0) {
+            _batchStartTime = System.currentTimeMillis();
+        }
         st.addBatch();
+        _batchRows += rows;
+        _batchBytes += bytes;
+
+        if (_batchRows >= _batchMaxRows || _batchBytes >= _batchMaxBytes) {
+            executeBatch(st);
+        }
+    }
+
+    private void executeBatch(PreparedStatement preparedStatement) throws SQLException {
+        final int[] results = preparedStatement.executeBatch();
+        _batchCount++;
+        if (logger.isDebugEnabled()) {
+            for (int i = 0; i < results.length; i++) {
+                int result = results[i];
+                final String resultString;
+                switch (result) {
+                case Statement.SUCCESS_NO_INFO:
+                    resultString = "SUCCESS_NO_INFO";
+                    break;
+                case Statement.EXECUTE_FAILED:
+                    resultString = "EXECUTE_FAILED";
+                    break;
+                default:
+                    resultString = result + " rows updated";
+                }
+                logger.debug("batch execute result[" + i + "]:" + resultString);
+            }
+            if (_batchRows > 0) {
+                final long millis = System.currentTimeMillis() - _batchStartTime;
+                logger.debug("Executed batch #{}: {} statements, {} rows, approx. {} bytes in {} ms", new Object[] {
+                        _batchCount, results.length, _batchRows, _batchBytes, millis });
+            }
+        }
+        _batchRows = 0;
+        _batchBytes = 0;
     }
 }
@@ -0,0 +1,201 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.metamodel.jdbc.dialects.IQueryRewriter;
+import org.apache.metamodel.query.FromItem;
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.Table;
+import org.apache.metamodel.util.FileHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Inserts a large number of rows into a table, using the fastest means
+ * available for the database: PostgreSQL's COPY command, or otherwise
+ * (multiple row) INSERT statements executed in large batches.
+ */
+final class JdbcBulkInserter {
+
+    private static final Logger logger = LoggerFactory.getLogger(JdbcBulkInserter.class);
+
+    private final JdbcUpdateCallback _updateCallback;
+    private final JdbcDataContext _dataContext;
+    private final Table _table;
+    private final Column[] _columns;
+
+    public JdbcBulkInserter(JdbcUpdateCallback updateCallback, Table table, Column[] columns) {
+        if (!(table instanceof JdbcTable)) {
+            throw new IllegalArgumentException("Not a valid JDBC table: " + table);
+        }
+        for (Column column : columns) {
+            if (column == null || column.getTable() != table) {
+                throw new IllegalArgumentException("Not a column of table " + table + ": " + column);
+            }
+        }
+        _updateCallback = updateCallback;
+        _dataContext = updateCallback.getDataContext();
+        _table = table;
+        _columns = columns;
+    }
+
+    /**
+     * Inserts rows into the table.
+     *
+     * @param rows
+     *            the rows to insert, each having a value for each of the
+     *            columns
+     * @return the number of rows inserted
+     */
+    public long insert(Iterator<Object[]> rows) {
+        final Connection connection = _updateCallback.getConnection();
+        final long startTime = System.currentTimeMillis();
+        final long rowCount;
+        try {
+            if (JdbcDataContext.DATABASE_PRODUCT_POSTGRESQL.equals(_dataContext.getDatabaseProductName())
+                    && PostgresqlCopyInserter.isApplicable(connection)) {
+                rowCount = new PostgresqlCopyInserter(connection).insert(createCopySql(), _columns.length, rows);
+            } else {
+                rowCount = insertUsingStatements(connection, rows);
+            }
+        } catch (SQLException e) {
+            throw JdbcUtils.wrapException(e, "bulk insert into table: " + _table.getName());
+        }
+        logger.debug("Inserted {} rows into table {} in {} ms", new Object[] { rowCount, _table.getName(),
+                System.currentTimeMillis() - startTime });
+        return rowCount;
+    }
+
+    private long insertUsingStatements(Connection connection, Iterator<Object[]> rows) throws SQLException {
+        final IQueryRewriter queryRewriter = _dataContext.getQueryRewriter();
+        final boolean batch = _dataContext.isBatchUpdatesSupported();
+        final int batchMaxRows = JdbcBatchUpdateCallback.getBatchMaxRows();
+        final int rowsPerStatement = JdbcBatchUpdateCallback.getInsertRowsPerStatement(
+                JdbcBatchUpdateCallback.getInsertRowsPerStatement(queryRewriter), _columns.length);
+
+        final String singleRowSql = createInsertSql();
+        final List<Object[]> buffer = new ArrayList<Object[]>(rowsPerStatement);
+        long rowCount = 0;
+        int batchRows = 0;
+
+        PreparedStatement st = null;
+        try {
+            while (rows.hasNext()) {
+                buffer.add(checkRow(rows.next()));
+                if (buffer.size() == rowsPerStatement) {
+                    if (st == null) {
+                        st = connection.prepareStatement(JdbcBatchUpdateCallback.getMultipleRowInsertSql(
+                                singleRowSql, _columns.length, rowsPerStatement));
+                    }
+                    setParameters(st, buffer);
+                    if (batch) {
+                        st.addBatch();
+                        batchRows += buffer.size();
+                        if (batchRows >= batchMaxRows) {
+                            st.executeBatch();
+                            batchRows = 0;
+                        }
+                    } else {
+                        st.executeUpdate();
+                    }
+                    rowCount += buffer.size();
+                    buffer.clear();
+                }
+            }
+            if (batchRows > 0) {
+                st.executeBatch();
+            }
+        } finally {
+            FileHelper.safeClose(st);
+        }
+
+        if (!buffer.isEmpty()) {
+            // the remaining rows
+            st = connection.prepareStatement(JdbcBatchUpdateCallback.getMultipleRowInsertSql(singleRowSql,
+                    _columns.length, buffer.size()));
+            try {
+                setParameters(st, buffer);
+                st.executeUpdate();
+                rowCount += buffer.size();
+            } finally {
+                FileHelper.safeClose(st);
+            }
+        }
+        return rowCount;
+    }
+
+    private void setParameters(PreparedStatement st, List<Object[]> rows) throws SQLException {
+        for (int i = 0; i < rows.size(); i++) {
+            _updateCallback.setStatementParameters(st, i * _columns.length, _columns, rows.get(i));
+        }
+    }
+
+    private Object[] checkRow(Object[] row) {
+        if (row == null || row.length != _columns.length) {
+            throw new IllegalArgumentException("Row must have " + _columns.length + " values, got: "
+                    + (row == null ? null : row.length));
+        }
+        return row;
+    }
+
+    private String createInsertSql() {
+        final StringBuilder sb = new StringBuilder("INSERT INTO ");
+        sb.append(getTableLabel());
+        sb.append(" (");
+        appendColumnNames(sb);
+        sb.append(") VALUES (");
+        for (int i = 0; i < _columns.length; i++) {
+            if (i != 0) {
+                sb.append(',');
+            }
+            sb.append('?');
+        }
+        sb.append(')');
+        return sb.toString();
+    }
+
+    private String createCopySql() {
+        final StringBuilder sb = new StringBuilder("COPY ");
+        sb.append(getTableLabel());
+        sb.append(" (");
+        appendColumnNames(sb);
+        sb.append(") FROM STDIN");
+        return sb.toString();
+    }
+
+    private String getTableLabel() {
+        return _dataContext.getQueryRewriter().rewriteFromItem(new FromItem(_table));
+    }
+
+    private void appendColumnNames(StringBuilder sb) {
+        for (int i = 0; i < _columns.length; i++) {
+            if (i != 0) {
+                sb.append(',');
+            }
+            sb.append(_updateCallback.quoteIfNescesary(_columns[i].getName()));
+        }
+    }
+}
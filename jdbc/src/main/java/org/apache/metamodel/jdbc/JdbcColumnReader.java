@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.metamodel.jdbc.dialects.AbstractQueryRewriter;
+import org.apache.metamodel.jdbc.dialects.IQueryRewriter;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.ColumnType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the value of a single column of a {@link ResultSet}. The readers of a
+ * {@link JdbcDataSet} are determined once, when the DataSet is created, so
+ * that the select items, column types and query rewriter do not have to be
+ * inspected for every value that is read.
+ *
+ * When the query rewriter does not override
+ * {@link IQueryRewriter#getResultSetValue(ResultSet, int, Column)}, the
+ * readers call the type-specific getter of the {@link ResultSet} directly,
+ * otherwise they delegate to the query rewriter.
+ */
+abstract class JdbcColumnReader {
+
+    private static final Logger logger = LoggerFactory.getLogger(JdbcColumnReader.class);
+
+    private static final ConcurrentHashMap<Class<?>, Boolean> defaultResultSetValueClasses = new ConcurrentHashMap<Class<?>, Boolean>();
+
+    protected final int _columnIndex;
+
+    /**
+     * Creates the readers for the select items of a query.
+     *
+     * @param selectItems
+     * @param queryRewriter
+     * @return an array with a reader for each select item
+     */
+    public static JdbcColumnReader[] createReaders(SelectItem[] selectItems, IQueryRewriter queryRewriter) {
+        final boolean defaultResultSetValue = isDefaultResultSetValue(queryRewriter);
+        final JdbcColumnReader[] readers = new JdbcColumnReader[selectItems.length];
+        for (int i = 0; i < selectItems.length; i++) {
+            readers[i] = createReader(selectItems[i], i + 1, queryRewriter, defaultResultSetValue);
+        }
+        return readers;
+    }
+
+    private static JdbcColumnReader createReader(SelectItem selectItem, int columnIndex,
+            IQueryRewriter queryRewriter, boolean defaultResultSetValue) {
+        final Column column = selectItem.getColumn();
+        if (selectItem.getAggregateFunction() != null || column == null) {
+            return new ObjectReader(columnIndex);
+        }
+        if (!defaultResultSetValue) {
+            return new QueryRewriterReader(columnIndex, queryRewriter, column);
+        }
+
+        // same choices as in AbstractQueryRewriter.getResultSetValue(...)
+        final ColumnType type = column.getType();
+        if (type == null) {
+            return new ObjectReader(columnIndex);
+        } else if (type == ColumnType.TIME || type == ColumnType.DATE || type == ColumnType.TIMESTAMP
+                || type == ColumnType.BLOB || type == ColumnType.CLOB || type == ColumnType.NCLOB
+                || (type.isBoolean() && !type.isBinary())) {
+            return new TypedReader(columnIndex, type);
+        } else if (type == JdbcDataContext.COLUMN_TYPE_BLOB_AS_BYTES
+                || type == JdbcDataContext.COLUMN_TYPE_CLOB_AS_STRING) {
+            return new QueryRewriterReader(columnIndex, queryRewriter, column);
+        } else if (type.isBinary()) {
+            return new TypedReader(columnIndex, type);
+        }
+        return new ObjectReader(columnIndex);
+    }
+
+    /**
+     * Determines if a query rewriter reads values the way that
+     * {@link AbstractQueryRewriter} does.
+     */
+    private static boolean isDefaultResultSetValue(IQueryRewriter queryRewriter) {
+        if (!(queryRewriter instanceof AbstractQueryRewriter)) {
+            return false;
+        }
+        final Class<?> cls = queryRewriter.getClass();
+        Boolean result = defaultResultSetValueClasses.get(cls);
+        if (result == null) {
+            try {
+                result = cls.getMethod("getResultSetValue", ResultSet.class, int.class, Column.class)
+                        .getDeclaringClass() == AbstractQueryRewriter.class;
+            } catch (NoSuchMethodException e) {
+                result = false;
+            }
+            defaultResultSetValueClasses.put(cls, result);
+        }
+        return result;
+    }
+
+    public JdbcColumnReader(int columnIndex) {
+        _columnIndex = columnIndex;
+    }
+
+    /**
+     * Reads the value of the column in the current record of a
+     * {@link ResultSet}.
+     *
+     * @param resultSet
+     * @return
+     * @throws SQLException
+     */
+    public abstract Object read(ResultSet resultSet) throws SQLException;
+
+    private static final class ObjectReader extends JdbcColumnReader {
+
+        public ObjectReader(int columnIndex) {
+            super(columnIndex);
+        }
+
+        @Override
+        public Object read(ResultSet resultSet) throws SQLException {
+            return resultSet.getObject(_columnIndex);
+        }
+    }
+
+    private static final class QueryRewriterReader extends JdbcColumnReader {
+
+        private final IQueryRewriter _queryRewriter;
+        private final Column _column;
+
+        public QueryRewriterReader(int columnIndex, IQueryRewriter queryRewriter, Column column) {
+            super(columnIndex);
+            _queryRewriter = queryRewriter;
+            _column = column;
+        }
+
+        @Override
+        public Object read(ResultSet resultSet) throws SQLException {
+            return _queryRewriter.getResultSetValue(resultSet, _columnIndex, _column);
+        }
+    }
+
+    /**
+     * Reader which uses a type-specific getter, falling back to
+     * {@link ResultSet#getObject(int)} if the getter fails.
+     */
+    private static final class TypedReader extends JdbcColumnReader {
+
+        private final ColumnType _type;
+
+        public TypedReader(int columnIndex, ColumnType type) {
+            super(columnIndex);
+            _type = type;
+        }
+
+        @Override
+        public Object read(ResultSet resultSet) throws SQLException {
+            try {
+                if (_type == ColumnType.TIME) {
+                    return resultSet.getTime(_columnIndex);
+                } else if (_type == ColumnType.DATE) {
+                    return resultSet.getDate(_columnIndex);
+                } else if (_type == ColumnType.TIMESTAMP) {
+                    return resultSet.getTimestamp(_columnIndex);
+                } else if (_type == ColumnType.BLOB) {
+                    return resultSet.getBlob(_columnIndex);
+                } else if (_type.isBinary()) {
+                    return resultSet.getBytes(_columnIndex);
+                } else if (_type == ColumnType.CLOB || _type == ColumnType.NCLOB) {
+                    return resultSet.getClob(_columnIndex);
+                } else {
+                    return resultSet.getBoolean(_columnIndex);
+                }
+            } catch (Exception e) {
+                logger.warn("Failed to retrieve " + _type
+                        + " value using type-specific getter, retrying with generic getObject(...) method", e);
+            }
+            return resultSet.getObject(_columnIndex);
+        }
+    }
+}
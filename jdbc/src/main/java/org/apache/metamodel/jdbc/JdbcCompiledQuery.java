@@ -19,12 +19,8 @@
 package org.apache.metamodel.jdbc;
 
 import java.sql.PreparedStatement;
-import java.sql.SQLException;
 import java.util.List;
 
-import org.apache.commons.pool.impl.GenericObjectPool;
-import org.apache.commons.pool.impl.GenericObjectPool.Config;
-import org.apache.metamodel.MetaModelException;
 import org.apache.metamodel.query.CompiledQuery;
 import org.apache.metamodel.query.DefaultCompiledQuery;
 import org.apache.metamodel.query.Query;
@@ -34,7 +30,9 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Implementation of {@link CompiledQuery} for JDBC which uses a
- * {@link PreparedStatement} behind the scenes.
+ * {@link PreparedStatement} behind the scenes. The connections and prepared
+ * statements are leased from the {@link JdbcCompiledQueryLeasePool} of the
+ * {@link JdbcDataContext}, which is shared by all compiled queries.
  */
 final class JdbcCompiledQuery extends DefaultCompiledQuery implements CompiledQuery {
 
@@ -42,82 +40,41 @@ final class JdbcCompiledQuery extends DefaultCompiledQuery implements CompiledQu
 
     private final String _sql;
     private final Query _query;
-    private final GenericObjectPool<JdbcCompiledQueryLease> _pool;
+    private final JdbcCompiledQueryLeasePool _pool;
+    private final JdbcCompiledQueryLeasePool.Group _leaseGroup;
     private boolean _closed;
 
     public JdbcCompiledQuery(JdbcDataContext dc, Query query) {
         super(query);
         _query = query;
         _sql = dc.getQueryRewriter().rewriteQuery(query);
-
-        final Config config = new Config();
-        config.maxActive = getSystemPropertyValue(JdbcDataContext.SYSTEM_PROPERTY_COMPILED_QUERY_POOL_MAX_SIZE, -1);
-        config.minEvictableIdleTimeMillis = getSystemPropertyValue(
-                JdbcDataContext.SYSTEM_PROPERTY_COMPILED_QUERY_POOL_MIN_EVICTABLE_IDLE_TIME_MILLIS, 500);
-        config.timeBetweenEvictionRunsMillis = getSystemPropertyValue(
-                JdbcDataContext.SYSTEM_PROPERTY_COMPILED_QUERY_POOL_TIME_BETWEEN_EVICTION_RUNS_MILLIS, 1000);
-
-        _pool = new GenericObjectPool<JdbcCompiledQueryLease>(new JdbcCompiledQueryLeaseFactory(dc, _sql), config);
+        _pool = dc.getCompiledQueryLeasePool();
+        _leaseGroup = _pool.register(_sql);
         _closed = false;
 
         logger.debug("Created compiled JDBC query: {}", _sql);
     }
 
-    private int getSystemPropertyValue(String property, int defaultValue) {
-        String str = System.getProperty(property);
-        if (str == null) {
-            return defaultValue;
-        }
-        try {
-            return Integer.parseInt(str);
-        } catch (NumberFormatException e) {
-            logger.debug("Failed to parse system property '{}': '{}'", property, str);
-            return defaultValue;
-        }
-    }
-
     public JdbcCompiledQueryLease borrowLease() {
         if (logger.isDebugEnabled()) {
             logger.debug("Borrowing lease. Leases (before): Active={}, Idle={}", getActiveLeases(), getIdleLeases());
         }
-        try {
-            return _pool.borrowObject();
-        } catch (Exception e) {
-            throw handleError(e, "borrow lease");
-        }
+        return _pool.borrowLease(_leaseGroup);
     }
 
     public void returnLease(JdbcCompiledQueryLease lease) {
         if (logger.isDebugEnabled()) {
             logger.debug("Returning lease. Leases (before): Active={}, Idle={}", getActiveLeases(), getIdleLeases());
         }
-        try {
-            _pool.returnObject(lease);
-        } catch (Exception e) {
-            throw handleError(e, "return lease");
-        }
-    }
-
-    private RuntimeException handleError(Exception e, String message) {
-        if (logger.isWarnEnabled()) {
-            logger.warn("Unexpected error occurred in compiled JDBC query: " + message, e);
-        }
-
-        if (e instanceof SQLException) {
-            return JdbcUtils.wrapException((SQLException) e, message);
-        } else if (e instanceof RuntimeException) {
-            return (RuntimeException) e;
-        } else {
-            return new MetaModelException(message, e);
-        }
+        _pool.returnLease(_leaseGroup, lease);
     }
 
     protected int getActiveLeases() {
-        return _pool.getNumActive();
+        return _leaseGroup.getActiveLeases();
     }
 
     protected int getIdleLeases() {
-        return _pool.getNumIdle();
+        return _leaseGroup.getIdleLeases();
     }
 
     protected Query getQuery() {
@@ -131,14 +88,12 @@ final class JdbcCompiledQuery extends DefaultCompiledQuery implements CompiledQu
 
     @Override
     public void close() {
-        logger.debug("Closing compiled JDBC query: {}", _sql);
-        try {
-            _pool.close();
-        } catch (Exception e) {
-            throw handleError(e, "close pool of leases");
-        } finally {
-            _closed = true;
+        if (_closed) {
+            return;
         }
+        logger.debug("Closing compiled JDBC query: {}", _sql);
+        _closed = true;
+        _pool.unregister(_leaseGroup);
     }
 
     protected List<SelectItem> getSelectItems() {
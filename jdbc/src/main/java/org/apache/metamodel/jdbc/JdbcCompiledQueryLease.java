@@ -32,6 +32,7 @@ final class JdbcCompiledQueryLease {
 
     private final Connection _connection;
     private final PreparedStatement _statement;
+    private volatile long _lastReturned;
 
     public JdbcCompiledQueryLease(Connection connection, PreparedStatement statement) {
         _connection = connection;
@@ -45,4 +46,16 @@ final class JdbcCompiledQueryLease {
     public PreparedStatement getStatement() {
         return _statement;
     }
+
+    /**
+     * Gets the time (in milliseconds) at which the lease was last returned to
+     * the pool.
+     */
+    public long getLastReturned() {
+        return _lastReturned;
+    }
+
+    public void setLastReturned(long lastReturned) {
+        _lastReturned = lastReturned;
+    }
 }
@@ -0,0 +1,425 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.metamodel.MetaModelException;
+import org.apache.metamodel.util.FileHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of {@link JdbcCompiledQueryLease}s, shared by all the compiled queries
+ * of a {@link JdbcDataContext}. Idle leases are kept per SQL statement, so
+ * borrowing and returning a lease does not take any locks, unless a new lease
+ * has to be created.
+ *
+ * The total number of leases (active and idle) can be bounded, in which case
+ * idle leases of other statements are closed to make room for new leases, and
+ * borrowers wait for a limited amount of time when all leases are active.
+ * Leases that have been idle for a while are closed by a background timer, to
+ * release the connections they hold.
+ *
+ * The pool can be configured using the
+ * {@link JdbcDataContext#SYSTEM_PROPERTY_COMPILED_QUERY_POOL_MAX_SIZE},
+ * {@link JdbcDataContext#SYSTEM_PROPERTY_COMPILED_QUERY_POOL_MAX_WAIT_MILLIS},
+ * {@link JdbcDataContext#SYSTEM_PROPERTY_COMPILED_QUERY_POOL_MIN_EVICTABLE_IDLE_TIME_MILLIS}
+ * and
+ * {@link JdbcDataContext#SYSTEM_PROPERTY_COMPILED_QUERY_POOL_TIME_BETWEEN_EVICTION_RUNS_MILLIS}
+ * system properties.
+ */
+public final class JdbcCompiledQueryLeasePool {
+
+    private static final Logger logger = LoggerFactory.getLogger(JdbcCompiledQueryLeasePool.class);
+
+    private static final Timer EVICTION_TIMER = new Timer("MetaModel.JdbcCompiledQueryLeasePool.Evictor", true);
+
+    /**
+     * The interval in which a waiting borrower checks for idle leases
+     */
+    private static final long WAIT_INTERVAL_MILLIS = 10;
+
+    private final JdbcDataContext _dataContext;
+    private final int _maxSize;
+    private final long _maxWaitMillis;
+    private final long _minEvictableIdleTimeMillis;
+    private final long _timeBetweenEvictionRunsMillis;
+    private final Semaphore _permits;
+    private final ConcurrentHashMap<String, Group> _groups;
+    private final AtomicInteger _activeLeases;
+    private final AtomicInteger _idleLeases;
+    private final AtomicLong _waitCount;
+    private final AtomicLong _waitTimeNanos;
+    private final AtomicLong _createdLeases;
+    private final AtomicLong _destroyedLeases;
+    private TimerTask _evictionTask;
+
+    JdbcCompiledQueryLeasePool(JdbcDataContext dataContext) {
+        _dataContext = dataContext;
+        _maxSize = (int) JdbcUtils.getSystemPropertyValue(
+                JdbcDataContext.SYSTEM_PROPERTY_COMPILED_QUERY_POOL_MAX_SIZE, -1);
+        _maxWaitMillis = JdbcUtils.getSystemPropertyValue(
+                JdbcDataContext.SYSTEM_PROPERTY_COMPILED_QUERY_POOL_MAX_WAIT_MILLIS, 30000);
+        _minEvictableIdleTimeMillis = JdbcUtils.getSystemPropertyValue(
+                JdbcDataContext.SYSTEM_PROPERTY_COMPILED_QUERY_POOL_MIN_EVICTABLE_IDLE_TIME_MILLIS, 500);
+        _timeBetweenEvictionRunsMillis = JdbcUtils.getSystemPropertyValue(
+                JdbcDataContext.SYSTEM_PROPERTY_COMPILED_QUERY_POOL_TIME_BETWEEN_EVICTION_RUNS_MILLIS, 1000);
+        _permits = (_maxSize > 0 ? new Semaphore(_maxSize) : null);
+        _groups = new ConcurrentHashMap<String, Group>();
+        _activeLeases = new AtomicInteger();
+        _idleLeases = new AtomicInteger();
+        _waitCount = new AtomicLong();
+        _waitTimeNanos = new AtomicLong();
+        _createdLeases = new AtomicLong();
+        _destroyedLeases = new AtomicLong();
+    }
+
+    /**
+     * Registers a compiled query with the pool.
+     *
+     * @param sql
+     *            the SQL of the compiled query
+     * @return the group of leases to use for the compiled query
+     */
+    Group register(String sql) {
+        synchronized (_groups) {
+            Group group = _groups.get(sql);
+            if (group == null) {
+                group = new Group(sql);
+                _groups.put(sql, group);
+                if (_groups.size() == 1) {
+                    startEvictor();
+                }
+            }
+            group._references++;
+            return group;
+        }
+    }
+
+    /**
+     * Unregisters a compiled query from the pool. When no more compiled
+     * queries use the group, its idle leases are closed.
+     *
+     * @param group
+     */
+    void unregister(Group group) {
+        synchronized (_groups) {
+            group._references--;
+            if (group._references > 0) {
+                return;
+            }
+            group._closed = true;
+            _groups.remove(group._sql);
+            if (_groups.isEmpty()) {
+                stopEvictor();
+            }
+        }
+        for (JdbcCompiledQueryLease lease = group._idle.pollFirst(); lease != null; lease = group._idle
+                .pollFirst()) {
+            removeIdle(group);
+            destroy(lease);
+            releasePermit();
+        }
+    }
+
+    JdbcCompiledQueryLease borrowLease(Group group) {
+        while (true) {
+            // fast path: an idle lease of the same statement
+            final JdbcCompiledQueryLease lease = takeIdle(group);
+            if (lease != null) {
+                return lease;
+            }
+            if (acquirePermit(group)) {
+                break;
+            }
+        }
+
+        final JdbcCompiledQueryLease lease;
+        try {
+            lease = create(group._sql);
+        } catch (RuntimeException e) {
+            releasePermit();
+            throw e;
+        }
+        _activeLeases.incrementAndGet();
+        group._active.incrementAndGet();
+        return lease;
+    }
+
+    /**
+     * Acquires a permit to create a new lease, waiting for a limited time if
+     * all leases are in use.
+     *
+     * @return true if a permit was acquired, false if an idle lease of the
+     *         group has become available instead
+     */
+    private boolean acquirePermit(Group group) {
+        if (_permits == null || _permits.tryAcquire() || evictIdleLease()) {
+            return true;
+        }
+
+        final long startTime = System.nanoTime();
+        final long deadline = startTime + TimeUnit.MILLISECONDS.toNanos(_maxWaitMillis);
+        try {
+            while (true) {
+                if (!group._idle.isEmpty()) {
+                    return false;
+                }
+                if (evictIdleLease()) {
+                    return true;
+                }
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new MetaModelException("Timeout while waiting for a lease of compiled query, all "
+                            + _maxSize + " leases are in use: " + group._sql);
+                }
+                if (_permits.tryAcquire(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(WAIT_INTERVAL_MILLIS)),
+                        TimeUnit.NANOSECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MetaModelException("Interrupted while waiting for a lease of compiled query", e);
+        } finally {
+            _waitCount.incrementAndGet();
+            _waitTimeNanos.addAndGet(System.nanoTime() - startTime);
+        }
+    }
+
+    private JdbcCompiledQueryLease takeIdle(Group group) {
+        final JdbcCompiledQueryLease lease = group._idle.pollFirst();
+        if (lease != null) {
+            removeIdle(group);
+            _activeLeases.incrementAndGet();
+            group._active.incrementAndGet();
+        }
+        return lease;
+    }
+
+    /**
+     * Closes an idle lease of any statement, to make room for a new lease.
+     *
+     * @return true if a lease was closed, and its permit is now held by the
+     *         caller
+     */
+    private boolean evictIdleLease() {
+        if (_idleLeases.get() == 0) {
+            return false;
+        }
+        for (Group group : _groups.values()) {
+            final JdbcCompiledQueryLease lease = group._idle.pollLast();
+            if (lease != null) {
+                removeIdle(group);
+                destroy(lease);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void returnLease(Group group, JdbcCompiledQueryLease lease) {
+        _activeLeases.decrementAndGet();
+        group._active.decrementAndGet();
+        if (group._closed) {
+            destroy(lease);
+            releasePermit();
+            return;
+        }
+        lease.setLastReturned(System.currentTimeMillis());
+        _idleLeases.incrementAndGet();
+        group._idleCount.incrementAndGet();
+        group._idle.offerFirst(lease);
+
+        if (group._closed && group._idle.remove(lease)) {
+            // the group was closed while returning the lease
+            removeIdle(group);
+            destroy(lease);
+            releasePermit();
+        }
+    }
+
+    private void removeIdle(Group group) {
+        _idleLeases.decrementAndGet();
+        group._idleCount.decrementAndGet();
+    }
+
+    private void releasePermit() {
+        if (_permits != null) {
+            _permits.release();
+        }
+    }
+
+    private JdbcCompiledQueryLease create(String sql) {
+        final Connection connection = _dataContext.getConnection();
+        try {
+            final PreparedStatement statement = connection.prepareStatement(sql);
+            _createdLeases.incrementAndGet();
+            return new JdbcCompiledQueryLease(connection, statement);
+        } catch (SQLException e) {
+            _dataContext.close(connection);
+            throw JdbcUtils.wrapException(e, "preparing statement");
+        }
+    }
+
+    private void destroy(JdbcCompiledQueryLease lease) {
+        _destroyedLeases.incrementAndGet();
+        FileHelper.safeClose(lease.getStatement());
+        _dataContext.close(lease.getConnection());
+    }
+
+    /**
+     * Closes the leases that have been idle for longer than the min evictable
+     * idle time.
+     */
+    void evictIdleLeases() {
+        final long threshold = System.currentTimeMillis() - _minEvictableIdleTimeMillis;
+        for (Group group : _groups.values()) {
+            while (true) {
+                final JdbcCompiledQueryLease lease = group._idle.pollLast();
+                if (lease == null) {
+                    break;
+                }
+                if (lease.getLastReturned() > threshold) {
+                    // not idle for long enough - and neither are the more
+                    // recently returned leases
+                    group._idle.offerLast(lease);
+                    if (group._closed && group._idle.remove(lease)) {
+                        // the group was closed while inspecting the lease
+                        removeIdle(group);
+                        destroy(lease);
+                        releasePermit();
+                    }
+                    break;
+                }
+                removeIdle(group);
+                destroy(lease);
+                releasePermit();
+            }
+        }
+    }
+
+    private void startEvictor() {
+        if (_timeBetweenEvictionRunsMillis <= 0 || _minEvictableIdleTimeMillis < 0) {
+            return;
+        }
+        _evictionTask = new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    evictIdleLeases();
+                } catch (RuntimeException e) {
+                    logger.warn("Unexpected error while evicting idle leases of compiled queries", e);
+                }
+            }
+        };
+        EVICTION_TIMER.schedule(_evictionTask, _timeBetweenEvictionRunsMillis, _timeBetweenEvictionRunsMillis);
+    }
+
+    private void stopEvictor() {
+        if (_evictionTask != null) {
+            _evictionTask.cancel();
+            _evictionTask = null;
+            EVICTION_TIMER.purge();
+        }
+    }
+
+    /**
+     * Gets the number of leases that are currently borrowed.
+     */
+    public int getActiveLeases() {
+        return _activeLeases.get();
+    }
+
+    /**
+     * Gets the number of leases that are currently idle.
+     */
+    public int getIdleLeases() {
+        return _idleLeases.get();
+    }
+
+    /**
+     * Gets the number of times that a borrower had to wait for a lease.
+     */
+    public long getWaitCount() {
+        return _waitCount.get();
+    }
+
+    /**
+     * Gets the total time, in milliseconds, that borrowers have waited for
+     * leases.
+     */
+    public long getWaitTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(_waitTimeNanos.get());
+    }
+
+    /**
+     * Gets the number of leases created so far.
+     */
+    public long getCreatedLeases() {
+        return _createdLeases.get();
+    }
+
+    /**
+     * Gets the number of leases closed so far.
+     */
+    public long getDestroyedLeases() {
+        return _destroyedLeases.get();
+    }
+
+    /**
+     * The leases of a single SQL statement, shared by the compiled queries with
+     * that statement.
+     */
+    static final class Group {
+
+        private final String _sql;
+        private final ConcurrentLinkedDeque<JdbcCompiledQueryLease> _idle;
+        private final AtomicInteger _active;
+        private final AtomicInteger _idleCount;
+        private volatile boolean _closed;
+        private int _references;
+
+        private Group(String sql) {
+            _sql = sql;
+            _idle = new ConcurrentLinkedDeque<JdbcCompiledQueryLease>();
+            _active = new AtomicInteger();
+            _idleCount = new AtomicInteger();
+        }
+
+        public int getActiveLeases() {
+            return _active.get();
+        }
+
+        public int getIdleLeases() {
+            return _idleCount.get();
+        }
+    }
+}
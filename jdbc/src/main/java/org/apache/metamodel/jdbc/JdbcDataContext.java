@@ -18,6 +18,7 @@
  */
 package org.apache.metamodel.jdbc;
 
+import java.io.File;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
@@ -25,17 +26,27 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.sql.DataSource;
 
 import org.apache.metamodel.AbstractDataContext;
 import org.apache.metamodel.BatchUpdateScript;
+import org.apache.metamodel.DataContext;
 import org.apache.metamodel.MetaModelException;
 import org.apache.metamodel.MetaModelHelper;
 import org.apache.metamodel.UpdateScript;
@@ -59,12 +70,14 @@ import org.apache.metamodel.query.AggregateFunction;
 import org.apache.metamodel.query.CompiledQuery;
 import org.apache.metamodel.query.Query;
 import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.Column;
 import org.apache.metamodel.schema.ColumnType;
 import org.apache.metamodel.schema.ColumnTypeImpl;
 import org.apache.metamodel.schema.Schema;
 import org.apache.metamodel.schema.SuperColumnType;
 import org.apache.metamodel.schema.TableType;
 import org.apache.metamodel.util.FileHelper;
+import org.apache.metamodel.util.SharedExecutorService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -74,11 +87,22 @@ import org.slf4j.LoggerFactory;
 public class JdbcDataContext extends AbstractDataContext implements UpdateableDataContext {
 
     public static final String SYSTEM_PROPERTY_BATCH_UPDATES = "metamodel.jdbc.batch.updates";
+    public static final String SYSTEM_PROPERTY_BATCH_MAX_ROWS = "metamodel.jdbc.batch.max.rows";
+    public static final String SYSTEM_PROPERTY_BATCH_MAX_BYTES = "metamodel.jdbc.batch.max.bytes";
+    public static final String SYSTEM_PROPERTY_INSERT_ROWS_PER_STATEMENT = "metamodel.jdbc.insert.rows.per.statement";
     public static final String SYSTEM_PROPERTY_CONVERT_LOBS = "metamodel.jdbc.convert.lobs";
+    public static final String SYSTEM_PROPERTY_ADAPTIVE_FETCH_SIZE = "metamodel.jdbc.fetchsize.adaptive";
+    public static final String SYSTEM_PROPERTY_AUTO_PARAMETERIZE = "metamodel.jdbc.autoparameterize";
+    public static final String SYSTEM_PROPERTY_STATEMENT_CACHE_SIZE = "metamodel.jdbc.statement.cache.size";
+    public static final String SYSTEM_PROPERTY_METADATA_BULK_LOADING = "metamodel.jdbc.metadata.bulk";
+    public static final String SYSTEM_PROPERTY_METADATA_PARALLELISM = "metamodel.jdbc.metadata.parallelism";
+    public static final String SYSTEM_PROPERTY_METADATA_SNAPSHOT_DIRECTORY = "metamodel.jdbc.metadata.snapshot.dir";
+    public static final String SYSTEM_PROPERTY_METADATA_SNAPSHOT_MAX_AGE_MILLIS = "metamodel.jdbc.metadata.snapshot.max.age.millis";
 
     public static final String SYSTEM_PROPERTY_COMPILED_QUERY_POOL_MAX_SIZE = "metamodel.jdbc.compiledquery.pool.max.size";
     public static final String SYSTEM_PROPERTY_COMPILED_QUERY_POOL_MIN_EVICTABLE_IDLE_TIME_MILLIS = "metamodel.jdbc.compiledquery.pool.idle.timeout";
     public static final String SYSTEM_PROPERTY_COMPILED_QUERY_POOL_TIME_BETWEEN_EVICTION_RUNS_MILLIS = "metamodel.jdbc.compiledquery.pool.eviction.period.millis";
+    public static final String SYSTEM_PROPERTY_COMPILED_QUERY_POOL_MAX_WAIT_MILLIS = "metamodel.jdbc.compiledquery.pool.max.wait.millis";
 
     public static final String DATABASE_PRODUCT_POSTGRESQL = "PostgreSQL";
     public static final String DATABASE_PRODUCT_MYSQL = "MySQL";
@@ -99,13 +123,18 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
     private static final Logger logger = LoggerFactory.getLogger(JdbcDataContext.class);
 
     private final FetchSizeCalculator _fetchSizeCalculator;
+    private final JdbcCompiledQueryLeasePool _compiledQueryLeasePool;
     private final Connection _connection;
     private final DataSource _dataSource;
     private final TableType[] _tableTypes;
     private final String _catalogName;
     private final boolean _singleConnection;
+    private final boolean _autoParameterize;
+    private final Map<List<Object>, String> _parameterizedSqlCache;
+    private final JdbcStatementCache _statementCache;
 
-    private final MetadataLoader _metadataLoader;
+    private final JdbcMetadataLoader _metadataLoader;
+    private final JdbcMetadataSnapshot _metadataSnapshot;
 
     /**
      * Defines the way that queries are written once dispatched to the database
@@ -178,7 +207,31 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
         }
 
         // available memory for fetching is so far fixed at 16 megs.
-        _fetchSizeCalculator = new FetchSizeCalculator(16 * 1024 * 1024);
+        _fetchSizeCalculator = new FetchSizeCalculator(16 * 1024 * 1024,
+                "true".equals(System.getProperty(SYSTEM_PROPERTY_ADAPTIVE_FETCH_SIZE)));
+
+        _compiledQueryLeasePool = new JdbcCompiledQueryLeasePool(this);
+
+        _autoParameterize = "true".equals(System.getProperty(SYSTEM_PROPERTY_AUTO_PARAMETERIZE));
+        if (_autoParameterize) {
+            final int cacheSize = getStatementCacheSize();
+            _parameterizedSqlCache = Collections.synchronizedMap(new LinkedHashMap<List<Object>, String>(16,
+                    0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Entry<List<Object>, String> eldest) {
+                    return size() > cacheSize * 10;
+                }
+            });
+            // statements can only be cached for connections that are owned
+            // by this DataContext - pooled connections are handed back to the
+            // DataSource after each query
+            _statementCache = (_connection == null ? null : new JdbcStatementCache(_connection, cacheSize));
+        } else {
+            _parameterizedSqlCache = null;
+            _statementCache = null;
+        }
 
         boolean supportsBatchUpdates = false;
         String identifierQuoteString = null;
@@ -247,6 +300,15 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
         _identifierQuoteString = identifierQuoteString;
         _usesCatalogsAsSchemas = usesCatalogsAsSchemas;
         _metadataLoader = new JdbcMetadataLoader(this, _usesCatalogsAsSchemas, _identifierQuoteString);
+
+        final String snapshotDirectory = System.getProperty(SYSTEM_PROPERTY_METADATA_SNAPSHOT_DIRECTORY);
+        if (snapshotDirectory == null || snapshotDirectory.trim().isEmpty()) {
+            _metadataSnapshot = null;
+        } else {
+            _metadataSnapshot = new JdbcMetadataSnapshot(new File(snapshotDirectory.trim()),
+                    JdbcUtils.getSystemPropertyValue(SYSTEM_PROPERTY_METADATA_SNAPSHOT_MAX_AGE_MILLIS,
+                            24 * 60 * 60 * 1000));
+        }
     }
 
     /**
@@ -323,7 +385,8 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
         final JdbcCompiledQueryLease lease = jdbcCompiledQuery.borrowLease();
         final DataSet dataSet;
         try {
-            dataSet = execute(lease.getConnection(), query, lease.getStatement(), jdbcCompiledQuery, lease, values);
+            dataSet = execute(lease.getConnection(), query, lease.getStatement(), jdbcCompiledQuery, lease, values,
+                    null);
         } catch (SQLException e) {
             // only close in case of an error - the JdbcDataSet will close
             // otherwise
@@ -339,8 +402,15 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
         return dataSet;
     }
 
+    /**
+     * Executes a query. The query is either executed as a regular statement,
+     * as a compiled query (when a lease is given), or as an auto-parameterized
+     * query (when no statement is given, but the values and columns of the
+     * parameters are).
+     */
     private DataSet execute(Connection connection, Query query, Statement statement, JdbcCompiledQuery compiledQuery,
-            JdbcCompiledQueryLease lease, Object[] values) throws SQLException, MetaModelException {
+            JdbcCompiledQueryLease lease, Object[] values, Column[] parameterColumns) throws SQLException,
+            MetaModelException {
         Integer maxRows = query.getMaxRows();
 
         final List<SelectItem> selectItems = query.getSelectClause().getItems();
@@ -395,17 +465,23 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
         }
 
         boolean postProcessMaxRows = false;
-        if (maxRows != null) {
-            if (postProcessFirstRow) {
-                // if First row is being post processed, we need to
-                // increment the "Max rows" accordingly (but subtract one, since
-                // firstRow is 1-based).
-                maxRows = maxRows + (firstRow - 1);
-                query = query.clone().setMaxRows(maxRows);
+        if (maxRows != null && postProcessFirstRow) {
+            // if First row is being post processed, we need to
+            // increment the "Max rows" accordingly (but subtract one, since
+            // firstRow is 1-based).
+            maxRows = maxRows + (firstRow - 1);
+            query = query.clone().setMaxRows(maxRows);
+
+            logger.debug("Setting Max rows to {} because of post processing strategy of First row.", maxRows);
+        }
 
-                logger.debug("Setting Max rows to {} because of post processing strategy of First row.", maxRows);
-            }
+        String parameterizedSql = null;
+        if (statement == null) {
+            parameterizedSql = getParameterizedSql(query);
+            statement = prepareStatement(connection, parameterizedSql);
+        }
 
+        if (maxRows != null) {
             if (_queryRewriter.isMaxRowsSupported()) {
                 logger.debug("Max rows property will be treated by query rewriter");
             } else {
@@ -421,6 +497,7 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
         }
 
         DataSet dataSet = null;
+        boolean success = false;
         try {
             final int fetchSize = getFetchSize(query, statement);
 
@@ -435,7 +512,15 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
                 logger.info("Could not get or set fetch size on Statement: {}", e.getMessage());
             }
 
-            if (lease == null) {
+            if (parameterizedSql != null) {
+                logger.debug("Executing parameterized query: {}", parameterizedSql);
+
+                final PreparedStatement preparedStatement = (PreparedStatement) statement;
+                for (int i = 0; i < values.length; i++) {
+                    _queryRewriter.setStatementParameter(preparedStatement, i + 1, parameterColumns[i], values[i]);
+                }
+                resultSet = preparedStatement.executeQuery();
+            } else if (lease == null) {
                 final String queryString = _queryRewriter.rewriteQuery(query);
 
                 logger.debug("Executing rewritten query: {}", queryString);
@@ -467,11 +552,19 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
                 }
             }
 
+            final JdbcDataSet jdbcDataSet;
             if (lease == null) {
-                dataSet = new JdbcDataSet(query, this, connection, statement, resultSet);
+                jdbcDataSet = new JdbcDataSet(query, this, connection, statement, resultSet);
+                if (parameterizedSql != null && _statementCache != null) {
+                    jdbcDataSet.setStatementCache(_statementCache, parameterizedSql);
+                }
             } else {
-                dataSet = new JdbcDataSet(compiledQuery, lease, resultSet);
+                jdbcDataSet = new JdbcDataSet(compiledQuery, lease, resultSet);
             }
+            if (_fetchSizeCalculator.isAdaptive() && fetchSize > 0) {
+                jdbcDataSet.setAdaptiveFetchSize(_fetchSizeCalculator, query);
+            }
+            dataSet = jdbcDataSet;
 
             if (postProcessMaxRows) {
                 dataSet = new MaxRowsDataSet(dataSet, maxRows);
@@ -481,17 +574,25 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
                 dataSet = new ScalarFunctionDataSet(scalarFunctionSelectItems, dataSet);
                 dataSet = MetaModelHelper.getSelection(selectItems, dataSet);
             }
-
+            success = true;
         } catch (SQLException exception) {
             if (resultSet != null) {
                 resultSet.close();
             }
             throw exception;
+        } finally {
+            if (!success && parameterizedSql != null) {
+                // the statement is not handed over to a DataSet
+                FileHelper.safeClose(statement);
+            }
         }
         return dataSet;
     }
 
     public DataSet executeQuery(Query query) throws MetaModelException {
+        if (_autoParameterize) {
+            return executeParameterizedQuery(JdbcParameterizedQuery.parameterize(query));
+        }
 
         final Connection connection = getConnection();
         final Statement statement;
@@ -503,7 +604,7 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
 
         final DataSet dataSet;
         try {
-            dataSet = execute(connection, query, statement, null, null, null);
+            dataSet = execute(connection, query, statement, null, null, null, null);
         } catch (SQLException e) {
             // only close in case of an error - the JdbcDataSet will close
             // otherwise
@@ -519,6 +620,74 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
         return dataSet;
     }
 
+    /**
+     * Executes a query with auto-parameterized literals, using a prepared
+     * statement for the shape of the query.
+     * 
+     * @param parameterizedQuery
+     * @return
+     */
+    private DataSet executeParameterizedQuery(JdbcParameterizedQuery parameterizedQuery) {
+        final Connection connection = getConnection();
+        final DataSet dataSet;
+        try {
+            dataSet = execute(connection, parameterizedQuery.getQuery(), null, null, null,
+                    parameterizedQuery.getValues(), parameterizedQuery.getColumns());
+        } catch (SQLException e) {
+            // only close in case of an error - the JdbcDataSet will close
+            // otherwise
+            close(connection);
+            throw JdbcUtils.wrapException(e, "execute query");
+        } catch (RuntimeException e) {
+            // only close in case of an error - the JdbcDataSet will close
+            // otherwise
+            close(connection);
+            throw e;
+        }
+
+        return dataSet;
+    }
+
+    /**
+     * Gets the SQL of a parameterized query, reusing the SQL of previously
+     * executed queries of the same shape.
+     * 
+     * @param query
+     * @return
+     */
+    private String getParameterizedSql(Query query) {
+        // the query itself is mutable, so it is identified by its generic SQL
+        // and paging, which is not a part of the SQL
+        final List<Object> key = Arrays.<Object> asList(query.toSql(), query.getMaxRows(), query.getFirstRow());
+        String sql = _parameterizedSqlCache.get(key);
+        if (sql == null) {
+            sql = _queryRewriter.rewriteQuery(query);
+            _parameterizedSqlCache.put(key, sql);
+        }
+        return sql;
+    }
+
+    private PreparedStatement prepareStatement(Connection connection, String sql) throws SQLException {
+        if (_statementCache != null) {
+            return _statementCache.borrow(sql);
+        }
+        return connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    }
+
+    private static int getStatementCacheSize() {
+        return (int) JdbcUtils.getSystemPropertyValue(SYSTEM_PROPERTY_STATEMENT_CACHE_SIZE, 100);
+    }
+
+    /**
+     * Gets the cache of prepared statements used for auto-parameterized
+     * queries, if any.
+     * 
+     * @return
+     */
+    JdbcStatementCache getStatementCache() {
+        return _statementCache;
+    }
+
     private int getFetchSize(Query query, final Statement statement) {
         try {
             final int defaultFetchSize = statement.getFetchSize();
@@ -755,6 +924,9 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
             throw new IllegalArgumentException("Query rewriter cannot be null");
         }
         _queryRewriter = queryRewriter;
+        if (_parameterizedSqlCache != null) {
+            _parameterizedSqlCache.clear();
+        }
         return this;
     }
 
@@ -814,12 +986,138 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
         final Connection connection = getConnection();
         try {
             _metadataLoader.loadTables(schema, connection);
+            if (_metadataSnapshot != null) {
+                final String snapshotKey = getMetadataSnapshotKey(connection, name);
+                final JdbcSchema snapshot = _metadataSnapshot.read(snapshotKey, schema);
+                if (snapshot != null) {
+                    _metadataLoader.onSnapshotRestored(snapshot);
+                    return snapshot;
+                }
+                _metadataLoader.loadAll(schema, connection);
+                _metadataSnapshot.write(snapshotKey, schema);
+            }
         } finally {
             close(connection);
         }
         return schema;
     }
 
+    private String getMetadataSnapshotKey(Connection connection, String schemaName) {
+        String url = null;
+        String userName = null;
+        try {
+            final DatabaseMetaData metaData = connection.getMetaData();
+            url = metaData.getURL();
+            userName = metaData.getUserName();
+        } catch (SQLException e) {
+            logger.debug("Could not retrieve URL and user name from database metadata", e);
+        }
+        return JdbcMetadataSnapshot.createKey(_databaseProductName, url, userName, _catalogName, schemaName,
+                _tableTypes, "true".equals(System.getProperty(SYSTEM_PROPERTY_CONVERT_LOBS)));
+    }
+
+    @Override
+    protected void onSchemaCacheRefreshed() {
+        if (_metadataSnapshot != null) {
+            _metadataSnapshot.clear();
+        }
+    }
+
+    /**
+     * Loads schemas including all of their metadata (columns, primary keys,
+     * indexes and relations) up front, instead of lazily. Unless this
+     * {@link DataContext} is based on a single {@link Connection}, the schemas
+     * are loaded in parallel on separate connections, with a parallelism
+     * defined by the {@link #SYSTEM_PROPERTY_METADATA_PARALLELISM} system
+     * property (default 4).
+     * 
+     * @param schemaNames
+     *            the names of the schemas to load, or none to load all schemas
+     * @return the loaded schemas
+     */
+    public Schema[] preloadSchemas(String... schemaNames) {
+        final String[] names = (schemaNames == null || schemaNames.length == 0 ? getSchemaNames() : schemaNames);
+        final Schema[] schemas = new Schema[names.length];
+        final int parallelism = (_singleConnection ? 1 : Math.min(names.length, (int) JdbcUtils.getSystemPropertyValue(
+                SYSTEM_PROPERTY_METADATA_PARALLELISM, 4)));
+        if (parallelism <= 1) {
+            for (int i = 0; i < names.length; i++) {
+                schemas[i] = preloadSchema(names[i]);
+            }
+            return schemas;
+        }
+
+        final AtomicInteger nextIndex = new AtomicInteger();
+        final List<Future<?>> futures = new ArrayList<Future<?>>(parallelism);
+        for (int i = 0; i < parallelism; i++) {
+            futures.add(SharedExecutorService.get().submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int index = nextIndex.getAndIncrement(); index < names.length; index = nextIndex
+                            .getAndIncrement()) {
+                        schemas[index] = preloadSchema(names[index]);
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MetaModelException("Interrupted while loading schemas", e);
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new MetaModelException("Failed to load schemas", (Exception) cause);
+            }
+        }
+        return schemas;
+    }
+
+    private Schema preloadSchema(String name) {
+        final Schema schema = getSchemaByName(name);
+        if (schema instanceof JdbcSchema) {
+            final Connection connection = getConnection();
+            try {
+                _metadataLoader.loadAll((JdbcSchema) schema, connection);
+            } finally {
+                close(connection);
+            }
+        }
+        return schema;
+    }
+
+    /**
+     * Gets the database product name, as reported by the JDBC driver.
+     * 
+     * @return
+     */
+    String getDatabaseProductName() {
+        return _databaseProductName;
+    }
+
+    boolean isBatchUpdatesSupported() {
+        return _supportsBatchUpdates;
+    }
+
+    /**
+     * Gets the pool of connections and prepared statements used to execute
+     * compiled queries. The pool exposes metrics such as the number of active
+     * and idle leases and the time spent waiting for leases.
+     * 
+     * @return
+     */
+    public JdbcCompiledQueryLeasePool getCompiledQueryLeasePool() {
+        return _compiledQueryLeasePool;
+    }
+
     public FetchSizeCalculator getFetchSizeCalculator() {
         return _fetchSizeCalculator;
     }
@@ -19,38 +19,54 @@
 package org.apache.metamodel.jdbc;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 
 import org.apache.metamodel.MetaModelException;
 import org.apache.metamodel.data.AbstractDataSet;
+import org.apache.metamodel.data.BatchDataSet;
 import org.apache.metamodel.data.DefaultRow;
 import org.apache.metamodel.data.Row;
+import org.apache.metamodel.data.RowBatch;
 import org.apache.metamodel.jdbc.dialects.DefaultQueryRewriter;
 import org.apache.metamodel.jdbc.dialects.IQueryRewriter;
 import org.apache.metamodel.query.Query;
-import org.apache.metamodel.query.SelectItem;
-import org.apache.metamodel.schema.Column;
 import org.apache.metamodel.util.FileHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * DataSet implementation that wraps a JDBC resultset.
+ * DataSet implementation that wraps a JDBC resultset. Records can also be read
+ * in batches, in which case the values are read directly into column arrays.
  */
-final class JdbcDataSet extends AbstractDataSet {
+final class JdbcDataSet extends AbstractDataSet implements BatchDataSet {
 
     private static final Logger logger = LoggerFactory.getLogger(JdbcDataSet.class);
 
+    /**
+     * The number of rows to measure when adapting the fetch size
+     */
+    private static final int ROWS_TO_SAMPLE = 1000;
+
     private final JdbcCompiledQuery _compiledQuery;
     private final JdbcCompiledQueryLease _lease;
     private final Statement _statement;
     private final ResultSet _resultSet;
     private final JdbcDataContext _jdbcDataContext;
     private final Connection _connection;
+    private final JdbcColumnReader[] _columnReaders;
     private Row _row;
     private boolean _closed;
+    private boolean _endOfResultSet;
+    private boolean _wasNullSupported;
+    private JdbcStatementCache _statementCache;
+    private String _statementSql;
+    private FetchSizeCalculator _fetchSizeCalculator;
+    private Query _fetchSizeQuery;
+    private int _sampledRows;
+    private long _sampledBytes;
 
     /**
      * Constructor used for regular query execution.
@@ -74,6 +90,8 @@ final class JdbcDataSet extends AbstractDataSet {
         _closed = false;
         _compiledQuery = null;
         _lease = null;
+        _columnReaders = createColumnReaders(jdbcDataContext);
+        _wasNullSupported = true;
     }
 
     /**
@@ -97,6 +115,43 @@ final class JdbcDataSet extends AbstractDataSet {
         _statement = null;
         _resultSet = resultSet;
         _closed = false;
+        _columnReaders = createColumnReaders(null);
+        _wasNullSupported = true;
+    }
+
+    /**
+     * Makes the DataSet measure the size of the first rows it reads, and
+     * report it to a {@link FetchSizeCalculator}. The fetch size of the
+     * resultset is then adjusted to the measured size.
+     * 
+     * @param fetchSizeCalculator
+     * @param query
+     */
+    void setAdaptiveFetchSize(FetchSizeCalculator fetchSizeCalculator, Query query) {
+        _fetchSizeCalculator = fetchSizeCalculator;
+        _fetchSizeQuery = query;
+    }
+
+    /**
+     * Makes the DataSet return its (prepared) statement to a
+     * {@link JdbcStatementCache} when closed, instead of closing it.
+     * 
+     * @param statementCache
+     * @param sql
+     */
+    void setStatementCache(JdbcStatementCache statementCache, String sql) {
+        _statementCache = statementCache;
+        _statementSql = sql;
+    }
+
+    private JdbcColumnReader[] createColumnReaders(JdbcDataContext jdbcDataContext) {
+        final IQueryRewriter queryRewriter;
+        if (jdbcDataContext == null) {
+            queryRewriter = new DefaultQueryRewriter(null);
+        } else {
+            queryRewriter = jdbcDataContext.getQueryRewriter();
+        }
+        return JdbcColumnReader.createReaders(getHeader().getSelectItems(), queryRewriter);
     }
 
     /**
@@ -115,24 +170,14 @@ final class JdbcDataSet extends AbstractDataSet {
         try {
             boolean result = _resultSet.next();
             if (result) {
-                Object[] values = new Object[getHeader().size()];
+                final Object[] values = new Object[_columnReaders.length];
                 for (int i = 0; i < values.length; i++) {
-
-                    values[i] = getValue(_resultSet, i);
-
-                    try {
-                        // some drivers return boxed primitive types in stead of
-                        // nulls (such as false in stead of null for a Boolean
-                        // column)
-                        if (_resultSet.wasNull()) {
-                            values[i] = null;
-                        }
-                    } catch (Exception e) {
-                        logger.debug("Could not invoke wasNull() method on resultset, error message: {}", e
-                                .getMessage());
-                    }
+                    values[i] = readValue(i);
                 }
                 _row = new DefaultRow(getHeader(), values);
+                if (_fetchSizeCalculator != null) {
+                    sampleRow(values);
+                }
             } else {
                 _row = null;
             }
@@ -142,22 +187,101 @@ final class JdbcDataSet extends AbstractDataSet {
         }
     }
 
-    private Object getValue(ResultSet resultSet, int i) throws SQLException {
-        final SelectItem selectItem = getHeader().getSelectItem(i);
-        final int columnIndex = i + 1;
-        if (selectItem.getAggregateFunction() == null) {
-            final Column column = selectItem.getColumn();
-            if (column != null) {
-                final IQueryRewriter queryRewriter;
-                if (_jdbcDataContext == null) {
-                    queryRewriter = new DefaultQueryRewriter(null);
-                } else {
-                    queryRewriter = _jdbcDataContext.getQueryRewriter();
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isBatchNative() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RowBatch nextBatch(int maxRows) throws MetaModelException {
+        _row = null;
+        if (_closed || _endOfResultSet) {
+            return null;
+        }
+        final int columnCount = _columnReaders.length;
+        final int capacity = Math.max(0, Math.min(maxRows, DEFAULT_BATCH_SIZE));
+        final Object[][] columns = new Object[columnCount][capacity];
+        int rowCount = 0;
+        try {
+            while (rowCount < capacity) {
+                if (!_resultSet.next()) {
+                    // don't move the resultset beyond the end on the next call
+                    _endOfResultSet = true;
+                    break;
+                }
+                for (int i = 0; i < columnCount; i++) {
+                    columns[i][rowCount] = readValue(i);
                 }
-                return queryRewriter.getResultSetValue(resultSet, columnIndex, column);
+                if (_fetchSizeCalculator != null) {
+                    final Object[] values = new Object[columnCount];
+                    for (int i = 0; i < columnCount; i++) {
+                        values[i] = columns[i][rowCount];
+                    }
+                    sampleRow(values);
+                }
+                rowCount++;
+            }
+        } catch (SQLException e) {
+            throw JdbcUtils.wrapException(e, "get next records in resultset");
+        }
+        if (rowCount == 0) {
+            return null;
+        }
+        return new RowBatch(getHeader(), columns, rowCount);
+    }
+
+    private Object readValue(int columnIndex) throws SQLException {
+        final Object value = _columnReaders[columnIndex].read(_resultSet);
+        if (value != null && _wasNullSupported && wasNull()) {
+            // some drivers return boxed primitive types in stead of nulls
+            // (such as false in stead of null for a Boolean column)
+            return null;
+        }
+        return value;
+    }
+
+    private void sampleRow(Object[] values) {
+        _sampledBytes += _fetchSizeCalculator.getObservedRowSize(values);
+        _sampledRows++;
+        if (_sampledRows == ROWS_TO_SAMPLE) {
+            reportRowSize(true);
+        }
+    }
+
+    private void reportRowSize(boolean adjustFetchSize) {
+        final FetchSizeCalculator fetchSizeCalculator = _fetchSizeCalculator;
+        _fetchSizeCalculator = null;
+        if (_sampledRows == 0) {
+            return;
+        }
+        final int bytesPerRow = (int) Math.min(Integer.MAX_VALUE, _sampledBytes / _sampledRows);
+        fetchSizeCalculator.observeRowSize(_fetchSizeQuery, bytesPerRow);
+        if (adjustFetchSize) {
+            final int fetchSize = fetchSizeCalculator.getFetchSize(_fetchSizeQuery);
+            logger.debug("Observed row size of {} bytes, adjusting fetch_size={}", bytesPerRow, fetchSize);
+            try {
+                _resultSet.setFetchSize(fetchSize);
+            } catch (Exception e) {
+                logger.debug("Could not adjust fetch size on ResultSet: {}", e.getMessage());
             }
         }
-        return resultSet.getObject(columnIndex);
+    }
+
+    private boolean wasNull() {
+        try {
+            return _resultSet.wasNull();
+        } catch (Exception e) {
+            logger.debug("Could not invoke wasNull() method on resultset, error message: {}", e.getMessage());
+            // don't try again for every value of the resultset
+            _wasNullSupported = false;
+            return false;
+        }
     }
 
     /**
@@ -169,10 +293,18 @@ final class JdbcDataSet extends AbstractDataSet {
             return;
         }
 
+        if (_fetchSizeCalculator != null) {
+            reportRowSize(false);
+        }
+
         FileHelper.safeClose(_resultSet);
 
         if (_jdbcDataContext != null) {
-            FileHelper.safeClose(_statement);
+            if (_statementCache == null) {
+                FileHelper.safeClose(_statement);
+            } else {
+                _statementCache.release(_statementSql, (PreparedStatement) _statement);
+            }
             _jdbcDataContext.close(_connection);
         }
         if (_compiledQuery != null) {
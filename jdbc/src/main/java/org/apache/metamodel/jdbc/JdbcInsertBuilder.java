@@ -20,7 +20,9 @@ package org.apache.metamodel.jdbc;
 
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import org.apache.metamodel.insert.AbstractRowInsertionBuilder;
 import org.apache.metamodel.insert.RowInsertionBuilder;
@@ -65,29 +67,34 @@ final class JdbcInsertBuilder extends AbstractRowInsertionBuilder<JdbcUpdateCall
 			logger.debug("Insert statement created: {}", sql);
 		}
 		final JdbcUpdateCallback updateCallback = getUpdateCallback();
-		final boolean reuseStatement = !_inlineValues;
-		final PreparedStatement st = updateCallback.getPreparedStatement(sql, reuseStatement);
-		try {
-			if (reuseStatement) {
-				Column[] columns = getColumns();
-				Object[] values = getValues();
-				boolean[] explicitNulls = getExplicitNulls();
-				int valueCounter = 1;
-				for (int i = 0; i < columns.length; i++) {
-					boolean explicitNull = explicitNulls[i];
-					if (values[i] != null || explicitNull) {
-					    _queryRewriter.setStatementParameter(st, valueCounter, columns[i], values[i]);
-						valueCounter++;
-					}
-				}
+		if (_inlineValues) {
+			final PreparedStatement st = updateCallback.getPreparedStatement(sql, false);
+			try {
+				updateCallback.executePreparedStatement(st, false);
+			} catch (SQLException e) {
+				throw JdbcUtils.wrapException(e, "execute insert statement: " + sql);
+			} finally {
+				FileHelper.safeClose(st);
 			}
-			updateCallback.executePreparedStatement(st, reuseStatement);
+			return;
+		}
+
+		final Column[] columns = getColumns();
+		final Object[] values = getValues();
+		final boolean[] explicitNulls = getExplicitNulls();
+		final List<Column> parameterColumns = new ArrayList<Column>(columns.length);
+		final List<Object> parameterValues = new ArrayList<Object>(columns.length);
+		for (int i = 0; i < columns.length; i++) {
+			if (values[i] != null || explicitNulls[i]) {
+				parameterColumns.add(columns[i]);
+				parameterValues.add(values[i]);
+			}
+		}
+		try {
+			updateCallback.executeInsert(sql, parameterColumns.toArray(new Column[parameterColumns.size()]),
+					parameterValues.toArray());
 		} catch (SQLException e) {
 			throw JdbcUtils.wrapException(e, "execute insert statement: " + sql);
-		} finally {
-			if (_inlineValues) {
-				FileHelper.safeClose(st);
-			}
 		}
 	}
 	
@@ -23,14 +23,18 @@ import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.metamodel.MetaModelException;
 import org.apache.metamodel.schema.Column;
 import org.apache.metamodel.schema.ColumnType;
 import org.apache.metamodel.schema.MutableColumn;
+import org.apache.metamodel.schema.MutableTable;
 import org.apache.metamodel.schema.MutableRelationship;
 import org.apache.metamodel.schema.Schema;
 import org.apache.metamodel.schema.Table;
@@ -40,6 +44,15 @@ import org.slf4j.LoggerFactory;
 
 /**
  * {@link MetadataLoader} for JDBC metadata loading.
+ * 
+ * By default columns, primary keys, indexes and relations are loaded lazily
+ * table by table. If the
+ * {@link JdbcDataContext#SYSTEM_PROPERTY_METADATA_BULK_LOADING} system
+ * property is set to "true", the first request for any of these items will load
+ * them for all tables of the schema at once, using a single
+ * {@link DatabaseMetaData} call with a null table name pattern. Drivers that do
+ * not support this (ie. throw an exception or return no records) are handled by
+ * falling back to loading table by table.
  */
 final class JdbcMetadataLoader implements MetadataLoader {
 
@@ -48,6 +61,7 @@ final class JdbcMetadataLoader implements MetadataLoader {
     private final JdbcDataContext _dataContext;
     private final boolean _usesCatalogsAsSchemas;
     private final String _identifierQuoteString;
+    private final boolean _bulkLoading;
 
     // these three sets contains the system identifies of whether specific items
     // have been loaded for tables/schemas. Using system identities avoid having
@@ -58,16 +72,97 @@ final class JdbcMetadataLoader implements MetadataLoader {
     private final Set<Integer> _loadedIndexes;
     private final Set<Integer> _loadedPrimaryKeys;
 
+    // metadata of different schemas is loaded under different locks, so that
+    // schemas can be loaded in parallel
+    private final ConcurrentMap<Integer, Object> _schemaLocks;
+
     public JdbcMetadataLoader(JdbcDataContext dataContext, boolean usesCatalogsAsSchemas, String identifierQuoteString) {
         _dataContext = dataContext;
         _usesCatalogsAsSchemas = usesCatalogsAsSchemas;
         _identifierQuoteString = identifierQuoteString;
+        _bulkLoading = "true".equals(System.getProperty(JdbcDataContext.SYSTEM_PROPERTY_METADATA_BULK_LOADING));
+        _schemaLocks = new ConcurrentHashMap<Integer, Object>();
         _loadedRelations = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
         _loadedColumns = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
         _loadedIndexes = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
         _loadedPrimaryKeys = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
     }
 
+    private Object getLock(Schema schema) {
+        final Integer identity = System.identityHashCode(schema);
+        Object lock = _schemaLocks.get(identity);
+        if (lock == null) {
+            lock = new Object();
+            final Object existingLock = _schemaLocks.putIfAbsent(identity, lock);
+            if (existingLock != null) {
+                lock = existingLock;
+            }
+        }
+        return lock;
+    }
+
+    /**
+     * Loads all metadata (columns, primary keys, indexes and relations) of a
+     * schema, using a single connection.
+     * 
+     * @param schema
+     * @param connection
+     */
+    public void loadAll(JdbcSchema schema, Connection connection) {
+        final MutableTable[] tables = schema.getTables();
+        for (MutableTable table : tables) {
+            if (table instanceof JdbcTable) {
+                loadColumns((JdbcTable) table, connection);
+            }
+        }
+        for (MutableTable table : tables) {
+            if (table instanceof JdbcTable) {
+                loadPrimaryKeys((JdbcTable) table, connection);
+                loadIndexes((JdbcTable) table, connection);
+            }
+        }
+        loadRelations(schema, connection);
+    }
+
+    /**
+     * Registers a schema that has been restored from a
+     * {@link JdbcMetadataSnapshot} as fully loaded, and reconnects it to this
+     * loader so that it's tables can be refreshed.
+     * 
+     * @param schema
+     */
+    public void onSnapshotRestored(JdbcSchema schema) {
+        for (MutableTable table : schema.getTables()) {
+            final int identity = System.identityHashCode(table);
+            _loadedColumns.add(identity);
+            _loadedPrimaryKeys.add(identity);
+            _loadedIndexes.add(identity);
+        }
+        _loadedRelations.add(System.identityHashCode(schema));
+        schema.setMetadataLoader(this);
+    }
+
+    /**
+     * Gets the tables of a schema that have not yet had a particular type of
+     * metadata loaded, by name.
+     */
+    private Map<String, JdbcTable> getUnloadedTables(Schema schema, Set<Integer> loadedIdentities) {
+        final Table[] tables = schema.getTables();
+        final Map<String, JdbcTable> result = new HashMap<String, JdbcTable>(tables.length * 2);
+        for (Table table : tables) {
+            if (table instanceof JdbcTable && !loadedIdentities.contains(System.identityHashCode(table))) {
+                result.put(table.getName(), (JdbcTable) table);
+            }
+        }
+        return result;
+    }
+
+    private void markLoaded(Map<String, JdbcTable> tables, Set<Integer> loadedIdentities) {
+        for (JdbcTable table : tables.values()) {
+            loadedIdentities.add(System.identityHashCode(table));
+        }
+    }
+
     @Override
     public void loadTables(JdbcSchema schema) {
         final Connection connection = _dataContext.getConnection();
@@ -168,13 +263,19 @@ final class JdbcMetadataLoader implements MetadataLoader {
         if (_loadedIndexes.contains(identity)) {
             return;
         }
-        synchronized (this) {
+        synchronized (getLock(table.getSchema())) {
             if (_loadedIndexes.contains(identity)) {
                 return;
             }
 
             try {
                 DatabaseMetaData metaData = connection.getMetaData();
+                if (_bulkLoading) {
+                    loadIndexesInBulk(table.getSchema(), metaData);
+                    if (_loadedIndexes.contains(identity)) {
+                        return;
+                    }
+                }
                 loadIndexes(table, metaData);
                 _loadedIndexes.add(identity);
             } catch (SQLException e) {
@@ -204,12 +305,18 @@ final class JdbcMetadataLoader implements MetadataLoader {
         if (_loadedPrimaryKeys.contains(identity)) {
             return;
         }
-        synchronized (this) {
+        synchronized (getLock(table.getSchema())) {
             if (_loadedPrimaryKeys.contains(identity)) {
                 return;
             }
             try {
                 DatabaseMetaData metaData = connection.getMetaData();
+                if (_bulkLoading) {
+                    loadPrimaryKeysInBulk(table.getSchema(), metaData);
+                    if (_loadedPrimaryKeys.contains(identity)) {
+                        return;
+                    }
+                }
                 loadPrimaryKeys(table, metaData);
                 _loadedPrimaryKeys.add(identity);
             } catch (SQLException e) {
@@ -285,13 +392,19 @@ final class JdbcMetadataLoader implements MetadataLoader {
         if (_loadedColumns.contains(identity)) {
             return;
         }
-        synchronized (this) {
+        synchronized (getLock(table.getSchema())) {
             if (_loadedColumns.contains(identity)) {
                 return;
             }
 
             try {
                 DatabaseMetaData metaData = connection.getMetaData();
+                if (_bulkLoading) {
+                    loadColumnsInBulk(table.getSchema(), metaData);
+                    if (_loadedColumns.contains(identity)) {
+                        return;
+                    }
+                }
                 loadColumns(table, metaData);
                 _loadedColumns.add(identity);
             } catch (Exception e) {
@@ -317,47 +430,7 @@ final class JdbcMetadataLoader implements MetadataLoader {
 
             while (rs.next()) {
                 columnNumber++;
-                final String columnName = rs.getString(4);
-                if (_identifierQuoteString == null && new StringTokenizer(columnName).countTokens() > 1) {
-                    logger.warn("column name contains whitespace: \"" + columnName + "\".");
-                }
-
-                final int jdbcType = rs.getInt(5);
-                final String nativeType = rs.getString(6);
-                final Integer columnSize = rs.getInt(7);
-
-                if (logger.isDebugEnabled()) {
-                    logger.debug("Found column: table=" + table.getName() + ",columnName=" + columnName
-                            + ",nativeType=" + nativeType + ",columnSize=" + columnSize);
-                }
-
-                ColumnType columnType = _dataContext.getQueryRewriter().getColumnType(jdbcType, nativeType, columnSize);
-                if (convertLobs) {
-                    if (columnType == ColumnType.CLOB || columnType == ColumnType.NCLOB) {
-                        columnType = JdbcDataContext.COLUMN_TYPE_CLOB_AS_STRING;
-                    } else if (columnType == ColumnType.BLOB) {
-                        columnType = JdbcDataContext.COLUMN_TYPE_BLOB_AS_BYTES;
-                    }
-                }
-
-                final int jdbcNullable = rs.getInt(11);
-                final Boolean nullable;
-                if (jdbcNullable == DatabaseMetaData.columnNullable) {
-                    nullable = true;
-                } else if (jdbcNullable == DatabaseMetaData.columnNoNulls) {
-                    nullable = false;
-                } else {
-                    nullable = null;
-                }
-
-                final String remarks = rs.getString(12);
-
-                final JdbcColumn column = new JdbcColumn(columnName, columnType, table, columnNumber, nullable);
-                column.setRemarks(remarks);
-                column.setNativeType(nativeType);
-                column.setColumnSize(columnSize);
-                column.setQuote(_identifierQuoteString);
-                table.addColumn(column);
+                table.addColumn(createColumn(rs, table, columnNumber, convertLobs));
             }
 
             final int columnsReturned = columnNumber + 1;
@@ -373,6 +446,179 @@ final class JdbcMetadataLoader implements MetadataLoader {
         }
     }
     
+    private JdbcColumn createColumn(ResultSet rs, JdbcTable table, int columnNumber, boolean convertLobs)
+            throws SQLException {
+        final String columnName = rs.getString(4);
+        if (_identifierQuoteString == null && new StringTokenizer(columnName).countTokens() > 1) {
+            logger.warn("column name contains whitespace: \"" + columnName + "\".");
+        }
+
+        final int jdbcType = rs.getInt(5);
+        final String nativeType = rs.getString(6);
+        final Integer columnSize = rs.getInt(7);
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Found column: table=" + table.getName() + ",columnName=" + columnName + ",nativeType="
+                    + nativeType + ",columnSize=" + columnSize);
+        }
+
+        ColumnType columnType = _dataContext.getQueryRewriter().getColumnType(jdbcType, nativeType, columnSize);
+        if (convertLobs) {
+            if (columnType == ColumnType.CLOB || columnType == ColumnType.NCLOB) {
+                columnType = JdbcDataContext.COLUMN_TYPE_CLOB_AS_STRING;
+            } else if (columnType == ColumnType.BLOB) {
+                columnType = JdbcDataContext.COLUMN_TYPE_BLOB_AS_BYTES;
+            }
+        }
+
+        final int jdbcNullable = rs.getInt(11);
+        final Boolean nullable;
+        if (jdbcNullable == DatabaseMetaData.columnNullable) {
+            nullable = true;
+        } else if (jdbcNullable == DatabaseMetaData.columnNoNulls) {
+            nullable = false;
+        } else {
+            nullable = null;
+        }
+
+        final String remarks = rs.getString(12);
+
+        final JdbcColumn column = new JdbcColumn(columnName, columnType, table, columnNumber, nullable);
+        column.setRemarks(remarks);
+        column.setNativeType(nativeType);
+        column.setColumnSize(columnSize);
+        column.setQuote(_identifierQuoteString);
+        return column;
+    }
+
+    /**
+     * Loads the columns of all (not yet loaded) tables of a schema using a
+     * single {@link DatabaseMetaData#getColumns(String, String, String, String)}
+     * call.
+     */
+    private void loadColumnsInBulk(Schema schema, DatabaseMetaData metaData) {
+        final Map<String, JdbcTable> tables = getUnloadedTables(schema, _loadedColumns);
+        if (tables.isEmpty()) {
+            return;
+        }
+        final boolean convertLobs = isLobConversionEnabled();
+        final Map<String, Integer> columnNumbers = new HashMap<String, Integer>();
+        int columnsReturned = 0;
+        try (ResultSet rs = metaData.getColumns(getCatalogName(schema), getJdbcSchemaName(schema), null, null)) {
+            while (rs.next()) {
+                final String tableName = rs.getString(3);
+                final JdbcTable table = tables.get(tableName);
+                if (table == null) {
+                    // a table of a type that is not included, or which is
+                    // already loaded
+                    continue;
+                }
+                final Integer previousColumnNumber = columnNumbers.get(tableName);
+                final int columnNumber = (previousColumnNumber == null ? 0 : previousColumnNumber + 1);
+                columnNumbers.put(tableName, columnNumber);
+                table.addColumn(createColumn(rs, table, columnNumber, convertLobs));
+                columnsReturned++;
+            }
+        } catch (SQLException e) {
+            logger.warn("Could not load columns of schema '{}' in bulk, loading table by table: {}",
+                    schema.getName(), e.getMessage());
+            for (String tableName : columnNumbers.keySet()) {
+                tables.get(tableName).setColumns(new Column[0]);
+            }
+            return;
+        }
+
+        if (columnsReturned == 0) {
+            logger.info("No column metadata records returned for schema '{}' in bulk, loading table by table",
+                    schema.getName());
+            return;
+        }
+        markLoaded(tables, _loadedColumns);
+        logger.debug("Returned {} column metadata records for {} tables in schema '{}'", columnsReturned,
+                tables.size(), schema.getName());
+    }
+
+    /**
+     * Loads the primary keys of all (not yet loaded) tables of a schema using a
+     * single {@link DatabaseMetaData#getPrimaryKeys(String, String, String)}
+     * call.
+     */
+    private void loadPrimaryKeysInBulk(Schema schema, DatabaseMetaData metaData) {
+        final Map<String, JdbcTable> tables = getUnloadedTables(schema, _loadedPrimaryKeys);
+        if (tables.isEmpty()) {
+            return;
+        }
+        int recordsReturned = 0;
+        try (ResultSet rs = metaData.getPrimaryKeys(getCatalogName(schema), getJdbcSchemaName(schema), null)) {
+            while (rs.next()) {
+                recordsReturned++;
+                final JdbcTable table = tables.get(rs.getString(3));
+                final String columnName = rs.getString(4);
+                if (table != null && columnName != null) {
+                    final MutableColumn column = (MutableColumn) table.getColumnByName(columnName);
+                    if (column != null) {
+                        column.setPrimaryKey(true);
+                    } else {
+                        logger.error("Primary key column \"{}\" could not be found in table: {}", columnName, table);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            logger.warn("Could not load primary keys of schema '{}' in bulk, loading table by table: {}",
+                    schema.getName(), e.getMessage());
+            return;
+        }
+
+        if (recordsReturned == 0) {
+            // some drivers return nothing when no table name is given
+            logger.debug("No primary key records returned for schema '{}' in bulk, loading table by table",
+                    schema.getName());
+            return;
+        }
+        markLoaded(tables, _loadedPrimaryKeys);
+    }
+
+    /**
+     * Loads the indexes of all (not yet loaded) tables of a schema using a
+     * single
+     * {@link DatabaseMetaData#getIndexInfo(String, String, String, boolean, boolean)}
+     * call.
+     */
+    private void loadIndexesInBulk(Schema schema, DatabaseMetaData metaData) {
+        final Map<String, JdbcTable> tables = getUnloadedTables(schema, _loadedIndexes);
+        if (tables.isEmpty()) {
+            return;
+        }
+        int recordsReturned = 0;
+        try (ResultSet rs = metaData.getIndexInfo(getCatalogName(schema), getJdbcSchemaName(schema), null, false,
+                true)) {
+            while (rs.next()) {
+                recordsReturned++;
+                final JdbcTable table = tables.get(rs.getString(3));
+                final String columnName = rs.getString(9);
+                if (table != null && columnName != null) {
+                    final MutableColumn column = (MutableColumn) table.getColumnByName(columnName);
+                    if (column != null) {
+                        column.setIndexed(true);
+                    } else {
+                        logger.error("Indexed column \"{}\" could not be found in table: {}", columnName, table);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            logger.warn("Could not load indexes of schema '{}' in bulk, loading table by table: {}",
+                    schema.getName(), e.getMessage());
+            return;
+        }
+
+        if (recordsReturned == 0) {
+            logger.debug("No index records returned for schema '{}' in bulk, loading table by table",
+                    schema.getName());
+            return;
+        }
+        markLoaded(tables, _loadedIndexes);
+    }
+
     @Override
     public void loadRelations(JdbcSchema jdbcSchema) {
         final int identity = System.identityHashCode(jdbcSchema);
@@ -393,15 +639,17 @@ final class JdbcMetadataLoader implements MetadataLoader {
         if (_loadedRelations.contains(identity)) {
             return;
         }
-        synchronized (this) {
+        synchronized (getLock(schema)) {
             if (_loadedRelations.contains(identity)) {
                 return;
             }
             try {
                 final Table[] tables = schema.getTables();
                 final DatabaseMetaData metaData = connection.getMetaData();
-                for (Table table : tables) {
-                    loadRelations(table, metaData);
+                if (!_bulkLoading || !loadRelationsInBulk(schema, metaData)) {
+                    for (Table table : tables) {
+                        loadRelations(table, metaData);
+                    }
                 }
                 _loadedRelations.add(identity);
             } catch (Exception e) {
@@ -413,19 +661,60 @@ final class JdbcMetadataLoader implements MetadataLoader {
     private void loadRelations(Table table, DatabaseMetaData metaData) {
         Schema schema = table.getSchema();
         try (ResultSet rs = metaData.getImportedKeys(getCatalogName(schema), getJdbcSchemaName(schema), table.getName())) {
-            loadRelations(rs, schema);
+            loadRelations(rs, schema, null);
         } catch (SQLException e) {
             throw JdbcUtils.wrapException(e, "retrieve imported keys for " + table.getName());
         }
     }
 
-    private void loadRelations(ResultSet rs, Schema schema) throws SQLException {
+    /**
+     * Loads the relations of all tables of a schema using a single
+     * {@link DatabaseMetaData#getImportedKeys(String, String, String)} call.
+     * 
+     * @return whether or not the relations were loaded
+     */
+    private boolean loadRelationsInBulk(Schema schema, DatabaseMetaData metaData) throws SQLException {
+        final Map<String, JdbcTable> tables = getUnloadedTables(schema, Collections.<Integer> emptySet());
+        final ResultSet rs;
+        try {
+            rs = metaData.getImportedKeys(getCatalogName(schema), getJdbcSchemaName(schema), null);
+        } catch (SQLException e) {
+            logger.warn("Could not load relations of schema '{}' in bulk, loading table by table: {}",
+                    schema.getName(), e.getMessage());
+            return false;
+        }
+        try {
+            final int recordsReturned = loadRelations(rs, schema, tables);
+            if (recordsReturned == 0) {
+                logger.debug("No imported key records returned for schema '{}' in bulk, loading table by table",
+                        schema.getName());
+                return false;
+            }
+            return true;
+        } finally {
+            rs.close();
+        }
+    }
+
+    private Table getTableByName(Schema schema, Map<String, ? extends Table> tables, String tableName) {
+        if (tables != null) {
+            final Table table = tables.get(tableName);
+            if (table != null) {
+                return table;
+            }
+        }
+        return schema.getTableByName(tableName);
+    }
+
+    private int loadRelations(ResultSet rs, Schema schema, Map<String, ? extends Table> tables) throws SQLException {
+        int recordsReturned = 0;
         while (rs.next()) {
+            recordsReturned++;
             String pkTableName = rs.getString(3);
             String pkColumnName = rs.getString(4);
 
             Column pkColumn = null;
-            Table pkTable = schema.getTableByName(pkTableName);
+            Table pkTable = getTableByName(schema, tables, pkTableName);
             if (pkTable != null) {
                 pkColumn = pkTable.getColumnByName(pkColumnName);
             }
@@ -437,7 +726,7 @@ final class JdbcMetadataLoader implements MetadataLoader {
             String fkTableName = rs.getString(7);
             String fkColumnName = rs.getString(8);
             Column fkColumn = null;
-            Table fkTable = schema.getTableByName(fkTableName);
+            Table fkTable = getTableByName(schema, tables, fkTableName);
             if (fkTable != null) {
                 fkColumn = fkTable.getColumnByName(fkColumnName);
             }
@@ -456,6 +745,7 @@ final class JdbcMetadataLoader implements MetadataLoader {
                 MutableRelationship.createRelationship(new Column[] { pkColumn }, new Column[] { fkColumn });
             }
         }
+        return recordsReturned;
     }
 
 }
@@ -0,0 +1,277 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.metamodel.MetaModelException;
+import org.apache.metamodel.schema.Schema;
+import org.apache.metamodel.schema.Table;
+import org.apache.metamodel.util.FileHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores fully loaded {@link JdbcSchema}s on disk, so that the metadata of
+ * large schemas does not have to be loaded from the database again on every
+ * cold start.
+ *
+ * A snapshot is considered stale, and is ignored, if it is older than the
+ * maximum age or if the tables of the schema in the database differ from the
+ * tables of the snapshot. Changes to the columns of existing tables are only
+ * detected through the maximum age, or by calling
+ * {@link JdbcDataContext#refreshSchemas()}.
+ *
+ * Since the snapshot directory may be writable by others, only schema,
+ * table and column types (and the JDK types they consist of) are deserialized
+ * from a snapshot.
+ *
+ * @see JdbcDataContext#SYSTEM_PROPERTY_METADATA_SNAPSHOT_DIRECTORY
+ * @see JdbcDataContext#SYSTEM_PROPERTY_METADATA_SNAPSHOT_MAX_AGE_MILLIS
+ */
+final class JdbcMetadataSnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(JdbcMetadataSnapshot.class);
+
+    private static final int FORMAT_VERSION = 1;
+    private static final Charset CHARSET = Charset.forName(FileHelper.UTF_8_ENCODING);
+    private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+
+    private final File _directory;
+    private final long _maxAgeMillis;
+    private final Set<String> _keys;
+
+    public JdbcMetadataSnapshot(File directory, long maxAgeMillis) {
+        _directory = directory;
+        _maxAgeMillis = maxAgeMillis;
+        _keys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    }
+
+    /**
+     * Creates a key which identifies a snapshot, based on the parts that make
+     * the metadata unique (database URL, user, schema name etc.).
+     *
+     * @param parts
+     * @return
+     */
+    public static String createKey(Object... parts) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new MetaModelException(e);
+        }
+        final byte[] bytes = digest.digest(Arrays.deepToString(parts).getBytes(CHARSET));
+        final char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_CHARS[(bytes[i] >> 4) & 0x0F];
+            chars[i * 2 + 1] = HEX_CHARS[bytes[i] & 0x0F];
+        }
+        return new String(chars);
+    }
+
+    public File getFile(String key) {
+        return new File(_directory, "metamodel-jdbc-" + key + ".snapshot");
+    }
+
+    /**
+     * Reads a snapshot of a schema, if it exists and is not stale.
+     *
+     * @param key
+     *            the key of the snapshot
+     * @param currentSchema
+     *            the schema as currently found in the database, with (at
+     *            least) it's tables loaded
+     * @return the schema of the snapshot, or null if no usable snapshot exists
+     */
+    public JdbcSchema read(String key, Schema currentSchema) {
+        _keys.add(key);
+        final File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        if (System.currentTimeMillis() - file.lastModified() > _maxAgeMillis) {
+            logger.debug("Metadata snapshot {} has expired", file);
+            return null;
+        }
+
+        final JdbcSchema schema;
+        try (ObjectInputStream in = new SnapshotObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            final int formatVersion = in.readInt();
+            if (formatVersion != FORMAT_VERSION) {
+                logger.debug("Metadata snapshot {} has unsupported format version: {}", file, formatVersion);
+                return null;
+            }
+            schema = (JdbcSchema) in.readObject();
+        } catch (Exception e) {
+            logger.warn("Could not read metadata snapshot " + file + ", ignoring it", e);
+            return null;
+        }
+
+        if (!Arrays.equals(getTableSignatures(currentSchema), getTableSignatures(schema))) {
+            logger.debug("Metadata snapshot {} is stale, the tables of schema '{}' have changed", file,
+                    currentSchema.getName());
+            return null;
+        }
+        logger.debug("Using metadata snapshot {} for schema '{}'", file, currentSchema.getName());
+        return schema;
+    }
+
+    private String[] getTableSignatures(Schema schema) {
+        final Table[] tables = schema.getTables();
+        final String[] result = new String[tables.length];
+        for (int i = 0; i < tables.length; i++) {
+            result[i] = tables[i].getName() + ":" + tables[i].getType();
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Writes a snapshot of a schema. The schema will be fully loaded before it
+     * is written.
+     *
+     * @param key
+     * @param schema
+     */
+    public void write(String key, JdbcSchema schema) {
+        _keys.add(key);
+        final File file = getFile(key);
+        final File tempFile = new File(_directory, file.getName() + ".tmp" + System.nanoTime());
+        try {
+            if (!_directory.exists() && !_directory.mkdirs()) {
+                logger.warn("Could not create metadata snapshot directory: {}", _directory);
+                return;
+            }
+            try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(
+                    tempFile)))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeObject(schema);
+            }
+            // the snapshot is written to a temporary file first, so that
+            // readers never see a partially written snapshot
+            if (file.exists() && !file.delete()) {
+                logger.warn("Could not delete previous metadata snapshot: {}", file);
+            }
+            if (!tempFile.renameTo(file)) {
+                logger.warn("Could not move metadata snapshot into place: {}", file);
+            } else {
+                logger.debug("Wrote metadata snapshot {} for schema '{}'", file, schema.getName());
+            }
+        } catch (Exception e) {
+            logger.warn("Could not write metadata snapshot " + file, e);
+        } finally {
+            if (tempFile.exists()) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Deletes the snapshots that have been read or written by this object.
+     */
+    public void clear() {
+        for (String key : _keys) {
+            final File file = getFile(key);
+            if (file.exists() && !file.delete()) {
+                logger.warn("Could not delete metadata snapshot: {}", file);
+            }
+        }
+        _keys.clear();
+    }
+
+    /**
+     * {@link ObjectInputStream} which only resolves the classes that a
+     * snapshot of a schema may consist of, and rejects everything else.
+     */
+    private static final class SnapshotObjectInputStream extends ObjectInputStream {
+
+        private static final Set<String> ALLOWED_PACKAGES = new HashSet<String>(Arrays.asList(
+                "org.apache.metamodel.schema", "java.lang", "java.util", "java.math"));
+
+        /**
+         * The schema, table and column types of this package, and the java
+         * types of the {@link org.apache.metamodel.schema.ColumnType}s which
+         * are not in an allowed package.
+         */
+        private static final Set<String> ALLOWED_CLASSES = new HashSet<String>(Arrays.asList(
+                JdbcSchema.class.getName(), JdbcTable.class.getName(), JdbcColumn.class.getName(),
+                "java.sql.Blob", "java.sql.Clob", "java.sql.Date", "java.sql.Time", "java.sql.Timestamp",
+                "java.net.InetAddress"));
+
+        public SnapshotObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (!isAllowed(desc.getName())) {
+                throw new InvalidClassException(desc.getName(), "Class is not allowed in a metadata snapshot");
+            }
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException {
+            throw new InvalidClassException("Proxy classes are not allowed in a metadata snapshot");
+        }
+
+        private static boolean isAllowed(String className) {
+            // array class names are like '[[Ljava.lang.String;' or '[I'
+            String name = className;
+            if (name.startsWith("[")) {
+                name = name.substring(name.lastIndexOf('[') + 1);
+                if (name.length() == 1) {
+                    // array of primitives
+                    return true;
+                }
+                if (!name.startsWith("L") || !name.endsWith(";")) {
+                    return false;
+                }
+                name = name.substring(1, name.length() - 1);
+            }
+
+            final int nestedIndex = name.indexOf('$');
+            final String outerClassName = (nestedIndex == -1 ? name : name.substring(0, nestedIndex));
+            if (ALLOWED_CLASSES.contains(outerClassName)) {
+                return true;
+            }
+            final int packageIndex = name.lastIndexOf('.');
+            return packageIndex != -1 && ALLOWED_PACKAGES.contains(name.substring(0, packageIndex));
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.OperatorType;
+import org.apache.metamodel.query.Query;
+import org.apache.metamodel.query.QueryParameter;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.ColumnType;
+
+/**
+ * A query where the literal operands of the WHERE clause have been replaced by
+ * {@link QueryParameter}s. Queries that only differ in these literals are
+ * turned into equal parameterized queries, which makes it possible to reuse
+ * both the rewritten SQL and the prepared statements of a query "shape".
+ *
+ * Only operands that can safely be bound as statement parameters are
+ * replaced: strings, numbers and booleans compared to columns of a matching
+ * type. Other operands (dates, IN lists, LIKE patterns etc.) remain literals
+ * in the query, since some dialects rewrite them in special ways.
+ */
+final class JdbcParameterizedQuery {
+
+    private final Query _query;
+    private final List<Object> _values;
+    private final List<Column> _columns;
+
+    /**
+     * Creates a parameterized version of a query.
+     *
+     * @param query
+     * @return
+     */
+    public static JdbcParameterizedQuery parameterize(Query query) {
+        final List<Object> values = new ArrayList<Object>();
+        final List<Column> columns = new ArrayList<Column>();
+
+        final List<FilterItem> whereItems = query.getWhereClause().getItems();
+        final List<FilterItem> parameterizedItems = new ArrayList<FilterItem>(whereItems.size());
+        for (FilterItem item : whereItems) {
+            parameterizedItems.add(parameterize(item, values, columns));
+        }
+
+        if (values.isEmpty()) {
+            return new JdbcParameterizedQuery(query, values, columns);
+        }
+
+        final Query parameterizedQuery = query.clone();
+        parameterizedQuery.getWhereClause().removeItems();
+        parameterizedQuery.getWhereClause().addItems(parameterizedItems);
+        return new JdbcParameterizedQuery(parameterizedQuery, values, columns);
+    }
+
+    private static FilterItem parameterize(FilterItem item, List<Object> values, List<Column> columns) {
+        if (item.isCompoundFilter()) {
+            final FilterItem[] childItems = item.getChildItems();
+            final FilterItem[] parameterizedChildItems = new FilterItem[childItems.length];
+            boolean changed = false;
+            for (int i = 0; i < childItems.length; i++) {
+                parameterizedChildItems[i] = parameterize(childItems[i], values, columns);
+                changed = changed || parameterizedChildItems[i] != childItems[i];
+            }
+            if (!changed) {
+                return item;
+            }
+            return new FilterItem(item.getLogicalOperator(), parameterizedChildItems);
+        }
+
+        final SelectItem selectItem = item.getSelectItem();
+        if (selectItem == null || selectItem.getAggregateFunction() != null
+                || selectItem.getScalarFunction() != null) {
+            return item;
+        }
+        final Column column = selectItem.getColumn();
+        if (column == null || !isParameterizable(item.getOperator(), column.getType(), item.getOperand())) {
+            return item;
+        }
+
+        values.add(item.getOperand());
+        columns.add(column);
+        return new FilterItem(selectItem, item.getOperator(), new AutoQueryParameter());
+    }
+
+    private static boolean isParameterizable(OperatorType operator, ColumnType type, Object operand) {
+        if (operand == null || type == null) {
+            return false;
+        }
+        if (operator != OperatorType.EQUALS_TO && operator != OperatorType.DIFFERENT_FROM
+                && operator != OperatorType.GREATER_THAN && operator != OperatorType.GREATER_THAN_OR_EQUAL
+                && operator != OperatorType.LESS_THAN && operator != OperatorType.LESS_THAN_OR_EQUAL) {
+            return false;
+        }
+        if (operand instanceof String) {
+            return type.isLiteral();
+        }
+        if (operand instanceof Number) {
+            return type.isNumber();
+        }
+        if (operand instanceof Boolean) {
+            return type.isBoolean();
+        }
+        return false;
+    }
+
+    private JdbcParameterizedQuery(Query query, List<Object> values, List<Column> columns) {
+        _query = query;
+        _values = values;
+        _columns = columns;
+    }
+
+    /**
+     * Gets the parameterized query. If no operands were replaced, this is the
+     * original query.
+     *
+     * @return
+     */
+    public Query getQuery() {
+        return _query;
+    }
+
+    /**
+     * Gets the values of the parameters, in the order of the parameters.
+     *
+     * @return
+     */
+    public Object[] getValues() {
+        return _values.toArray();
+    }
+
+    /**
+     * Gets the columns that the parameters are compared to, in the order of
+     * the parameters.
+     *
+     * @return
+     */
+    public Column[] getColumns() {
+        return _columns.toArray(new Column[_columns.size()]);
+    }
+
+    /**
+     * {@link QueryParameter} which is equal to any other automatically created
+     * parameter, which makes queries of the same shape equal.
+     */
+    private static final class AutoQueryParameter extends QueryParameter {
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof AutoQueryParameter;
+        }
+
+        @Override
+        public int hashCode() {
+            return AutoQueryParameter.class.hashCode();
+        }
+    }
+}
@@ -38,6 +38,10 @@ final class JdbcSchema extends MutableSchema {
         _metadataLoader = metadataLoader;
     }
 
+    void setMetadataLoader(MetadataLoader metadataLoader) {
+        _metadataLoader = metadataLoader;
+    }
+
     protected void refreshTables(Connection connection) {
         if (_metadataLoader != null) {
             _metadataLoader.loadTables(this, connection);
@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+import org.apache.metamodel.util.FileHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded cache of idle {@link PreparedStatement}s of a single
+ * {@link Connection}, keyed by their SQL. A statement is removed from the
+ * cache while it is in use, so that a statement is never used by two
+ * {@link ResultSet}s at the same time. When the cache is full, the least
+ * recently used statement is closed.
+ */
+final class JdbcStatementCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(JdbcStatementCache.class);
+
+    private final Connection _connection;
+    private final int _maxSize;
+    private final LinkedHashMap<String, PreparedStatement> _statements;
+    private int _hits;
+    private int _misses;
+
+    public JdbcStatementCache(Connection connection, int maxSize) {
+        _connection = connection;
+        _maxSize = maxSize;
+        _statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true);
+    }
+
+    /**
+     * Takes a statement for the SQL out of the cache, or prepares a new one if
+     * none is available.
+     *
+     * @param sql
+     * @return
+     * @throws SQLException
+     */
+    public PreparedStatement borrow(String sql) throws SQLException {
+        synchronized (this) {
+            final PreparedStatement statement = _statements.remove(sql);
+            if (statement != null) {
+                _hits++;
+                return statement;
+            }
+            _misses++;
+        }
+        logger.debug("Preparing statement for cache: {}", sql);
+        return _connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    }
+
+    /**
+     * Returns a statement to the cache, once its {@link ResultSet} has been
+     * closed.
+     *
+     * @param sql
+     * @param statement
+     */
+    public void release(String sql, PreparedStatement statement) {
+        try {
+            statement.clearParameters();
+            statement.setMaxRows(0);
+        } catch (SQLException e) {
+            logger.debug("Could not reset cached statement, closing it", e);
+            FileHelper.safeClose(statement);
+            return;
+        }
+
+        final PreparedStatement evicted;
+        synchronized (this) {
+            final PreparedStatement existing = _statements.put(sql, statement);
+            if (existing != null) {
+                // a statement with the same SQL was released while this one
+                // was in use
+                evicted = existing;
+            } else if (_statements.size() > _maxSize) {
+                final Iterator<Entry<String, PreparedStatement>> it = _statements.entrySet().iterator();
+                evicted = it.next().getValue();
+                it.remove();
+            } else {
+                evicted = null;
+            }
+        }
+        if (evicted != null) {
+            FileHelper.safeClose(evicted);
+        }
+    }
+
+    /**
+     * Closes all idle statements of the cache.
+     */
+    public void clear() {
+        final PreparedStatement[] statements;
+        synchronized (this) {
+            statements = _statements.values().toArray(new PreparedStatement[_statements.size()]);
+            _statements.clear();
+        }
+        for (PreparedStatement statement : statements) {
+            FileHelper.safeClose(statement);
+        }
+    }
+
+    public synchronized int getSize() {
+        return _statements.size();
+    }
+
+    public synchronized int getHits() {
+        return _hits;
+    }
+
+    public synchronized int getMisses() {
+        return _misses;
+    }
+}
@@ -21,20 +21,35 @@ package org.apache.metamodel.jdbc;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
 
 import org.apache.metamodel.AbstractUpdateCallback;
 import org.apache.metamodel.UpdateCallback;
 import org.apache.metamodel.create.TableCreationBuilder;
+import org.apache.metamodel.data.DataSet;
+import org.apache.metamodel.data.Row;
 import org.apache.metamodel.delete.RowDeletionBuilder;
 import org.apache.metamodel.drop.TableDropBuilder;
 import org.apache.metamodel.insert.RowInsertionBuilder;
+import org.apache.metamodel.jdbc.dialects.IQueryRewriter;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.Column;
 import org.apache.metamodel.schema.Schema;
 import org.apache.metamodel.schema.Table;
 import org.apache.metamodel.update.RowUpdationBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-abstract class JdbcUpdateCallback extends AbstractUpdateCallback implements UpdateCallback {
+/**
+ * Abstract {@link UpdateCallback} for JDBC databases. Besides the builders of
+ * {@link UpdateCallback}, this class offers bulk loading of rows, using
+ * {@link #insertAll(Table, DataSet)} or
+ * {@link #insertAll(Table, Column[], Iterable)}. To use it, cast the
+ * {@link UpdateCallback} passed to an {@link org.apache.metamodel.UpdateScript}
+ * of a {@link JdbcDataContext}.
+ */
+public abstract class JdbcUpdateCallback extends AbstractUpdateCallback implements UpdateCallback {
 
     private static final Logger logger = LoggerFactory.getLogger(JdbcUpdateCallback.class);
 
@@ -43,7 +58,7 @@ abstract class JdbcUpdateCallback extends AbstractUpdateCallback implements Upda
     private String _preparedStatementSql;
     private PreparedStatement _preparedStatement;
 
-    public JdbcUpdateCallback(JdbcDataContext dataContext) {
+    JdbcUpdateCallback(JdbcDataContext dataContext) {
         super(dataContext);
         _dataContext = dataContext;
     }
@@ -60,6 +75,158 @@ abstract class JdbcUpdateCallback extends AbstractUpdateCallback implements Upda
         }
     }
 
+    /**
+     * Executes an insert of a single row, using a parameterized INSERT
+     * statement. Subclasses may buffer the row and insert it along with other
+     * rows at a later point.
+     * 
+     * @param sql
+     *            the INSERT statement, with a parameter for each value
+     * @param columns
+     *            the columns of the parameters
+     * @param values
+     *            the values of the parameters
+     * @throws SQLException
+     */
+    public void executeInsert(String sql, Column[] columns, Object[] values) throws SQLException {
+        final PreparedStatement st = getPreparedStatement(sql, true);
+        setStatementParameters(st, 0, columns, values);
+        executePreparedStatement(st, true);
+    }
+
+    /**
+     * Inserts all rows of a {@link DataSet} into a table. The select items of
+     * the {@link DataSet} are mapped to the columns of the table by their
+     * aliases, or if no alias is set, by the names of their columns. The
+     * {@link DataSet} is not closed by this method.
+     * 
+     * Depending on the database, the rows are loaded using a bulk loading
+     * mechanism (such as PostgreSQL's COPY command) or using batches of
+     * INSERT statements, which is typically a lot faster than inserting the
+     * rows one by one.
+     * 
+     * @param table
+     *            the table to insert into
+     * @param dataSet
+     *            the rows to insert
+     * @return the number of inserted rows
+     * @throws IllegalArgumentException
+     *             if a select item does not match a column of the table
+     */
+    public long insertAll(Table table, final DataSet dataSet) throws IllegalArgumentException {
+        if (table == null || dataSet == null) {
+            throw new IllegalArgumentException("Arguments cannot be null");
+        }
+        final SelectItem[] selectItems = dataSet.getSelectItems();
+        final Column[] columns = new Column[selectItems.length];
+        for (int i = 0; i < selectItems.length; i++) {
+            final SelectItem selectItem = selectItems[i];
+            final String name;
+            if (selectItem.getAlias() != null) {
+                name = selectItem.getAlias();
+            } else if (selectItem.getColumn() != null) {
+                name = selectItem.getColumn().getName();
+            } else {
+                name = selectItem.getSuperQueryAlias(false);
+            }
+            columns[i] = table.getColumnByName(name);
+            if (columns[i] == null) {
+                throw new IllegalArgumentException("No such column in table " + table + ": " + name);
+            }
+        }
+
+        return insertAll(table, columns, new Iterable<Object[]>() {
+            @Override
+            public Iterator<Object[]> iterator() {
+                return new Iterator<Object[]>() {
+
+                    private Boolean _hasNext;
+
+                    @Override
+                    public boolean hasNext() {
+                        if (_hasNext == null) {
+                            _hasNext = dataSet.next();
+                        }
+                        return _hasNext;
+                    }
+
+                    @Override
+                    public Object[] next() {
+                        if (!hasNext()) {
+                            throw new IllegalStateException("No more rows");
+                        }
+                        _hasNext = null;
+                        final Row row = dataSet.getRow();
+                        return row.getValues();
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        });
+    }
+
+    /**
+     * Inserts rows into a table.
+     * 
+     * @param table
+     *            the table to insert into
+     * @param columns
+     *            the columns to insert values into
+     * @param rows
+     *            the rows to insert, each having a value for each of the
+     *            columns
+     * @return the number of inserted rows
+     * @throws IllegalArgumentException
+     *             if a column is not a column of the table or a row does not
+     *             have a value for each column
+     * 
+     * @see #insertAll(Table, DataSet)
+     */
+    public long insertAll(Table table, Column[] columns, Iterable<Object[]> rows) throws IllegalArgumentException {
+        if (table == null || columns == null || rows == null) {
+            throw new IllegalArgumentException("Arguments cannot be null");
+        }
+        final JdbcBulkInserter bulkInserter = new JdbcBulkInserter(this, table, columns);
+        executePendingStatements();
+        return bulkInserter.insert(rows.iterator());
+    }
+
+    /**
+     * Executes buffered statements and closes the reused prepared statement,
+     * if any, so that statements issued directly on the connection are
+     * executed in the right order.
+     */
+    private void executePendingStatements() {
+        flushBufferedStatements();
+        if (_preparedStatement != null) {
+            final PreparedStatement preparedStatement = _preparedStatement;
+            _preparedStatement = null;
+            _preparedStatementSql = null;
+            closePreparedStatement(preparedStatement);
+        }
+    }
+
+    protected final void setStatementParameters(PreparedStatement st, int parameterOffset, Column[] columns,
+            Object[] values) throws SQLException {
+        final IQueryRewriter queryRewriter = _dataContext.getQueryRewriter();
+        for (int i = 0; i < columns.length; i++) {
+            queryRewriter.setStatementParameter(st, parameterOffset + i + 1, columns[i], values[i]);
+        }
+    }
+
+    /**
+     * Executes any statements that have been buffered by the update
+     * callback. Invoked before other statements are prepared and when the
+     * update callback is closed, to preserve the order of the statements.
+     */
+    protected void flushBufferedStatements() {
+        // do nothing by default
+    }
+
     protected final Connection getConnection() {
         if (_connection == null) {
             _connection = getDataContext().getConnection();
@@ -76,6 +243,9 @@ abstract class JdbcUpdateCallback extends AbstractUpdateCallback implements Upda
 
     public final void close(boolean success) {
         if (_connection != null) {
+            if (success) {
+                flushBufferedStatements();
+            }
             if (success && _preparedStatement != null) {
                 closePreparedStatement(_preparedStatement);
             }
@@ -154,6 +324,7 @@ abstract class JdbcUpdateCallback extends AbstractUpdateCallback implements Upda
     }
 
     public final PreparedStatement getPreparedStatement(String sql, boolean reuseStatement) {
+        flushBufferedStatements();
         final PreparedStatement preparedStatement;
         if (reuseStatement) {
             if (sql.equals(_preparedStatementSql)) {
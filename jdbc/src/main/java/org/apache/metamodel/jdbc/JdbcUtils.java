@@ -135,4 +135,26 @@ public final class JdbcUtils {
         }
         return types;
     }
+
+    /**
+     * Gets the value of a numeric system property.
+     *
+     * @param property
+     *            the name of the system property
+     * @param defaultValue
+     *            the value to use if the property is not set or not a number
+     * @return the value of the system property, or the default value
+     */
+    static long getSystemPropertyValue(String property, long defaultValue) {
+        final String str = System.getProperty(property);
+        if (str == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(str);
+        } catch (NumberFormatException e) {
+            logger.debug("Failed to parse system property '{}': '{}'", property, str);
+            return defaultValue;
+        }
+    }
 }
@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.metamodel.DataContext;
+import org.apache.metamodel.data.AbstractParallelDataSet;
+import org.apache.metamodel.data.DataSet;
+import org.apache.metamodel.data.Row;
+import org.apache.metamodel.query.Query;
+import org.apache.metamodel.query.SelectItem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * DataSet for split queries, which executes a number of the queries
+ * concurrently. Each query is executed by a worker thread (and thereby on a
+ * connection of its own) and the rows are handed over to the consumer through
+ * bounded queues, so that only a limited number of rows is prefetched.
+ *
+ * The rows are either delivered in the order of the split queries, or in the
+ * order in which the workers produce them.
+ *
+ * @see org.apache.metamodel.jdbc.QuerySplitter
+ * @see org.apache.metamodel.jdbc.SplitQueriesDataSet
+ */
+final class ParallelSplitQueriesDataSet extends AbstractParallelDataSet {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelSplitQueriesDataSet.class);
+
+    private static final int BATCH_SIZE = 500;
+
+    private final DataContext _dataContext;
+    private final List<Query> _splitQueries;
+
+    public ParallelSplitQueriesDataSet(DataContext dataContext, List<Query> splitQueries, int threads,
+            boolean ordered) {
+        this(dataContext, splitQueries, threads, ordered, BATCH_SIZE);
+    }
+
+    ParallelSplitQueriesDataSet(DataContext dataContext, List<Query> splitQueries, int threads, boolean ordered,
+            int batchSize) {
+        super(getSelectItems(splitQueries), threads, ordered, batchSize);
+        if (dataContext == null || splitQueries == null) {
+            throw new IllegalArgumentException("Arguments cannot be null");
+        }
+        _dataContext = dataContext;
+        _splitQueries = new ArrayList<Query>(splitQueries);
+    }
+
+    private static List<SelectItem> getSelectItems(List<Query> splitQueries) {
+        if (splitQueries == null || splitQueries.isEmpty()) {
+            return new ArrayList<SelectItem>(0);
+        }
+        return splitQueries.get(0).getSelectClause().getItems();
+    }
+
+    @Override
+    protected int getPartitionCount() {
+        return _splitQueries.size();
+    }
+
+    @Override
+    protected DataSet openPartition(int partition) {
+        logger.debug("Executing query #{}", partition + 1);
+        return _dataContext.executeQuery(_splitQueries.get(partition));
+    }
+
+    @Override
+    public Row getRow() {
+        final Row row = super.getRow();
+        if (row == null) {
+            throw new IllegalStateException("No rows available. Either DataSet is closed or next() hasn't been called");
+        }
+        return row;
+    }
+}
@@ -0,0 +1,210 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.metamodel.MetaModelException;
+import org.apache.metamodel.util.FileHelper;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Inserts rows into a PostgreSQL table using the COPY command, streaming the
+ * rows to the server in the text format of COPY.
+ */
+final class PostgresqlCopyInserter {
+
+    private static final Logger logger = LoggerFactory.getLogger(PostgresqlCopyInserter.class);
+
+    private static final Charset CHARSET = Charset.forName(FileHelper.UTF_8_ENCODING);
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+
+    private final Connection _connection;
+    private final ObjectMapper _jsonObjectMapper;
+
+    public PostgresqlCopyInserter(Connection connection) {
+        _connection = connection;
+        _jsonObjectMapper = new ObjectMapper();
+    }
+
+    /**
+     * Determines if the COPY command can be used on a connection, ie. if it is
+     * (or wraps) a connection of the PostgreSQL driver.
+     *
+     * @param connection
+     * @return
+     */
+    public static boolean isApplicable(Connection connection) {
+        try {
+            return connection instanceof PGConnection || connection.isWrapperFor(PGConnection.class);
+        } catch (SQLException e) {
+            return false;
+        } catch (AbstractMethodError e) {
+            // old drivers or pools which do not implement JDBC 4
+            return false;
+        } catch (NoClassDefFoundError e) {
+            // the PostgreSQL driver is not on the classpath
+            return false;
+        }
+    }
+
+    private PGConnection getPGConnection() throws SQLException {
+        if (_connection instanceof PGConnection) {
+            return (PGConnection) _connection;
+        }
+        return _connection.unwrap(PGConnection.class);
+    }
+
+    /**
+     * Copies rows into a table.
+     *
+     * @param copySql
+     *            the COPY ... FROM STDIN statement
+     * @param columnCount
+     *            the number of values in each row
+     * @param rows
+     * @return the number of rows copied
+     * @throws SQLException
+     */
+    public long insert(String copySql, int columnCount, Iterator<Object[]> rows) throws SQLException {
+        logger.debug("Copying rows using: {}", copySql);
+
+        final CopyIn copyIn = getPGConnection().getCopyAPI().copyIn(copySql);
+        long rowCount = 0;
+        boolean success = false;
+        try {
+            final StringBuilder sb = new StringBuilder(CHUNK_SIZE + 1024);
+            while (rows.hasNext()) {
+                final Object[] row = rows.next();
+                if (row == null || row.length != columnCount) {
+                    throw new IllegalArgumentException("Row must have " + columnCount + " values, got: "
+                            + (row == null ? null : row.length));
+                }
+                appendRow(sb, row);
+                rowCount++;
+                if (sb.length() >= CHUNK_SIZE) {
+                    write(copyIn, sb);
+                }
+            }
+            write(copyIn, sb);
+            final long copiedRows = copyIn.endCopy();
+            success = true;
+            return copiedRows < 0 ? rowCount : copiedRows;
+        } finally {
+            if (!success && copyIn.isActive()) {
+                try {
+                    copyIn.cancelCopy();
+                } catch (SQLException e) {
+                    logger.warn("Failed to cancel COPY operation", e);
+                }
+            }
+        }
+    }
+
+    private void write(CopyIn copyIn, StringBuilder sb) throws SQLException {
+        if (sb.length() == 0) {
+            return;
+        }
+        final byte[] bytes = sb.toString().getBytes(CHARSET);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        sb.setLength(0);
+    }
+
+    /**
+     * Appends a row in the text format of the COPY command.
+     *
+     * @param sb
+     * @param row
+     */
+    void appendRow(StringBuilder sb, Object[] row) {
+        for (int i = 0; i < row.length; i++) {
+            if (i != 0) {
+                sb.append('\t');
+            }
+            final Object value = row[i];
+            if (value == null) {
+                sb.append("\\N");
+            } else {
+                appendEscaped(sb, toText(value));
+            }
+        }
+        sb.append('\n');
+    }
+
+    private String toText(Object value) {
+        if (value instanceof byte[]) {
+            final byte[] bytes = (byte[]) value;
+            final char[] chars = new char[2 + bytes.length * 2];
+            chars[0] = '\\';
+            chars[1] = 'x';
+            for (int i = 0; i < bytes.length; i++) {
+                chars[2 + i * 2] = HEX_CHARS[(bytes[i] >> 4) & 0x0F];
+                chars[3 + i * 2] = HEX_CHARS[bytes[i] & 0x0F];
+            }
+            return new String(chars);
+        }
+        if (value instanceof Date && !(value instanceof java.sql.Date || value instanceof java.sql.Time)) {
+            return new Timestamp(((Date) value).getTime()).toString();
+        }
+        if (value instanceof Map) {
+            try {
+                return _jsonObjectMapper.writeValueAsString(value);
+            } catch (JsonProcessingException e) {
+                throw new MetaModelException("Failed to serialize value as JSON: " + value, e);
+            }
+        }
+        return value.toString();
+    }
+
+    private static void appendEscaped(StringBuilder sb, String str) {
+        final int length = str.length();
+        for (int i = 0; i < length; i++) {
+            final char c = str.charAt(i);
+            switch (c) {
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            default:
+                sb.append(c);
+            }
+        }
+    }
+}
@@ -63,6 +63,8 @@ public final class QuerySplitter {
     private final DataContext _dataContext;
     private long _maxRows = DEFAULT_MAX_ROWS;
     private Long _cachedRowCount = null;
+    private int _parallelism = 1;
+    private boolean _orderedDelivery = true;
 
     public QuerySplitter(DataContext dc, Query q) {
         if (dc == null) {
@@ -326,11 +328,54 @@ public final class QuerySplitter {
         return this;
     }
 
+    /**
+     * Sets the number of split queries to execute concurrently when calling
+     * {@link #executeQueries()}. Each concurrently executed query uses a
+     * connection of its own, which requires that the {@link DataContext} is
+     * based on a {@link javax.sql.DataSource}. If it is based on a single
+     * connection, the queries are executed one after another.
+     * 
+     * @param parallelism
+     *            the number of concurrent queries, 1 (the default) for
+     *            sequential execution
+     */
+    public QuerySplitter setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be a positive number");
+        }
+        _parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Sets whether rows of concurrently executed split queries should be
+     * delivered in the order of the split queries (the default), or in the
+     * order in which they are fetched. Unordered delivery avoids that slow
+     * queries hold back rows of the other queries.
+     * 
+     * @param orderedDelivery
+     */
+    public QuerySplitter setOrderedDelivery(boolean orderedDelivery) {
+        _orderedDelivery = orderedDelivery;
+        return this;
+    }
+
     public DataSet executeQueries() {
         return executeQueries(splitQuery());
     }
 
     public DataSet executeQueries(List<Query> splitQueries) {
+        if (_parallelism > 1 && splitQueries.size() > 1 && isParallelExecutionPossible()) {
+            return new ParallelSplitQueriesDataSet(_dataContext, splitQueries, _parallelism, _orderedDelivery);
+        }
         return new SplitQueriesDataSet(_dataContext, splitQueries);
     }
+
+    private boolean isParallelExecutionPossible() {
+        if (_dataContext instanceof JdbcDataContext) {
+            // a single connection cannot be used by concurrent queries
+            return !((JdbcDataContext) _dataContext).isSingleConnection();
+        }
+        return true;
+    }
 }
\ No newline at end of file
@@ -80,6 +80,11 @@ public abstract class AbstractQueryRewriter implements IQueryRewriter {
         return true;
     }
 
+    @Override
+    public boolean isMultipleRowInsertSupported() {
+        return false;
+    }
+
     @Override
     public ColumnType getColumnType(int jdbcType, String nativeType, Integer columnSize) {
         return ColumnTypeImpl.convertColumnType(jdbcType);
@@ -159,4 +159,13 @@ public interface IQueryRewriter {
      * @return
      */
     public boolean isTransactional();
-}
\ No newline at end of file
+
+    /**
+     * Determines if the database supports inserting multiple rows with a
+     * single INSERT statement, ie. using the syntax
+     * <code>INSERT INTO table (a,b) VALUES (?,?),(?,?)</code>.
+     * 
+     * @return
+     */
+    public boolean isMultipleRowInsertSupported();
+}
@@ -45,6 +45,11 @@ public class PostgresqlQueryRewriter extends LimitOffsetQueryRewriter {
         super(dataContext);
     }
 
+    @Override
+    public boolean isMultipleRowInsertSupported() {
+        return true;
+    }
+
     @Override
     public ColumnType getColumnType(int jdbcType, String nativeType, Integer columnSize) {
         switch (nativeType) {
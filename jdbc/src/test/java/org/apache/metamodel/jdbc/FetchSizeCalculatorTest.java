@@ -20,6 +20,7 @@ package org.apache.metamodel.jdbc;
 
 import junit.framework.TestCase;
 
+import org.apache.metamodel.query.OperatorType;
 import org.apache.metamodel.query.Query;
 import org.apache.metamodel.query.SelectItem;
 import org.apache.metamodel.schema.Column;
@@ -126,4 +127,51 @@ public class FetchSizeCalculatorTest extends TestCase {
 				ColumnType.VARCHAR).setColumnSize(4000), new MutableColumn("",
 				ColumnType.VARCHAR)));
 	}
+
+	public void testAdaptiveFetchSize() throws Exception {
+		MutableTable table = new MutableTable("foo");
+		MutableColumn column = new MutableColumn("json", ColumnType.VARCHAR,
+				table, 0, true);
+		table.addColumn(column);
+		Query query = new Query().from(table).select(column);
+
+		FetchSizeCalculator calc = new FetchSizeCalculator(1024 * 1024, true);
+		assertTrue(calc.isAdaptive());
+		assertEquals(1024, calc.getFetchSize(query));
+
+		calc.observeRowSize(query, 8192);
+		assertEquals(128, calc.getFetchSize(query));
+
+		// same shape, different filter
+		Query otherQuery = query.clone().where(column, OperatorType.EQUALS_TO,
+				"bar");
+		assertEquals(128, calc.getFetchSize(otherQuery));
+
+		calc.observeRowSize(otherQuery, 4096);
+		assertEquals(170, calc.getFetchSize(query));
+
+		// the observed size is not used for other shapes
+		assertEquals(1024,
+				calc.getFetchSize(new Query().from(table).select(column)
+						.groupBy(column)));
+	}
+
+	public void testObserveRowSizeWhenNotAdaptive() throws Exception {
+		MutableTable table = new MutableTable("foo");
+		MutableColumn column = new MutableColumn("json", ColumnType.VARCHAR,
+				table, 0, true);
+		table.addColumn(column);
+		Query query = new Query().from(table).select(column);
+
+		FetchSizeCalculator calc = new FetchSizeCalculator(1024 * 1024);
+		assertFalse(calc.isAdaptive());
+		calc.observeRowSize(query, 8192);
+		assertEquals(1024, calc.getFetchSize(query));
+	}
+
+	public void testGetObservedRowSize() throws Exception {
+		FetchSizeCalculator calc = new FetchSizeCalculator(0);
+		assertEquals(1 + 6 + 3 + 16 + 2 + 30, calc.getObservedRowSize(new Object[] {
+				null, "foo", new byte[3], 42, true, new java.util.Date() }));
+	}
 }
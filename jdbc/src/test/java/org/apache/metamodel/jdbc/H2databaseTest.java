@@ -22,10 +22,12 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
+import org.apache.metamodel.BatchUpdateScript;
 import org.apache.metamodel.UpdateCallback;
 import org.apache.metamodel.UpdateScript;
 import org.apache.metamodel.create.CreateTable;
@@ -129,6 +131,135 @@ public class H2databaseTest extends TestCase {
         assertNull(schema.getTableByName("test_table"));
     }
 
+    public void testBatchInsertWithMultipleRowsPerStatement() throws Exception {
+        System.setProperty(JdbcDataContext.SYSTEM_PROPERTY_INSERT_ROWS_PER_STATEMENT, "3");
+        System.setProperty(JdbcDataContext.SYSTEM_PROPERTY_BATCH_MAX_ROWS, "5");
+        try {
+            final JdbcDataContext dc = new JdbcDataContext(conn);
+            final Schema schema = dc.getDefaultSchema();
+            dc.executeUpdate(new CreateTable(schema, "test_table").withColumn("id").ofType(ColumnType.INTEGER)
+                    .withColumn("name").ofType(ColumnType.VARCHAR));
+            final Table table = schema.getTableByName("test_table");
+
+            dc.executeUpdate(new BatchUpdateScript() {
+                @Override
+                public void run(UpdateCallback callback) {
+                    for (int i = 0; i < 20; i++) {
+                        callback.insertInto(table).value("id", i).value("name", "name" + i).execute();
+                    }
+                    // rows with a different set of columns
+                    callback.insertInto(table).value("id", 20).execute();
+                    callback.insertInto(table).value("id", 21).value("name", null).execute();
+
+                    // buffered rows must be inserted before updating
+                    callback.update(table).value("name", "updated").where("id").lessThan(2).execute();
+                    callback.insertInto(table).value("id", 22).value("name", "name22").execute();
+                }
+            });
+
+            final DataSet ds = dc.query().from(table).select("id", "name").orderBy("id").execute();
+            final List<Object[]> rows = ds.toObjectArrays();
+            assertEquals(23, rows.size());
+            assertEquals("[0, updated]", Arrays.toString(rows.get(0)));
+            assertEquals("[1, updated]", Arrays.toString(rows.get(1)));
+            assertEquals("[2, name2]", Arrays.toString(rows.get(2)));
+            assertEquals("[19, name19]", Arrays.toString(rows.get(19)));
+            assertEquals("[20, null]", Arrays.toString(rows.get(20)));
+            assertEquals("[21, null]", Arrays.toString(rows.get(21)));
+            assertEquals("[22, name22]", Arrays.toString(rows.get(22)));
+        } finally {
+            System.clearProperty(JdbcDataContext.SYSTEM_PROPERTY_INSERT_ROWS_PER_STATEMENT);
+            System.clearProperty(JdbcDataContext.SYSTEM_PROPERTY_BATCH_MAX_ROWS);
+        }
+    }
+
+    public void testInsertAll() throws Exception {
+        System.setProperty(JdbcDataContext.SYSTEM_PROPERTY_INSERT_ROWS_PER_STATEMENT, "7");
+        System.setProperty(JdbcDataContext.SYSTEM_PROPERTY_BATCH_MAX_ROWS, "20");
+        try {
+            final JdbcDataContext dc = new JdbcDataContext(conn);
+            final Schema schema = dc.getDefaultSchema();
+            dc.executeUpdate(new CreateTable(schema, "test_table").withColumn("id").ofType(ColumnType.INTEGER)
+                    .withColumn("name").ofType(ColumnType.VARCHAR));
+            final Table table = schema.getTableByName("test_table");
+
+            final List<Object[]> rows = new ArrayList<Object[]>();
+            for (int i = 0; i < 100; i++) {
+                rows.add(new Object[] { i, (i % 10 == 0 ? null : "name" + i) });
+            }
+
+            final MutableRef<Long> insertedRows = new MutableRef<Long>();
+            dc.executeUpdate(new BatchUpdateScript() {
+                @Override
+                public void run(UpdateCallback callback) {
+                    callback.insertInto(table).value("id", -1).value("name", "before").execute();
+                    insertedRows.set(((JdbcUpdateCallback) callback).insertAll(table, table.getColumns(), rows));
+                }
+            });
+            assertEquals(100l, insertedRows.get().longValue());
+
+            // copy the rows into another table, using a DataSet
+            dc.executeUpdate(new CreateTable(schema, "test_table2").withColumn("id").ofType(ColumnType.INTEGER)
+                    .withColumn("name").ofType(ColumnType.VARCHAR).withColumn("extra").ofType(ColumnType.VARCHAR));
+            final Table table2 = schema.getTableByName("test_table2");
+            dc.executeUpdate(new UpdateScript() {
+                @Override
+                public void run(UpdateCallback callback) {
+                    final DataSet ds = dc.query().from(table).select("id", "name").where("id").greaterThanOrEquals(0)
+                            .execute();
+                    try {
+                        insertedRows.set(((JdbcUpdateCallback) callback).insertAll(table2, ds));
+                    } finally {
+                        ds.close();
+                    }
+                }
+            });
+            assertEquals(100l, insertedRows.get().longValue());
+
+            DataSet ds = dc.query().from(table).selectCount().execute();
+            assertTrue(ds.next());
+            assertEquals(101, ((Number) ds.getRow().getValue(0)).intValue());
+            ds.close();
+
+            ds = dc.query().from(table2).select("id", "name", "extra").orderBy("id").execute();
+            final List<Object[]> copiedRows = ds.toObjectArrays();
+            assertEquals(100, copiedRows.size());
+            assertEquals("[0, null, null]", Arrays.toString(copiedRows.get(0)));
+            assertEquals("[1, name1, null]", Arrays.toString(copiedRows.get(1)));
+            assertEquals("[99, name99, null]", Arrays.toString(copiedRows.get(99)));
+        } finally {
+            System.clearProperty(JdbcDataContext.SYSTEM_PROPERTY_INSERT_ROWS_PER_STATEMENT);
+            System.clearProperty(JdbcDataContext.SYSTEM_PROPERTY_BATCH_MAX_ROWS);
+        }
+    }
+
+    public void testInsertAllUnknownColumn() throws Exception {
+        final JdbcDataContext dc = new JdbcDataContext(conn);
+        final Schema schema = dc.getDefaultSchema();
+        dc.executeUpdate(new CreateTable(schema, "test_table").withColumn("id").ofType(ColumnType.INTEGER)
+                .withColumn("name").ofType(ColumnType.VARCHAR));
+        final Table table = schema.getTableByName("test_table");
+
+        try {
+            dc.executeUpdate(new UpdateScript() {
+                @Override
+                public void run(UpdateCallback callback) {
+                    final Query query = new Query().from(table).select(
+                            new SelectItem(table.getColumnByName("id")).setAlias("foo"));
+                    final DataSet ds = dc.executeQuery(query);
+                    try {
+                        ((JdbcUpdateCallback) callback).insertAll(table, ds);
+                    } finally {
+                        ds.close();
+                    }
+                }
+            });
+            fail("Exception expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("No such column in table " + table + ": foo", e.getMessage());
+        }
+    }
+
     public void testScenario() throws Exception {
         int rowsAffected = conn.createStatement().executeUpdate(
                 "CREATE TABLE test_table (id INTEGER AUTO_INCREMENT, name VARCHAR(255), age INTEGER)");
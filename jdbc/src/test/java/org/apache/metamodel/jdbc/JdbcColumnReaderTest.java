@@ -0,0 +1,99 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import junit.framework.TestCase;
+
+import org.apache.metamodel.jdbc.dialects.DefaultQueryRewriter;
+import org.apache.metamodel.jdbc.dialects.IQueryRewriter;
+import org.apache.metamodel.query.FunctionType;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.ColumnType;
+import org.apache.metamodel.schema.MutableColumn;
+import org.easymock.EasyMock;
+
+public class JdbcColumnReaderTest extends TestCase {
+
+    private final Column dateColumn = new MutableColumn("date", ColumnType.DATE);
+    private final Column booleanColumn = new MutableColumn("bool", ColumnType.BOOLEAN);
+    private final Column varcharColumn = new MutableColumn("name", ColumnType.VARCHAR);
+
+    private final SelectItem[] selectItems = new SelectItem[] { new SelectItem(dateColumn),
+            new SelectItem(booleanColumn), new SelectItem(varcharColumn),
+            new SelectItem(FunctionType.MAX, dateColumn) };
+
+    public void testTypeSpecificReaders() throws Exception {
+        final Date date = new Date(1000);
+        final ResultSet resultSet = EasyMock.createMock(ResultSet.class);
+        EasyMock.expect(resultSet.getDate(1)).andReturn(date);
+        EasyMock.expect(resultSet.getBoolean(2)).andReturn(true);
+        EasyMock.expect(resultSet.getObject(3)).andReturn("foo");
+        EasyMock.expect(resultSet.getObject(4)).andReturn(date);
+        EasyMock.replay(resultSet);
+
+        final JdbcColumnReader[] readers = JdbcColumnReader.createReaders(selectItems, new DefaultQueryRewriter(
+                null));
+        assertEquals(date, readers[0].read(resultSet));
+        assertEquals(true, readers[1].read(resultSet));
+        assertEquals("foo", readers[2].read(resultSet));
+        assertEquals(date, readers[3].read(resultSet));
+
+        EasyMock.verify(resultSet);
+    }
+
+    public void testFallbackToGetObject() throws Exception {
+        final ResultSet resultSet = EasyMock.createMock(ResultSet.class);
+        EasyMock.expect(resultSet.getDate(1)).andThrow(new SQLException("not supported"));
+        EasyMock.expect(resultSet.getObject(1)).andReturn("2015-01-01");
+        EasyMock.replay(resultSet);
+
+        final JdbcColumnReader[] readers = JdbcColumnReader.createReaders(selectItems, new DefaultQueryRewriter(
+                null));
+        assertEquals("2015-01-01", readers[0].read(resultSet));
+
+        EasyMock.verify(resultSet);
+    }
+
+    public void testDelegateToOverridingQueryRewriter() throws Exception {
+        final IQueryRewriter queryRewriter = new DefaultQueryRewriter(null) {
+            @Override
+            public Object getResultSetValue(ResultSet resultSet, int columnIndex, Column column)
+                    throws SQLException {
+                return column.getName() + columnIndex;
+            }
+        };
+
+        final ResultSet resultSet = EasyMock.createMock(ResultSet.class);
+        EasyMock.expect(resultSet.getObject(4)).andReturn(null);
+        EasyMock.replay(resultSet);
+
+        final JdbcColumnReader[] readers = JdbcColumnReader.createReaders(selectItems, queryRewriter);
+        assertEquals("date1", readers[0].read(resultSet));
+        assertEquals("bool2", readers[1].read(resultSet));
+        assertEquals("name3", readers[2].read(resultSet));
+        assertNull(readers[3].read(resultSet));
+
+        EasyMock.verify(resultSet);
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.metamodel.MetaModelException;
+import org.apache.metamodel.data.DataSet;
+import org.apache.metamodel.query.QueryParameter;
+
+public class JdbcCompiledQueryLeasePoolTest extends JdbcTestCase {
+
+    private JdbcDataContext createDataContext(String maxSize, String maxWait, String idleTimeout, String evictionPeriod)
+            throws Exception {
+        setProperty(JdbcDataContext.SYSTEM_PROPERTY_COMPILED_QUERY_POOL_MAX_SIZE, maxSize);
+        setProperty(JdbcDataContext.SYSTEM_PROPERTY_COMPILED_QUERY_POOL_MAX_WAIT_MILLIS, maxWait);
+        setProperty(JdbcDataContext.SYSTEM_PROPERTY_COMPILED_QUERY_POOL_MIN_EVICTABLE_IDLE_TIME_MILLIS, idleTimeout);
+        setProperty(JdbcDataContext.SYSTEM_PROPERTY_COMPILED_QUERY_POOL_TIME_BETWEEN_EVICTION_RUNS_MILLIS,
+                evictionPeriod);
+        try {
+            return new JdbcDataContext(getTestDbConnection());
+        } finally {
+            System.clearProperty(JdbcDataContext.SYSTEM_PROPERTY_COMPILED_QUERY_POOL_MAX_SIZE);
+            System.clearProperty(JdbcDataContext.SYSTEM_PROPERTY_COMPILED_QUERY_POOL_MAX_WAIT_MILLIS);
+            System.clearProperty(JdbcDataContext.SYSTEM_PROPERTY_COMPILED_QUERY_POOL_MIN_EVICTABLE_IDLE_TIME_MILLIS);
+            System.clearProperty(JdbcDataContext.SYSTEM_PROPERTY_COMPILED_QUERY_POOL_TIME_BETWEEN_EVICTION_RUNS_MILLIS);
+        }
+    }
+
+    private void setProperty(String key, String value) {
+        if (value != null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    private JdbcCompiledQuery compile(JdbcDataContext dc, String column) {
+        return (JdbcCompiledQuery) dc.query().from("CUSTOMERS").select(column).where("CUSTOMERNUMBER")
+                .eq(new QueryParameter()).compile();
+    }
+
+    public void testLeasesSharedByCompiledQueries() throws Exception {
+        final JdbcDataContext dc = createDataContext(null, null, null, null);
+        final JdbcCompiledQueryLeasePool pool = dc.getCompiledQueryLeasePool();
+
+        final JdbcCompiledQuery compiledQuery1 = compile(dc, "CUSTOMERNAME");
+        final JdbcCompiledQuery compiledQuery2 = compile(dc, "CUSTOMERNAME");
+
+        DataSet ds = dc.executeQuery(compiledQuery1, 103);
+        assertTrue(ds.next());
+        assertEquals("Atelier graphique", ds.getRow().getValue(0));
+        assertEquals(1, pool.getActiveLeases());
+        ds.close();
+        assertEquals(0, pool.getActiveLeases());
+        assertEquals(1, pool.getIdleLeases());
+
+        // the other compiled query reuses the idle lease
+        ds = dc.executeQuery(compiledQuery2, 112);
+        assertTrue(ds.next());
+        assertEquals("Signal Gift Stores", ds.getRow().getValue(0));
+        ds.close();
+        assertEquals(1, pool.getCreatedLeases());
+
+        // the lease is kept until both compiled queries are closed
+        compiledQuery1.close();
+        assertEquals(1, pool.getIdleLeases());
+        compiledQuery2.close();
+        assertEquals(0, pool.getIdleLeases());
+        assertEquals(1, pool.getDestroyedLeases());
+    }
+
+    public void testMaxSizeEvictsIdleLeasesOfOtherQueries() throws Exception {
+        final JdbcDataContext dc = createDataContext("1", "100", null, null);
+        final JdbcCompiledQueryLeasePool pool = dc.getCompiledQueryLeasePool();
+
+        final JdbcCompiledQuery compiledQuery1 = compile(dc, "CUSTOMERNAME");
+        final JdbcCompiledQuery compiledQuery2 = compile(dc, "COUNTRY");
+
+        DataSet ds = dc.executeQuery(compiledQuery1, 103);
+        ds.close();
+        assertEquals(1, compiledQuery1.getIdleLeases());
+
+        ds = dc.executeQuery(compiledQuery2, 103);
+        assertEquals(0, compiledQuery1.getIdleLeases());
+        assertEquals(1, compiledQuery2.getActiveLeases());
+
+        // all leases are in use
+        try {
+            dc.executeQuery(compiledQuery1, 103);
+            fail("Exception expected");
+        } catch (MetaModelException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(
+                    "Timeout while waiting for a lease of compiled query, all 1 leases are in use"));
+        }
+        assertEquals(1, pool.getWaitCount());
+        assertTrue(pool.getWaitTimeMillis() >= 90);
+
+        ds.close();
+        ds = dc.executeQuery(compiledQuery1, 103);
+        assertTrue(ds.next());
+        assertEquals("Atelier graphique", ds.getRow().getValue(0));
+        ds.close();
+
+        compiledQuery1.close();
+        compiledQuery2.close();
+        assertEquals(0, pool.getActiveLeases());
+        assertEquals(0, pool.getIdleLeases());
+    }
+
+    public void testEvictIdleLeases() throws Exception {
+        final JdbcDataContext dc = createDataContext(null, null, "0", "20");
+        final JdbcCompiledQueryLeasePool pool = dc.getCompiledQueryLeasePool();
+
+        final JdbcCompiledQuery compiledQuery = compile(dc, "CUSTOMERNAME");
+        dc.executeQuery(compiledQuery, 103).close();
+
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getIdleLeases() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, pool.getIdleLeases());
+        assertEquals(1, pool.getDestroyedLeases());
+
+        compiledQuery.close();
+    }
+
+    public void testEvictIdleLeasesWhileClosingCompiledQueries() throws Exception {
+        final JdbcDataContext dc = createDataContext(null, null, "600000", "600000");
+        final JdbcCompiledQueryLeasePool pool = dc.getCompiledQueryLeasePool();
+
+        // the leases are never idle for long enough, so the eviction keeps
+        // taking them out and putting them back
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final Thread evictor = new Thread() {
+            @Override
+            public void run() {
+                while (running.get()) {
+                    pool.evictIdleLeases();
+                }
+            }
+        };
+        evictor.start();
+        try {
+            for (int i = 0; i < 2000; i++) {
+                final JdbcCompiledQuery compiledQuery = compile(dc, "CUSTOMERNAME");
+                dc.executeQuery(compiledQuery, 103).close();
+                compiledQuery.close();
+            }
+        } finally {
+            running.set(false);
+            evictor.join();
+        }
+
+        assertEquals(0, pool.getIdleLeases());
+        assertEquals(0, pool.getActiveLeases());
+        assertEquals(pool.getCreatedLeases(), pool.getDestroyedLeases());
+    }
+}
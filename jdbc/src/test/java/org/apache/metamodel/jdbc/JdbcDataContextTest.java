@@ -39,10 +39,12 @@ import org.apache.commons.dbcp.BasicDataSource;
 import org.apache.metamodel.DataContext;
 import org.apache.metamodel.MetaModelException;
 import org.apache.metamodel.QueryPostprocessDataContext;
+import org.apache.metamodel.data.BatchDataSet;
 import org.apache.metamodel.data.DataSet;
 import org.apache.metamodel.data.DataSetTableModel;
 import org.apache.metamodel.data.EmptyDataSet;
 import org.apache.metamodel.data.Row;
+import org.apache.metamodel.data.RowBatch;
 import org.apache.metamodel.jdbc.dialects.DefaultQueryRewriter;
 import org.apache.metamodel.jdbc.dialects.IQueryRewriter;
 import org.apache.metamodel.query.CompiledQuery;
@@ -618,6 +620,118 @@ public class JdbcDataContextTest extends JdbcTestCase {
         assertEquals(new DataSetTableModel(data1), new DataSetTableModel(data2));
     }
 
+    public void testAdaptiveFetchSize() throws Exception {
+        final JdbcDataContext dc;
+        System.setProperty(JdbcDataContext.SYSTEM_PROPERTY_ADAPTIVE_FETCH_SIZE, "true");
+        try {
+            dc = new JdbcDataContext(getTestDbConnection());
+        } finally {
+            System.clearProperty(JdbcDataContext.SYSTEM_PROPERTY_ADAPTIVE_FETCH_SIZE);
+        }
+        assertTrue(dc.getFetchSizeCalculator().isAdaptive());
+
+        final Table table = dc.getDefaultSchema().getTableByName("CUSTOMERS");
+        final Query query = dc.query().from(table).select(table.getColumns()).toQuery();
+        final int staticFetchSize = new FetchSizeCalculator(16 * 1024 * 1024).getFetchSize(query);
+        assertEquals(staticFetchSize, dc.getFetchSizeCalculator().getFetchSize(query));
+
+        final DataSet ds = dc.executeQuery(query);
+        int count = 0;
+        while (ds.next()) {
+            count++;
+        }
+        ds.close();
+        assertEquals(122, count);
+
+        assertTrue(dc.getFetchSizeCalculator().getFetchSize(query) > staticFetchSize);
+    }
+
+    public void testReadBatches() throws Exception {
+        final JdbcDataContext dc = new JdbcDataContext(getTestDbConnection());
+        final Query query = dc.query().from("customers").select("customernumber").select(FunctionType.TO_STRING,
+                "creditlimit").orderBy("customernumber").toQuery();
+        final List<Row> rows = dc.executeQuery(query).toRows();
+        assertEquals(122, rows.size());
+
+        final DataSet ds = dc.executeQuery(query);
+        assertTrue(ds instanceof BatchDataSet);
+        assertTrue(((BatchDataSet) ds).isBatchNative());
+        final List<Row> batchRows = new ArrayList<Row>();
+        final List<Integer> batchSizes = new ArrayList<Integer>();
+        RowBatch batch;
+        while ((batch = RowBatch.read(ds, 50)) != null) {
+            batchSizes.add(batch.getRowCount());
+            for (int i = 0; i < batch.getRowCount(); i++) {
+                batchRows.add(batch.getRow(batch.getRowIndex(i)));
+            }
+        }
+        ds.close();
+        assertEquals("[50, 50, 22]", batchSizes.toString());
+        assertEquals(rows.toString(), batchRows.toString());
+    }
+
+    public void testAutoParameterizedQueries() throws Exception {
+        final JdbcDataContext dc;
+        System.setProperty(JdbcDataContext.SYSTEM_PROPERTY_AUTO_PARAMETERIZE, "true");
+        System.setProperty(JdbcDataContext.SYSTEM_PROPERTY_STATEMENT_CACHE_SIZE, "2");
+        try {
+            dc = new JdbcDataContext(getTestDbConnection());
+        } finally {
+            System.clearProperty(JdbcDataContext.SYSTEM_PROPERTY_AUTO_PARAMETERIZE);
+            System.clearProperty(JdbcDataContext.SYSTEM_PROPERTY_STATEMENT_CACHE_SIZE);
+        }
+        final JdbcStatementCache statementCache = dc.getStatementCache();
+        assertNotNull(statementCache);
+
+        final Table table = dc.getDefaultSchema().getTableByName("CUSTOMERS");
+
+        DataSet ds = dc.query().from(table).select("CUSTOMERNAME").where("CUSTOMERNUMBER").eq(103).execute();
+        assertTrue(ds.next());
+        assertEquals("Atelier graphique", ds.getRow().getValue(0));
+        assertFalse(ds.next());
+        ds.close();
+
+        ds = dc.query().from(table).select("CUSTOMERNAME").where("CUSTOMERNUMBER").eq(112).execute();
+        assertTrue(ds.next());
+        assertEquals("Signal Gift Stores", ds.getRow().getValue(0));
+        assertFalse(ds.next());
+        ds.close();
+
+        assertEquals(1, statementCache.getMisses());
+        assertEquals(1, statementCache.getHits());
+        assertEquals(1, statementCache.getSize());
+
+        // two DataSets of the same shape open at the same time
+        final DataSet ds1 = dc.query().from(table).selectCount().where("COUNTRY").eq("France").execute();
+        final DataSet ds2 = dc.query().from(table).selectCount().where("COUNTRY").eq("USA").execute();
+        assertTrue(ds1.next());
+        assertTrue(ds2.next());
+        assertEquals(12, ((Number) ds1.getRow().getValue(0)).intValue());
+        assertEquals(36, ((Number) ds2.getRow().getValue(0)).intValue());
+        ds1.close();
+        ds2.close();
+        assertEquals(3, statementCache.getMisses());
+        assertEquals(2, statementCache.getSize());
+
+        // max rows must not stick to a reused statement
+        ds = dc.query().from(table).select("CUSTOMERNAME").where("COUNTRY").ne("Foo").maxRows(5).execute();
+        assertEquals(5, ds.toObjectArrays().size());
+        ds = dc.query().from(table).select("CUSTOMERNAME").where("COUNTRY").ne("Bar").execute();
+        assertEquals(122, ds.toObjectArrays().size());
+
+        // the statement cache is bounded
+        assertEquals(2, statementCache.getSize());
+
+        // a query without literals is executed as is, so changing it
+        // afterwards must not affect the SQL that was cached for it
+        final Query query = dc.query().from(table).select("CUSTOMERNAME").toQuery();
+        assertEquals(1, dc.executeQuery(query).toRows().get(0).getValues().length);
+        query.select("CUSTOMERNUMBER");
+        assertEquals(2, dc.executeQuery(query).toRows().get(0).getValues().length);
+        query.getSelectClause().removeItem(1);
+        assertEquals(1, dc.executeQuery(query).toRows().get(0).getValues().length);
+    }
+
     public void testReleaseConnectionsInCompiledQuery() throws Exception {
         final int connectionPoolSize = 2;
         final int threadCount = 4;
@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import junit.framework.TestCase;
+
+import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.LogicalOperator;
+import org.apache.metamodel.query.OperatorType;
+import org.apache.metamodel.query.Query;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.ColumnType;
+import org.apache.metamodel.schema.MutableColumn;
+import org.apache.metamodel.schema.MutableTable;
+
+public class JdbcParameterizedQueryTest extends TestCase {
+
+    private final MutableTable table = new MutableTable("tab");
+    private final MutableColumn idColumn = new MutableColumn("id", ColumnType.INTEGER, table, 0, true);
+    private final MutableColumn nameColumn = new MutableColumn("name", ColumnType.VARCHAR, table, 1, true);
+    private final MutableColumn dateColumn = new MutableColumn("created", ColumnType.TIMESTAMP, table, 2, true);
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        table.addColumn(idColumn).addColumn(nameColumn).addColumn(dateColumn);
+    }
+
+    private Query createQuery(int id, String name) {
+        final SelectItem nameItem = new SelectItem(nameColumn);
+        return new Query().from(table).select(nameItem).where(
+                new FilterItem(LogicalOperator.OR, new FilterItem(new SelectItem(idColumn), OperatorType.EQUALS_TO,
+                        id), new FilterItem(nameItem, OperatorType.LIKE, "%foo%"))).where(
+                new FilterItem(nameItem, OperatorType.DIFFERENT_FROM, name));
+    }
+
+    public void testParameterize() throws Exception {
+        final JdbcParameterizedQuery parameterized = JdbcParameterizedQuery.parameterize(createQuery(1, "bar"));
+
+        assertEquals("SELECT tab.name FROM tab WHERE (tab.id = ? OR tab.name LIKE '%foo%') AND tab.name <> ?",
+                parameterized.getQuery().toSql());
+        assertEquals("[1, bar]", Arrays.toString(parameterized.getValues()));
+        assertEquals("[id, name]", Arrays.toString(new Object[] { parameterized.getColumns()[0].getName(),
+                parameterized.getColumns()[1].getName() }));
+    }
+
+    public void testSameShapeIsEqual() throws Exception {
+        final Query query1 = JdbcParameterizedQuery.parameterize(createQuery(1, "bar")).getQuery();
+        final Query query2 = JdbcParameterizedQuery.parameterize(createQuery(2, "baz")).getQuery();
+        assertEquals(query1, query2);
+        assertEquals(query1.hashCode(), query2.hashCode());
+    }
+
+    public void testOperandsThatAreNotParameterized() throws Exception {
+        final Query query = new Query().from(table).select(idColumn).where(idColumn, OperatorType.EQUALS_TO, "1")
+                .where(dateColumn, OperatorType.GREATER_THAN, new Date(0))
+                .where(idColumn, OperatorType.IN, new int[] { 1, 2 }).where(nameColumn, OperatorType.EQUALS_TO, null);
+
+        final JdbcParameterizedQuery parameterized = JdbcParameterizedQuery.parameterize(query);
+        assertSame(query, parameterized.getQuery());
+        assertEquals(0, parameterized.getValues().length);
+    }
+}
@@ -21,14 +21,19 @@ package org.apache.metamodel.jdbc;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.sql.Connection;
 import java.util.Arrays;
 
+import org.apache.commons.dbcp.BasicDataSource;
 import org.apache.metamodel.DataContext;
+import org.apache.metamodel.schema.Column;
 import org.apache.metamodel.schema.Schema;
 import org.apache.metamodel.schema.Table;
+import org.apache.metamodel.util.FileHelper;
 
 public class JdbcSchemaTest extends JdbcTestCase {
 
@@ -98,4 +103,137 @@ public class JdbcSchemaTest extends JdbcTestCase {
 				"[Relationship[primaryTable=PRODUCTS,primaryColumns=[PRODUCTCODE],foreignTable=ORDERFACT,foreignColumns=[PRODUCTCODE]]]",
 				Arrays.toString(schema.getRelationships()));
 	}
+
+	public void testBulkMetadataLoading() throws Exception {
+		final String expected = getMetadataDescription(new JdbcDataContext(getTestDbConnection()).getDefaultSchema());
+
+		System.setProperty(JdbcDataContext.SYSTEM_PROPERTY_METADATA_BULK_LOADING, "true");
+		try {
+			final Schema schema = new JdbcDataContext(getTestDbConnection()).getDefaultSchema();
+			assertEquals(expected, getMetadataDescription(schema));
+		} finally {
+			System.clearProperty(JdbcDataContext.SYSTEM_PROPERTY_METADATA_BULK_LOADING);
+		}
+	}
+
+	public void testPreloadSchemasInParallel() throws Exception {
+		final String expected = getMetadataDescription(new JdbcDataContext(getTestDbConnection()).getDefaultSchema());
+
+		final BasicDataSource ds = new BasicDataSource();
+		ds.setDriverClassName("org.hsqldb.jdbcDriver");
+		ds.setUrl("jdbc:hsqldb:res:metamodel");
+		ds.setMaxActive(4);
+		ds.setMaxWait(10000);
+
+		System.setProperty(JdbcDataContext.SYSTEM_PROPERTY_METADATA_BULK_LOADING, "true");
+		try {
+			final JdbcDataContext dataContext = new JdbcDataContext(ds);
+			final Schema[] schemas = dataContext.preloadSchemas();
+			assertEquals("[Schema[name=INFORMATION_SCHEMA], Schema[name=PUBLIC]]", Arrays.toString(schemas));
+
+			final Schema schema = dataContext.getDefaultSchema();
+			assertSame(schema, schemas[Arrays.asList(schemas).indexOf(schema)]);
+			assertEquals(expected, getMetadataDescription(schema));
+		} finally {
+			System.clearProperty(JdbcDataContext.SYSTEM_PROPERTY_METADATA_BULK_LOADING);
+			ds.close();
+		}
+	}
+
+	public void testMetadataSnapshot() throws Exception {
+		final File directory = new File(FileHelper.getTempDir(), "metamodel-jdbc-snapshot-test-"
+				+ System.currentTimeMillis());
+		System.setProperty(JdbcDataContext.SYSTEM_PROPERTY_METADATA_SNAPSHOT_DIRECTORY, directory.getAbsolutePath());
+		try {
+			final String expected = getMetadataDescription(new JdbcDataContext(getTestDbConnection())
+					.getDefaultSchema());
+
+			File[] files = directory.listFiles();
+			assertEquals(1, files.length);
+			final File file = files[0];
+			final long lastModified = System.currentTimeMillis() - 60000;
+			assertTrue(file.setLastModified(lastModified));
+
+			// the snapshot is used, and not rewritten
+			JdbcDataContext dataContext = new JdbcDataContext(getTestDbConnection());
+			assertEquals(expected, getMetadataDescription(dataContext.getDefaultSchema()));
+			assertEquals(lastModified / 1000, file.lastModified() / 1000);
+
+			// a stale snapshot is replaced
+			System.setProperty(JdbcDataContext.SYSTEM_PROPERTY_METADATA_SNAPSHOT_MAX_AGE_MILLIS, "1000");
+			dataContext = new JdbcDataContext(getTestDbConnection());
+			assertEquals(expected, getMetadataDescription(dataContext.getDefaultSchema()));
+			assertTrue(file.lastModified() > lastModified);
+
+			// refreshing the schemas removes the snapshot
+			dataContext.refreshSchemas();
+			assertFalse(file.exists());
+		} finally {
+			System.clearProperty(JdbcDataContext.SYSTEM_PROPERTY_METADATA_SNAPSHOT_DIRECTORY);
+			System.clearProperty(JdbcDataContext.SYSTEM_PROPERTY_METADATA_SNAPSHOT_MAX_AGE_MILLIS);
+			final File[] files = directory.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					file.delete();
+				}
+			}
+			directory.delete();
+		}
+	}
+
+	public void testMetadataSnapshotRejectsUnknownClasses() throws Exception {
+		final File directory = new File(FileHelper.getTempDir(), "metamodel-jdbc-snapshot-test-"
+				+ System.currentTimeMillis());
+		assertTrue(directory.mkdirs());
+		try {
+			final JdbcMetadataSnapshot snapshot = new JdbcMetadataSnapshot(directory, Long.MAX_VALUE);
+			final File file = snapshot.getFile("foo");
+			final ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file));
+			try {
+				out.writeInt(1);
+				out.writeObject(new UnexpectedObject());
+			} finally {
+				out.close();
+			}
+
+			final Schema currentSchema = new JdbcDataContext(getTestDbConnection()).getDefaultSchema();
+			assertNull(snapshot.read("foo", currentSchema));
+			assertFalse(UnexpectedObject.deserialized);
+		} finally {
+			final File[] files = directory.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					file.delete();
+				}
+			}
+			directory.delete();
+		}
+	}
+
+	private static class UnexpectedObject implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		static volatile boolean deserialized = false;
+
+		private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+			deserialized = true;
+			in.defaultReadObject();
+		}
+	}
+
+	private String getMetadataDescription(Schema schema) {
+		final StringBuilder sb = new StringBuilder();
+		for (Table table : schema.getTables()) {
+			sb.append(table.getName()).append(':');
+			for (Column column : table.getColumns()) {
+				sb.append(' ').append(column.getName()).append('(').append(column.getColumnNumber()).append(',')
+						.append(column.getType()).append(',').append(column.isNullable()).append(',')
+						.append(column.isPrimaryKey()).append(',').append(column.isIndexed()).append(')');
+			}
+			sb.append('\n');
+		}
+		sb.append(Arrays.toString(schema.getRelationships()));
+		return sb.toString();
+	}
 }
\ No newline at end of file
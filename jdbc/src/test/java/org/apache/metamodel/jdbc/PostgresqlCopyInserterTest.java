@@ -0,0 +1,53 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+import org.easymock.EasyMock;
+
+public class PostgresqlCopyInserterTest extends TestCase {
+
+    public void testAppendRow() throws Exception {
+        final PostgresqlCopyInserter inserter = new PostgresqlCopyInserter(null);
+        final StringBuilder sb = new StringBuilder();
+        inserter.appendRow(sb, new Object[] { 1, null, "tab\tnew\nline\rback\\slash", new byte[] { 0, 15, -1 } });
+        inserter.appendRow(sb, new Object[] { true, Collections.singletonMap("foo", "bar") });
+
+        final Timestamp timestamp = Timestamp.valueOf("2015-01-02 03:04:05.0");
+        inserter.appendRow(sb, new Object[] { new java.util.Date(timestamp.getTime()) });
+
+        assertEquals("1\t\\N\ttab\\tnew\\nline\\rback\\\\slash\t\\\\x000fff\n" + "true\t{\"foo\":\"bar\"}\n"
+                + "2015-01-02 03:04:05.0\n", sb.toString());
+    }
+
+    public void testIsApplicable() throws Exception {
+        final Connection connection = EasyMock.createMock(Connection.class);
+        EasyMock.expect(connection.isWrapperFor(org.postgresql.PGConnection.class)).andReturn(false);
+        EasyMock.replay(connection);
+
+        assertFalse(PostgresqlCopyInserter.isApplicable(connection));
+
+        EasyMock.verify(connection);
+    }
+}
@@ -19,9 +19,11 @@
 package org.apache.metamodel.jdbc;
 
 import java.sql.Connection;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import org.apache.commons.dbcp.BasicDataSource;
 import org.apache.metamodel.DataContext;
 import org.apache.metamodel.data.DataSet;
 import org.apache.metamodel.query.FromItem;
@@ -32,6 +34,7 @@ import org.apache.metamodel.query.SelectItem;
 import org.apache.metamodel.schema.Relationship;
 import org.apache.metamodel.schema.Schema;
 import org.apache.metamodel.schema.Table;
+import org.apache.metamodel.schema.TableType;
 
 public class QuerySplitterTest extends JdbcTestCase {
 
@@ -201,6 +204,162 @@ public class QuerySplitterTest extends JdbcTestCase {
 		assertEquals(2806, count);
 	}
 
+	public void testParallelExecution() throws Exception {
+		final BasicDataSource ds = new BasicDataSource();
+		ds.setDriverClassName("org.hsqldb.jdbcDriver");
+		ds.setUrl("jdbc:hsqldb:res:metamodel");
+		ds.setMaxActive(3);
+		ds.setMaxWait(10000);
+
+		try {
+			DataContext dc = new JdbcDataContext(ds, new TableType[] {
+					TableType.TABLE, TableType.VIEW }, null);
+			Table employeesTable = dc.getDefaultSchema().getTableByName(
+					"EMPLOYEES");
+			Table customersTable = dc.getDefaultSchema().getTableByName(
+					"CUSTOMERS");
+			Query q = new Query().from(employeesTable, "e").from(
+					customersTable, "c");
+			q.select(employeesTable.getColumns()[0],
+					customersTable.getColumns()[0]);
+
+			QuerySplitter qs = new QuerySplitter(dc, q).setMaxRows(300);
+			List<Query> splitQueries = qs.splitQuery();
+			assertEquals(12, splitQueries.size());
+
+			List<String> sequentialRows = getRows(qs.executeQueries(splitQueries));
+			assertEquals(2806, sequentialRows.size());
+
+			qs.setParallelism(3);
+			DataSet data = qs.executeQueries(splitQueries);
+			assertTrue(data instanceof ParallelSplitQueriesDataSet);
+			assertEquals(sequentialRows, getRows(data));
+
+			qs.setOrderedDelivery(false);
+			List<String> unorderedRows = getRows(qs.executeQueries(splitQueries));
+			assertEquals(2806, unorderedRows.size());
+			assertTrue(unorderedRows.containsAll(sequentialRows));
+
+			// closing before all rows are read should release the workers
+			data = qs.executeQueries(splitQueries);
+			assertTrue(data.next());
+			data.close();
+		} finally {
+			ds.close();
+		}
+	}
+
+	public void testParallelExecutionSlowConsumer() throws Exception {
+		final BasicDataSource ds = new BasicDataSource();
+		ds.setDriverClassName("org.hsqldb.jdbcDriver");
+		ds.setUrl("jdbc:hsqldb:res:metamodel");
+		ds.setMaxActive(3);
+		ds.setMaxWait(10000);
+
+		try {
+			DataContext dc = new JdbcDataContext(ds, new TableType[] {
+					TableType.TABLE, TableType.VIEW }, null);
+			List<Query> splitQueries = createCrossJoinSplitQueries(dc);
+			int expectedRows = getRows(dc.executeQuery(createCrossJoinQuery(dc)))
+					.size();
+
+			// one row per batch, so that the workers fill their queues
+			DataSet data = new ParallelSplitQueriesDataSet(dc, splitQueries,
+					3, true, 1);
+			assertTrue(data.next());
+
+			// the workers keep waiting for a slow consumer
+			Thread.sleep(1000);
+			assertTrue(ds.getNumActive() > 0);
+
+			int count = 1;
+			while (data.next()) {
+				count++;
+			}
+			assertEquals(expectedRows, count);
+			data.close();
+		} finally {
+			ds.close();
+		}
+	}
+
+	public void testParallelExecutionAbandoned() throws Exception {
+		final BasicDataSource ds = new BasicDataSource();
+		ds.setDriverClassName("org.hsqldb.jdbcDriver");
+		ds.setUrl("jdbc:hsqldb:res:metamodel");
+		ds.setMaxActive(3);
+		ds.setMaxWait(10000);
+
+		try {
+			DataContext dc = new JdbcDataContext(ds, new TableType[] {
+					TableType.TABLE, TableType.VIEW }, null);
+			List<Query> splitQueries = createCrossJoinSplitQueries(dc);
+
+			startReading(dc, splitQueries);
+			assertTrue(ds.getNumActive() > 0);
+
+			// the DataSet is dropped without being closed, so once it is
+			// garbage collected the workers should release their connections
+			long deadline = System.currentTimeMillis() + 10000;
+			while (ds.getNumActive() > 0
+					&& System.currentTimeMillis() < deadline) {
+				System.gc();
+				Thread.sleep(50);
+			}
+			assertEquals(0, ds.getNumActive());
+		} finally {
+			ds.close();
+		}
+	}
+
+	private void startReading(DataContext dc, List<Query> splitQueries) {
+		// one row per batch, so that the workers fill their queues
+		DataSet data = new ParallelSplitQueriesDataSet(dc, splitQueries, 3,
+				true, 1);
+		assertTrue(data.next());
+	}
+
+	private Query createCrossJoinQuery(DataContext dc) {
+		Table employeesTable = dc.getDefaultSchema().getTableByName(
+				"EMPLOYEES");
+		Table customersTable = dc.getDefaultSchema().getTableByName(
+				"CUSTOMERS");
+		Query q = new Query().from(employeesTable, "e").from(customersTable,
+				"c");
+		q.select(employeesTable.getColumns()[0],
+				customersTable.getColumns()[0]);
+		return q;
+	}
+
+	private List<Query> createCrossJoinSplitQueries(DataContext dc) {
+		return new QuerySplitter(dc, createCrossJoinQuery(dc)).setMaxRows(300)
+				.splitQuery();
+	}
+
+	public void testNoParallelExecutionOnSingleConnection() throws Exception {
+		DataContext dc = new JdbcDataContext(getTestDbConnection());
+		Table table = dc.getDefaultSchema().getTableByName("CUSTOMERS");
+		Query q = new Query().from(table).select(table.getColumns()[0]);
+
+		QuerySplitter qs = new QuerySplitter(dc, q).setMaxRows(100)
+				.setParallelism(4);
+		List<Query> splitQueries = qs.splitQuery();
+		assertTrue(splitQueries.size() > 1);
+
+		DataSet data = qs.executeQueries(splitQueries);
+		assertTrue(data instanceof SplitQueriesDataSet);
+		assertEquals(122, getRows(data).size());
+	}
+
+	private List<String> getRows(DataSet data) {
+		List<String> rows = new ArrayList<String>();
+		while (data.next()) {
+			rows.add(data.getRow().toString());
+		}
+		data.close();
+		return rows;
+	}
+
 	/**
 	 * Utility method for asserting that a query and it's splitted queries have
 	 * the same total count
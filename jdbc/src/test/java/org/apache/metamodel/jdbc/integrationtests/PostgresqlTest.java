@@ -21,6 +21,7 @@ package org.apache.metamodel.jdbc.integrationtests;
 import java.lang.reflect.Method;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -38,6 +39,7 @@ import org.apache.metamodel.data.DataSetTableModel;
 import org.apache.metamodel.insert.RowInsertionBuilder;
 import org.apache.metamodel.jdbc.JdbcDataContext;
 import org.apache.metamodel.jdbc.JdbcTestTemplates;
+import org.apache.metamodel.jdbc.JdbcUpdateCallback;
 import org.apache.metamodel.jdbc.QuerySplitter;
 import org.apache.metamodel.query.FilterItem;
 import org.apache.metamodel.query.FunctionType;
@@ -180,6 +182,57 @@ public class PostgresqlTest extends AbstractJdbIntegrationTest {
         ds.close();
     }
 
+    public void testInsertAllUsingCopy() throws Exception {
+        if (!isConfigured()) {
+            return;
+        }
+        final Connection connection = getConnection();
+
+        try {
+            connection.createStatement().execute("DROP TABLE my_copy_table");
+        } catch (Exception e) {
+            // do nothing
+        }
+
+        final JdbcDataContext dc = new JdbcDataContext(connection);
+        final Schema schema = dc.getDefaultSchema();
+
+        dc.executeUpdate(new UpdateScript() {
+            @Override
+            public void run(UpdateCallback cb) {
+                cb.createTable(schema, "my_copy_table").withColumn("id").ofType(ColumnType.INTEGER)
+                        .withColumn("name").ofType(ColumnType.VARCHAR).ofSize(20).withColumn("data")
+                        .ofType(ColumnType.BINARY).ofNativeType("bytea").execute();
+            }
+        });
+        final Table table = schema.getTableByName("my_copy_table");
+
+        final List<Object[]> rows = new ArrayList<Object[]>();
+        for (int i = 0; i < 10000; i++) {
+            rows.add(new Object[] { i, (i % 10 == 0 ? null : "name\t" + i), new byte[] { (byte) i } });
+        }
+
+        dc.executeUpdate(new UpdateScript() {
+            @Override
+            public void run(UpdateCallback callback) {
+                final long insertedRows = ((JdbcUpdateCallback) callback).insertAll(table, table.getColumns(), rows);
+                assertEquals(10000l, insertedRows);
+            }
+        });
+
+        final DataSet ds = dc.query().from(table).select("id", "name", "data").where("id").eq(11).execute();
+        assertTrue(ds.next());
+        assertEquals("name\\t11", ds.getRow().getValue(1));
+        assertEquals("[11]", Arrays.toString((byte[]) ds.getRow().getValue(2)));
+        assertFalse(ds.next());
+        ds.close();
+
+        assertEquals(10000, ((Number) dc.query().from(table).selectCount().execute().toObjectArrays().get(0)[0])
+                .intValue());
+
+        connection.createStatement().execute("DROP TABLE my_copy_table");
+    }
+
     public void testQuotedInsertSyntax() throws Exception {
         if (!isConfigured()) {
             return;
@@ -100,6 +100,11 @@ public class JsonDataContext extends QueryPostprocessDataContext implements Docu
         return dataSet;
     }
 
+    @Override
+    protected Resource getTableResource(Table table) {
+        return _resource;
+    }
+
     private DocumentSource createDocumentSource() {
         final InputStream inputStream = _resource.read();
         try {
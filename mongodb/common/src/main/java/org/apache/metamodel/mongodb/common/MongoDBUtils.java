@@ -18,8 +18,10 @@
  */
 package org.apache.metamodel.mongodb.common;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 
 import org.apache.metamodel.data.DataSetHeader;
 import org.apache.metamodel.data.DefaultRow;
@@ -90,4 +92,49 @@ public class MongoDBUtils {
         return value;
     }
 
+    /**
+     * Gets the approximate number of bytes that a value occupies when encoded
+     * as BSON. Used to limit the size of buffered writes without having to
+     * encode the documents twice.
+     * 
+     * @param value
+     *            a document, or a value of a document.
+     * @return the approximate number of bytes.
+     */
+    public static long getApproximateSize(Object value) {
+        if (value == null) {
+            return 1;
+        }
+        if (value instanceof CharSequence) {
+            return ((CharSequence) value).length() + 5;
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length + 5;
+        }
+        if (value instanceof Map) {
+            long size = 5;
+            for (Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += String.valueOf(entry.getKey()).length() + 2 + getApproximateSize(entry.getValue());
+            }
+            return size;
+        }
+        if (value instanceof DBObject) {
+            return getApproximateSize(((DBObject) value).toMap());
+        }
+        if (value instanceof Iterable) {
+            long size = 5;
+            int index = 0;
+            for (Object element : (Iterable<?>) value) {
+                // elements are keyed by their index
+                size += String.valueOf(index).length() + 2 + getApproximateSize(element);
+                index++;
+            }
+            return size;
+        }
+        if (value instanceof Object[]) {
+            return getApproximateSize(Arrays.asList((Object[]) value));
+        }
+        return 8;
+    }
+
 }
@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.mongodb.common;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.bson.Document;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+public class MongoDBUtilsTest extends TestCase {
+
+    public void testGetApproximateSizeOfSimpleValues() throws Exception {
+        assertEquals(1, MongoDBUtils.getApproximateSize(null));
+        assertEquals(8, MongoDBUtils.getApproximateSize("foo"));
+        assertEquals(8, MongoDBUtils.getApproximateSize(new StringBuilder("foo")));
+        assertEquals(9, MongoDBUtils.getApproximateSize(new byte[4]));
+        assertEquals(8, MongoDBUtils.getApproximateSize(42));
+        assertEquals(8, MongoDBUtils.getApproximateSize(true));
+    }
+
+    public void testGetApproximateSizeOfDocuments() throws Exception {
+        final Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("name", "foo");
+        map.put("age", 42);
+
+        // 5 + (4 + 2 + 8) + (3 + 2 + 8)
+        assertEquals(32, MongoDBUtils.getApproximateSize(map));
+        assertEquals(32, MongoDBUtils.getApproximateSize(new Document(map)));
+        assertEquals(32, MongoDBUtils.getApproximateSize(new BasicDBObject(map)));
+    }
+
+    public void testGetApproximateSizeOfDBObjectThatIsNotAMap() throws Exception {
+        final DBObject list = new BasicDBList();
+        list.put("0", "foo");
+
+        // 5 + (1 + 2 + 8)
+        assertEquals(16, MongoDBUtils.getApproximateSize(list));
+    }
+
+    public void testGetApproximateSizeOfArrays() throws Exception {
+        // 5 + (1 + 2 + 8) + (1 + 2 + 1)
+        assertEquals(20, MongoDBUtils.getApproximateSize(Arrays.asList("foo", null)));
+        assertEquals(20, MongoDBUtils.getApproximateSize(new Object[] { "foo", null }));
+    }
+
+    public void testGetApproximateSizeOfNestedDocuments() throws Exception {
+        final Document address = new Document("city", "Copenhagen");
+        final Document document = new Document("address", address).append("tags",
+                Arrays.asList(new Document("x", 1)));
+
+        // address: 5 + (4 + 2 + 15) = 26
+        // tags: 5 + (1 + 2 + (5 + (1 + 2 + 8))) = 24
+        // document: 5 + (7 + 2 + 26) + (4 + 2 + 24) = 70
+        assertEquals(70, MongoDBUtils.getApproximateSize(document));
+    }
+
+    public void testGetApproximateSizeGrowsWithContent() throws Exception {
+        final Document small = new Document("value", "foo");
+        final Document large = new Document("value", new String(new char[1000]));
+        assertTrue(MongoDBUtils.getApproximateSize(large) - MongoDBUtils.getApproximateSize(small) >= 997);
+    }
+}
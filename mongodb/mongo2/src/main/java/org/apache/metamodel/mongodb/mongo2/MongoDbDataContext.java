@@ -75,6 +75,10 @@ import com.mongodb.WriteConcern;
  */
 public class MongoDbDataContext extends QueryPostprocessDataContext implements UpdateableDataContext {
 
+    public static final String SYSTEM_PROPERTY_BULK_WRITE_MAX_DOCUMENTS = "metamodel.mongodb.bulkwrite.max.documents";
+    public static final String SYSTEM_PROPERTY_BULK_WRITE_MAX_BYTES = "metamodel.mongodb.bulkwrite.max.bytes";
+    public static final String SYSTEM_PROPERTY_BULK_WRITE_ORDERED = "metamodel.mongodb.bulkwrite.ordered";
+
     private static final Logger logger = LoggerFactory.getLogger(MongoDbDataSet.class);
 
     private final DB _mongoDb;
@@ -507,9 +511,17 @@ public class MongoDbDataContext extends QueryPostprocessDataContext implements U
         MongoDbUpdateCallback callback = new MongoDbUpdateCallback(this, writeConcernAdvisor);
         try {
             update.run(callback);
-        } finally {
-            callback.close();
+        } catch (RuntimeException | Error e) {
+            // the buffered writes are still written, but a failure to do so
+            // should not hide the failure of the update script
+            try {
+                callback.close();
+            } catch (RuntimeException closeException) {
+                e.addSuppressed(closeException);
+            }
+            throw e;
         }
+        callback.close();
     }
 
     /**
@@ -25,9 +25,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.mongodb.BasicDBObject;
-import com.mongodb.DBCollection;
-import com.mongodb.WriteConcern;
-import com.mongodb.WriteResult;
 
 final class MongoDbDeleteBuilder extends AbstractRowDeletionBuilder {
 
@@ -42,15 +39,11 @@ final class MongoDbDeleteBuilder extends AbstractRowDeletionBuilder {
 
     @Override
     public void execute() throws MetaModelException {
-        final DBCollection collection = _updateCallback.getCollection(getTable().getName());
-
         final MongoDbDataContext dataContext = _updateCallback.getDataContext();
         final BasicDBObject query = dataContext.createMongoDbQuery(getTable(), getWhereItems());
-        
-        WriteConcern writeConcern = _updateCallback.getWriteConcernAdvisor().adviceDeleteQuery(collection, query);
-        
-        final WriteResult writeResult = collection.remove(query, writeConcern);
-        logger.info("Remove returned result: {}", writeResult);
+
+        _updateCallback.delete(getTable().getName(), query);
+        logger.debug("Remove query has been buffered: {}", query);
     }
 
 }
@@ -27,9 +27,6 @@ import org.slf4j.LoggerFactory;
 import org.slf4j.Logger;
 
 import com.mongodb.BasicDBObject;
-import com.mongodb.DBCollection;
-import com.mongodb.WriteConcern;
-import com.mongodb.WriteResult;
 
 final class MongoDbInsertionBuilder extends AbstractRowInsertionBuilder<MongoDbUpdateCallback> implements RowInsertionBuilder {
 
@@ -53,12 +50,7 @@ final class MongoDbInsertionBuilder extends AbstractRowInsertionBuilder<MongoDbU
             }
         }
 
-        final MongoDbUpdateCallback updateCallback = getUpdateCallback();
-        final DBCollection collection = updateCallback.getCollection(getTable().getName());
-
-        final WriteConcern writeConcern = updateCallback.getWriteConcernAdvisor().adviceInsert(collection, doc);
-
-        final WriteResult writeResult = collection.insert(doc, writeConcern);
-        logger.info("Insert returned result: {}", writeResult);
+        getUpdateCallback().insert(getTable().getName(), doc);
+        logger.debug("Document has been buffered for insertion");
     }
 }
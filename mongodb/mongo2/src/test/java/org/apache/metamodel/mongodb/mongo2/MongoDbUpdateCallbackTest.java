@@ -0,0 +1,325 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.mongodb.mongo2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.metamodel.UpdateCallback;
+import org.apache.metamodel.UpdateScript;
+import org.apache.metamodel.schema.ColumnType;
+import org.apache.metamodel.schema.Table;
+import org.apache.metamodel.util.SimpleTableDef;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteRequestBuilder;
+import com.mongodb.BulkWriteResult;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+
+public class MongoDbUpdateCallbackTest extends TestCase {
+
+    private DB _mongoDb;
+    private DBCollection _collection;
+    private BulkWriteOperation _bulkWriteOperation;
+    private BulkWriteRequestBuilder _bulkWriteRequestBuilder;
+    private List<String> _pendingWrites;
+    private List<List<String>> _bulkWrites;
+    private List<WriteConcern> _writeConcerns;
+    private MongoDbDataContext _dataContext;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _mongoDb = EasyMock.createMock(DB.class);
+        _collection = EasyMock.createMock(DBCollection.class);
+        _bulkWriteOperation = EasyMock.createMock(BulkWriteOperation.class);
+        _bulkWriteRequestBuilder = EasyMock.createMock(BulkWriteRequestBuilder.class);
+        _pendingWrites = new ArrayList<String>();
+        _bulkWrites = new ArrayList<List<String>>();
+        _writeConcerns = new ArrayList<WriteConcern>();
+
+        EasyMock.expect(_mongoDb.getName()).andReturn("test").anyTimes();
+        EasyMock.expect(_mongoDb.getCollection("persons")).andReturn(_collection).anyTimes();
+
+        // record the buffered writes, and which of them each bulk write
+        // executes
+        _bulkWriteOperation.insert(EasyMock.anyObject(DBObject.class));
+        EasyMock.expectLastCall().andAnswer(new IAnswer<Object>() {
+            @Override
+            public Object answer() throws Throwable {
+                final DBObject document = (DBObject) EasyMock.getCurrentArguments()[0];
+                _pendingWrites.add("insert " + document.get("name"));
+                return null;
+            }
+        }).anyTimes();
+        EasyMock.expect(_bulkWriteOperation.find(EasyMock.anyObject(DBObject.class))).andAnswer(
+                new IAnswer<BulkWriteRequestBuilder>() {
+                    @Override
+                    public BulkWriteRequestBuilder answer() throws Throwable {
+                        final DBObject query = (DBObject) EasyMock.getCurrentArguments()[0];
+                        _pendingWrites.add("remove " + query.get("name"));
+                        return _bulkWriteRequestBuilder;
+                    }
+                }).anyTimes();
+        _bulkWriteRequestBuilder.remove();
+        EasyMock.expectLastCall().anyTimes();
+        EasyMock.expect(_bulkWriteOperation.execute(EasyMock.anyObject(WriteConcern.class))).andAnswer(
+                new IAnswer<BulkWriteResult>() {
+                    @Override
+                    public BulkWriteResult answer() throws Throwable {
+                        _writeConcerns.add((WriteConcern) EasyMock.getCurrentArguments()[0]);
+                        _bulkWrites.add(new ArrayList<String>(_pendingWrites));
+                        _pendingWrites.clear();
+                        return null;
+                    }
+                }).anyTimes();
+
+        final SimpleTableDef tableDef = new SimpleTableDef("persons", new String[] { "_id", "name" },
+                new ColumnType[] { ColumnType.ROWID, ColumnType.VARCHAR });
+        _dataContext = new MongoDbDataContext(_mongoDb, tableDef);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        System.clearProperty(MongoDbDataContext.SYSTEM_PROPERTY_BULK_WRITE_MAX_DOCUMENTS);
+        System.clearProperty(MongoDbDataContext.SYSTEM_PROPERTY_BULK_WRITE_MAX_BYTES);
+        System.clearProperty(MongoDbDataContext.SYSTEM_PROPERTY_BULK_WRITE_ORDERED);
+    }
+
+    private void replay(boolean ordered) {
+        if (ordered) {
+            EasyMock.expect(_collection.initializeOrderedBulkOperation()).andReturn(_bulkWriteOperation).anyTimes();
+        } else {
+            EasyMock.expect(_collection.initializeUnorderedBulkOperation()).andReturn(_bulkWriteOperation)
+                    .anyTimes();
+        }
+        EasyMock.replay(_mongoDb, _collection, _bulkWriteOperation, _bulkWriteRequestBuilder);
+    }
+
+    private void verify() {
+        EasyMock.verify(_mongoDb, _collection, _bulkWriteOperation, _bulkWriteRequestBuilder);
+    }
+
+    private MongoDbUpdateCallback createUpdateCallback() {
+        return new MongoDbUpdateCallback(_dataContext, new SimpleWriteConcernAdvisor(WriteConcern.ACKNOWLEDGED));
+    }
+
+    private IAnswer<Object> assertBulkWritesAnswer(final int expectedBulkWrites) {
+        return new IAnswer<Object>() {
+            @Override
+            public Object answer() throws Throwable {
+                assertEquals(expectedBulkWrites, _bulkWrites.size());
+                return null;
+            }
+        };
+    }
+
+    public void testFlushWhenMaxDocumentsReached() throws Exception {
+        System.setProperty(MongoDbDataContext.SYSTEM_PROPERTY_BULK_WRITE_MAX_DOCUMENTS, "2");
+        replay(true);
+
+        final MongoDbUpdateCallback callback = createUpdateCallback();
+        for (int i = 0; i < 5; i++) {
+            callback.insert("persons", new BasicDBObject("name", "person" + i));
+        }
+        assertEquals("[[insert person0, insert person1], [insert person2, insert person3]]",
+                _bulkWrites.toString());
+
+        callback.close();
+        assertEquals(3, _bulkWrites.size());
+        assertEquals("[insert person4]", _bulkWrites.get(2).toString());
+        assertEquals(Arrays.asList(WriteConcern.ACKNOWLEDGED, WriteConcern.ACKNOWLEDGED, WriteConcern.ACKNOWLEDGED),
+                _writeConcerns);
+
+        verify();
+    }
+
+    public void testFlushWhenMaxBytesReached() throws Exception {
+        System.setProperty(MongoDbDataContext.SYSTEM_PROPERTY_BULK_WRITE_MAX_BYTES, "100");
+        System.setProperty(MongoDbDataContext.SYSTEM_PROPERTY_BULK_WRITE_ORDERED, "false");
+        replay(false);
+
+        // each document is approximately 66 bytes
+        final String name = new String(new char[50]).replace('\0', 'x');
+        final MongoDbUpdateCallback callback = createUpdateCallback();
+        callback.insert("persons", new BasicDBObject("name", name));
+        assertEquals(0, _bulkWrites.size());
+        callback.insert("persons", new BasicDBObject("name", name));
+        assertEquals(1, _bulkWrites.size());
+        assertEquals(2, _bulkWrites.get(0).size());
+        callback.insert("persons", new BasicDBObject("name", name));
+        assertEquals(1, _bulkWrites.size());
+
+        callback.close();
+        assertEquals(2, _bulkWrites.size());
+        assertEquals(1, _bulkWrites.get(1).size());
+
+        verify();
+    }
+
+    public void testFlushWhenWriteConcernChanges() throws Exception {
+        replay(true);
+
+        final MongoDbUpdateCallback callback = new MongoDbUpdateCallback(_dataContext, new WriteConcernAdvisor() {
+            @Override
+            public WriteConcern adviceInsert(DBCollection collection, BasicDBObject document) {
+                return WriteConcern.ACKNOWLEDGED;
+            }
+
+            @Override
+            public WriteConcern adviceDeleteQuery(DBCollection collection, BasicDBObject query) {
+                return WriteConcern.UNACKNOWLEDGED;
+            }
+        });
+        callback.insert("persons", new BasicDBObject("name", "foo"));
+        callback.insert("persons", new BasicDBObject("name", "bar"));
+        assertEquals(0, _bulkWrites.size());
+
+        callback.delete("persons", new BasicDBObject("name", "foo"));
+        assertEquals("[[insert foo, insert bar]]", _bulkWrites.toString());
+
+        callback.close();
+        assertEquals("[[insert foo, insert bar], [remove foo]]", _bulkWrites.toString());
+        assertEquals(Arrays.asList(WriteConcern.ACKNOWLEDGED, WriteConcern.UNACKNOWLEDGED), _writeConcerns);
+
+        verify();
+    }
+
+    public void testFlushWhenWriteKindChangesUnordered() throws Exception {
+        System.setProperty(MongoDbDataContext.SYSTEM_PROPERTY_BULK_WRITE_ORDERED, "false");
+        replay(false);
+
+        final MongoDbUpdateCallback callback = createUpdateCallback();
+        callback.insert("persons", new BasicDBObject("name", "foo"));
+        callback.insert("persons", new BasicDBObject("name", "bar"));
+        callback.delete("persons", new BasicDBObject("name", "foo"));
+        callback.delete("persons", new BasicDBObject("name", "bar"));
+        callback.insert("persons", new BasicDBObject("name", "baz"));
+        callback.close();
+        assertEquals("[[insert foo, insert bar], [remove foo, remove bar], [insert baz]]", _bulkWrites.toString());
+
+        verify();
+    }
+
+    public void testFlushBeforeCreateCollection() throws Exception {
+        EasyMock.expect(_mongoDb.createCollection(EasyMock.eq("persons"), EasyMock.anyObject(DBObject.class)))
+                .andAnswer(new IAnswer<DBCollection>() {
+                    @Override
+                    public DBCollection answer() throws Throwable {
+                        assertEquals(1, _bulkWrites.size());
+                        return _collection;
+                    }
+                });
+        replay(true);
+
+        final MongoDbUpdateCallback callback = createUpdateCallback();
+        callback.insert("persons", new BasicDBObject("name", "foo"));
+        callback.createCollection("persons");
+        callback.insert("persons", new BasicDBObject("name", "bar"));
+        callback.close();
+        assertEquals("[[insert foo], [insert bar]]", _bulkWrites.toString());
+
+        verify();
+    }
+
+    public void testFlushBeforeDropCollection() throws Exception {
+        _collection.drop();
+        EasyMock.expectLastCall().andAnswer(assertBulkWritesAnswer(1));
+        replay(true);
+
+        final MongoDbUpdateCallback callback = createUpdateCallback();
+        callback.insert("persons", new BasicDBObject("name", "foo"));
+        callback.removeCollection("persons");
+        callback.close();
+        assertEquals("[[insert foo]]", _bulkWrites.toString());
+
+        verify();
+    }
+
+    public void testFlushOnClose() throws Exception {
+        replay(true);
+
+        _dataContext.executeUpdate(new UpdateScript() {
+            @Override
+            public void run(UpdateCallback callback) {
+                final Table table = _dataContext.getDefaultSchema().getTableByName("persons");
+                callback.insertInto(table).value("name", "foo").execute();
+                callback.deleteFrom(table).where("name").eq("bar").execute();
+                assertEquals(0, _bulkWrites.size());
+            }
+        });
+
+        assertEquals("[[insert foo, remove bar]]", _bulkWrites.toString());
+
+        verify();
+    }
+
+    public void testFailedFlushDoesNotHideScriptFailure() throws Exception {
+        final DB mongoDb = EasyMock.createMock(DB.class);
+        final DBCollection collection = EasyMock.createMock(DBCollection.class);
+        final BulkWriteOperation bulkWriteOperation = EasyMock.createMock(BulkWriteOperation.class);
+        EasyMock.expect(mongoDb.getName()).andReturn("test").anyTimes();
+        EasyMock.expect(mongoDb.getCollection("persons")).andReturn(collection).anyTimes();
+        EasyMock.expect(collection.initializeOrderedBulkOperation()).andReturn(bulkWriteOperation);
+        bulkWriteOperation.insert(EasyMock.anyObject(DBObject.class));
+        EasyMock.expect(bulkWriteOperation.execute(EasyMock.anyObject(WriteConcern.class))).andThrow(
+                new IllegalStateException("flush"));
+        EasyMock.replay(mongoDb, collection, bulkWriteOperation);
+
+        final SimpleTableDef tableDef = new SimpleTableDef("persons", new String[] { "_id", "name" },
+                new ColumnType[] { ColumnType.ROWID, ColumnType.VARCHAR });
+        final MongoDbDataContext dataContext = new MongoDbDataContext(mongoDb, tableDef);
+        try {
+            dataContext.executeUpdate(new UpdateScript() {
+                @Override
+                public void run(UpdateCallback callback) {
+                    final Table table = dataContext.getDefaultSchema().getTableByName("persons");
+                    callback.insertInto(table).value("name", "foo").execute();
+                    throw new IllegalArgumentException("script");
+                }
+            });
+            fail("Exception expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("script", e.getMessage());
+            assertEquals(1, e.getSuppressed().length);
+            assertEquals("flush", e.getSuppressed()[0].getMessage());
+        }
+
+        EasyMock.verify(mongoDb, collection, bulkWriteOperation);
+    }
+
+    public void testCloseWithoutWrites() throws Exception {
+        replay(true);
+
+        createUpdateCallback().close();
+        assertEquals(0, _bulkWrites.size());
+
+        verify();
+    }
+}
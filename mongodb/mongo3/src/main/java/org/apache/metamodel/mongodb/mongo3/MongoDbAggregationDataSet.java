@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.mongodb.mongo3;
+
+import org.apache.metamodel.data.AbstractDataSet;
+import org.apache.metamodel.data.DefaultRow;
+import org.apache.metamodel.data.Row;
+import org.apache.metamodel.query.AggregateFunction;
+import org.apache.metamodel.query.FunctionType;
+import org.apache.metamodel.query.SelectItem;
+import org.bson.Document;
+
+import com.mongodb.client.MongoCursor;
+
+/**
+ * DataSet for the result of a grouped aggregation pipeline, as created by
+ * {@link MongoDbQueryTranslator#createPipeline(org.apache.metamodel.query.Query)}
+ * . The values of the documents are converted to the types that MetaModel
+ * itself produces for the aggregate functions.
+ */
+final class MongoDbAggregationDataSet extends AbstractDataSet {
+
+    private final MongoCursor<Document> _cursor;
+    private final boolean _emitDefaultRowIfEmpty;
+
+    private boolean _closed;
+    private boolean _empty;
+    private Row _row;
+
+    /**
+     * 
+     * @param cursor
+     * @param selectItems
+     * @param emitDefaultRowIfEmpty
+     *            whether or not to emit a single row of default aggregate
+     *            values if the pipeline has no results. MongoDB does not
+     *            produce any groups for an empty collection, whereas an SQL
+     *            aggregation without a GROUP BY clause always yields a row.
+     */
+    public MongoDbAggregationDataSet(MongoCursor<Document> cursor, SelectItem[] selectItems,
+            boolean emitDefaultRowIfEmpty) {
+        super(selectItems);
+        _cursor = cursor;
+        _emitDefaultRowIfEmpty = emitDefaultRowIfEmpty;
+        _closed = false;
+        _empty = true;
+    }
+
+    @Override
+    public boolean next() {
+        if (_cursor.hasNext()) {
+            _empty = false;
+            _row = toRow(_cursor.next());
+            return true;
+        }
+        if (_empty && _emitDefaultRowIfEmpty) {
+            _empty = false;
+            _row = toRow(new Document());
+            return true;
+        }
+        _row = null;
+        return false;
+    }
+
+    private Row toRow(Document document) {
+        final Object[] values = new Object[getHeader().size()];
+        for (int i = 0; i < values.length; i++) {
+            final SelectItem selectItem = getHeader().getSelectItem(i);
+            values[i] = toValue(selectItem, document.get(MongoDbQueryTranslator.getFieldName(i)));
+        }
+        return new DefaultRow(getHeader(), values);
+    }
+
+    private static Object toValue(SelectItem selectItem, Object value) {
+        final AggregateFunction function = selectItem.getAggregateFunction();
+        if (FunctionType.COUNT.equals(function)) {
+            return (value instanceof Number ? ((Number) value).longValue() : 0L);
+        }
+        if (FunctionType.SUM.equals(function) || FunctionType.AVG.equals(function)) {
+            return (value instanceof Number ? ((Number) value).doubleValue() : 0d);
+        }
+        return value;
+    }
+
+    @Override
+    public Row getRow() {
+        return _row;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        if (!_closed) {
+            _cursor.close();
+            _closed = true;
+        }
+    }
+}
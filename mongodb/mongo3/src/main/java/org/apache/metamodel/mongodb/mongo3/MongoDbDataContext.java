@@ -41,7 +41,9 @@ import org.apache.metamodel.data.SimpleDataSetHeader;
 import org.apache.metamodel.mongodb.common.MongoDBUtils;
 import org.apache.metamodel.query.FilterItem;
 import org.apache.metamodel.query.FromItem;
+import org.apache.metamodel.query.GroupByItem;
 import org.apache.metamodel.query.OperatorType;
+import org.apache.metamodel.query.OrderByItem;
 import org.apache.metamodel.query.Query;
 import org.apache.metamodel.query.SelectItem;
 import org.apache.metamodel.schema.Column;
@@ -76,6 +78,10 @@ import com.mongodb.client.MongoIterable;
  */
 public class MongoDbDataContext extends QueryPostprocessDataContext implements UpdateableDataContext {
 
+    public static final String SYSTEM_PROPERTY_BULK_WRITE_MAX_DOCUMENTS = "metamodel.mongodb.bulkwrite.max.documents";
+    public static final String SYSTEM_PROPERTY_BULK_WRITE_MAX_BYTES = "metamodel.mongodb.bulkwrite.max.bytes";
+    public static final String SYSTEM_PROPERTY_BULK_WRITE_ORDERED = "metamodel.mongodb.bulkwrite.ordered";
+
     private static final Logger logger = LoggerFactory.getLogger(MongoDbDataSet.class);
 
     private final MongoDatabase _mongoDb;
@@ -349,26 +355,31 @@ public class MongoDbDataContext extends QueryPostprocessDataContext implements U
 
     private DataSet materializeMainSchemaTableInternal(Table table, Column[] columns, List<FilterItem> whereItems,
             int firstRow, int maxRows, boolean queryPostProcessed) {
-        MongoCursor<Document> cursor = getDocumentMongoCursor(table, whereItems, firstRow, maxRows);
+        MongoCursor<Document> cursor = getDocumentMongoCursor(table, columns, whereItems, firstRow, maxRows);
 
         return new MongoDbDataSet(cursor, columns, queryPostProcessed);
     }
 
     private DataSet materializeMainSchemaTableInternal(Table table, SelectItem[] selectItems, List<FilterItem> whereItems,
             int firstRow, int maxRows, boolean queryPostProcessed) {
-        MongoCursor<Document> cursor = getDocumentMongoCursor(table, whereItems, firstRow, maxRows);
+        final Column[] columns = new Column[selectItems.length];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = selectItems[i].getColumn();
+        }
+        MongoCursor<Document> cursor = getDocumentMongoCursor(table, columns, whereItems, firstRow, maxRows);
 
         return new MongoDbDataSet(cursor, selectItems, queryPostProcessed);
     }
 
-    private MongoCursor<Document> getDocumentMongoCursor(Table table, List<FilterItem> whereItems, int firstRow,
-            int maxRows) {
+    private MongoCursor<Document> getDocumentMongoCursor(Table table, Column[] columns, List<FilterItem> whereItems,
+            int firstRow, int maxRows) {
         final MongoCollection<Document> collection = _mongoDb.getCollection(table.getName());
 
         final Document query = createMongoDbQuery(table, whereItems);
+        final Document projection = MongoDbQueryTranslator.createProjection(columns);
 
-        logger.info("Executing MongoDB 'find' query: {}", query);
-        FindIterable<Document> iterable = collection.find(query);
+        logger.info("Executing MongoDB 'find' query: {} with projection: {}", query, projection);
+        FindIterable<Document> iterable = collection.find(query).projection(projection);
 
         if (maxRows > 0) {
             iterable = iterable.limit(maxRows);
@@ -418,6 +429,21 @@ public class MongoDbDataContext extends QueryPostprocessDataContext implements U
         return null;
     }
     
+    /**
+     * Creates a MongoDB query document for a single (non-compound) filter
+     * item, applied to a particular field. Used for filters on the output of
+     * an aggregation pipeline.
+     * 
+     * @param item
+     * @param fieldName
+     * @return
+     */
+    Document createMongoDbQuery(FilterItem item, String fieldName) {
+        final Document query = new Document();
+        convertToCursorObject(query, item, fieldName);
+        return query;
+    }
+
     private void convertToCursorObject(Document query, FilterItem item) {
         if (item.isCompoundFilter()) {
 
@@ -433,35 +459,37 @@ public class MongoDbDataContext extends QueryPostprocessDataContext implements U
             query.put("$or", orList);
 
         } else {
-
             final Column column = item.getSelectItem().getColumn();
-            final String columnName = column.getName();
-            final String operatorName = getOperatorName(item);
-
-            Object operand = item.getOperand();
-            if (ObjectId.isValid(String.valueOf(operand))) {
-                operand = new ObjectId(String.valueOf(operand));
-            } else if (operand != null && operand.getClass().isArray()){
-                operand = convertArrayToList(operand);
-            }
+            convertToCursorObject(query, item, column.getName());
+        }
+    }
 
-            final Document existingFilterObject = (Document) query.get(columnName);
-            if (existingFilterObject == null) {
-                if (operatorName == null) {
-                    if (OperatorType.LIKE.equals(item.getOperator())) {
-                        query.put(columnName, turnOperandIntoRegExp(operand));
-                    } else {
-                        query.put(columnName, operand);
-                    }
+    private void convertToCursorObject(Document query, FilterItem item, String columnName) {
+        final String operatorName = getOperatorName(item);
+
+        Object operand = item.getOperand();
+        if (ObjectId.isValid(String.valueOf(operand))) {
+            operand = new ObjectId(String.valueOf(operand));
+        } else if (operand != null && operand.getClass().isArray()){
+            operand = convertArrayToList(operand);
+        }
+
+        final Document existingFilterObject = (Document) query.get(columnName);
+        if (existingFilterObject == null) {
+            if (operatorName == null) {
+                if (OperatorType.LIKE.equals(item.getOperator())) {
+                    query.put(columnName, turnOperandIntoRegExp(operand));
                 } else {
-                    query.put(columnName, new Document(operatorName, operand));
+                    query.put(columnName, operand);
                 }
             } else {
-                if (operatorName == null) {
-                    throw new IllegalStateException("Cannot retrieve records for a column with two EQUALS_TO operators");
-                } else {
-                    existingFilterObject.append(operatorName, operand);
-                }
+                query.put(columnName, new Document(operatorName, operand));
+            }
+        } else {
+            if (operatorName == null) {
+                throw new IllegalStateException("Cannot retrieve records for a column with two EQUALS_TO operators");
+            } else {
+                existingFilterObject.append(operatorName, operand);
             }
         }
     }
@@ -517,6 +545,60 @@ public class MongoDbDataContext extends QueryPostprocessDataContext implements U
         return materializeMainSchemaTableInternal(table, columns, null, firstRow, maxRows, true);
     }
 
+    @Override
+    protected boolean isFilterPushdownSupported(Table table, FilterItem filterItem) {
+        return MongoDbQueryTranslator.isFilterSupported(filterItem);
+    }
+
+    @Override
+    protected boolean isGroupByPushdownSupported(Table table, GroupByItem groupByItem) {
+        return MongoDbQueryTranslator.isGroupBySupported(groupByItem);
+    }
+
+    @Override
+    protected boolean isAggregatePushdownSupported(Table table, SelectItem aggregateItem) {
+        return MongoDbQueryTranslator.isAggregateSupported(aggregateItem);
+    }
+
+    @Override
+    protected boolean isOrderByPushdownSupported(Table table, OrderByItem orderByItem) {
+        return MongoDbQueryTranslator.isOrderBySupported(orderByItem);
+    }
+
+    @Override
+    protected boolean isPagingPushdownSupported(Table table) {
+        return true;
+    }
+
+    @Override
+    protected DataSet executePushdownQuery(Table table, Query query) {
+        final List<SelectItem> selectItems = query.getSelectClause().getItems();
+        final SelectItem[] selectItemsAsArray = selectItems.toArray(new SelectItem[selectItems.size()]);
+
+        if (!MongoDbQueryTranslator.isAggregationRequired(query)) {
+            final int firstRow = (query.getFirstRow() == null ? 1 : query.getFirstRow());
+            final int maxRows = (query.getMaxRows() == null ? -1 : query.getMaxRows());
+            return materializeMainSchemaTableInternal(table, selectItemsAsArray, query.getWhereClause().getItems(),
+                    firstRow, maxRows, true);
+        }
+
+        final MongoDbQueryTranslator translator = new MongoDbQueryTranslator(this, table);
+        final List<Document> pipeline = translator.createPipeline(query);
+        if (pipeline == null) {
+            logger.debug("Query could not be translated into an aggregation pipeline: {}", query);
+            return null;
+        }
+
+        final MongoCollection<Document> collection = _mongoDb.getCollection(table.getName());
+        logger.info("Executing MongoDB 'aggregate' query: {}", pipeline);
+        final MongoCursor<Document> cursor = collection.aggregate(pipeline).allowDiskUse(true).iterator();
+
+        if (MongoDbQueryTranslator.isGrouped(query)) {
+            return new MongoDbAggregationDataSet(cursor, selectItemsAsArray, query.getGroupByClause().isEmpty());
+        }
+        return new MongoDbDataSet(cursor, selectItemsAsArray, true);
+    }
+
     /**
      * Executes an update with a specific {@link WriteConcernAdvisor}.
      */
@@ -524,9 +606,17 @@ public class MongoDbDataContext extends QueryPostprocessDataContext implements U
         MongoDbUpdateCallback callback = new MongoDbUpdateCallback(this, writeConcernAdvisor);
         try {
             update.run(callback);
-        } finally {
-            callback.close();
+        } catch (RuntimeException | Error e) {
+            // the buffered writes are still written, but a failure to do so
+            // should not hide the failure of the update script
+            try {
+                callback.close();
+            } catch (RuntimeException closeException) {
+                e.addSuppressed(closeException);
+            }
+            throw e;
         }
+        callback.close();
     }
 
     /**
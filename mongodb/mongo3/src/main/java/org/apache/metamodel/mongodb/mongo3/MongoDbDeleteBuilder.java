@@ -25,9 +25,6 @@ import org.bson.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.mongodb.client.MongoCollection;
-import com.mongodb.client.result.DeleteResult;
-
 final class MongoDbDeleteBuilder extends AbstractRowDeletionBuilder {
 
     private static final Logger logger = LoggerFactory.getLogger(MongoDbDeleteBuilder.class);
@@ -41,13 +38,11 @@ final class MongoDbDeleteBuilder extends AbstractRowDeletionBuilder {
 
     @Override
     public void execute() throws MetaModelException {
-        final MongoCollection<Document> collection = _updateCallback.getCollection(getTable().getName());
-
         final MongoDbDataContext dataContext = _updateCallback.getDataContext();
         final Document query = dataContext.createMongoDbQuery(getTable(), getWhereItems());
-        
-        DeleteResult result = collection.deleteMany(query);
-        logger.info("Remove returned result: {}", result);
+
+        _updateCallback.delete(getTable().getName(), query);
+        logger.debug("Remove query has been buffered: {}", query);
     }
 
 }
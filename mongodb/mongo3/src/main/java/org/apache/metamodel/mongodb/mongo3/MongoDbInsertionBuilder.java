@@ -27,9 +27,6 @@ import org.bson.Document;
 import org.slf4j.LoggerFactory;
 import org.slf4j.Logger;
 
-import com.mongodb.WriteConcern;
-import com.mongodb.client.MongoCollection;
-
 final class MongoDbInsertionBuilder extends AbstractRowInsertionBuilder<MongoDbUpdateCallback> implements RowInsertionBuilder {
 
     private static final Logger logger = LoggerFactory.getLogger(MongoDbInsertionBuilder.class);
@@ -52,12 +49,7 @@ final class MongoDbInsertionBuilder extends AbstractRowInsertionBuilder<MongoDbU
             }
         }
 
-        final MongoDbUpdateCallback updateCallback = getUpdateCallback();
-        final MongoCollection<Document> collection = updateCallback.getCollection(getTable().getName());
-        final WriteConcern writeConcern = updateCallback.getWriteConcernAdvisor().adviceInsert(collection, doc);
-        collection.withWriteConcern(writeConcern);
-
-        collection.insertOne(doc);
-        logger.info("Document has been inserted");
+        getUpdateCallback().insert(getTable().getName(), doc);
+        logger.debug("Document has been buffered for insertion");
     }
 }
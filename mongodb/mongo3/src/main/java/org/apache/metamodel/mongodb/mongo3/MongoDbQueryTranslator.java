@@ -0,0 +1,476 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.mongodb.mongo3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.metamodel.query.AggregateFunction;
+import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.FunctionType;
+import org.apache.metamodel.query.GroupByItem;
+import org.apache.metamodel.query.LogicalOperator;
+import org.apache.metamodel.query.OperatorType;
+import org.apache.metamodel.query.OrderByItem;
+import org.apache.metamodel.query.Query;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.ColumnType;
+import org.apache.metamodel.schema.Table;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+/**
+ * Translates the pushdown queries of a {@link MongoDbDataContext} into MongoDB
+ * 'find' projections and aggregation pipelines.
+ * 
+ * The static methods determine which parts of a query can be translated. They
+ * are conservative: only filters, groupings and aggregates which evaluate the
+ * same way in MongoDB as in MetaModel are accepted, and the rest of a query is
+ * post-processed by MetaModel.
+ * 
+ * Grouped queries are translated into a pipeline of the form
+ * <code>$match, $group, $project, $match, $sort, $skip, $limit</code>. The
+ * $project stage names the output fields after the position of the select
+ * items in the query (see {@link #getFieldName(int)}), so that the following
+ * stages and the resulting documents can refer to them.
+ */
+final class MongoDbQueryTranslator {
+
+    private static final List<OperatorType> COMPARISON_OPERATORS = Arrays.asList(OperatorType.EQUALS_TO,
+            OperatorType.DIFFERENT_FROM, OperatorType.LESS_THAN, OperatorType.LESS_THAN_OR_EQUAL,
+            OperatorType.GREATER_THAN, OperatorType.GREATER_THAN_OR_EQUAL);
+
+    private final MongoDbDataContext _dataContext;
+    private final Table _table;
+
+    public MongoDbQueryTranslator(MongoDbDataContext dataContext, Table table) {
+        _dataContext = dataContext;
+        _table = table;
+    }
+
+    /**
+     * Determines if a WHERE or HAVING item can be translated.
+     * 
+     * @param filterItem
+     * @return
+     */
+    public static boolean isFilterSupported(FilterItem filterItem) {
+        if (filterItem.getExpression() != null) {
+            return false;
+        }
+        if (filterItem.isCompoundFilter()) {
+            // AND is expressed by having multiple filter items
+            if (filterItem.getLogicalOperator() != LogicalOperator.OR) {
+                return false;
+            }
+            for (FilterItem childItem : filterItem.getChildItems()) {
+                if (childItem.isCompoundFilter() || !isFilterSupported(childItem)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        final SelectItem selectItem = filterItem.getSelectItem();
+        final OperatorType operator = filterItem.getOperator();
+        final Object operand = filterItem.getOperand();
+        if (selectItem.getAggregateFunction() != null) {
+            // HAVING items: only aggregates that never produce null or
+            // averages
+            final AggregateFunction function = selectItem.getAggregateFunction();
+            return (FunctionType.COUNT.equals(function) || FunctionType.SUM.equals(function))
+                    && isAggregateSupported(selectItem) && COMPARISON_OPERATORS.contains(operator)
+                    && isSupportedNumber(operand);
+        }
+        if (!isColumnItem(selectItem)) {
+            return false;
+        }
+
+        final ColumnType type = selectItem.getColumn().getType();
+        if (OperatorType.IN.equals(operator)) {
+            final List<?> values;
+            if (operand instanceof List) {
+                values = (List<?>) operand;
+            } else if (operand instanceof Object[]) {
+                values = Arrays.asList((Object[]) operand);
+            } else {
+                return false;
+            }
+            for (Object value : values) {
+                // object id strings are only converted for single operands
+                if (value == null || (value instanceof String && ObjectId.isValid((String) value))
+                        || !isOperandSupported(type, value)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (!COMPARISON_OPERATORS.contains(operator)) {
+            // LIKE is evaluated case-insensitively by MongoDB
+            return false;
+        }
+        if (operand == null) {
+            return OperatorType.EQUALS_TO.equals(operator) || OperatorType.DIFFERENT_FROM.equals(operator);
+        }
+        return isOperandSupported(type, operand);
+    }
+
+    public static boolean isGroupBySupported(GroupByItem groupByItem) {
+        return isColumnItem(groupByItem.getSelectItem());
+    }
+
+    /**
+     * Determines if a select item with an aggregate function can be
+     * translated into an accumulator of a $group stage.
+     * 
+     * @param selectItem
+     * @return
+     */
+    public static boolean isAggregateSupported(SelectItem selectItem) {
+        final AggregateFunction function = selectItem.getAggregateFunction();
+        if (function == null || selectItem.getScalarFunction() != null) {
+            return false;
+        }
+        if (SelectItem.isCountAllItem(selectItem)) {
+            return true;
+        }
+        final Column column = selectItem.getColumn();
+        if (column == null || selectItem.getExpression() != null || !isSimplePath(column.getName())) {
+            return false;
+        }
+        final ColumnType type = column.getType();
+        if (FunctionType.COUNT.equals(function)) {
+            return true;
+        }
+        if (type == null) {
+            return false;
+        }
+        if (FunctionType.SUM.equals(function) || FunctionType.AVG.equals(function)) {
+            return type.isNumber();
+        }
+        if (FunctionType.MIN.equals(function) || FunctionType.MAX.equals(function)) {
+            return type.isNumber() || type.isLiteral() || type.isTimeBased();
+        }
+        return false;
+    }
+
+    public static boolean isOrderBySupported(OrderByItem orderByItem) {
+        final SelectItem selectItem = orderByItem.getSelectItem();
+        if (selectItem.getAggregateFunction() != null) {
+            return isAggregateSupported(selectItem);
+        }
+        return isColumnItem(selectItem);
+    }
+
+    private static boolean isColumnItem(SelectItem selectItem) {
+        final Column column = selectItem.getColumn();
+        return column != null && selectItem.getAggregateFunction() == null && selectItem.getScalarFunction() == null
+                && selectItem.getExpression() == null && selectItem.getSubQuerySelectItem() == null
+                && isSimplePath(column.getName());
+    }
+
+    /**
+     * Determines if a column name is a plain (possibly nested) field path, as
+     * opposed to eg. a path with array indexes.
+     */
+    private static boolean isSimplePath(String columnName) {
+        return columnName != null && !columnName.isEmpty() && columnName.indexOf('[') == -1
+                && !columnName.startsWith("$");
+    }
+
+    private static boolean isOperandSupported(ColumnType type, Object operand) {
+        if (type == null) {
+            return false;
+        }
+        if (operand instanceof String) {
+            if (ObjectId.isValid((String) operand)) {
+                // such strings are converted into object ids
+                return type == ColumnType.ROWID;
+            }
+            return type.isLiteral();
+        }
+        if (isSupportedNumber(operand)) {
+            return type.isNumber();
+        }
+        if (operand instanceof Boolean) {
+            return type.isBoolean();
+        }
+        if (operand != null && operand.getClass() == Date.class) {
+            return type.isTimeBased();
+        }
+        return false;
+    }
+
+    private static boolean isSupportedNumber(Object operand) {
+        return operand instanceof Integer || operand instanceof Long || operand instanceof Double;
+    }
+
+    /**
+     * Gets the name of the output field of a grouped pipeline for the select
+     * item at a particular index.
+     * 
+     * @param index
+     * @return
+     */
+    public static String getFieldName(int index) {
+        return "f" + index;
+    }
+
+    /**
+     * Creates a projection which only includes the fields needed for a set of
+     * columns.
+     * 
+     * @param columns
+     * @return
+     */
+    public static Document createProjection(Column[] columns) {
+        final List<String> paths = new ArrayList<String>();
+        for (Column column : columns) {
+            if (column == null || column.getName() == null) {
+                continue;
+            }
+            String path = column.getName();
+            final int indexOfBracket = path.indexOf('[');
+            if (indexOfBracket != -1) {
+                // array elements are resolved client side
+                path = path.substring(0, indexOfBracket);
+            }
+            if (!path.isEmpty() && !paths.contains(path)) {
+                paths.add(path);
+            }
+        }
+        Collections.sort(paths);
+
+        final Document projection = new Document();
+        for (String path : paths) {
+            // a nested path is already covered by including its parent
+            if (!isCoveredBy(path, projection.keySet())) {
+                projection.append(path, 1);
+            }
+        }
+        return projection;
+    }
+
+    private static boolean isCoveredBy(String path, Iterable<String> includedPaths) {
+        for (String includedPath : includedPaths) {
+            if (path.startsWith(includedPath + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates the filter document of a set of WHERE items.
+     * 
+     * @param whereItems
+     * @return
+     */
+    public Document createMatch(List<FilterItem> whereItems) {
+        if (whereItems.isEmpty()) {
+            return new Document();
+        }
+        if (whereItems.size() == 1) {
+            return _dataContext.createMongoDbQuery(_table, whereItems);
+        }
+        // each item is translated separately, since filters on the same
+        // field cannot always be merged
+        final List<Document> documents = new ArrayList<Document>(whereItems.size());
+        for (FilterItem whereItem : whereItems) {
+            documents.add(_dataContext.createMongoDbQuery(_table, Collections.singletonList(whereItem)));
+        }
+        return new Document("$and", documents);
+    }
+
+    /**
+     * Determines if a pushdown query needs an aggregation pipeline, or if it
+     * can be executed as a 'find' query.
+     * 
+     * @param query
+     * @return
+     */
+    public static boolean isAggregationRequired(Query query) {
+        return isGrouped(query) || !query.getOrderByClause().isEmpty();
+    }
+
+    public static boolean isGrouped(Query query) {
+        if (!query.getGroupByClause().isEmpty()) {
+            return true;
+        }
+        for (SelectItem selectItem : query.getSelectClause().getItems()) {
+            if (selectItem.getAggregateFunction() != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates an aggregation pipeline for a pushdown query.
+     * 
+     * @param query
+     * @return the stages of the pipeline, or null if the query cannot be
+     *         translated
+     */
+    public List<Document> createPipeline(Query query) {
+        final List<SelectItem> selectItems = query.getSelectClause().getItems();
+        final List<FilterItem> whereItems = query.getWhereClause().getItems();
+        final List<FilterItem> havingItems = query.getHavingClause().getItems();
+        final List<OrderByItem> orderByItems = query.getOrderByClause().getItems();
+        final List<SelectItem> groupBySelectItems = query.getGroupByClause().getEvaluatedSelectItems();
+        final Integer firstRow = query.getFirstRow();
+        final Integer maxRows = query.getMaxRows();
+        final boolean grouped = isGrouped(query);
+
+        if (maxRows != null && maxRows <= 0) {
+            return null;
+        }
+        if (grouped && groupBySelectItems.isEmpty()
+                && (!havingItems.isEmpty() || maxRows != null || (firstRow != null && firstRow > 1))) {
+            // an ungrouped aggregation always yields a single row, which is
+            // produced client side when the collection is empty
+            return null;
+        }
+
+        final List<Document> pipeline = new ArrayList<Document>();
+        if (!whereItems.isEmpty()) {
+            pipeline.add(new Document("$match", createMatch(whereItems)));
+        }
+
+        if (grouped) {
+            final Document id;
+            if (groupBySelectItems.isEmpty()) {
+                id = null;
+            } else {
+                id = new Document();
+                for (int i = 0; i < groupBySelectItems.size(); i++) {
+                    // missing fields are grouped with null values
+                    final String path = "$" + groupBySelectItems.get(i).getColumn().getName();
+                    id.append("g" + i, new Document("$ifNull", Arrays.asList(path, null)));
+                }
+            }
+            final Document group = new Document("_id", id);
+            final Document project = new Document("_id", 0);
+            for (int i = 0; i < selectItems.size(); i++) {
+                final SelectItem selectItem = selectItems.get(i);
+                if (selectItem.getAggregateFunction() == null) {
+                    final int groupIndex = groupBySelectItems.indexOf(selectItem);
+                    if (groupIndex == -1) {
+                        return null;
+                    }
+                    project.append(getFieldName(i), "$_id.g" + groupIndex);
+                } else {
+                    final Document accumulator = createAccumulator(selectItem);
+                    if (accumulator == null) {
+                        return null;
+                    }
+                    group.append("a" + i, accumulator);
+                    project.append(getFieldName(i), "$a" + i);
+                }
+            }
+            pipeline.add(new Document("$group", group));
+            pipeline.add(new Document("$project", project));
+
+            if (!havingItems.isEmpty()) {
+                final List<Document> havingDocuments = new ArrayList<Document>();
+                for (FilterItem havingItem : havingItems) {
+                    final int index = selectItems.indexOf(havingItem.getSelectItem());
+                    if (index == -1 || havingItem.isCompoundFilter()) {
+                        return null;
+                    }
+                    havingDocuments.add(_dataContext.createMongoDbQuery(havingItem, getFieldName(index)));
+                }
+                if (havingDocuments.size() == 1) {
+                    pipeline.add(new Document("$match", havingDocuments.get(0)));
+                } else {
+                    pipeline.add(new Document("$match", new Document("$and", havingDocuments)));
+                }
+            }
+        }
+
+        if (!orderByItems.isEmpty()) {
+            final Document sort = new Document();
+            for (OrderByItem orderByItem : orderByItems) {
+                final String fieldName;
+                if (grouped) {
+                    final int index = selectItems.indexOf(orderByItem.getSelectItem());
+                    if (index == -1) {
+                        return null;
+                    }
+                    fieldName = getFieldName(index);
+                } else {
+                    fieldName = orderByItem.getSelectItem().getColumn().getName();
+                }
+                sort.append(fieldName, orderByItem.isAscending() ? 1 : -1);
+            }
+            pipeline.add(new Document("$sort", sort));
+        }
+
+        if (firstRow != null && firstRow > 1) {
+            pipeline.add(new Document("$skip", firstRow - 1));
+        }
+        if (maxRows != null) {
+            pipeline.add(new Document("$limit", maxRows));
+        }
+
+        if (!grouped) {
+            final Column[] columns = new Column[selectItems.size()];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = selectItems.get(i).getColumn();
+            }
+            final Document projection = createProjection(columns);
+            if (!projection.isEmpty()) {
+                pipeline.add(new Document("$project", projection));
+            }
+        }
+
+        return pipeline;
+    }
+
+    private Document createAccumulator(SelectItem selectItem) {
+        final AggregateFunction function = selectItem.getAggregateFunction();
+        if (SelectItem.isCountAllItem(selectItem)) {
+            return new Document("$sum", 1);
+        }
+        final String path = "$" + selectItem.getColumn().getName();
+        if (FunctionType.COUNT.equals(function)) {
+            // count the non-null values
+            final Document isNull = new Document("$eq", Arrays.asList(
+                    new Document("$ifNull", Arrays.asList(path, null)), null));
+            return new Document("$sum", new Document("$cond", Arrays.<Object> asList(isNull, 0, 1)));
+        }
+        if (FunctionType.SUM.equals(function)) {
+            return new Document("$sum", path);
+        }
+        if (FunctionType.AVG.equals(function)) {
+            return new Document("$avg", path);
+        }
+        if (FunctionType.MIN.equals(function)) {
+            return new Document("$min", path);
+        }
+        if (FunctionType.MAX.equals(function)) {
+            return new Document("$max", path);
+        }
+        return null;
+    }
+}
@@ -19,7 +19,10 @@
 package org.apache.metamodel.mongodb.mongo3;
 
 import java.io.Closeable;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.metamodel.AbstractUpdateCallback;
@@ -28,25 +31,78 @@ import org.apache.metamodel.create.TableCreationBuilder;
 import org.apache.metamodel.delete.RowDeletionBuilder;
 import org.apache.metamodel.drop.TableDropBuilder;
 import org.apache.metamodel.insert.RowInsertionBuilder;
+import org.apache.metamodel.mongodb.common.MongoDBUtils;
 import org.apache.metamodel.schema.Schema;
 import org.apache.metamodel.schema.Table;
 import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.mongodb.WriteConcern;
+import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.DeleteManyModel;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.WriteModel;
 
-
+/**
+ * {@link UpdateCallback} for MongoDB.
+ * 
+ * Inserts and deletes are buffered per collection and written using
+ * 'bulkWrite' operations, which are executed when the number of documents or
+ * the (approximate) number of bytes in the buffer reaches a limit, when the
+ * {@link WriteConcern} advised for a collection changes, before a collection
+ * is created or dropped, and when the callback is closed. Buffered writes are
+ * therefore not visible to queries made while the update script is running.
+ * 
+ * Unordered bulk writes may execute their writes in any order, so in unordered
+ * mode the buffer is also written when switching between inserts and deletes.
+ * 
+ * @see MongoDbDataContext#SYSTEM_PROPERTY_BULK_WRITE_MAX_DOCUMENTS
+ * @see MongoDbDataContext#SYSTEM_PROPERTY_BULK_WRITE_MAX_BYTES
+ * @see MongoDbDataContext#SYSTEM_PROPERTY_BULK_WRITE_ORDERED
+ */
 final class MongoDbUpdateCallback extends AbstractUpdateCallback implements UpdateCallback, Closeable {
 
+    private static final Logger logger = LoggerFactory.getLogger(MongoDbUpdateCallback.class);
+
+    private static final int DEFAULT_BULK_WRITE_MAX_DOCUMENTS = 1000;
+    private static final long DEFAULT_BULK_WRITE_MAX_BYTES = 8 * 1024 * 1024;
+
     private final MongoDbDataContext _dataContext;
     private final Map<String, MongoCollection<Document>> _collections;
+    private final Map<String, PendingWrites> _pendingWrites;
     private final WriteConcernAdvisor _writeConcernAdvisor;
+    private final int _bulkWriteMaxDocuments;
+    private final long _bulkWriteMaxBytes;
+    private final boolean _bulkWriteOrdered;
 
     public MongoDbUpdateCallback(MongoDbDataContext dataContext, WriteConcernAdvisor writeConcernAdvisor) {
         super(dataContext);
         _dataContext = dataContext;
         _writeConcernAdvisor = writeConcernAdvisor;
         _collections = new HashMap<String, MongoCollection<Document>>();
+        _pendingWrites = new LinkedHashMap<String, PendingWrites>();
+        _bulkWriteMaxDocuments = (int) getSystemPropertyValue(
+                MongoDbDataContext.SYSTEM_PROPERTY_BULK_WRITE_MAX_DOCUMENTS, DEFAULT_BULK_WRITE_MAX_DOCUMENTS);
+        _bulkWriteMaxBytes = getSystemPropertyValue(MongoDbDataContext.SYSTEM_PROPERTY_BULK_WRITE_MAX_BYTES,
+                DEFAULT_BULK_WRITE_MAX_BYTES);
+        _bulkWriteOrdered = !"false".equals(System.getProperty(MongoDbDataContext.SYSTEM_PROPERTY_BULK_WRITE_ORDERED));
+    }
+
+    private static long getSystemPropertyValue(String property, long defaultValue) {
+        final String str = System.getProperty(property);
+        if (str == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(str);
+        } catch (NumberFormatException e) {
+            logger.debug("Failed to parse system property '{}': '{}'", property, str);
+            return defaultValue;
+        }
     }
 
     @Override
@@ -70,6 +126,7 @@ final class MongoDbUpdateCallback extends AbstractUpdateCallback implements Upda
     }
 
     protected void createCollection(String name) {
+        flush(name);
         MongoDatabase mongoDb = _dataContext.getMongoDb();
         mongoDb.createCollection(name);
         MongoCollection<Document> collection = mongoDb.getCollection(name);
@@ -77,6 +134,7 @@ final class MongoDbUpdateCallback extends AbstractUpdateCallback implements Upda
     }
 
     protected void removeCollection(String name) {
+        flush(name);
         MongoCollection<Document> collection = getCollection(name);
         _collections.remove(name);
         collection.drop();
@@ -91,9 +149,87 @@ final class MongoDbUpdateCallback extends AbstractUpdateCallback implements Upda
         return collection;
     }
 
+    /**
+     * Buffers the insertion of a document.
+     * 
+     * @param collectionName
+     * @param document
+     */
+    protected void insert(String collectionName, Document document) {
+        final MongoCollection<Document> collection = getCollection(collectionName);
+        final WriteConcern writeConcern = _writeConcernAdvisor.adviceInsert(collection, document);
+        addWrite(collectionName, writeConcern, false, new InsertOneModel<Document>(document),
+                MongoDBUtils.getApproximateSize(document));
+    }
+
+    /**
+     * Buffers the deletion of the documents that match a query.
+     * 
+     * @param collectionName
+     * @param query
+     */
+    protected void delete(String collectionName, Document query) {
+        final MongoCollection<Document> collection = getCollection(collectionName);
+        final WriteConcern writeConcern = _writeConcernAdvisor.adviceDeleteQuery(collection, query);
+        addWrite(collectionName, writeConcern, true, new DeleteManyModel<Document>(query),
+                MongoDBUtils.getApproximateSize(query));
+    }
+
+    private void addWrite(String collectionName, WriteConcern writeConcern, boolean delete,
+            WriteModel<Document> write, long bytes) {
+        PendingWrites pendingWrites = _pendingWrites.get(collectionName);
+        if (pendingWrites != null && !pendingWrites.accepts(writeConcern, delete, _bulkWriteOrdered)) {
+            flush(collectionName);
+            pendingWrites = null;
+        }
+        if (pendingWrites == null) {
+            pendingWrites = new PendingWrites(writeConcern, delete);
+            _pendingWrites.put(collectionName, pendingWrites);
+        }
+        pendingWrites.writes.add(write);
+        pendingWrites.bytes += bytes;
+
+        if (pendingWrites.writes.size() >= _bulkWriteMaxDocuments || pendingWrites.bytes >= _bulkWriteMaxBytes) {
+            flush(collectionName);
+        }
+    }
+
+    /**
+     * Executes the buffered writes of a collection.
+     * 
+     * @param collectionName
+     */
+    protected void flush(String collectionName) {
+        final PendingWrites pendingWrites = _pendingWrites.remove(collectionName);
+        if (pendingWrites == null || pendingWrites.writes.isEmpty()) {
+            return;
+        }
+        final MongoCollection<Document> collection = getCollection(collectionName).withWriteConcern(
+                pendingWrites.writeConcern);
+        final BulkWriteResult result = collection.bulkWrite(pendingWrites.writes,
+                new BulkWriteOptions().ordered(_bulkWriteOrdered));
+        logger.info("Bulk write of {} operations to collection '{}' returned result: {}", new Object[] {
+                pendingWrites.writes.size(), collectionName, result });
+    }
+
+    /**
+     * Executes the buffered writes of all collections.
+     */
+    protected void flush() {
+        final List<String> collectionNames = new ArrayList<String>(_pendingWrites.keySet());
+        for (String collectionName : collectionNames) {
+            flush(collectionName);
+        }
+    }
+
     @Override
     public void close() {
-        _collections.clear();
+        try {
+            flush();
+        } finally {
+            _pendingWrites.clear();
+            _collections.clear();
+        }
     }
 
     @Override
@@ -116,4 +252,27 @@ final class MongoDbUpdateCallback extends AbstractUpdateCallback implements Upda
             UnsupportedOperationException {
         return new MongoDbDeleteBuilder(this, table);
     }
+
+    private static final class PendingWrites {
+        final WriteConcern writeConcern;
+        final boolean deletes;
+        final List<WriteModel<Document>> writes;
+        long bytes;
+
+        PendingWrites(WriteConcern writeConcern, boolean deletes) {
+            this.writeConcern = writeConcern;
+            this.deletes = deletes;
+            this.writes = new ArrayList<WriteModel<Document>>();
+        }
+
+        /**
+         * Determines if a write can be added to these pending writes. A bulk
+         * write has a single write concern, and an unordered bulk write may
+         * execute it's writes in any order, so inserts and deletes are not
+         * mixed in it.
+         */
+        boolean accepts(WriteConcern writeConcern, boolean delete, boolean ordered) {
+            return this.writeConcern.equals(writeConcern) && (ordered || this.deletes == delete);
+        }
+    }
 }
@@ -0,0 +1,235 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.mongodb.mongo3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.metamodel.data.DataSet;
+import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.FunctionType;
+import org.apache.metamodel.query.OperatorType;
+import org.apache.metamodel.query.Query;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.ColumnType;
+import org.apache.metamodel.schema.MutableColumn;
+import org.apache.metamodel.schema.Table;
+import org.apache.metamodel.util.SimpleTableDef;
+import org.bson.Document;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.ServerCursor;
+import com.mongodb.client.MongoCursor;
+
+public class MongoDbQueryTranslatorTest extends TestCase {
+
+    private MongoDbDataContext _dataContext;
+    private Table _table;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        final SimpleTableDef tableDef = new SimpleTableDef("persons", new String[] { "_id", "name", "age",
+                "address.city", "tags[0]", "birthdate" }, new ColumnType[] { ColumnType.ROWID, ColumnType.VARCHAR,
+                ColumnType.INTEGER, ColumnType.VARCHAR, ColumnType.VARCHAR, ColumnType.DATE });
+        _dataContext = new MongoDbDataContext(null, tableDef) {
+            @Override
+            protected String getMainSchemaName() {
+                return "test";
+            }
+        };
+        _table = _dataContext.getDefaultSchema().getTableByName("persons");
+    }
+
+    public void testCreateProjection() throws Exception {
+        assertEquals("{ }", MongoDbQueryTranslator.createProjection(new Column[0]).toJson());
+
+        final Column[] columns = _table.getColumns();
+        assertEquals("{ \"_id\" : 1, \"address.city\" : 1, \"age\" : 1, \"birthdate\" : 1, \"name\" : 1, \"tags\" : 1 }",
+                MongoDbQueryTranslator.createProjection(columns).toJson());
+
+        final Column address = new MutableColumn("address", ColumnType.MAP, _table, 6,
+                true);
+        assertEquals("{ \"address\" : 1, \"name\" : 1 }", MongoDbQueryTranslator.createProjection(
+                new Column[] { _table.getColumnByName("address.city"), _table.getColumnByName("name"), address })
+                .toJson());
+    }
+
+    public void testIsFilterSupported() throws Exception {
+        final Column name = _table.getColumnByName("name");
+        final Column age = _table.getColumnByName("age");
+
+        assertTrue(MongoDbQueryTranslator.isFilterSupported(new FilterItem(new SelectItem(age),
+                OperatorType.GREATER_THAN, 30)));
+        assertTrue(MongoDbQueryTranslator.isFilterSupported(new FilterItem(new SelectItem(name),
+                OperatorType.EQUALS_TO, null)));
+        assertTrue(MongoDbQueryTranslator.isFilterSupported(new FilterItem(new SelectItem(name), OperatorType.IN,
+                Arrays.asList("foo", "bar"))));
+        assertTrue(MongoDbQueryTranslator.isFilterSupported(new FilterItem(new FilterItem(new SelectItem(name),
+                OperatorType.EQUALS_TO, "foo"), new FilterItem(new SelectItem(age), OperatorType.LESS_THAN, 10))));
+
+        // LIKE is evaluated case-insensitively by MongoDB
+        assertFalse(MongoDbQueryTranslator.isFilterSupported(new FilterItem(new SelectItem(name), OperatorType.LIKE,
+                "foo%")));
+        // type mismatch between column and operand
+        assertFalse(MongoDbQueryTranslator.isFilterSupported(new FilterItem(new SelectItem(age),
+                OperatorType.EQUALS_TO, "30")));
+        // array paths are resolved client side
+        assertFalse(MongoDbQueryTranslator.isFilterSupported(new FilterItem(new SelectItem(_table
+                .getColumnByName("tags[0]")), OperatorType.EQUALS_TO, "foo")));
+
+        assertTrue(MongoDbQueryTranslator.isFilterSupported(new FilterItem(SelectItem.getCountAllItem(),
+                OperatorType.GREATER_THAN, 1)));
+        assertFalse(MongoDbQueryTranslator.isFilterSupported(new FilterItem(new SelectItem(FunctionType.AVG, age),
+                OperatorType.GREATER_THAN, 1)));
+    }
+
+    public void testIsAggregateSupported() throws Exception {
+        final Column name = _table.getColumnByName("name");
+        final Column age = _table.getColumnByName("age");
+
+        assertTrue(MongoDbQueryTranslator.isAggregateSupported(SelectItem.getCountAllItem()));
+        assertTrue(MongoDbQueryTranslator.isAggregateSupported(new SelectItem(FunctionType.COUNT, name)));
+        assertTrue(MongoDbQueryTranslator.isAggregateSupported(new SelectItem(FunctionType.SUM, age)));
+        assertTrue(MongoDbQueryTranslator.isAggregateSupported(new SelectItem(FunctionType.MAX, name)));
+        assertFalse(MongoDbQueryTranslator.isAggregateSupported(new SelectItem(FunctionType.AVG, name)));
+        assertFalse(MongoDbQueryTranslator.isAggregateSupported(new SelectItem(age)));
+    }
+
+    public void testCreateGroupedPipeline() throws Exception {
+        final Query query = _dataContext.query().from(_table).select("name").selectCount().select(FunctionType.AVG,
+                "age").where("age").gt(18).groupBy("name").orderBy("name").toQuery();
+        query.having(new FilterItem(SelectItem.getCountAllItem(), OperatorType.GREATER_THAN, 2));
+        query.setMaxRows(10);
+
+        final List<Document> pipeline = new MongoDbQueryTranslator(_dataContext, _table).createPipeline(query);
+        assertEquals("[{ \"$match\" : { \"age\" : { \"$gt\" : 18 } } }, "
+                + "{ \"$group\" : { \"_id\" : { \"g0\" : { \"$ifNull\" : [\"$name\", null] } }, "
+                + "\"a1\" : { \"$sum\" : 1 }, \"a2\" : { \"$avg\" : \"$age\" } } }, "
+                + "{ \"$project\" : { \"_id\" : 0, \"f0\" : \"$_id.g0\", \"f1\" : \"$a1\", \"f2\" : \"$a2\" } }, "
+                + "{ \"$match\" : { \"f1\" : { \"$gt\" : 2 } } }, { \"$sort\" : { \"f0\" : 1 } }, { \"$limit\" : 10 }]",
+                toJson(pipeline));
+    }
+
+    public void testCreateOrderedPipeline() throws Exception {
+        final Query query = _dataContext.query().from(_table).select("name", "address.city").where("name")
+                .isEquals("foo").or("name").isEquals("bar").orderBy("address.city").desc().toQuery();
+        query.setFirstRow(6);
+
+        final List<Document> pipeline = new MongoDbQueryTranslator(_dataContext, _table).createPipeline(query);
+        assertEquals("[{ \"$match\" : { \"$or\" : [{ \"name\" : \"foo\" }, { \"name\" : \"bar\" }] } }, "
+                + "{ \"$sort\" : { \"address.city\" : -1 } }, { \"$skip\" : 5 }, "
+                + "{ \"$project\" : { \"address.city\" : 1, \"name\" : 1 } }]", toJson(pipeline));
+    }
+
+    public void testUngroupedAggregationWithPagingIsNotTranslated() throws Exception {
+        final Query query = _dataContext.query().from(_table).selectCount().toQuery();
+        final MongoDbQueryTranslator translator = new MongoDbQueryTranslator(_dataContext, _table);
+        assertEquals("[{ \"$group\" : { \"_id\" : null, \"a0\" : { \"$sum\" : 1 } } }, "
+                + "{ \"$project\" : { \"_id\" : 0, \"f0\" : \"$a0\" } }]", toJson(translator.createPipeline(query)));
+
+        query.setMaxRows(1);
+        assertNull(translator.createPipeline(query));
+    }
+
+    public void testAggregationDataSetConvertsValues() throws Exception {
+        final SelectItem[] selectItems = new SelectItem[] { SelectItem.getCountAllItem(),
+                new SelectItem(FunctionType.SUM, _table.getColumnByName("age")),
+                new SelectItem(FunctionType.MAX, _table.getColumnByName("name")) };
+
+        final List<Document> documents = new ArrayList<Document>();
+        documents.add(new Document("f0", 3).append("f1", 60).append("f2", "foo"));
+        DataSet dataSet = new MongoDbAggregationDataSet(new IteratorMongoCursor(documents.iterator()), selectItems,
+                true);
+        assertTrue(dataSet.next());
+        assertEquals("Row[values=[3, 60.0, foo]]", dataSet.getRow().toString());
+        assertEquals(Long.class, dataSet.getRow().getValue(0).getClass());
+        assertFalse(dataSet.next());
+        dataSet.close();
+
+        // an ungrouped aggregation of an empty collection still yields a row
+        dataSet = new MongoDbAggregationDataSet(new IteratorMongoCursor(new ArrayList<Document>().iterator()),
+                selectItems, true);
+        assertTrue(dataSet.next());
+        assertEquals("Row[values=[0, 0.0, null]]", dataSet.getRow().toString());
+        assertFalse(dataSet.next());
+        dataSet.close();
+
+        dataSet = new MongoDbAggregationDataSet(new IteratorMongoCursor(new ArrayList<Document>().iterator()),
+                selectItems, false);
+        assertFalse(dataSet.next());
+        dataSet.close();
+    }
+
+    private static String toJson(List<Document> pipeline) {
+        final List<String> stages = new ArrayList<String>();
+        for (Document stage : pipeline) {
+            stages.add(stage.toJson());
+        }
+        return stages.toString();
+    }
+
+    private static class IteratorMongoCursor implements MongoCursor<Document> {
+
+        private final Iterator<Document> _iterator;
+
+        public IteratorMongoCursor(Iterator<Document> iterator) {
+            _iterator = iterator;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean hasNext() {
+            return _iterator.hasNext();
+        }
+
+        @Override
+        public Document next() {
+            return _iterator.next();
+        }
+
+        @Override
+        public Document tryNext() {
+            return _iterator.hasNext() ? _iterator.next() : null;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ServerCursor getServerCursor() {
+            return null;
+        }
+
+        @Override
+        public ServerAddress getServerAddress() {
+            return null;
+        }
+    }
+}
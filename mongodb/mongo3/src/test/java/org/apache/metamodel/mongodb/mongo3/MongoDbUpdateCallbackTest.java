@@ -0,0 +1,301 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.mongodb.mongo3;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.metamodel.UpdateCallback;
+import org.apache.metamodel.UpdateScript;
+import org.apache.metamodel.schema.ColumnType;
+import org.apache.metamodel.schema.Table;
+import org.apache.metamodel.util.SimpleTableDef;
+import org.bson.Document;
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+
+import com.mongodb.WriteConcern;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.DeleteManyModel;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.WriteModel;
+
+public class MongoDbUpdateCallbackTest extends TestCase {
+
+    private MongoDatabase _mongoDb;
+    private MongoCollection<Document> _collection;
+    private Capture<List<? extends WriteModel<? extends Document>>> _bulkWrites;
+    private Capture<BulkWriteOptions> _bulkWriteOptions;
+    private Capture<WriteConcern> _writeConcerns;
+    private MongoDbDataContext _dataContext;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void setUp() throws Exception {
+        super.setUp();
+        _mongoDb = EasyMock.createMock(MongoDatabase.class);
+        _collection = EasyMock.createMock(MongoCollection.class);
+        _bulkWrites = new Capture<List<? extends WriteModel<? extends Document>>>(CaptureType.ALL);
+        _bulkWriteOptions = new Capture<BulkWriteOptions>(CaptureType.ALL);
+        _writeConcerns = new Capture<WriteConcern>(CaptureType.ALL);
+
+        EasyMock.expect(_mongoDb.getName()).andReturn("test").anyTimes();
+        EasyMock.expect(_mongoDb.getCollection("persons")).andReturn(_collection).anyTimes();
+        EasyMock.expect(_collection.withWriteConcern(EasyMock.capture(_writeConcerns))).andReturn(_collection)
+                .anyTimes();
+        EasyMock.expect(_collection.bulkWrite(EasyMock.capture(_bulkWrites), EasyMock.capture(_bulkWriteOptions)))
+                .andReturn(BulkWriteResult.unacknowledged()).anyTimes();
+
+        final SimpleTableDef tableDef = new SimpleTableDef("persons", new String[] { "_id", "name" },
+                new ColumnType[] { ColumnType.ROWID, ColumnType.VARCHAR });
+        _dataContext = new MongoDbDataContext(_mongoDb, tableDef);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        System.clearProperty(MongoDbDataContext.SYSTEM_PROPERTY_BULK_WRITE_MAX_DOCUMENTS);
+        System.clearProperty(MongoDbDataContext.SYSTEM_PROPERTY_BULK_WRITE_MAX_BYTES);
+        System.clearProperty(MongoDbDataContext.SYSTEM_PROPERTY_BULK_WRITE_ORDERED);
+    }
+
+    private MongoDbUpdateCallback createUpdateCallback() {
+        return new MongoDbUpdateCallback(_dataContext, new SimpleWriteConcernAdvisor(WriteConcern.ACKNOWLEDGED));
+    }
+
+    private static <T> T getLastValue(Capture<T> capture) {
+        final List<T> values = capture.getValues();
+        return values.get(values.size() - 1);
+    }
+
+    private IAnswer<Object> assertBulkWritesAnswer(final int expectedBulkWrites) {
+        return new IAnswer<Object>() {
+            @Override
+            public Object answer() throws Throwable {
+                assertEquals(expectedBulkWrites, _bulkWrites.getValues().size());
+                return null;
+            }
+        };
+    }
+
+    public void testFlushWhenMaxDocumentsReached() throws Exception {
+        System.setProperty(MongoDbDataContext.SYSTEM_PROPERTY_BULK_WRITE_MAX_DOCUMENTS, "2");
+        EasyMock.replay(_mongoDb, _collection);
+
+        final MongoDbUpdateCallback callback = createUpdateCallback();
+        for (int i = 0; i < 5; i++) {
+            callback.insert("persons", new Document("name", "person" + i));
+        }
+        assertEquals(2, _bulkWrites.getValues().size());
+        assertEquals(2, _bulkWrites.getValues().get(0).size());
+        assertEquals(2, _bulkWrites.getValues().get(1).size());
+
+        callback.close();
+        assertEquals(3, _bulkWrites.getValues().size());
+        assertEquals(1, _bulkWrites.getValues().get(2).size());
+
+        final InsertOneModel<?> lastInsert = (InsertOneModel<?>) _bulkWrites.getValues().get(2).get(0);
+        assertEquals("person4", ((Document) lastInsert.getDocument()).get("name"));
+        assertTrue(getLastValue(_bulkWriteOptions).isOrdered());
+        assertEquals(WriteConcern.ACKNOWLEDGED, getLastValue(_writeConcerns));
+
+        EasyMock.verify(_mongoDb, _collection);
+    }
+
+    public void testFlushWhenMaxBytesReached() throws Exception {
+        System.setProperty(MongoDbDataContext.SYSTEM_PROPERTY_BULK_WRITE_MAX_BYTES, "100");
+        System.setProperty(MongoDbDataContext.SYSTEM_PROPERTY_BULK_WRITE_ORDERED, "false");
+        EasyMock.replay(_mongoDb, _collection);
+
+        // each document is approximately 66 bytes
+        final String name = new String(new char[50]).replace('\0', 'x');
+        final MongoDbUpdateCallback callback = createUpdateCallback();
+        callback.insert("persons", new Document("name", name));
+        assertFalse(_bulkWrites.hasCaptured());
+        callback.insert("persons", new Document("name", name));
+        assertEquals(1, _bulkWrites.getValues().size());
+        assertEquals(2, getLastValue(_bulkWrites).size());
+        callback.insert("persons", new Document("name", name));
+        assertEquals(1, _bulkWrites.getValues().size());
+
+        callback.close();
+        assertEquals(2, _bulkWrites.getValues().size());
+        assertFalse(getLastValue(_bulkWriteOptions).isOrdered());
+
+        EasyMock.verify(_mongoDb, _collection);
+    }
+
+    public void testFlushWhenWriteConcernChanges() throws Exception {
+        EasyMock.replay(_mongoDb, _collection);
+
+        final MongoDbUpdateCallback callback = new MongoDbUpdateCallback(_dataContext, new WriteConcernAdvisor() {
+            @Override
+            public WriteConcern adviceInsert(MongoCollection<Document> collection, Document document) {
+                return WriteConcern.ACKNOWLEDGED;
+            }
+
+            @Override
+            public WriteConcern adviceDeleteQuery(MongoCollection<Document> collection, Document query) {
+                return WriteConcern.UNACKNOWLEDGED;
+            }
+        });
+        callback.insert("persons", new Document("name", "foo"));
+        callback.insert("persons", new Document("name", "bar"));
+        assertFalse(_bulkWrites.hasCaptured());
+
+        callback.delete("persons", new Document("name", "foo"));
+        assertEquals(1, _bulkWrites.getValues().size());
+        assertEquals(2, getLastValue(_bulkWrites).size());
+        assertEquals(WriteConcern.ACKNOWLEDGED, getLastValue(_writeConcerns));
+
+        callback.close();
+        assertEquals(2, _bulkWrites.getValues().size());
+        assertEquals(1, getLastValue(_bulkWrites).size());
+        assertTrue(getLastValue(_bulkWrites).get(0) instanceof DeleteManyModel);
+        assertEquals(WriteConcern.UNACKNOWLEDGED, getLastValue(_writeConcerns));
+
+        EasyMock.verify(_mongoDb, _collection);
+    }
+
+    public void testFlushWhenWriteKindChangesUnordered() throws Exception {
+        System.setProperty(MongoDbDataContext.SYSTEM_PROPERTY_BULK_WRITE_ORDERED, "false");
+        EasyMock.replay(_mongoDb, _collection);
+
+        final MongoDbUpdateCallback callback = createUpdateCallback();
+        callback.insert("persons", new Document("name", "foo"));
+        callback.insert("persons", new Document("name", "bar"));
+        callback.delete("persons", new Document("name", "foo"));
+        callback.delete("persons", new Document("name", "bar"));
+        callback.insert("persons", new Document("name", "baz"));
+        callback.close();
+
+        final List<List<? extends WriteModel<? extends Document>>> bulkWrites = _bulkWrites.getValues();
+        assertEquals(3, bulkWrites.size());
+        assertEquals(2, bulkWrites.get(0).size());
+        assertTrue(bulkWrites.get(0).get(1) instanceof InsertOneModel);
+        assertEquals(2, bulkWrites.get(1).size());
+        assertTrue(bulkWrites.get(1).get(0) instanceof DeleteManyModel);
+        assertTrue(bulkWrites.get(1).get(1) instanceof DeleteManyModel);
+        assertEquals(1, bulkWrites.get(2).size());
+        assertTrue(bulkWrites.get(2).get(0) instanceof InsertOneModel);
+
+        EasyMock.verify(_mongoDb, _collection);
+    }
+
+    public void testFlushBeforeCreateCollection() throws Exception {
+        _mongoDb.createCollection("persons");
+        EasyMock.expectLastCall().andAnswer(assertBulkWritesAnswer(1));
+        EasyMock.replay(_mongoDb, _collection);
+
+        final MongoDbUpdateCallback callback = createUpdateCallback();
+        callback.insert("persons", new Document("name", "foo"));
+        callback.createCollection("persons");
+        callback.insert("persons", new Document("name", "bar"));
+        callback.close();
+        assertEquals(2, _bulkWrites.getValues().size());
+
+        EasyMock.verify(_mongoDb, _collection);
+    }
+
+    public void testFlushBeforeDropCollection() throws Exception {
+        _collection.drop();
+        EasyMock.expectLastCall().andAnswer(assertBulkWritesAnswer(1));
+        EasyMock.replay(_mongoDb, _collection);
+
+        final MongoDbUpdateCallback callback = createUpdateCallback();
+        callback.insert("persons", new Document("name", "foo"));
+        callback.removeCollection("persons");
+        callback.close();
+        assertEquals(1, _bulkWrites.getValues().size());
+
+        EasyMock.verify(_mongoDb, _collection);
+    }
+
+    public void testFlushOnClose() throws Exception {
+        EasyMock.replay(_mongoDb, _collection);
+
+        _dataContext.executeUpdate(new UpdateScript() {
+            @Override
+            public void run(UpdateCallback callback) {
+                final Table table = _dataContext.getDefaultSchema().getTableByName("persons");
+                callback.insertInto(table).value("name", "foo").execute();
+                callback.deleteFrom(table).where("name").eq("bar").execute();
+                assertFalse(_bulkWrites.hasCaptured());
+            }
+        });
+
+        assertEquals(1, _bulkWrites.getValues().size());
+        final List<? extends WriteModel<? extends Document>> writes = getLastValue(_bulkWrites);
+        assertEquals(2, writes.size());
+        assertTrue(writes.get(0) instanceof InsertOneModel);
+        assertTrue(writes.get(1) instanceof DeleteManyModel);
+
+        EasyMock.verify(_mongoDb, _collection);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testFailedFlushDoesNotHideScriptFailure() throws Exception {
+        final MongoDatabase mongoDb = EasyMock.createMock(MongoDatabase.class);
+        final MongoCollection<Document> collection = EasyMock.createMock(MongoCollection.class);
+        EasyMock.expect(mongoDb.getName()).andReturn("test").anyTimes();
+        EasyMock.expect(mongoDb.getCollection("persons")).andReturn(collection).anyTimes();
+        EasyMock.expect(collection.withWriteConcern(EasyMock.anyObject(WriteConcern.class))).andReturn(collection)
+                .anyTimes();
+        EasyMock.expect(
+                collection.bulkWrite(EasyMock.<List<? extends WriteModel<? extends Document>>> anyObject(),
+                        EasyMock.anyObject(BulkWriteOptions.class))).andThrow(new IllegalStateException("flush"));
+        EasyMock.replay(mongoDb, collection);
+
+        final SimpleTableDef tableDef = new SimpleTableDef("persons", new String[] { "_id", "name" },
+                new ColumnType[] { ColumnType.ROWID, ColumnType.VARCHAR });
+        final MongoDbDataContext dataContext = new MongoDbDataContext(mongoDb, tableDef);
+        try {
+            dataContext.executeUpdate(new UpdateScript() {
+                @Override
+                public void run(UpdateCallback callback) {
+                    final Table table = dataContext.getDefaultSchema().getTableByName("persons");
+                    callback.insertInto(table).value("name", "foo").execute();
+                    throw new IllegalArgumentException("script");
+                }
+            });
+            fail("Exception expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("script", e.getMessage());
+            assertEquals(1, e.getSuppressed().length);
+            assertEquals("flush", e.getSuppressed()[0].getMessage());
+        }
+
+        EasyMock.verify(mongoDb, collection);
+    }
+
+    public void testCloseWithoutWrites() throws Exception {
+        EasyMock.replay(_mongoDb, _collection);
+
+        createUpdateCallback().close();
+        assertFalse(_bulkWrites.hasCaptured());
+
+        EasyMock.verify(_mongoDb, _collection);
+    }
+}
@@ -21,9 +21,11 @@ package org.apache.metamodel.pojo;
 import java.util.Iterator;
 
 import org.apache.metamodel.data.AbstractDataSet;
+import org.apache.metamodel.data.BatchDataSet;
 import org.apache.metamodel.data.DataSet;
 import org.apache.metamodel.data.DefaultRow;
 import org.apache.metamodel.data.Row;
+import org.apache.metamodel.data.RowBatch;
 import org.apache.metamodel.query.SelectItem;
 
 /**
@@ -32,7 +34,7 @@ import org.apache.metamodel.query.SelectItem;
  * 
  * @param <E>
  */
-final class PojoDataSet<E> extends AbstractDataSet {
+final class PojoDataSet<E> extends AbstractDataSet implements BatchDataSet {
 
     private final TableDataProvider<E> _pojoTable;
     private final Iterator<E> _iterator;
@@ -70,6 +72,36 @@ final class PojoDataSet<E> extends AbstractDataSet {
         return new DefaultRow(getHeader(), values);
     }
 
+    @Override
+    public boolean isBatchNative() {
+        return true;
+    }
+
+    @Override
+    public RowBatch nextBatch(int maxRows) {
+        _next = null;
+        final int size = getHeader().size();
+        final String[] columnNames = new String[size];
+        for (int i = 0; i < size; i++) {
+            columnNames[i] = getHeader().getSelectItem(i).getColumn().getName();
+        }
+
+        final int capacity = Math.max(0, Math.min(maxRows, DEFAULT_BATCH_SIZE));
+        final Object[][] columns = new Object[size][capacity];
+        int rowCount = 0;
+        while (rowCount < capacity && _iterator.hasNext()) {
+            final E next = _iterator.next();
+            for (int i = 0; i < size; i++) {
+                columns[i][rowCount] = _pojoTable.getValue(columnNames[i], next);
+            }
+            rowCount++;
+        }
+        if (rowCount == 0) {
+            return null;
+        }
+        return new RowBatch(getHeader(), columns, rowCount);
+    }
+
     /**
      * Used by DELETE statements to delete a record.
      */